@@ -0,0 +1,130 @@
+package com.hsbc.cranker.connector;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Works out how many idle <code>cranker_1.0</code> sockets a router registration should keep open.
+ * <p>As a cranker_1.0 socket is used up by a single request, the idle sockets must cover the requests that
+ * arrive while used sockets are being replaced. So the window is the recent rate that sockets are acquired
+ * multiplied by the time it takes to open a new socket, with some headroom for bursts. A fast-reacting and a
+ * slow-reacting rate are tracked and the higher one is used, so the window grows as soon as traffic picks up and
+ * shrinks gradually when it quietens down.</p>
+ * <p>When the target server's response times rise well above their usual level, the window is reduced in
+ * proportion, so that fewer requests are accepted from the router while the target is struggling.</p>
+ * <p>Times are passed in as {@link System#nanoTime()} values. This class is thread safe.</p>
+ */
+class AdaptiveWindow {
+
+    private static final double FAST_RATE_PERIOD_SECONDS = 1.0;
+    private static final double SLOW_RATE_PERIOD_SECONDS = 10.0;
+    private static final double BURST_HEADROOM = 2.0;
+    private static final double LATENCY_SMOOTHING = 0.2;
+    private static final double BASELINE_DRIFT = 0.01;
+    private static final double SLOW_TARGET_RATIO = 2.0;
+    private static final double MIN_SLOW_TARGET_FACTOR = 0.25;
+
+    private final int minWindowSize;
+    private final int maxWindowSize;
+
+    private double fastRate; // acquisitions per second
+    private double slowRate; // acquisitions per second
+    private long lastAcquiredNanos;
+    private boolean hasAcquired;
+    private double connectSeconds = -1;
+    private double targetSeconds = -1;
+    private double baselineTargetSeconds = -1;
+
+    AdaptiveWindow(int minWindowSize, int maxWindowSize) {
+        if (minWindowSize < 1) throw new IllegalArgumentException("The minimum window size must be at least 1");
+        if (maxWindowSize < minWindowSize) throw new IllegalArgumentException("The maximum window size must not be less than the minimum");
+        this.minWindowSize = minWindowSize;
+        this.maxWindowSize = maxWindowSize;
+    }
+
+    /**
+     * Called when an idle socket is taken by a request
+     * @param nowNanos the current time
+     */
+    synchronized void onAcquired(long nowNanos) {
+        fastRate = decay(fastRate, nowNanos, FAST_RATE_PERIOD_SECONDS) + 1.0 / FAST_RATE_PERIOD_SECONDS;
+        slowRate = decay(slowRate, nowNanos, SLOW_RATE_PERIOD_SECONDS) + 1.0 / SLOW_RATE_PERIOD_SECONDS;
+        lastAcquiredNanos = nowNanos;
+        hasAcquired = true;
+    }
+
+    /**
+     * Called when a new socket to the router has been opened
+     * @param durationNanos the time taken to open the socket
+     */
+    synchronized void onConnected(long durationNanos) {
+        connectSeconds = smooth(connectSeconds, toSeconds(durationNanos));
+    }
+
+    /**
+     * Called when the target server has completed a request
+     * @param durationNanos the time from the socket being acquired until the response was completed
+     */
+    synchronized void onRequestCompleted(long durationNanos) {
+        double seconds = toSeconds(durationNanos);
+        targetSeconds = smooth(targetSeconds, seconds);
+        if (baselineTargetSeconds < 0 || targetSeconds < baselineTargetSeconds) {
+            baselineTargetSeconds = targetSeconds;
+        } else {
+            baselineTargetSeconds += (targetSeconds - baselineTargetSeconds) * BASELINE_DRIFT;
+        }
+    }
+
+    /**
+     * The number of idle sockets to keep open
+     * @param nowNanos the current time
+     * @return the window size, which is always between the configured minimum and maximum
+     */
+    synchronized int windowSize(long nowNanos) {
+        if (!hasAcquired || connectSeconds < 0) {
+            return minWindowSize;
+        }
+        double rate = Math.max(decay(fastRate, nowNanos, FAST_RATE_PERIOD_SECONDS), decay(slowRate, nowNanos, SLOW_RATE_PERIOD_SECONDS));
+        double window = Math.ceil(rate * connectSeconds * BURST_HEADROOM);
+        if (targetSeconds > baselineTargetSeconds * SLOW_TARGET_RATIO && targetSeconds > 0) {
+            window = Math.floor(window * Math.max(MIN_SLOW_TARGET_FACTOR, baselineTargetSeconds / targetSeconds));
+        }
+        return (int) Math.max(minWindowSize, Math.min(maxWindowSize, window));
+    }
+
+    int minWindowSize() {
+        return minWindowSize;
+    }
+
+    int maxWindowSize() {
+        return maxWindowSize;
+    }
+
+    private double decay(double rate, long nowNanos, double periodSeconds) {
+        if (!hasAcquired) {
+            return rate;
+        }
+        double elapsedSeconds = Math.max(0, toSeconds(nowNanos - lastAcquiredNanos));
+        return rate * Math.exp(-elapsedSeconds / periodSeconds);
+    }
+
+    private static double smooth(double current, double sample) {
+        return current < 0 ? sample : current + (sample - current) * LATENCY_SMOOTHING;
+    }
+
+    private static double toSeconds(long nanos) {
+        return nanos / (double) TimeUnit.SECONDS.toNanos(1);
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "AdaptiveWindow{" +
+            "min=" + minWindowSize +
+            ", max=" + maxWindowSize +
+            ", fastRate=" + fastRate +
+            ", slowRate=" + slowRate +
+            ", connectSeconds=" + connectSeconds +
+            ", targetSeconds=" + targetSeconds +
+            ", baselineTargetSeconds=" + baselineTargetSeconds +
+            '}';
+    }
+}
@@ -0,0 +1,96 @@
+package com.hsbc.cranker.connector;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Paces the opening of new sockets to the routers of a connector.
+ * <p>A token bucket limits how many sockets are opened per second, and a concurrency cap limits how many
+ * handshakes are in progress at once, so that a connector reconnecting to a restarted router does not open all of
+ * its sockets (and do all of its TLS handshakes) at the same moment.</p>
+ * <p>Times are passed in as {@link System#nanoTime()} values. This class is thread safe.</p>
+ */
+class ConnectionRateLimiter {
+
+    static final long BASE_BACKOFF_MILLIS = 500;
+    static final long MAX_BACKOFF_MILLIS = 10000;
+    private static final long CONCURRENCY_RETRY_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+
+    private final double permitsPerNano;
+    private final double maxPermits;
+    private final int maxConcurrent;
+    private double permits;
+    private long lastRefillNanos;
+    private boolean hasRefilled;
+    private int inProgress;
+
+    ConnectionRateLimiter(double connectionsPerSecond, int maxConcurrent) {
+        if (connectionsPerSecond <= 0) throw new IllegalArgumentException("connectionsPerSecond must be greater than 0");
+        if (maxConcurrent < 1) throw new IllegalArgumentException("maxConcurrent must be at least 1");
+        this.permitsPerNano = connectionsPerSecond / TimeUnit.SECONDS.toNanos(1);
+        this.maxPermits = Math.max(1, Math.ceil(connectionsPerSecond));
+        this.maxConcurrent = maxConcurrent;
+        this.permits = maxPermits;
+    }
+
+    /**
+     * Tries to get permission to open a socket. If this returns 0, then {@link #release()} must be called
+     * once the handshake has completed, whether it succeeded or not.
+     * @param nowNanos the current time
+     * @return 0 if the socket can be opened now, otherwise the nanoseconds to wait before trying again
+     */
+    synchronized long tryAcquire(long nowNanos) {
+        if (hasRefilled) {
+            permits = Math.min(maxPermits, permits + (nowNanos - lastRefillNanos) * permitsPerNano);
+        }
+        lastRefillNanos = nowNanos;
+        hasRefilled = true;
+        if (inProgress >= maxConcurrent) {
+            return CONCURRENCY_RETRY_NANOS;
+        }
+        if (permits < 1) {
+            return Math.max(1, (long) Math.ceil((1 - permits) / permitsPerNano));
+        }
+        permits--;
+        inProgress++;
+        return 0;
+    }
+
+    /**
+     * Called when a handshake allowed by {@link #tryAcquire(long)} has completed
+     */
+    synchronized void release() {
+        if (inProgress > 0) {
+            inProgress--;
+        }
+    }
+
+    /**
+     * @return The number of handshakes currently in progress
+     */
+    synchronized int inProgress() {
+        return inProgress;
+    }
+
+    /**
+     * Calculates how long to wait before reconnecting to a router after a failure, using "decorrelated jitter":
+     * a random time between the base delay and three times the previous delay, capped at 10 seconds. Unlike a
+     * fixed exponential backoff, connectors that fail at the same time spread out their retries.
+     * @param previousMillis the previous delay, or 0 if this is the first retry
+     * @param random the source of randomness
+     * @return Milliseconds to wait until trying again
+     */
+    static long backoffMillis(long previousMillis, Random random) {
+        long upper = Math.max(BASE_BACKOFF_MILLIS + 1, Math.min(MAX_BACKOFF_MILLIS, previousMillis * 3));
+        return BASE_BACKOFF_MILLIS + (long) (random.nextDouble() * (upper - BASE_BACKOFF_MILLIS));
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "ConnectionRateLimiter{" +
+            "connectionsPerSecond=" + permitsPerNano * TimeUnit.SECONDS.toNanos(1) +
+            ", maxConcurrent=" + maxConcurrent +
+            ", inProgress=" + inProgress +
+            '}';
+    }
+}
@@ -1,12 +1,12 @@
 package com.hsbc.cranker.connector;
 
 import java.net.URI;
-import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
 import java.net.http.WebSocket;
 import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.*;
@@ -91,8 +91,12 @@ class ConnectorSocketImpl implements WebSocket.Listener, ConnectorSocket {
     private HttpRequest requestToTarget;
     private CompletableFuture<HttpResponse<Void>> responseFuture;
     private volatile Flow.Subscription responseBodySubscription;
-    private final URI targetURI;
-    private final HttpClient httpClient;
+    private final TargetUriCache targetURIs;
+    private final TargetSelector targetSelector;
+    private final boolean usesRequestBuilder;
+    private final RequestDeadlines deadlines;
+    private volatile ScheduledFuture<?> deadlineTask;
+    private volatile boolean isPastDeadline;
     private final ConnectorSocketListener listener;
     private final ProxyEventListener proxyEventListener;
     private WebSocket webSocket;
@@ -103,10 +107,12 @@ class ConnectorSocketImpl implements WebSocket.Listener, ConnectorSocket {
     private StringBuilder onTextBuffer;
 
 
-    ConnectorSocketImpl(URI targetURI, HttpClient httpClient, ConnectorSocketListener listener,
+    ConnectorSocketImpl(TargetUriCache targetURIs, TargetTransport targetTransport, RequestDeadlines deadlines, ConnectorSocketListener listener,
                         ProxyEventListener proxyEventListener, ScheduledExecutorService executor) {
-        this.targetURI = targetURI;
-        this.httpClient = httpClient;
+        this.targetURIs = targetURIs;
+        this.targetSelector = TargetSelector.of(targetTransport);
+        this.usesRequestBuilder = ProxyRequestImpl.usesRequestBuilder(proxyEventListener);
+        this.deadlines = deadlines;
         this.listener = listener;
         this.proxyEventListener = proxyEventListener;
         this.executor = executor;
@@ -120,7 +126,7 @@ class ConnectorSocketImpl implements WebSocket.Listener, ConnectorSocket {
     private void newRequestToTarget(CrankerRequestParser protocolRequest, WebSocket webSocket) {
         CrankerResponseBuilder protocolResponse = CrankerResponseBuilder.newBuilder();
 
-        URI dest = targetURI.resolve(protocolRequest.dest);
+        URI dest = targetURIs.resolve(protocolRequest.dest);
 
         HttpRequest.BodyPublisher bodyPublisher;
         if (protocolRequest.requestBodyPending()) {
@@ -130,28 +136,65 @@ class ConnectorSocketImpl implements WebSocket.Listener, ConnectorSocket {
             webSocket.request(1);
         }
 
-        HttpRequest.Builder rb = HttpRequest.newBuilder()
-            .uri(dest)
-            .method(protocolRequest.httpMethod, bodyPublisher);
-        putHeadersTo(rb, protocolRequest);
-
-        this.requestToTarget = proxyEventListener.beforeProxyToTarget(rb.build(), rb);
+        final long deadlineMillis = deadlines == null ? -1 : deadlines.millisFor(dest.getRawPath(), protocolRequest.headers);
+        final String[] headerLines = deadlineMillis < 0 ? protocolRequest.headers : deadlines.withDeadlineHeader(protocolRequest.headers, deadlineMillis);
+        final Duration timeout = deadlineMillis < 0 ? null : Duration.ofMillis(Math.max(1, deadlineMillis));
+
+        // listeners change a view of the request, so that the request to the target is only built once
+        ProxyRequestImpl proxyRequest = new ProxyRequestImpl(protocolRequest.httpMethod, protocolRequest.dest, headerLines);
+        proxyEventListener.beforeProxyToTarget(proxyRequest);
+        URI resolved = proxyRequest.path().equals(protocolRequest.dest) ? dest : targetURIs.resolve(proxyRequest.path());
+        // the target is chosen before the request is built, so that it is built with the target's URI
+        TargetSelector.Selection target = targetSelector.select(resolved);
+        URI uri = target.uri(resolved);
+
+        if (target.acceptsForwardedRequests()) {
+            ForwardedRequest forwarded = new ForwardedRequest(proxyRequest.method(), uri, bodyPublisher, proxyRequest.headerLines(), timeout);
+            this.requestToTarget = usesRequestBuilder ? proxyEventListener.beforeProxyToTarget(forwarded, forwarded.toBuilder()) : forwarded;
+        } else {
+            HttpRequest.Builder rb = HttpRequest.newBuilder()
+                .uri(uri)
+                .method(proxyRequest.method(), bodyPublisher);
+            if (timeout != null) {
+                rb.timeout(timeout);
+            }
+            putHeadersTo(rb, proxyRequest.headerLines());
+            HttpRequest built = rb.build();
+            this.requestToTarget = usesRequestBuilder ? proxyEventListener.beforeProxyToTarget(built, rb) : built;
+        }
 
         HttpResponse.BodyHandler<Void> bh = new TargetResponseHandler(protocolResponse, webSocket);
 
-        this.responseFuture = httpClient.sendAsync(requestToTarget, bh);
+        this.responseFuture = target.sendAsync(requestToTarget, bh);
         this.responseFuture.whenComplete((response, throwable) -> {
-            if (throwable != null) {
+            if (throwable != null && !isPastDeadline) {
                 proxyEventListener.onProxyError(this.requestToTarget, throwable);
                 close(State.ERROR, 1011, throwable);
                 // consume request body data on the fly, so that CLOSE frame can arrive and websocket can close gracefully
                 webSocket.request(1);
             }
         });
+        if (timeout != null) {
+            deadlineTask = executor.schedule(() -> onDeadline(webSocket, deadlineMillis), timeout.toMillis(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Gives up on a request that is still running when its deadline passes, stopping the target request and
+     * the response body, and closing the socket with an error so that the router can release the client.
+     */
+    private void onDeadline(WebSocket webSocket, long deadlineMillis) {
+        if (!state.isCompleted()) {
+            isPastDeadline = true;
+            TimeoutException error = new TimeoutException("The request deadline of " + deadlineMillis + "ms was exceeded");
+            proxyEventListener.onProxyError(this.requestToTarget, error);
+            close(State.ERROR, 1011, error);
+            webSocket.request(1);
+        }
     }
 
-    private void putHeadersTo(HttpRequest.Builder requestToTarget, CrankerRequestParser crankerRequestParser) {
-        for (String line : crankerRequestParser.headers) {
+    private void putHeadersTo(HttpRequest.Builder requestToTarget, String[] headerLines) {
+        for (String line : headerLines) {
             int pos = line.indexOf(':');
             // this will ignore HTTP/2 pseudo request headers like :method, :path, :authority
             if (pos > 0) {
@@ -281,6 +324,9 @@ class ConnectorSocketImpl implements WebSocket.Listener, ConnectorSocket {
     public void close(State newState, int statusCode, Throwable error) {
         updateState(newState);
         cancelTimeout();
+        if (deadlineTask != null) {
+            deadlineTask.cancel(false);
+        }
         if (pingPongTask != null) {
             pingPongTask.cancel(false);
             pingPongTask = null;
@@ -326,7 +372,7 @@ class ConnectorSocketImpl implements WebSocket.Listener, ConnectorSocket {
     @Override
     public String toString() {
         return "ConnectorSocket{" +
-            "targetURI=" + targetURI +
+            "targetURI=" + targetURIs.targetUri() +
             ", state=" + state +
             ", request=" + requestToTarget +
             '}';
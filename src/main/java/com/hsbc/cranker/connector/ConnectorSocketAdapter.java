@@ -1,7 +1,5 @@
 package com.hsbc.cranker.connector;
 
-import java.net.URI;
-import java.net.http.HttpClient;
 import java.net.http.WebSocket;
 import java.nio.ByteBuffer;
 import java.util.concurrent.CompletableFuture;
@@ -17,23 +15,28 @@ import static com.hsbc.cranker.connector.CrankerConnectorBuilder.CRANKER_PROTOCO
  */
 public class ConnectorSocketAdapter implements WebSocket.Listener, ConnectorSocket {
 
-    private final URI targetURI;
-    private final HttpClient httpClient;
+    private final TargetUriCache targetURIs;
+    private final TargetTransport targetTransport;
+    private final RequestDeadlines deadlines;
     private final ConnectorSocketListener listener;
     private final ProxyEventListener proxyEventListener;
     private final ScheduledExecutorService executor;
+    private final StreamExecutor streamExecutor;
 
     private WebSocket.Listener underlying;
     private ConnectorSocket underlying2;
 
     private String protocol = "N/A";
 
-    ConnectorSocketAdapter(URI targetURI, HttpClient httpClient, ConnectorSocketListener listener,
-                                  ProxyEventListener proxyEventListener, ScheduledExecutorService executor) {
-        this.targetURI = targetURI;
-        this.httpClient = httpClient;
+    ConnectorSocketAdapter(TargetUriCache targetURIs, TargetTransport targetTransport, RequestDeadlines deadlines, ConnectorSocketListener listener,
+                                  ProxyEventListener proxyEventListener, ScheduledExecutorService executor,
+                                  StreamExecutor streamExecutor) {
+        this.targetURIs = targetURIs;
+        this.targetTransport = targetTransport;
+        this.deadlines = deadlines;
         this.proxyEventListener = proxyEventListener;
         this.executor = executor;
+        this.streamExecutor = streamExecutor;
 
         // bridge the listener, listener observer will only see the adapter consistently.
         // e.g. RouterRegistration.idleSockets and RouterRegistration.runningSockets only see ConnectorSocketAdapter instances
@@ -44,6 +47,11 @@ public class ConnectorSocketAdapter implements WebSocket.Listener, ConnectorSock
                 listener.onConnectionAcquired(adapter);
             }
 
+            @Override
+            public void onStreamStarted(ConnectorSocket socket) {
+                listener.onStreamStarted(adapter);
+            }
+
             @Override
             public void onClose(ConnectorSocket socket, Throwable error) {
                 listener.onClose(adapter, error);
@@ -81,12 +89,12 @@ public class ConnectorSocketAdapter implements WebSocket.Listener, ConnectorSock
     public void onOpen(WebSocket webSocket) {
         final String subProtocol = webSocket.getSubprotocol();
         if (CRANKER_PROTOCOL_3.equals(subProtocol)) {
-            final ConnectorSocketV3 connectorSocketV3 = new ConnectorSocketV3(targetURI, httpClient, listener, proxyEventListener, executor);
+            final ConnectorSocketV3 connectorSocketV3 = new ConnectorSocketV3(targetURIs, targetTransport, deadlines, listener, proxyEventListener, executor, streamExecutor);
             protocol = CRANKER_PROTOCOL_3;
             underlying = connectorSocketV3;
             underlying2 = connectorSocketV3;
         } else {
-            final ConnectorSocketImpl connectorSocket = new ConnectorSocketImpl(targetURI, httpClient, listener, proxyEventListener, executor);
+            final ConnectorSocketImpl connectorSocket = new ConnectorSocketImpl(targetURIs, targetTransport, deadlines, listener, proxyEventListener, executor);
             protocol = CRANKER_PROTOCOL_1;
             underlying = connectorSocket;
             underlying2 = connectorSocket;
@@ -138,6 +146,28 @@ public class ConnectorSocketAdapter implements WebSocket.Listener, ConnectorSock
         }
     }
 
+    /**
+     * The number of requests currently being processed over this socket.
+     * @return The number of active streams for cranker v3, or 1 for a cranker v1 socket handling a request
+     */
+    int activeStreams() {
+        if (CRANKER_PROTOCOL_3.equals(protocol) && underlying2 != null) {
+            return ((ConnectorSocketV3) underlying2).activeStreams();
+        }
+        return state() == State.HANDLING_REQUEST ? 1 : 0;
+    }
+
+    /**
+     * The number of response bytes sent to the router that the router has not acknowledged yet.
+     * @return The bytes in flight for cranker v3, or 0 as cranker v1 has no flow control
+     */
+    long bytesInFlight() {
+        if (CRANKER_PROTOCOL_3.equals(protocol) && underlying2 != null) {
+            return ((ConnectorSocketV3) underlying2).bytesInFlight();
+        }
+        return 0;
+    }
+
     /**
      * get the underlying cranker protocol which the socket using.
      * @return protocol
@@ -8,6 +8,12 @@ interface ConnectorSocketListener {
      */
     void onConnectionAcquired(ConnectorSocket socket);
 
+    /**
+     * Called when a new request stream is started on a multiplexed (cranker v3) socket
+     * @param socket ConnectorSocket receiving the request
+     */
+    void onStreamStarted(ConnectorSocket socket);
+
     /**
      * Called when the socket close
      *
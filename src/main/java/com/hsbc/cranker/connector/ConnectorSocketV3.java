@@ -1,12 +1,12 @@
 package com.hsbc.cranker.connector;
 
 import java.net.URI;
-import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
 import java.net.http.WebSocket;
 import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.util.*;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -29,13 +29,16 @@ public class ConnectorSocketV3 implements WebSocket.Listener, ConnectorSocket {
     private volatile Map<Integer, RequestContext> contextMap = new ConcurrentHashMap<>();
 
     private static final byte[] PING_MSG = "ping".getBytes(StandardCharsets.UTF_8);
-    private final URI targetURI;
-    private final HttpClient httpClient;
+    private final TargetUriCache targetURIs;
+    private final TargetSelector targetSelector;
+    private final boolean usesRequestBuilder;
+    private final RequestDeadlines deadlines;
     private final ConnectorSocketListener listener;
     private final ProxyEventListener proxyEventListener;
     private WebSocket webSocket;
     private volatile State websocketState;
     private final ScheduledExecutorService executor;
+    private final StreamExecutor streamExecutor;
     private ScheduledFuture<?> pingPongTask;
     private final List<BufferHolder> unCompletedBuffers;
 
@@ -43,13 +46,16 @@ public class ConnectorSocketV3 implements WebSocket.Listener, ConnectorSocket {
     private final ConcurrentLinkedQueue<BinarySendingTask> sendingTasks = new ConcurrentLinkedQueue<>();
     private final AtomicBoolean isSending = new AtomicBoolean(false);
 
-    ConnectorSocketV3(URI targetURI, HttpClient httpClient, ConnectorSocketListener listener,
-                      ProxyEventListener proxyEventListener, ScheduledExecutorService executor) {
-        this.targetURI = targetURI;
-        this.httpClient = httpClient;
+    ConnectorSocketV3(TargetUriCache targetURIs, TargetTransport targetTransport, RequestDeadlines deadlines, ConnectorSocketListener listener,
+                      ProxyEventListener proxyEventListener, ScheduledExecutorService executor, StreamExecutor streamExecutor) {
+        this.targetURIs = targetURIs;
+        this.targetSelector = TargetSelector.of(targetTransport);
+        this.usesRequestBuilder = ProxyRequestImpl.usesRequestBuilder(proxyEventListener);
+        this.deadlines = deadlines;
         this.listener = listener;
         this.proxyEventListener = proxyEventListener;
         this.executor = executor;
+        this.streamExecutor = streamExecutor;
         this.unCompletedBuffers = new ArrayList<>();
         onSignOfLife();
     }
@@ -60,7 +66,7 @@ public class ConnectorSocketV3 implements WebSocket.Listener, ConnectorSocket {
 
     private void newRequestToTarget(RequestContext context, CrankerRequest protocolRequest, WebSocket webSocket, boolean isStreamEnd) {
 
-        URI dest = targetURI.resolve(protocolRequest.dest);
+        URI dest = targetURIs.resolve(protocolRequest.dest);
 
         HttpRequest.BodyPublisher bodyPublisher;
         if (!isStreamEnd) {
@@ -69,25 +75,70 @@ public class ConnectorSocketV3 implements WebSocket.Listener, ConnectorSocket {
             bodyPublisher = HttpRequest.BodyPublishers.noBody();
         }
 
-        HttpRequest.Builder rb = HttpRequest.newBuilder()
-            .uri(dest)
-            .method(protocolRequest.httpMethod, bodyPublisher);
+        final long deadlineMillis = deadlines == null ? -1 : deadlines.millisFor(dest.getRawPath(), protocolRequest.headers);
+        final String[] headerLines = deadlineMillis < 0 ? protocolRequest.headers : deadlines.withDeadlineHeader(protocolRequest.headers, deadlineMillis);
+        final Duration timeout = deadlineMillis < 0 ? null : Duration.ofMillis(Math.max(1, deadlineMillis));
 
-        putHeadersTo(rb, protocolRequest);
+        // listeners change a view of the request, so that the request to the target is only built once
+        final ProxyRequestImpl proxyRequest = new ProxyRequestImpl(protocolRequest.httpMethod, protocolRequest.dest, headerLines);
+        proxyEventListener.beforeProxyToTarget(proxyRequest);
+        final URI resolved = proxyRequest.path().equals(protocolRequest.dest) ? dest : targetURIs.resolve(proxyRequest.path());
+        // the target is chosen before the request is built, so that it is built with the target's URI
+        final TargetSelector.Selection target = targetSelector.select(resolved);
+        final URI uri = target.uri(resolved);
 
-        final HttpRequest requestToTarget = proxyEventListener.beforeProxyToTarget(rb.build(), rb);
+        final HttpRequest requestToTarget;
+        if (target.acceptsForwardedRequests()) {
+            // the header lines are written to the target as they are, so are not validated unless a listener uses them
+            ForwardedRequest forwarded = new ForwardedRequest(proxyRequest.method(), uri, bodyPublisher, proxyRequest.headerLines(), timeout);
+            requestToTarget = usesRequestBuilder ? proxyEventListener.beforeProxyToTarget(forwarded, forwarded.toBuilder()) : forwarded;
+        } else {
+            HttpRequest.Builder rb = HttpRequest.newBuilder()
+                .uri(uri)
+                .method(proxyRequest.method(), bodyPublisher);
+            if (timeout != null) {
+                rb.timeout(timeout);
+            }
+            putHeadersTo(rb, proxyRequest.headerLines());
+            HttpRequest built = rb.build();
+            requestToTarget = usesRequestBuilder ? proxyEventListener.beforeProxyToTarget(built, rb) : built;
+        }
         context.request = requestToTarget;
         HttpResponse.BodyHandler<Void> bh = new TargetResponseHandlerV3(context,
             CrankerResponseBuilder.newBuilder(),
             webSocket);
 
-        final CompletableFuture<HttpResponse<Void>> responseFuture = httpClient.sendAsync(requestToTarget, bh);
+        final CompletableFuture<HttpResponse<Void>> responseFuture = target.sendAsync(requestToTarget, bh);
         context.responseFuture = responseFuture;
         responseFuture.whenComplete((response, throwable) -> {
             if (throwable != null) {
-                resetStream(context.requestId, 1011, "target request failed: " + throwable.getMessage());
+                // the request is over, so its deadline task need not be kept until the deadline
+                context.cancelDeadline();
+                // a stream that was already reset by the router or the deadline is not reset again
+                if (contextMap.get(context.requestId) == context) {
+                    resetStream(context.requestId, 1011, "target request failed: " + throwable.getMessage());
+                }
             }
         });
+        if (timeout != null) {
+            context.deadlineTask = executor.schedule(() -> onDeadline(context, deadlineMillis), timeout.toMillis(), TimeUnit.MILLISECONDS);
+            if (responseFuture.isCompletedExceptionally()) {
+                // it failed before the task was scheduled
+                context.cancelDeadline();
+            }
+        }
+    }
+
+    /**
+     * Gives up on a request that is still running when its deadline passes, stopping the target request and
+     * the response body, and resetting the stream so that the router can release the client.
+     */
+    private void onDeadline(RequestContext context, long deadlineMillis) {
+        if (contextMap.remove(context.requestId, context)) {
+            resetStream(context.requestId, 1011, "request deadline of " + deadlineMillis + "ms exceeded");
+            context.close();
+            proxyEventListener.onProxyError(context.request, new TimeoutException("The request deadline of " + deadlineMillis + "ms was exceeded"));
+        }
     }
 
     /**
@@ -166,8 +217,8 @@ public class ConnectorSocketV3 implements WebSocket.Listener, ConnectorSocket {
         contextMap.remove(requestId);
     }
 
-    private void putHeadersTo(HttpRequest.Builder requestToTarget, CrankerRequest crankerRequest) {
-        for (String line : crankerRequest.headers) {
+    private void putHeadersTo(HttpRequest.Builder requestToTarget, String[] headerLines) {
+        for (String line : headerLines) {
             int pos = line.indexOf(':');
             // this will ignore HTTP/2 pseudo request headers like :method, :path, :authority
             if (pos > 0) {
@@ -289,7 +340,7 @@ public class ConnectorSocketV3 implements WebSocket.Listener, ConnectorSocket {
                             releaseByteBuffer.complete(null);
                         }
                     });
-                    context.sendPendingDataMaybe();
+                    runOnStream(requestId, context::sendPendingDataMaybe);
                 }
                 webSocket.request(1);
                 break;
@@ -300,38 +351,37 @@ public class ConnectorSocketV3 implements WebSocket.Listener, ConnectorSocket {
                 }
                 final boolean isStreamEnd = ((flags & 1) > 0);
                 final boolean isHeaderEnd = ((flags & 4) > 0);
+                final boolean isNewStream = !contextMap.containsKey(requestId);
                 final RequestContext context = contextMap.computeIfAbsent(requestId, RequestContext::new);
+                if (isNewStream) {
+                    listener.onStreamStarted(this);
+                }
                 final int len = completedData.remaining();
                 context.wssReceivedMessageBytes.addAndGet(len);
-                final String content = StandardCharsets.UTF_8.decode(completedData).toString();
-                if (!isHeaderEnd) {
-                    if (context.headerLineBuilder == null) context.headerLineBuilder = new StringBuilder();
-                    context.headerLineBuilder.append(content);
-                } else {
-                    String fullContent = content;
-                    if (context.headerLineBuilder != null) {
-                        context.headerLineBuilder.append(content);
-                        fullContent = context.headerLineBuilder.toString();
+                runOnStream(requestId, () -> {
+                    try {
+                        onHeaderMessage(context, completedData, isHeaderEnd, isStreamEnd, webSocket);
+                        sendBinary(windowUpdateMessage(requestId, len), true);
+                    } finally {
+                        releaseByteBuffer.complete(null);
                     }
-                    CrankerRequest protocolRequest = new CrankerRequest(fullContent);
-                    newRequestToTarget(context, protocolRequest, webSocket, isStreamEnd);
-                }
-                sendBinary(windowUpdateMessage(requestId, len), true);
-                releaseByteBuffer.complete(null);
+                });
                 webSocket.request(1);
                 break;
             }
             case MESSAGE_TYPE_RST_STREAM: {
                 final int errorCode = getErrorCode(completedData);
                 final String errorMessage = getErrorMessage(completedData);
-                final RequestContext context = contextMap.remove(requestId);
-                if (context != null && context.request != null) {
-                    context.close();
-                    proxyEventListener.onProxyError(context.request, new IllegalStateException(
-                        String.format("Received rstMessage from cranker, client may closed request early." +
-                            "errorCode=%s, errorMessage=%s", errorCode, errorMessage)));
-                }
                 releaseByteBuffer.complete(null);
+                runOnStream(requestId, () -> {
+                    final RequestContext context = contextMap.remove(requestId);
+                    if (context != null && context.request != null) {
+                        context.close();
+                        proxyEventListener.onProxyError(context.request, new IllegalStateException(
+                            String.format("Received rstMessage from cranker, client may closed request early." +
+                                "errorCode=%s, errorMessage=%s", errorCode, errorMessage)));
+                    }
+                });
                 webSocket.request(1);
                 break;
             }
@@ -356,6 +406,52 @@ public class ConnectorSocketV3 implements WebSocket.Listener, ConnectorSocket {
         return releaseByteBuffer;
     }
 
+    private void onHeaderMessage(RequestContext context, ByteBuffer data, boolean isHeaderEnd, boolean isStreamEnd, WebSocket webSocket) {
+        final String content = StandardCharsets.UTF_8.decode(data).toString();
+        if (!isHeaderEnd) {
+            if (context.headerLineBuilder == null) context.headerLineBuilder = new StringBuilder();
+            context.headerLineBuilder.append(content);
+        } else if (contextMap.get(context.requestId) == context) {
+            String fullContent = content;
+            if (context.headerLineBuilder != null) {
+                context.headerLineBuilder.append(content);
+                fullContent = context.headerLineBuilder.toString();
+            }
+            CrankerRequest protocolRequest = new CrankerRequest(fullContent);
+            newRequestToTarget(context, protocolRequest, webSocket, isStreamEnd);
+        }
+    }
+
+    /**
+     * Runs the work of a stream, either inline on the websocket thread, or in the stream's lane of the
+     * stream executor if one is configured. Work of the same stream always runs in the order it was submitted.
+     */
+    private void runOnStream(Integer requestId, Runnable task) {
+        if (streamExecutor == null) {
+            task.run();
+            return;
+        }
+        try {
+            streamExecutor.execute(requestId, () -> {
+                try {
+                    task.run();
+                } catch (Throwable throwable) {
+                    final RequestContext context = contextMap.get(requestId);
+                    if (context != null) {
+                        resetStream(requestId, 1011, "stream processing failed: " + throwable.getMessage());
+                        context.close();
+                        if (context.request != null) {
+                            proxyEventListener.onProxyError(context.request, throwable);
+                        }
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // the connector is shutting down
+            task.run();
+        }
+    }
+
     private static int getErrorCode(ByteBuffer byteBuffer) {
         return byteBuffer.remaining() >= 4 ? byteBuffer.getInt() : -1;
     }
@@ -426,6 +522,26 @@ public class ConnectorSocketV3 implements WebSocket.Listener, ConnectorSocket {
         closeWebsocket(State.CONNECTOR_CLOSED, 1001, null);
     }
 
+    /**
+     * The number of requests currently being processed over this socket
+     * @return The number of active streams
+     */
+    int activeStreams() {
+        return contextMap.size();
+    }
+
+    /**
+     * The number of response bytes sent to the router that the router has not acknowledged yet
+     * @return The number of bytes in flight over all streams of this socket
+     */
+    long bytesInFlight() {
+        long bytes = 0;
+        for (RequestContext context : contextMap.values()) {
+            bytes += context.wssSendingBytes.get();
+        }
+        return bytes;
+    }
+
     /**
      * Get the underlying complete CompletableFuture. This method will not trigger socket close,
      * if you need close the socket manually, use {{@link #closeWebsocket(State, int, Throwable)}}
@@ -449,7 +565,7 @@ public class ConnectorSocketV3 implements WebSocket.Listener, ConnectorSocket {
     @Override
     public String toString() {
         return "ConnectorSocket{" +
-            "targetURI=" + targetURI +
+            "targetURI=" + targetURIs.targetUri() +
             ", state=" + websocketState +
             ", requests=" + contextMap.size() +
             '}';
@@ -574,6 +690,7 @@ public class ConnectorSocketV3 implements WebSocket.Listener, ConnectorSocket {
 
                     sendBinary(dataMessages(context.requestId, true, null), true);
                     contextMap.remove(context.requestId);
+                    context.cancelDeadline();
                     // for graceful shutdown
                     if (State.STOPPING.equals(state()) && contextMap.isEmpty()) {
                         closeWebsocket(State.COMPLETE, WebSocket.NORMAL_CLOSURE, null);
@@ -726,6 +843,7 @@ public class ConnectorSocketV3 implements WebSocket.Listener, ConnectorSocket {
         // client request/response
         HttpRequest request;
         CompletableFuture<HttpResponse<Void>> responseFuture;
+        volatile ScheduledFuture<?> deadlineTask;
         Flow.Subscription responseBodySubscription;
         StringBuilder headerLineBuilder;
         Flow.Subscriber<? super ByteBuffer> requestBodySubscriber;
@@ -832,6 +950,7 @@ public class ConnectorSocketV3 implements WebSocket.Listener, ConnectorSocket {
         }
 
         void close() {
+            cancelDeadline();
             if (responseFuture != null && !responseFuture.isDone() && !responseFuture.isCancelled()) {
                 responseFuture.cancel(true);
             }
@@ -840,6 +959,13 @@ public class ConnectorSocketV3 implements WebSocket.Listener, ConnectorSocket {
             }
         }
 
+        void cancelDeadline() {
+            ScheduledFuture<?> task = deadlineTask;
+            if (task != null) {
+                task.cancel(false);
+            }
+        }
+
         @Override
         public String toString() {
             return new StringJoiner(", ", RequestContext.class.getSimpleName() + "[", "]")
@@ -1,12 +1,15 @@
 package com.hsbc.cranker.connector;
 
+import java.io.IOException;
 import java.net.URI;
 import java.net.http.HttpClient;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
@@ -24,6 +27,21 @@ public interface CrankerConnector {
      */
     void start();
 
+    /**
+     * Creates the connections to the routers without blocking the calling thread.
+     * <p>Unlike {@link #start()}, the router URIs are looked up on a background thread. The returned future
+     * completes when every router has at least {@link CrankerConnectorBuilder#withReadySocketsPerRouter(int)}
+     * connected sockets, so it can be used to decide when a service is ready to receive requests. If no routers
+     * are found, the future completes once routers are found and connected to. Use
+     * {@link CompletableFuture#orTimeout(long, TimeUnit)} to limit how long to wait.</p>
+     * <p>The default implementation calls {@link #start()} on another thread, completing when it returns.</p>
+     *
+     * @return A future that completes when the connector is connected to all of its routers
+     */
+    default CompletableFuture<Void> startAsync() {
+        return CompletableFuture.runAsync(this::start);
+    }
+
     /**
      * Starts a graceful disconnection from the routers which allows for zero-downtime deployments of components
      * that have multiple instances.
@@ -41,6 +59,23 @@ public interface CrankerConnector {
      */
     boolean stop(long timeout, TimeUnit timeUnit);
 
+    /**
+     * Starts a graceful disconnection from the routers, like {@link #stop(long, TimeUnit)}, without blocking
+     * the calling thread.
+     * <p>While stopping, the routers remain available from {@link #routers()} with the
+     * {@link RouterRegistration.State#STOPPING} state, and {@link RouterRegistration#inFlightRequests()} shows how
+     * many requests are still in progress on each router.</p>
+     *
+     * @param timeout the maximum time to wait for active requests to complete
+     * @param timeUnit the time unit of the timeout argument
+     * @return A future that completes with <code>true</code> if all the active requests completed within the timeout,
+     * or <code>false</code> otherwise. If the connector is not running, the future fails with an {@link IllegalStateException}.
+     * The default implementation calls {@link #stop(long, TimeUnit)} on another thread.
+     */
+    default CompletableFuture<Boolean> stopAsync(long timeout, TimeUnit timeUnit) {
+        return CompletableFuture.supplyAsync(() -> stop(timeout, timeUnit));
+    }
+
     /**
      * connectorId
      * @return A unique ID assigned to this connector that is provided to the router for diagnostic reasons.
@@ -58,6 +93,51 @@ public interface CrankerConnector {
      * @return the HTTP client used for the connections to the router and target server
      */
     HttpClient httpClient();
+
+    /**
+     * The number of listener events dropped because the dispatch buffer was full.
+     * @return The number of dropped events, which is always 0 unless
+     * {@link CrankerConnectorBuilder#withAsyncListenerDispatch(int, ListenerOverflowPolicy, long, TimeUnit)} is used
+     */
+    default long droppedListenerEvents() {
+        return 0;
+    }
+
+    /**
+     * How long the warm up configured with {@link CrankerConnectorBuilder#withWarmUp(String, int, int, Duration)} took
+     * @return The time taken to warm up, or null if there is no warm up or it has not finished yet
+     */
+    default Duration warmUpTime() {
+        return null;
+    }
+
+    /**
+     * The requests currently being sent to the target, and the target connections where they are known
+     * @return A snapshot of the target connection statistics. The default implementation has no requests and
+     * unknown connection numbers.
+     * @see CrankerConnectorBuilder#withTargetConnectionLimit(int, int)
+     */
+    default TargetConnectionStats targetConnectionStats() {
+        return new TargetConnectionStats(0, 0, 0, 0, -1, -1, -1);
+    }
+
+    /**
+     * Whether requests are being sent to the target, which is always the case unless a circuit breaker has been
+     * set with {@link CrankerConnectorBuilder#withCircuitBreaker(double, Duration, int, Duration, Duration)}
+     * @return false while the circuit breaker is open and requests to the target are failing without being sent
+     */
+    default boolean isTargetAvailable() {
+        return true;
+    }
+
+    /**
+     * The hits and misses of the cache of resolved target URIs
+     * @return A snapshot of the cache statistics, which are all zero if there is no cache
+     * @see CrankerConnectorBuilder#withTargetUriCache(int)
+     */
+    default TargetUriCacheStats targetUriCacheStats() {
+        return new TargetUriCacheStats(0, 0, 0, 0);
+    }
 }
 
 class CrankerConnectorImpl implements CrankerConnector {
@@ -69,17 +149,42 @@ class CrankerConnectorImpl implements CrankerConnector {
     private final RouterEventListener routerEventListener;
     private final String componentName;
     private volatile ScheduledExecutorService routerUpdateExecutor;
+    private volatile ScheduledExecutorService sharedRouterUpdateExecutor;
+    private final List<ScheduledFuture<?>> scheduledUpdates = new CopyOnWriteArrayList<>();
     private final int routerUpdateInterval;
     private final TimeUnit routerUpdateTimeUnit;
     private final int routerDeregisterTimeout;
     private final TimeUnit routerDeregisterTimeUnit;
     private final HttpClient httpClient;
+    private final EventDispatcher eventDispatcher;
+    private volatile EventDispatcher sharedEventDispatcher;
+    private final SocketBudget socketBudget;
+    private final Flow.Publisher<Collection<URI>> routerUriPublisher;
+    private volatile Collection<URI> publishedRouterUris;
+    private volatile boolean isPublisherActive;
+    private volatile Flow.Subscription routerUriSubscription;
+    private final AtomicBoolean isPublishedUpdateScheduled = new AtomicBoolean(false);
+    private final RouterSnapshot routerSnapshot;
+    private final int readySocketsPerRouter;
+    private volatile CompletableFuture<Void> readiness;
+    private final TargetWarmUp warmUp;
+    private volatile Duration warmUpTime;
+    private final Supplier<TargetConnectionStats> targetConnectionStats;
+
+    /**
+     * How long to wait after the router URI publisher publishes a change before updating the routers, so that
+     * a series of rapid changes results in a single update.
+     */
+    private static final long PUBLISHED_UPDATE_DEBOUNCE_MILLIS = 100;
 
     CrankerConnectorImpl(String connectorId, RouterRegistrationImpl.Factory routerConFactory,
                          Supplier<Collection<URI>> crankerUriSupplier, String componentName,
                          RouterEventListener routerEventListener,
                          int routerUpdateInterval, TimeUnit routerUpdateTimeUnit,
-                         int routerDeregisterTimeout, TimeUnit routerDeregisterTimeUnit, HttpClient httpClient) {
+                         int routerDeregisterTimeout, TimeUnit routerDeregisterTimeUnit, HttpClient httpClient,
+                         EventDispatcher eventDispatcher, SocketBudget socketBudget,
+                         Flow.Publisher<Collection<URI>> routerUriPublisher, RouterSnapshot routerSnapshot,
+                         int readySocketsPerRouter, TargetWarmUp warmUp, Supplier<TargetConnectionStats> targetConnectionStats) {
         this.componentName = componentName;
         this.connectorId = connectorId;
         this.routerConFactory = routerConFactory;
@@ -90,11 +195,34 @@ class CrankerConnectorImpl implements CrankerConnector {
         this.routerDeregisterTimeout = routerDeregisterTimeout;
         this.routerDeregisterTimeUnit = routerDeregisterTimeUnit;
         this.httpClient = httpClient;
+        this.eventDispatcher = eventDispatcher;
+        this.socketBudget = socketBudget;
+        this.routerUriPublisher = routerUriPublisher;
+        this.routerSnapshot = routerSnapshot;
+        this.readySocketsPerRouter = readySocketsPerRouter;
+        this.warmUp = warmUp;
+        this.targetConnectionStats = targetConnectionStats;
+    }
+
+    /**
+     * The routers to connect to: the latest published URIs while the publisher is active, otherwise the supplier's URIs
+     * @return The router URIs, or null if there is no source of router URIs yet
+     */
+    private Collection<URI> currentRouterUris() {
+        Collection<URI> published = this.publishedRouterUris;
+        if (published != null && (isPublisherActive || crankerUriSupplier == null)) {
+            return published;
+        }
+        return crankerUriSupplier != null ? crankerUriSupplier.get() : published;
     }
 
     CompletableFuture<Void> updateRoutersAsync() {
+        Collection<URI> newUris = currentRouterUris();
+        return newUris == null ? CompletableFuture.completedFuture(null) : updateRoutersAsync(newUris);
+    }
+
+    CompletableFuture<Void> updateRoutersAsync(Collection<URI> newUris) {
         var before = this.routers;
-        Collection<URI> newUris = crankerUriSupplier.get();
         var toAdd = newUris.stream()
             .filter(uri -> before.stream().noneMatch(existing -> sameRouter(uri, existing.registrationUri())))
             .map(uri -> uri.resolve("/register/?connectorInstanceID=" + urlEncode(connectorId) + "&componentName=" + urlEncode(componentName)))
@@ -107,9 +235,12 @@ class CrankerConnectorImpl implements CrankerConnector {
             var result = new ArrayList<>(toLeave);
             result.addAll(toAdd);
             this.routers = result;
+            saveSnapshot(newUris);
+            allocateSocketBudget();
             for (RouterRegistrationImpl newOne : toAdd) {
                 newOne.start();
             }
+            completeReadinessWhenConnected();
 
             if (routerEventListener != null) {
                 routerEventListener.onRegistrationChanged(
@@ -129,34 +260,216 @@ class CrankerConnectorImpl implements CrankerConnector {
         return CompletableFuture.completedFuture(null);
     }
 
+    private void saveSnapshot(Collection<URI> routerUris) {
+        if (routerSnapshot != null) {
+            try {
+                routerSnapshot.write(routerUris);
+            } catch (IOException ignored) {
+                // the previous snapshot is left in place, and writing is tried again on the next change
+            }
+        }
+    }
+
+    /**
+     * Divides the socket budget between the current routers, based on their recent traffic, latency and errors.
+     */
+    void allocateSocketBudget() {
+        if (socketBudget == null) {
+            return;
+        }
+        List<RouterRegistrationImpl> current = this.routers;
+        double[] weights = socketBudget.weights(current.stream().map(RouterRegistrationImpl::load).collect(toList()), System.nanoTime());
+        int[] sizes = socketBudget.allocate(weights);
+        for (int i = 0; i < sizes.length; i++) {
+            current.get(i).allocateWindowSize(sizes[i], weights[i]);
+        }
+    }
+
     private static boolean sameRouter(URI registrationUrl1, URI registrationUrl2) {
         return registrationUrl1.getScheme().equals(registrationUrl2.getScheme()) && registrationUrl1.getAuthority().equals(registrationUrl2.getAuthority());
     }
 
+    /**
+     * Completes the future returned by {@link #startAsync()} once every current router has enough connected sockets.
+     */
+    private void completeReadinessWhenConnected() {
+        CompletableFuture<Void> ready = this.readiness;
+        List<RouterRegistrationImpl> current = this.routers;
+        if (ready == null || ready.isDone() || current.isEmpty()) {
+            return;
+        }
+        CompletableFuture.allOf(current.stream().map(router -> router.whenConnected(readySocketsPerRouter)).toArray(CompletableFuture[]::new))
+            .thenRun(() -> ready.complete(null));
+    }
+
+    /**
+     * Uses the router update executor of a {@link CrankerConnectorGroup} rather than creating one on start. The
+     * shared executor is not shut down when this connector stops; only this connector's tasks are cancelled.
+     * @param executor the executor that router updates are run on
+     */
+    void useSharedRouterUpdateExecutor(ScheduledExecutorService executor) {
+        this.sharedRouterUpdateExecutor = executor;
+    }
+
+    /**
+     * Uses the listener dispatcher of a {@link CrankerConnectorGroup}, which the group starts and stops, if this
+     * connector does not have its own.
+     * @param eventDispatcher the group's dispatcher, or null if it has none
+     */
+    void useSharedEventDispatcher(EventDispatcher eventDispatcher) {
+        this.sharedEventDispatcher = eventDispatcher;
+    }
+
+    private void startResources() {
+        if (sharedRouterUpdateExecutor != null) {
+            routerUpdateExecutor = sharedRouterUpdateExecutor;
+        } else {
+            String threadName = "routerUpdateExecutor-" + connectorId();
+            routerUpdateExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> new Thread(runnable, threadName));
+        }
+        if (eventDispatcher != null && eventDispatcher != sharedEventDispatcher) {
+            eventDispatcher.start();
+        }
+        routerConFactory.start();
+        if (routerUriPublisher != null) {
+            isPublisherActive = true;
+            routerUriPublisher.subscribe(new RouterUriSubscriber());
+        }
+    }
+
+    /**
+     * Warms up the target connections and request pipeline, before any routers are registered with.
+     */
+    private void warmUpMaybe() {
+        if (warmUp != null) {
+            warmUpTime = warmUp.run(routerConFactory.executor(), routerConFactory.streamExecutor());
+        }
+    }
+
+    private void scheduleRouterUpdates() {
+        scheduledUpdates.add(routerUpdateExecutor.scheduleWithFixedDelay(this::updateRouters, routerUpdateInterval, routerUpdateInterval, routerUpdateTimeUnit));
+        if (socketBudget != null) {
+            scheduledUpdates.add(routerUpdateExecutor.scheduleWithFixedDelay(this::allocateSocketBudget, 1, 1, TimeUnit.SECONDS));
+        }
+    }
+
     @Override
     public void start() {
-        String threadName = "routerUpdateExecutor-" + connectorId();
-        routerUpdateExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> new Thread(runnable, threadName));
-        routerConFactory.start();
-        updateRouters();
-        for (RouterRegistrationImpl registration : routers) {
-            registration.start();
+        startResources();
+        warmUpMaybe();
+        List<URI> snapshotUris = routerSnapshot == null ? Collections.emptyList() : routerSnapshot.read();
+        // the routers are only ever changed on the router update thread, as published router URIs can schedule an
+        // update there as soon as the publisher is subscribed to
+        if (snapshotUris.isEmpty()) {
+            runOnRouterUpdateThread(this::updateRouters);
+        } else {
+            // connect to the last known routers straight away, and reconcile with the live router URIs in the background
+            runOnRouterUpdateThread(() -> updateRoutersAsync(snapshotUris));
+            routerUpdateExecutor.execute(this::updateRouters);
+        }
+        scheduleRouterUpdates();
+    }
+
+    /**
+     * Runs a change to the routers on the router update thread and waits for it, so that it cannot run at the same
+     * time as a scheduled or published update
+     */
+    private void runOnRouterUpdateThread(Runnable update) {
+        try {
+            routerUpdateExecutor.submit(update).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            if (routerEventListener != null) {
+                routerEventListener.onRouterDnsLookupError(e.getCause());
+            }
+        }
+    }
+
+    @Override
+    public CompletableFuture<Void> startAsync() {
+        CompletableFuture<Void> ready = new CompletableFuture<>();
+        this.readiness = ready;
+        startResources();
+        routerUpdateExecutor.execute(() -> {
+            warmUpMaybe();
+            List<URI> snapshotUris = routerSnapshot == null ? Collections.emptyList() : routerSnapshot.read();
+            if (!snapshotUris.isEmpty()) {
+                updateRoutersAsync(snapshotUris);
+            }
+            updateRouters();
+            completeReadinessWhenConnected();
+        });
+        scheduleRouterUpdates();
+        return ready;
+    }
+
+    /**
+     * Receives router URIs from the publisher, updating the routers shortly after each change. If the publisher
+     * completes or fails, the connector goes back to polling the router URI supplier.
+     */
+    private class RouterUriSubscriber implements Flow.Subscriber<Collection<URI>> {
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            routerUriSubscription = subscription;
+            subscription.request(Long.MAX_VALUE);
+        }
+
+        @Override
+        public void onNext(Collection<URI> uris) {
+            publishedRouterUris = List.copyOf(uris);
+            ScheduledExecutorService exec = routerUpdateExecutor;
+            if (exec != null && isPublishedUpdateScheduled.compareAndSet(false, true)) {
+                try {
+                    exec.schedule(() -> {
+                        isPublishedUpdateScheduled.set(false);
+                        updateRouters();
+                    }, PUBLISHED_UPDATE_DEBOUNCE_MILLIS, TimeUnit.MILLISECONDS);
+                } catch (RejectedExecutionException e) {
+                    isPublishedUpdateScheduled.set(false);
+                }
+            }
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            isPublisherActive = false;
+            if (routerEventListener != null) {
+                routerEventListener.onRouterDnsLookupError(throwable);
+            }
+        }
+
+        @Override
+        public void onComplete() {
+            isPublisherActive = false;
         }
-        routerUpdateExecutor.scheduleWithFixedDelay(this::updateRouters, routerUpdateInterval, routerUpdateInterval, routerUpdateTimeUnit);
     }
 
     void updateRouters() {
         try {
-            updateRoutersAsync().get(routerUpdateInterval, routerUpdateTimeUnit);
-        } catch (Throwable e) {
-            if (!(e instanceof InterruptedException)) {
-                if (routerEventListener != null) {
-                    routerEventListener.onRouterDnsLookupError(e);
+            // removed routers deregister in the background rather than holding up the router update thread, which
+            // the connectors of a group share
+            updateRoutersAsync().whenComplete((result, error) -> {
+                if (error != null && routerEventListener != null) {
+                    routerEventListener.onRouterDnsLookupError(error);
                 }
+            });
+        } catch (Throwable e) {
+            if (routerEventListener != null) {
+                routerEventListener.onRouterDnsLookupError(e);
             }
         }
     }
 
+    @Override
+    public CompletableFuture<Boolean> stopAsync(long timeout, TimeUnit timeUnit) {
+        try {
+            return doStop(Long.valueOf(timeout).intValue(), timeUnit).handle((result, error) -> error == null);
+        } catch (IllegalStateException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
     @Override
     public boolean stop(long timeout, TimeUnit unit) {
         try {
@@ -174,17 +487,52 @@ class CrankerConnectorImpl implements CrankerConnector {
 
         ScheduledExecutorService exec = this.routerUpdateExecutor;
         this.routerUpdateExecutor = null;
-        try {
-            shutdown(exec, timeout, timeUnit).get();
-        } catch (Throwable ignore) {
+        CompletableFuture<Void> ready = this.readiness;
+        if (ready != null) {
+            ready.cancel(false);
         }
-
+        Flow.Subscription subscription = this.routerUriSubscription;
+        if (subscription != null) {
+            isPublisherActive = false;
+            this.routerUriSubscription = null;
+            subscription.cancel();
+        }
+        // the routers stay visible from routers() while they are stopping, so that their progress can be seen
         List<RouterRegistrationImpl> routers = new ArrayList<>(this.routers);
-        this.routers.clear();
+        for (ScheduledFuture<?> scheduledUpdate : scheduledUpdates) {
+            scheduledUpdate.cancel(false);
+        }
+        scheduledUpdates.clear();
+        CompletableFuture<Void> updatesStopped = exec == sharedRouterUpdateExecutor
+            ? CompletableFuture.completedFuture(null) : shutdown(exec, timeout, timeUnit);
 
-        return CompletableFuture
-            .allOf(routers.stream().map(item -> item.stop(timeout, timeUnit)).toArray(CompletableFuture[]::new))
-            .whenComplete((result, error) -> routerConFactory.stop());
+        return updatesStopped
+            .handle((result, error) -> null)
+            .thenCompose(ignored -> CompletableFuture
+                .allOf(routers.stream().map(item -> item.stop(timeout, timeUnit)).toArray(CompletableFuture[]::new)))
+            .whenComplete((result, error) -> {
+                this.routers = Collections.emptyList();
+                routerConFactory.stop();
+                closeMaybe(crankerUriSupplier);
+                if (eventDispatcher != null && eventDispatcher != sharedEventDispatcher) {
+                    eventDispatcher.stop();
+                }
+            });
+    }
+
+    /**
+     * Closes a router URI supplier that holds resources, such as the threads of
+     * {@link RegistrationUriSuppliers.AsyncDnsLookupSupplier}
+     * @param supplier the supplier, which may be null
+     */
+    static void closeMaybe(Supplier<Collection<URI>> supplier) {
+        if (supplier instanceof AutoCloseable) {
+            try {
+                ((AutoCloseable) supplier).close();
+            } catch (Exception ignored) {
+                // the connector is stopping anyway
+            }
+        }
     }
 
     static CompletableFuture<Void> shutdown(ExecutorService executorService, int timeout, TimeUnit timeUnit) {
@@ -224,4 +572,29 @@ class CrankerConnectorImpl implements CrankerConnector {
     public HttpClient httpClient() {
         return httpClient;
     }
+
+    @Override
+    public Duration warmUpTime() {
+        return warmUpTime;
+    }
+
+    @Override
+    public TargetConnectionStats targetConnectionStats() {
+        return targetConnectionStats.get();
+    }
+
+    @Override
+    public boolean isTargetAvailable() {
+        return routerConFactory.isTargetAvailable();
+    }
+
+    @Override
+    public TargetUriCacheStats targetUriCacheStats() {
+        return routerConFactory.targetUriCacheStats();
+    }
+
+    @Override
+    public long droppedListenerEvents() {
+        return eventDispatcher == null ? 0 : eventDispatcher.droppedEvents();
+    }
 }
@@ -2,9 +2,16 @@ package com.hsbc.cranker.connector;
 
 import java.net.URI;
 import java.net.http.HttpClient;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Flow;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Supplier;
 
@@ -33,16 +40,59 @@ public class CrankerConnectorBuilder {
     private final static List<String> SUPPORTED_CRANKER_PROTOCOLS = List.of(CRANKER_PROTOCOL_3, CRANKER_PROTOCOL_1);
 
     private Supplier<Collection<URI>> crankerUris;
+    private Flow.Publisher<Collection<URI>> routerUriPublisher;
+    private Path routerSnapshotFile;
     private String domain = "*";
     private String route;
     private URI target;
+    private List<URI> targets;
+    private final Map<String, URI> targetRoutes = new LinkedHashMap<>();
+    private CrankerHandler targetHandler;
+    private TargetTransport targetTransport;
     private int slidingWindowSize = 2;
+    private int readySocketsPerRouter = 1;
+    private String warmUpPath;
+    private int warmUpConnections;
+    private int warmUpRequests;
+    private Duration warmUpTimeout;
+    private int socketBudget = 0;
+    private double connectionsPerSecond = 0;
+    private int maxConcurrentHandshakes = 0;
+    private int minAdaptiveWindowSize = 0;
+    private int maxAdaptiveWindowSize = 0;
+    private int maxStreamsPerSocket = 0;
+    private long maxBytesInFlightPerSocket = 0;
+    private int maxScaledSockets = 0;
+    private int maxHandshakesAhead = 0;
+    private int streamWorkerThreads = 0;
+    private boolean useVirtualThreads = false;
     private String componentName = "cranker-connector";
     private HttpClient client;
+    private int httpClientShards = 1;
+    private int targetHttpClientShards = 0;
+    private HttpClient.Version targetHttpVersion;
+    private int maxTargetConnections = 0;
+    private int maxStreamsPerTargetConnection = 1;
+    private double circuitFailureRateThreshold = 0;
+    private Duration circuitSlowResponseThreshold;
+    private int circuitMinimumRequests;
+    private Duration circuitWindow;
+    private Duration circuitOpenDuration;
+    private String healthCheckPath;
+    private Duration healthCheckInterval;
+    private Duration healthCheckTimeout;
+    private Duration requestDeadline;
+    private final Map<String, Duration> prefixRequestDeadlines = new LinkedHashMap<>();
+    private String requestDeadlineHeader;
+    private int targetUriCacheSize = 0;
     private final String connectorId = UUID.randomUUID().toString();
     private RouterEventListener routerEventListener;
     private ProxyEventListener proxyEventListener;
     private RegistrationEventListener registrationEventListener;
+    private int listenerBufferSize = 0;
+    private ListenerOverflowPolicy listenerOverflowPolicy = ListenerOverflowPolicy.DROP;
+    private long listenerBlockTimeout = 0;
+    private TimeUnit listenerBlockTimeUnit = TimeUnit.MILLISECONDS;
     private int routerUpdateInterval = 1;
     private TimeUnit routerUpdateTimeUnit = TimeUnit.MINUTES;
     private int routerDeregisterTimeout = 1;
@@ -62,6 +112,42 @@ public class CrankerConnectorBuilder {
         return this;
     }
 
+    /**
+     * <p>Specifies a source that pushes the router URIs to register with whenever they change, for example from a
+     * service registry.</p>
+     * <p>Each collection published is the full set of routers to connect to. The connector updates its routers
+     * shortly after a change is published, with a series of rapid changes resulting in a single update, rather
+     * than waiting for the next {@link #withRouterUpdateInterval(int, TimeUnit)} poll.</p>
+     * <p>This can be used with or without {@link #withRouterUris(Supplier)}. While the publisher is active, the latest
+     * published URIs are used. If the publisher completes or fails, the connector goes back to polling the supplier
+     * at the router update interval (or keeps using the last published URIs if there is no supplier). A publisher
+     * failure is reported to {@link RouterEventListener#onRouterDnsLookupError(Throwable)}.</p>
+     *
+     * @param publisher A publisher of router websocket URIs to connect to. Note that no path is required.
+     * @return This builder
+     */
+    public CrankerConnectorBuilder withRouterUriPublisher(Flow.Publisher<Collection<URI>> publisher) {
+        this.routerUriPublisher = publisher;
+        return this;
+    }
+
+    /**
+     * <p>Optionally saves the router URIs to a file whenever they change, and uses them when the connector starts.</p>
+     * <p>Normally {@link CrankerConnector#start()} waits for the router URIs (for example a DNS lookup) before
+     * connecting to any routers, so if DNS or discovery is slow or unavailable the connector cannot serve requests.
+     * With a snapshot file, the connector connects to the routers saved in the file straight away, and then updates
+     * its routers in the background once the router URIs are available.</p>
+     * <p>The file is replaced atomically, so it is never partially written. If it does not exist or cannot be read,
+     * the connector starts as if there were no snapshot file.</p>
+     *
+     * @param file the file to save the router URIs to, which is created if needed
+     * @return This builder
+     */
+    public CrankerConnectorBuilder withRouterSnapshotFile(Path file) {
+        this.routerSnapshotFile = file;
+        return this;
+    }
+
     /**
      * <p>Registers all A-records associated with the given URIs and uses those to connect to the cranker routers. This
      * DNS lookup happens periodically, so if the DNS is changed then the connected routers will auto-update.</p>
@@ -74,6 +160,20 @@ public class CrankerConnectorBuilder {
         return withRouterUris(RegistrationUriSuppliers.dnsLookup(uris));
     }
 
+    /**
+     * <p>Like {@link #withRouterLookupByDNS(URI...)} but the hostnames are resolved in parallel on background threads,
+     * the results are cached for the given time to live, and the last good results are used if a lookup fails.</p>
+     * <p>This is just a shortcut for <code>withRouterUris(RegistrationUriSuppliers.asyncDnsLookup(ttl, lookupTimeout, uris))</code></p>
+     *
+     * @param ttl How long to use the results of a lookup before looking the hostname up again
+     * @param lookupTimeout The maximum time to wait for lookups each time the routers are updated
+     * @param uris The URIs to perform a DNS lookup on, and then connect to. Example: <code>URI.create("wss://router.example.org");</code>
+     * @return This builder
+     */
+    public CrankerConnectorBuilder withRouterLookupByAsyncDNS(Duration ttl, Duration lookupTimeout, URI... uris) {
+        return withRouterUris(RegistrationUriSuppliers.asyncDnsLookup(ttl, lookupTimeout, uris));
+    }
+
     /**
      * The interval for updating routers, by evaluating what supplied in {{@link #withRouterUris(Supplier)}}
      * or {{@link #withRouterLookupByDNS(URI...)}}. If the routers updated, it will auto register to the new added routers
@@ -142,13 +242,113 @@ public class CrankerConnectorBuilder {
 
     /**
      * Specifies the web server that calls should be proxied to
+     * <p>For a web server listening on a Unix domain socket, such as a sidecar, use a <code>unix:</code> URI with
+     * the path of the socket file, for example <code>unix:/var/run/app.sock</code>. Requests are then sent as
+     * HTTP/1.1 over the socket, with connections kept open for reuse, rather than with the HTTP client. Unix domain
+     * sockets require JDK 16 or later.</p>
      *
      * @param target The root URI of the web server to send requests to
      * @return This builder
      */
     public CrankerConnectorBuilder withTarget(URI target) {
         if (target == null) throw new IllegalArgumentException("Target cannot be null");
+        if (Http1TargetTransport.isUnixDomainSocket(target)) {
+            Http1TargetTransport.unixSocketPath(target);
+        }
         this.target = target;
+        this.targets = null;
+        this.targetHandler = null;
+        return this;
+    }
+
+    /**
+     * Specifies several instances of the web server that calls should be proxied to, such as one worker process
+     * per core group of a host, so that a single connector can keep them all busy.
+     * <p>Each request is sent to one of the targets, chosen by comparing two targets picked at random and using the
+     * one with fewer outstanding requests, weighted by how quickly each has been responding. This spreads the load
+     * evenly and moves it away from a target that slows down or fails. Requests are sent to the path of the request
+     * on the chosen target, so the targets must all have the same path. Any of the targets may be <code>unix:</code>
+     * URIs (see {@link #withTarget(URI)}).</p>
+     * <p>A connection limit set with {@link #withTargetConnectionLimit(int, int)} applies to each target.
+     * This cannot be used with {@link #withTargetTransport(TargetTransport)}.</p>
+     *
+     * @param targets The root URIs of the web servers to send requests to
+     * @return This builder
+     */
+    public CrankerConnectorBuilder withTargets(Collection<URI> targets) {
+        if (targets == null || targets.isEmpty()) throw new IllegalArgumentException("At least one target must be specified");
+        String path = null;
+        for (URI target : targets) {
+            withTarget(target);
+            // the path of a unix: URI is the socket file rather than a path on the target
+            if (!Http1TargetTransport.isUnixDomainSocket(target)) {
+                String targetPath = target.getRawPath() == null || target.getRawPath().isEmpty() ? "/" : target.getRawPath();
+                if (path == null) {
+                    path = targetPath;
+                } else if (!path.equals(targetPath)) {
+                    throw new IllegalArgumentException("The targets must all have the same path, but got " + targets);
+                }
+            }
+        }
+        this.targets = List.copyOf(targets);
+        this.target = this.targets.get(0);
+        return this;
+    }
+
+    /**
+     * Optionally sends requests whose path starts with the given prefix to a different target, so that a service
+     * made up of several processes (for example an API, a static asset server and a websocket helper) can be served
+     * by a single connector over the same router sockets under one route.
+     * <p>Prefixes match whole path segments, so <code>/api</code> matches <code>/api</code> and
+     * <code>/api/users</code> but not <code>/apis</code>. When several prefixes match, the longest one is used.
+     * Requests matching no prefix go to the target set with {@link #withTarget(URI)} or {@link #withTargets(Collection)}.
+     * The request path is sent to the target unchanged. The target may be a <code>unix:</code> URI, and any limit
+     * set with {@link #withTargetConnectionLimit(int, int)} applies to each target separately.</p>
+     *
+     * @param pathPrefix The start of the request paths, such as <code>/api</code>
+     * @param target The root URI of the web server to send those requests to
+     * @return This builder
+     */
+    public CrankerConnectorBuilder withTargetRoute(String pathPrefix, URI target) {
+        if (pathPrefix == null || !pathPrefix.startsWith("/")) throw new IllegalArgumentException("The path prefix must start with /");
+        if (target == null) throw new IllegalArgumentException("Target cannot be null");
+        if (Http1TargetTransport.isUnixDomainSocket(target)) {
+            Http1TargetTransport.unixSocketPath(target);
+        }
+        this.targetRoutes.put(pathPrefix, target);
+        return this;
+    }
+
+    /**
+     * Specifies a handler in the same JVM that requests are passed to, instead of proxying them to a web server.
+     * <p>This avoids the cost of encoding each request as HTTP, sending it over a loopback connection and parsing
+     * it again, when the target is an application running in the same process as the connector.
+     * See {@link CrankerHandler} for details.</p>
+     *
+     * @param handler The handler of the requests
+     * @return This builder
+     */
+    public CrankerConnectorBuilder withTarget(CrankerHandler handler) {
+        if (handler == null) throw new IllegalArgumentException("Target cannot be null");
+        this.target = TargetTransport.LOCAL_TARGET_URI;
+        this.targets = null;
+        this.targetHandler = handler;
+        return this;
+    }
+
+    /**
+     * Optionally sets how requests are sent to the target web server.
+     * <p>By default, requests are sent with the JDK HTTP client (see {@link #withHttpClient(HttpClient)} and
+     * {@link #withTargetHttpClientShards(int)}). {@link TargetTransport#http1(URI, int)} creates a lighter HTTP/1.1
+     * client for plain HTTP targets, or a custom implementation can be given.</p>
+     * <p>The URIs of the requests given to the transport are resolved against the target set with
+     * {@link #withTarget(URI)}. This cannot be used with a handler, a Unix domain socket target or several targets.</p>
+     *
+     * @param targetTransport The transport to use, or <code>null</code> to use the default
+     * @return This builder
+     */
+    public CrankerConnectorBuilder withTargetTransport(TargetTransport targetTransport) {
+        this.targetTransport = targetTransport;
         return this;
     }
 
@@ -163,6 +363,195 @@ public class CrankerConnectorBuilder {
         return this;
     }
 
+    /**
+     * Optionally limits how quickly this connector opens connections to the routers.
+     * <p>By default, when a router restarts, the connector reconnects all of its idle connections to it at once,
+     * and when many connectors do this at the same time the router (and the connectors) see a spike of CPU use from
+     * the TLS handshakes. With this option, connections are opened at up to <code>connectionsPerSecond</code> per
+     * second over all routers, with at most <code>maxConcurrentHandshakes</code> in progress at once.</p>
+     * <p>Connections that replace a <code>cranker_1.0</code> connection that was used by a request are not limited,
+     * so that the limit does not reduce throughput. The time taken to restore the connections to a router is
+     * available from {@link RouterRegistration#lastCapacityRestoreTime()} and
+     * {@link RouterEventListener#onCapacityRestored(RouterRegistration, java.time.Duration)}.</p>
+     *
+     * @param connectionsPerSecond the maximum average number of connections opened per second
+     * @param maxConcurrentHandshakes the maximum number of connections being opened at the same time
+     * @return This builder
+     */
+    public CrankerConnectorBuilder withConnectionRateLimit(double connectionsPerSecond, int maxConcurrentHandshakes) {
+        if (connectionsPerSecond <= 0) throw new IllegalArgumentException("connectionsPerSecond must be greater than 0");
+        if (maxConcurrentHandshakes < 1) throw new IllegalArgumentException("maxConcurrentHandshakes must be at least 1");
+        this.connectionsPerSecond = connectionsPerSecond;
+        this.maxConcurrentHandshakes = maxConcurrentHandshakes;
+        return this;
+    }
+
+    /**
+     * Optionally warms up the connector before it registers with any routers, so that the first requests after
+     * starting are not slow.
+     * <p>When the connector starts, <code>connections</code> requests are sent to the health path of the target at
+     * the same time, which leaves that many keep-alive connections (with completed TLS handshakes) ready to use.
+     * Then <code>requests</code> synthetic requests to the health path are passed through the connector's request
+     * and response handling, without a router, so that the code is compiled by the JIT before real requests arrive.</p>
+     * <p>The warm up is best effort: errors are ignored, and routers are registered with once it is complete or
+     * the timeout is reached, whichever is first. The time taken is available from {@link CrankerConnector#warmUpTime()}.</p>
+     *
+     * @param healthPath the path of a cheap GET endpoint on the target, for example <code>/health</code>
+     * @param connections the number of connections to the target to open
+     * @param requests the number of synthetic requests to send through the connector
+     * @param timeout the maximum time to spend warming up
+     * @return This builder
+     */
+    public CrankerConnectorBuilder withWarmUp(String healthPath, int connections, int requests, Duration timeout) {
+        if (healthPath == null || !healthPath.startsWith("/")) throw new IllegalArgumentException("healthPath must start with '/'");
+        if (connections < 1) throw new IllegalArgumentException("connections must be at least 1");
+        if (requests < 0) throw new IllegalArgumentException("requests cannot be negative");
+        if (timeout == null || timeout.isNegative()) throw new IllegalArgumentException("timeout must not be negative");
+        this.warmUpPath = healthPath;
+        this.warmUpConnections = connections;
+        this.warmUpRequests = requests;
+        this.warmUpTimeout = timeout;
+        return this;
+    }
+
+    /**
+     * Optionally sets how many connections to each router must be open before the future returned by
+     * {@link CrankerConnector#startAsync()} completes. The default is 1.
+     * <p>This should not be more than the sliding window size, as the connector would otherwise never open
+     * enough connections for the future to complete.</p>
+     *
+     * @param sockets the number of connected sockets each router needs for the connector to be ready
+     * @return This builder
+     */
+    public CrankerConnectorBuilder withReadySocketsPerRouter(int sockets) {
+        if (sockets < 1) throw new IllegalArgumentException("sockets must be at least 1");
+        this.readySocketsPerRouter = sockets;
+        return this;
+    }
+
+    /**
+     * Optionally divides a total number of connections between the routers, instead of connecting
+     * {@link #withSlidingWindowSize(int)} connections to every router.
+     * <p>Each router is given a share of the budget in proportion to the share of requests it has recently sent to
+     * this connector. The share is lowered for routers that take much longer to connect to than the nearest router,
+     * such as routers in another region, and for routers where connections often fail. Every router gets at least
+     * one connection, even if that means the budget is exceeded.</p>
+     * <p>The allocation is recalculated every second, and the current allocation of each router is available from
+     * {@link RouterRegistration#expectedWindowSize()}.</p>
+     *
+     * @param totalSockets the total number of connections to share between the routers
+     * @return This builder
+     */
+    public CrankerConnectorBuilder withSocketBudget(int totalSockets) {
+        if (totalSockets < 1) throw new IllegalArgumentException("totalSockets must be at least 1");
+        this.socketBudget = totalSockets;
+        return this;
+    }
+
+    /**
+     * Optionally lets the connector choose the number of idle connections per router for <code>cranker_1.0</code>.
+     * <p>With cranker_1.0 each request uses up a connection, so a burst of requests larger than the sliding
+     * window has to wait for new connections, while a quiet service keeps more connections than it needs. With an
+     * adaptive window, the number of idle connections to each router is based on how often connections are
+     * being used and how long new connections take to open. It is also lowered when the target server's responses
+     * become much slower than usual, so that fewer requests are accepted while the target is struggling.</p>
+     * <p>The current window for each router is available from {@link RouterRegistration#expectedWindowSize()}.
+     * Routers using <code>cranker_3.0</code> still use {@link #withSlidingWindowSize(int)}.</p>
+     *
+     * @param minWindowSize the minimum number of idle connections to each router
+     * @param maxWindowSize the maximum number of idle connections to each router
+     * @return This builder
+     */
+    public CrankerConnectorBuilder withAdaptiveSlidingWindow(int minWindowSize, int maxWindowSize) {
+        if (minWindowSize < 1) throw new IllegalArgumentException("minWindowSize must be at least 1");
+        if (maxWindowSize < minWindowSize) throw new IllegalArgumentException("maxWindowSize cannot be less than minWindowSize");
+        this.minAdaptiveWindowSize = minWindowSize;
+        this.maxAdaptiveWindowSize = maxWindowSize;
+        return this;
+    }
+
+    /**
+     * Optionally lets the number of <code>cranker_3.0</code> connections to each router follow the load.
+     * <p>With cranker_3.0 many requests are multiplexed over each connection, so the sliding window size
+     * is a number of connections rather than a number of concurrent requests. With this option, the sliding window
+     * size is the minimum number of connections to each router, and another connection is opened when the
+     * connections are carrying more than <code>maxStreamsPerSocket</code> requests or more than
+     * <code>maxBytesInFlightPerSocket</code> unacknowledged response bytes each on average, up to
+     * <code>maxSockets</code>. When the load drops, surplus connections are closed once they have no requests
+     * in progress.</p>
+     * <p>The current number of connections for each router is available from
+     * {@link RouterRegistration#expectedWindowSize()}. Routers using <code>cranker_1.0</code> are not affected.</p>
+     *
+     * @param maxStreamsPerSocket the average number of concurrent requests per connection above which another connection is opened
+     * @param maxBytesInFlightPerSocket the average number of unacknowledged response bytes per connection above which another connection is opened
+     * @param maxSockets the maximum number of connections to each router
+     * @return This builder
+     */
+    public CrankerConnectorBuilder withStreamAwareSocketScaling(int maxStreamsPerSocket, long maxBytesInFlightPerSocket, int maxSockets) {
+        if (maxStreamsPerSocket < 1) throw new IllegalArgumentException("maxStreamsPerSocket must be at least 1");
+        if (maxBytesInFlightPerSocket < 1) throw new IllegalArgumentException("maxBytesInFlightPerSocket must be at least 1");
+        if (maxSockets < 1) throw new IllegalArgumentException("maxSockets must be at least 1");
+        this.maxStreamsPerSocket = maxStreamsPerSocket;
+        this.maxBytesInFlightPerSocket = maxBytesInFlightPerSocket;
+        this.maxScaledSockets = maxSockets;
+        return this;
+    }
+
+    /**
+     * Optionally opens <code>cranker_1.0</code> sockets ahead of demand, so that the window stays full of connected
+     * sockets under sustained load.
+     * <p>A <code>cranker_1.0</code> socket carries a single request, so each request starts the handshake of a
+     * replacement socket, and until the handshake completes that socket counts towards the window without being able
+     * to take a request. With this option, the connector measures the rate that sockets are used and the time
+     * handshakes take, and opens that many extra sockets so that handshakes are pipelined ahead of the requests.
+     * The extra sockets are closed again when the request rate falls.</p>
+     * <p>This has no effect on <code>cranker_3.0</code> sockets, which are not used up by requests.</p>
+     *
+     * @param maxHandshakesAhead the maximum number of extra sockets per router, or <code>0</code> (the default)
+     *                           to only open sockets up to the window size
+     * @return This builder
+     */
+    public CrankerConnectorBuilder withHandshakesAhead(int maxHandshakesAhead) {
+        if (maxHandshakesAhead < 0) throw new IllegalArgumentException("maxHandshakesAhead cannot be negative");
+        this.maxHandshakesAhead = maxHandshakesAhead;
+        return this;
+    }
+
+    /**
+     * Optionally processes the requests of <code>cranker_3.0</code> sockets on a pool of worker threads.
+     * <p>By default, all the streams multiplexed over a socket are handled on the thread that reads the socket,
+     * which includes parsing the request headers, creating the request to the target and passing request body
+     * data to the target. When a socket carries many concurrent streams, this option allows that work to be
+     * spread over several cores. The frames of a single stream are always processed in order.</p>
+     * <p>This has no effect on <code>cranker_1.0</code> sockets, which only ever carry one request.</p>
+     *
+     * @param threads the number of worker threads shared by all sockets of this connector, or <code>0</code>
+     *                (the default) to process streams on the socket thread
+     * @return This builder
+     */
+    public CrankerConnectorBuilder withStreamWorkerThreads(int threads) {
+        if (threads < 0) throw new IllegalArgumentException("threads cannot be negative");
+        this.streamWorkerThreads = threads;
+        return this;
+    }
+
+    /**
+     * Optionally runs the work of the connector on virtual threads.
+     * <p>When enabled, the requests of each <code>cranker_3.0</code> stream are processed on virtual threads rather
+     * than on the socket thread (see {@link #withStreamWorkerThreads(int)}, which this takes precedence over), and
+     * if no client is set with {@link #withHttpClient(HttpClient)} then the HTTP client created by the connector
+     * uses a virtual thread per task as its executor, so the proxying of request and response bodies also
+     * happens on virtual threads.</p>
+     * <p>Virtual threads require JDK 21 or later, with this library loaded from its (multi-release) JAR file.</p>
+     *
+     * @param useVirtualThreads <code>true</code> to use virtual threads. Default is <code>false</code>.
+     * @return This builder
+     */
+    public CrankerConnectorBuilder withVirtualThreads(boolean useVirtualThreads) {
+        this.useVirtualThreads = useVirtualThreads;
+        return this;
+    }
+
     /**
      * Sets the name of this component so that the router is able to expose in diagnostics the component name of
      * connections that are connected.
@@ -210,6 +599,34 @@ public class CrankerConnectorBuilder {
         return this;
     }
 
+    /**
+     * Optionally calls listener callbacks that are raised on the connector's IO threads from a dedicated thread.
+     * <p>By default, {@link ProxyEventListener#onProxyError(java.net.http.HttpRequest, Throwable)} and
+     * {@link RouterEventListener#onSocketConnectionError(RouterRegistration, Throwable)} are called on the thread
+     * that detects the error, which may be processing the data of many other requests. When this is set, these
+     * events are instead put in a bounded buffer which a dedicated thread calls the listeners from, in order.</p>
+     * <p>Callbacks that may change a request, such as {@link ProxyEventListener#beforeProxyToTarget(ProxyRequest)}
+     * and {@link RegistrationEventListener#beforeRegisterToRouter(RouterRegistrationContext)}, are always
+     * called synchronously.</p>
+     * <p>The number of events dropped due to a full buffer is available from {@link CrankerConnector#droppedListenerEvents()}</p>
+     *
+     * @param bufferSize     the maximum number of events waiting to be dispatched
+     * @param overflowPolicy what to do with an event when the buffer is full
+     * @param blockTimeout   when the policy is {@link ListenerOverflowPolicy#BLOCK}, the maximum time to wait
+     *                       for space in the buffer before dropping the event
+     * @param timeUnit       the unit of the block timeout
+     * @return This builder
+     */
+    public CrankerConnectorBuilder withAsyncListenerDispatch(int bufferSize, ListenerOverflowPolicy overflowPolicy, long blockTimeout, TimeUnit timeUnit) {
+        if (bufferSize < 1) throw new IllegalArgumentException("bufferSize must be at least 1");
+        if (overflowPolicy == null) throw new IllegalArgumentException("overflowPolicy cannot be null");
+        if (timeUnit == null) throw new IllegalArgumentException("timeUnit cannot be null");
+        this.listenerBufferSize = bufferSize;
+        this.listenerOverflowPolicy = overflowPolicy;
+        this.listenerBlockTimeout = blockTimeout;
+        this.listenerBlockTimeUnit = timeUnit;
+        return this;
+    }
 
     /**
      * Optionally sets an HTTP client used. If not set, then a default one will be used.
@@ -223,6 +640,212 @@ public class CrankerConnectorBuilder {
         return this;
     }
 
+    /**
+     * Optionally sets the number of HTTP clients the connector creates for its connections.
+     * <p>A JDK HTTP client performs all its socket IO on a single selector thread, which can become a bottleneck
+     * for a busy connector. With more than one client, the router sockets are spread over the clients, and unless
+     * {@link #withTargetHttpClientShards(int)} is set, so are the requests to the target server.</p>
+     * <p>This cannot be used with {@link #withHttpClient(HttpClient)}.</p>
+     *
+     * @param shards The number of clients to create. Default is 1.
+     * @return This builder
+     */
+    public CrankerConnectorBuilder withHttpClientShards(int shards) {
+        if (shards < 1) throw new IllegalArgumentException("shards must be at least 1");
+        this.httpClientShards = shards;
+        return this;
+    }
+
+    /**
+     * Optionally sets the number of HTTP clients the connector creates for requests to the target server only.
+     * <p>By default, target requests use the same clients as the router sockets (see {@link #withHttpClientShards(int)}).
+     * Setting this to a positive number creates a separate set of clients for target requests, so that the IO of
+     * the target connections and the router sockets is done by different selector threads.</p>
+     * <p>This cannot be used with {@link #withHttpClient(HttpClient)}.</p>
+     *
+     * @param shards The number of clients dedicated to target requests, or <code>0</code> (the default) to share
+     *               the router clients.
+     * @return This builder
+     */
+    public CrankerConnectorBuilder withTargetHttpClientShards(int shards) {
+        if (shards < 0) throw new IllegalArgumentException("shards cannot be negative");
+        this.targetHttpClientShards = shards;
+        return this;
+    }
+
+    /**
+     * Optionally sets the HTTP version used for requests to the target server.
+     * <p>With {@link HttpClient.Version#HTTP_2}, many concurrent requests from the routers are multiplexed as
+     * streams over a few connections to the target, instead of each one needing its own HTTP/1.1 connection.
+     * HTTP/2 is negotiated with ALPN for <code>https</code> targets. For <code>http</code> targets the JDK HTTP
+     * client only supports h2c by upgrading an HTTP/1.1 request, not with prior knowledge, so the target must
+     * accept the <code>Upgrade: h2c</code> header. A target that does not support HTTP/2 is sent HTTP/1.1.</p>
+     * <p>Setting this creates HTTP clients for target requests that are separate from the router clients (see
+     * {@link #withTargetHttpClientShards(int)}), so it cannot be used with {@link #withHttpClient(HttpClient)} or
+     * {@link #withTargetTransport(TargetTransport)}.</p>
+     *
+     * @param version The HTTP version, or <code>null</code> for the default of the HTTP client, which prefers HTTP/2
+     * @return This builder
+     */
+    public CrankerConnectorBuilder withTargetHttpVersion(HttpClient.Version version) {
+        this.targetHttpVersion = version;
+        return this;
+    }
+
+    /**
+     * Optionally caps the number of connections to the target server.
+     * <p>A cranker_3.0 router socket can carry hundreds of concurrent requests, each of which needs a connection
+     * (for HTTP/1.1) or a stream (for HTTP/2, see {@link #withTargetHttpVersion(HttpClient.Version)}) to the target.
+     * With a cap, at most <code>maxConnections * maxStreamsPerConnection</code> requests are sent to the target at
+     * once, and the rest wait, in the order they arrived, until earlier requests complete. This protects targets that
+     * struggle with many connections during bursts, at the cost of queueing in the connector.</p>
+     * <p>For HTTP/1.1 targets <code>maxStreamsPerConnection</code> should be <code>1</code>. The current numbers of
+     * active and queued requests are available from {@link CrankerConnector#targetConnectionStats()}.</p>
+     *
+     * @param maxConnections The maximum number of target connections, or <code>0</code> (the default) for no cap
+     * @param maxStreamsPerConnection The maximum number of concurrent requests on each target connection
+     * @return This builder
+     */
+    public CrankerConnectorBuilder withTargetConnectionLimit(int maxConnections, int maxStreamsPerConnection) {
+        if (maxConnections < 0) throw new IllegalArgumentException("maxConnections cannot be negative");
+        if (maxStreamsPerConnection < 1) throw new IllegalArgumentException("maxStreamsPerConnection must be at least 1");
+        this.maxTargetConnections = maxConnections;
+        this.maxStreamsPerTargetConnection = maxStreamsPerConnection;
+        return this;
+    }
+
+    /**
+     * Optionally stops sending requests to the target while too many of them are failing.
+     * <p>Without this, when the target is down or has hung, each request waits for the HTTP client's connect or
+     * response timeout before the router is told it failed, and the router keeps sending requests to this connector.
+     * With a circuit breaker, the requests of the last <code>window</code> are tracked, where a request fails if it
+     * cannot be sent, gets a <code>502</code>, <code>503</code> or <code>504</code> response, or takes longer than
+     * <code>slowResponseThreshold</code> to respond. Once there have been at least <code>minimumRequests</code>
+     * requests in the window and the proportion that failed reaches <code>failureRateThreshold</code>, the circuit
+     * opens: new requests fail straight away (a cranker_3.0 stream is reset, and a cranker_1.0 request gets an error),
+     * and idle cranker_1.0 sockets are closed and not replaced, so that the router uses other connectors.</p>
+     * <p>After <code>openDuration</code>, a single request is let through to try the target, and the circuit closes
+     * if it succeeds. If {@link #withTargetHealthCheck(String, Duration, Duration)} is set, the health check is used
+     * to decide when to close the circuit instead. Whether the circuit is open is available from
+     * {@link CrankerConnector#isTargetAvailable()}.</p>
+     * <p>With {@link #withTargets(Collection)} or {@link #withTargetRoute(String, URI)}, each target has its own
+     * circuit: requests are sent to the other targets of a pool while one target's circuit is open, and the idle
+     * sockets are only closed once the circuits of all the targets are open.</p>
+     *
+     * @param failureRateThreshold The proportion of failed requests, greater than 0 and at most 1, that opens the circuit
+     * @param slowResponseThreshold Requests that take longer than this to get a response count as failed, or <code>null</code> for no limit
+     * @param minimumRequests The number of requests needed in the window before the circuit can open
+     * @param window How far back requests are counted
+     * @param openDuration How long the circuit stays open before the target is tried again
+     * @return This builder
+     */
+    public CrankerConnectorBuilder withCircuitBreaker(double failureRateThreshold, Duration slowResponseThreshold, int minimumRequests,
+                                                      Duration window, Duration openDuration) {
+        if (!(failureRateThreshold > 0 && failureRateThreshold <= 1)) throw new IllegalArgumentException("failureRateThreshold must be greater than 0 and at most 1");
+        if (slowResponseThreshold != null && (slowResponseThreshold.isNegative() || slowResponseThreshold.isZero())) throw new IllegalArgumentException("slowResponseThreshold must be positive");
+        if (minimumRequests < 1) throw new IllegalArgumentException("minimumRequests must be at least 1");
+        if (window == null || window.isNegative() || window.isZero()) throw new IllegalArgumentException("window must be positive");
+        if (openDuration == null || openDuration.isNegative() || openDuration.isZero()) throw new IllegalArgumentException("openDuration must be positive");
+        this.circuitFailureRateThreshold = failureRateThreshold;
+        this.circuitSlowResponseThreshold = slowResponseThreshold;
+        this.circuitMinimumRequests = minimumRequests;
+        this.circuitWindow = window;
+        this.circuitOpenDuration = openDuration;
+        return this;
+    }
+
+    /**
+     * Optionally checks the health of the target periodically, for use with
+     * {@link #withCircuitBreaker(double, Duration, int, Duration, Duration)}.
+     * <p>A GET request is sent to the health path of each target every <code>interval</code>, and counts as failed if it does not
+     * get a <code>2xx</code> response within <code>timeout</code>. The results are counted with the other requests,
+     * so a target that has hung is found even when there are few requests, and while the circuit is open it closes
+     * as soon as a health check succeeds, rather than trying the target with a client's request.</p>
+     *
+     * @param healthPath the path of a cheap GET endpoint on the target, for example <code>/health</code>
+     * @param interval the time between health checks
+     * @param timeout how long to wait for a health check response
+     * @return This builder
+     */
+    public CrankerConnectorBuilder withTargetHealthCheck(String healthPath, Duration interval, Duration timeout) {
+        if (healthPath == null || !healthPath.startsWith("/")) throw new IllegalArgumentException("healthPath must start with '/'");
+        if (interval == null || interval.toMillis() < 1) throw new IllegalArgumentException("interval must be at least 1 millisecond");
+        if (timeout == null || timeout.toMillis() < 1) throw new IllegalArgumentException("timeout must be at least 1 millisecond");
+        this.healthCheckPath = healthPath;
+        this.healthCheckInterval = interval;
+        this.healthCheckTimeout = timeout;
+        return this;
+    }
+
+    /**
+     * Optionally limits how long each request on this connector's route may take, from when it is received from
+     * the router until its response body has been sent back.
+     * <p>Without a deadline, a request whose client has given up keeps its target request running until the router
+     * resets it, if it ever does. With a deadline, the target request is given the remaining time as its
+     * {@link java.net.http.HttpRequest#timeout()} and in a request header (see {@link #withRequestDeadlineHeader(String)}), and when
+     * the deadline passes the target request and response body are cancelled, and the router is told the request
+     * failed (a cranker_3.0 stream is reset, and a cranker_1.0 socket is closed with an error).</p>
+     *
+     * @param deadline The longest a request may take, or <code>null</code> (the default) for no limit
+     * @return This builder
+     * @see #withRequestDeadline(String, Duration)
+     */
+    public CrankerConnectorBuilder withRequestDeadline(Duration deadline) {
+        if (deadline != null && (deadline.isNegative() || deadline.isZero())) throw new IllegalArgumentException("deadline must be positive");
+        this.requestDeadline = deadline;
+        return this;
+    }
+
+    /**
+     * Optionally sets a different deadline for requests whose paths start with a prefix, in place of the
+     * deadline from {@link #withRequestDeadline(Duration)}. Prefixes match whole path segments, and the longest
+     * matching prefix is used.
+     *
+     * @param pathPrefix A path starting with <code>/</code>, such as <code>/reports</code>
+     * @param deadline The longest a request with that prefix may take
+     * @return This builder
+     */
+    public CrankerConnectorBuilder withRequestDeadline(String pathPrefix, Duration deadline) {
+        if (pathPrefix == null || !pathPrefix.startsWith("/")) throw new IllegalArgumentException("pathPrefix must start with '/'");
+        if (deadline == null || deadline.isNegative() || deadline.isZero()) throw new IllegalArgumentException("deadline must be positive");
+        this.prefixRequestDeadlines.put(pathPrefix, deadline);
+        return this;
+    }
+
+    /**
+     * Optionally lets clients shorten the deadline of their requests with a request header, such as
+     * <code>X-Request-Deadline</code>, holding the number of milliseconds they will wait.
+     * <p>The shorter of the client's deadline and any deadline set with {@link #withRequestDeadline(Duration)} is used,
+     * and the header is replaced by the time left when the request is sent to the target. When this is not set,
+     * clients cannot set deadlines, and the time left is sent to the target in an <code>X-Request-Deadline</code> header.</p>
+     *
+     * @param headerName The name of the header, or <code>null</code> (the default) to ignore deadlines from clients
+     * @return This builder
+     */
+    public CrankerConnectorBuilder withRequestDeadlineHeader(String headerName) {
+        if (headerName != null && (headerName.isBlank() || headerName.contains(":"))) throw new IllegalArgumentException("headerName is not a valid header name");
+        this.requestDeadlineHeader = headerName;
+        return this;
+    }
+
+    /**
+     * Optionally keeps the target URIs of the most recently requested paths, rather than resolving the path
+     * of every request against the target URI.
+     * <p>Resolving a path parses and normalises a new URI, which is a noticeable part of the cost of proxying a
+     * small request. When most requests are to a limited set of paths (including their query strings), a cache
+     * of the most recently used paths avoids most of that work. The hit rate is available from
+     * {@link CrankerConnector#targetUriCacheStats()}, and is low if paths are rarely repeated, for example when
+     * query strings hold unique IDs, in which case the cache only adds work.</p>
+     *
+     * @param maxEntries The most paths to keep, or <code>0</code> (the default) for no cache
+     * @return This builder
+     */
+    public CrankerConnectorBuilder withTargetUriCache(int maxEntries) {
+        if (maxEntries < 0) throw new IllegalArgumentException("maxEntries cannot be negative");
+        this.targetUriCacheSize = maxEntries;
+        return this;
+    }
+
     /**
      * Optionally sets preferred cranker protocol version, which used for cranker protocol negotiation.
      * If not set, then default [&quot;cranker_3.0&quot;, &quot;cranker_1.0&quot;] will be used.
@@ -249,6 +872,9 @@ public class CrankerConnectorBuilder {
 
     /**
      * Creates a new HTTP Client builder that is suitable for use in the connector.
+     * <p>All the clients created with the same <code>trustAll</code> value share an SSL context, and so share
+     * a TLS session cache, which allows reconnections to a router to resume a previous TLS session rather than
+     * doing a full handshake, even when the connection is made from a different client.</p>
      *
      * @param trustAll If true, then any SSL certificate is allowed.
      * @return An HTTP Client builder
@@ -273,17 +899,173 @@ public class CrankerConnectorBuilder {
      * @see #start()
      */
     public CrankerConnector build() {
+        return build(null);
+    }
+
+    /**
+     * Builds a connector that uses the shared resources of a group for anything not set on this builder
+     * @param group the group the connector belongs to, or null for a standalone connector
+     * @return A connector that has not been started
+     */
+    CrankerConnectorImpl build(CrankerConnectorGroupImpl group) {
 
         if (route == null) throw new IllegalStateException("A route must be specified");
         if (target == null) throw new IllegalStateException("A target must be specified");
         if (componentName == null) throw new IllegalStateException("A componentName must be specified");
+        if (useVirtualThreads && !VirtualThreads.isSupported()) throw new IllegalStateException("Virtual threads require JDK 21 or later");
+
+        if (client != null && (httpClientShards > 1 || targetHttpClientShards > 0)) {
+            throw new IllegalStateException("HTTP client shards cannot be used when an HTTP client is specified");
+        }
+        if (targetHttpVersion != null && (client != null || targetTransport != null)) {
+            throw new IllegalStateException("A target HTTP version cannot be used when an HTTP client or target transport is specified");
+        }
 
-        HttpClient clientToUse = client != null ? client : createHttpClient(false).build();
+        boolean usesGroupClients = group != null && client == null && httpClientShards == 1 && targetHttpClientShards == 0;
+        List<ExecutorService> httpClientExecutors = new ArrayList<>();
+        HttpClientPool routerClients = usesGroupClients ? group.httpClients()
+            : client != null ? HttpClientPool.of(client) : HttpClientPool.create(httpClientShards, () -> createDefaultHttpClient(httpClientExecutors));
+        HttpClientPool targetClients = targetHttpClientShards > 0 || targetHttpVersion != null
+            ? HttpClientPool.create(Math.max(1, targetHttpClientShards), () -> createTargetHttpClient(httpClientExecutors)) : routerClients;
+        boolean isUnixTarget = targetHandler == null && Http1TargetTransport.isUnixDomainSocket(target);
+        if (this.targetTransport != null && (targetHandler != null || isUnixTarget || targets != null)) {
+            throw new IllegalStateException("A target transport cannot be used with a handler, Unix domain socket or multiple targets");
+        }
+        if (healthCheckPath != null && circuitFailureRateThreshold == 0) {
+            throw new IllegalStateException("A target health check needs a circuit breaker");
+        }
+        // each target gets its own circuit breaker, so that one failing target of a pool or path prefix does not
+        // stop requests to the others, and warm-up requests bypass them
+        List<TargetCircuitBreaker> circuitBreakers = new ArrayList<>();
+        TargetTransport targetTransport;
+        TargetTransport unguardedTransport;
+        Supplier<TargetConnectionStats> targetConnectionStats;
+        if (targets == null) {
+            TargetConnectionLimiter limiter = new TargetConnectionLimiter(this.targetTransport != null ? this.targetTransport
+                : targetHandler != null ? new HandlerTargetTransport(targetHandler) : targetTransportTo(target, targetClients), maxTargetRequests());
+            unguardedTransport = limiter;
+            targetTransport = circuitFailureRateThreshold > 0
+                ? newCircuitBreaker(limiter, isUnixTarget ? TargetTransport.LOCAL_TARGET_URI : target, circuitBreakers) : limiter;
+            targetConnectionStats = limiter::stats;
+        } else {
+            List<TargetConnectionLimiter> limiters = new ArrayList<>();
+            for (URI uri : targets) {
+                limiters.add(new TargetConnectionLimiter(targetTransportTo(uri, targetClients), maxTargetRequests()));
+            }
+            TargetPool pool = new TargetPool(targets, limiters, circuitBreakersFor(targets, limiters, circuitBreakers));
+            unguardedTransport = pool.withoutCircuitBreakers();
+            targetTransport = pool;
+            targetConnectionStats = pool::stats;
+        }
+        if (!targetRoutes.isEmpty()) {
+            PathPrefixRouter router = new PathPrefixRouter(targetTransport);
+            for (Map.Entry<String, URI> route : targetRoutes.entrySet()) {
+                List<URI> routeTargets = List.of(route.getValue());
+                List<TargetConnectionLimiter> routeLimiters = List.of(new TargetConnectionLimiter(targetTransportTo(route.getValue(), targetClients), maxTargetRequests()));
+                router.add(route.getKey(), new TargetPool(routeTargets, routeLimiters, circuitBreakersFor(routeTargets, routeLimiters, circuitBreakers)));
+            }
+            Supplier<TargetConnectionStats> defaultStats = targetConnectionStats;
+            unguardedTransport = circuitBreakers.isEmpty() ? router : router.withoutCircuitBreakers(unguardedTransport);
+            targetTransport = router;
+            targetConnectionStats = () -> router.stats(defaultStats.get());
+        }
+        URI socketTarget = isUnixTarget ? TargetTransport.LOCAL_TARGET_URI : target;
+        Supplier<Collection<URI>> routerUris = crankerUris == null && group != null ? group.routerUris() : crankerUris;
+        int updateInterval = group != null ? group.routerUpdateInterval() : this.routerUpdateInterval;
+        TimeUnit updateTimeUnit = group != null ? group.routerUpdateTimeUnit() : this.routerUpdateTimeUnit;
         ProxyEventListener proxyEventListenerToUse = proxyEventListener != null ? proxyEventListener : new ProxyEventListener(){};
-        RegistrationEventListener registrationEventListenerToUse = registrationEventListener != null ? registrationEventListener : new RegistrationEventListener(){};
-        var factory = new RouterRegistrationImpl.Factory(preferredProtocols, clientToUse, domain, route, slidingWindowSize, target, routerEventListener, proxyEventListenerToUse, registrationEventListenerToUse);
-        return new CrankerConnectorImpl(connectorId, factory, crankerUris, componentName, routerEventListener,
-            this.routerUpdateInterval, this.routerUpdateTimeUnit, this.routerDeregisterTimeout, this.routerDeregisterTimeUnit, clientToUse);
+        RegistrationEventListener registrationEventListenerToUse = registrationEventListener;
+        RouterEventListener routerEventListenerToUse = routerEventListener;
+        EventDispatcher eventDispatcher = null;
+        if (listenerBufferSize > 0) {
+            eventDispatcher = new EventDispatcher(listenerBufferSize, listenerOverflowPolicy, listenerBlockTimeout, listenerBlockTimeUnit,
+                "cranker-listener-dispatcher-" + connectorId);
+        } else if (group != null) {
+            eventDispatcher = group.eventDispatcher();
+        }
+        if (eventDispatcher != null) {
+            proxyEventListenerToUse = eventDispatcher.wrap(proxyEventListenerToUse);
+            if (routerEventListenerToUse != null) {
+                routerEventListenerToUse = eventDispatcher.wrap(routerEventListenerToUse);
+            }
+        }
+        RequestDeadlines deadlines = requestDeadline != null || !prefixRequestDeadlines.isEmpty() || requestDeadlineHeader != null
+            ? new RequestDeadlines(requestDeadline, prefixRequestDeadlines, requestDeadlineHeader) : null;
+        var factory = new RouterRegistrationImpl.Factory(preferredProtocols, routerClients, httpClientExecutors, targetTransport,
+            circuitBreakers.isEmpty() ? null : new TargetCircuitBreakers(circuitBreakers), deadlines, domain, route, slidingWindowSize,
+            minAdaptiveWindowSize, maxAdaptiveWindowSize, maxStreamsPerSocket, maxBytesInFlightPerSocket, maxScaledSockets,
+            maxHandshakesAhead, connectionsPerSecond > 0 ? new ConnectionRateLimiter(connectionsPerSecond, maxConcurrentHandshakes) : null, new TargetUriCache(socketTarget, targetUriCacheSize), streamWorkerThreads, useVirtualThreads,
+            routerEventListenerToUse, proxyEventListenerToUse, registrationEventListenerToUse);
+        var connector = new CrankerConnectorImpl(connectorId, factory, routerUris, componentName, routerEventListenerToUse,
+            updateInterval, updateTimeUnit, this.routerDeregisterTimeout, this.routerDeregisterTimeUnit,
+            routerClients.first(), eventDispatcher, socketBudget > 0 ? new SocketBudget(socketBudget) : null, routerUriPublisher,
+            routerSnapshotFile == null ? null : new RouterSnapshot(routerSnapshotFile), readySocketsPerRouter,
+            warmUpPath == null ? null : new TargetWarmUp(socketTarget, unguardedTransport, warmUpPath, warmUpConnections, warmUpRequests, warmUpTimeout),
+            targetConnectionStats);
+        if (group != null) {
+            factory.useSharedExecutors(group.executor(), group.streamExecutor());
+            connector.useSharedRouterUpdateExecutor(group.routerUpdateExecutor());
+            connector.useSharedEventDispatcher(group.eventDispatcher());
+        }
+        return connector;
+    }
+
+    private List<TargetCircuitBreaker> circuitBreakersFor(List<URI> targets, List<TargetConnectionLimiter> limiters, List<TargetCircuitBreaker> all) {
+        if (circuitFailureRateThreshold == 0) {
+            return null;
+        }
+        List<TargetCircuitBreaker> breakers = new ArrayList<>(targets.size());
+        for (int i = 0; i < targets.size(); i++) {
+            URI uri = targets.get(i);
+            breakers.add(newCircuitBreaker(limiters.get(i), Http1TargetTransport.isUnixDomainSocket(uri) ? TargetTransport.LOCAL_TARGET_URI : uri, all));
+        }
+        return breakers;
+    }
+
+    private TargetCircuitBreaker newCircuitBreaker(TargetTransport transport, URI target, List<TargetCircuitBreaker> all) {
+        TargetCircuitBreaker breaker = new TargetCircuitBreaker(transport, circuitFailureRateThreshold, circuitSlowResponseThreshold,
+            circuitMinimumRequests, circuitWindow, circuitOpenDuration, healthCheckPath == null ? null : target.resolve(healthCheckPath),
+            healthCheckInterval, healthCheckTimeout);
+        all.add(breaker);
+        return breaker;
+    }
+
+    private static TargetTransport targetTransportTo(URI target, HttpClientPool targetClients) {
+        if (Http1TargetTransport.isUnixDomainSocket(target)) {
+            if (!UnixSockets.isSupported()) throw new IllegalStateException("Unix domain socket targets require JDK 16 or later");
+            return Http1TargetTransport.unixDomainSocket(target);
+        }
+        return targetClients;
+    }
+
+    private int maxTargetRequests() {
+        return (int) Math.min(Integer.MAX_VALUE, (long) maxTargetConnections * maxStreamsPerTargetConnection);
+    }
+
+    private HttpClient createDefaultHttpClient(List<ExecutorService> executors) {
+        return defaultHttpClientBuilder(executors).build();
+    }
+
+    private HttpClient createTargetHttpClient(List<ExecutorService> executors) {
+        HttpClient.Builder clientBuilder = defaultHttpClientBuilder(executors);
+        if (targetHttpVersion != null) {
+            clientBuilder.version(targetHttpVersion);
+        }
+        return clientBuilder.build();
+    }
+
+    /**
+     * @param executors the executors created for the client are added to this, so that the connector can shut
+     *                  them down when it stops
+     */
+    private HttpClient.Builder defaultHttpClientBuilder(List<ExecutorService> executors) {
+        HttpClient.Builder clientBuilder = createHttpClient(false);
+        if (useVirtualThreads) {
+            ExecutorService executor = VirtualThreads.newVirtualThreadPerTaskExecutor("cranker-http-");
+            executors.add(executor);
+            clientBuilder.executor(executor);
+        }
+        return clientBuilder;
     }
 
     /**
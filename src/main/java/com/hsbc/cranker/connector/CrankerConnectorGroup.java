@@ -0,0 +1,49 @@
+package com.hsbc.cranker.connector;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A group of connectors, each registering a different route or target, that share one set of threads, HTTP
+ * clients and router discovery.
+ * <p>A service that exposes many routes would otherwise need one connector per route, each with its own
+ * scheduler, router update thread, HTTP clients and DNS lookups. Connectors in a group share these, while each
+ * still has its own sockets, sliding window and router metrics, available from {@link #connectors()}.</p>
+ * <p>Create a group builder with {@link CrankerConnectorGroupBuilder#connectorGroup()}</p>
+ */
+public interface CrankerConnectorGroup {
+
+    /**
+     * Adds a connector to the group. Anything not set on the connector builder that the group provides (the router
+     * URIs, HTTP clients, stream worker threads and listener dispatch thread) is shared with the other connectors of
+     * the group, and the group's router update interval is used. If the group has been started, the connector is
+     * started straight away.
+     *
+     * @param connectorBuilder a builder with at least the route and target of the connector set
+     * @return The connector, which should be started and stopped through this group rather than directly
+     * @throws IllegalStateException if the group has been stopped, or the connector builder is not valid
+     */
+    CrankerConnector add(CrankerConnectorBuilder connectorBuilder);
+
+    /**
+     * The connectors in this group
+     * @return The connectors, in the order they were added
+     */
+    List<CrankerConnector> connectors();
+
+    /**
+     * Starts each connector in the group, creating the connections to the routers.
+     */
+    void start();
+
+    /**
+     * Gracefully disconnects all the connectors in the group from the routers at the same time (see
+     * {@link CrankerConnector#stop(long, TimeUnit)}), and then shuts down the shared threads. A stopped group
+     * cannot be started again.
+     *
+     * @param timeout the maximum time to wait for active requests to complete
+     * @param timeUnit the time unit of the timeout argument
+     * @return true if all the active requests of all the connectors completed within the timeout
+     */
+    boolean stop(long timeout, TimeUnit timeUnit);
+}
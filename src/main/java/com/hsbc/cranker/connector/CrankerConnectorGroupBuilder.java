@@ -0,0 +1,194 @@
+package com.hsbc.cranker.connector;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * A builder of {@link CrankerConnectorGroup} objects
+ */
+public class CrankerConnectorGroupBuilder {
+
+    /**
+     * prevent constructing CrankerConnectorGroupBuilder, should use <code>CrankerConnectorGroupBuilder.connectorGroup()</code> instead.
+     */
+    private CrankerConnectorGroupBuilder() {}
+
+    private Supplier<Collection<URI>> routerUris;
+    private int routerUpdateInterval = 1;
+    private TimeUnit routerUpdateTimeUnit = TimeUnit.MINUTES;
+    private HttpClient client;
+    private int httpClientShards = 1;
+    private int streamWorkerThreads = 0;
+    private boolean useVirtualThreads = false;
+    private int listenerBufferSize = 0;
+    private ListenerOverflowPolicy listenerOverflowPolicy = ListenerOverflowPolicy.DROP;
+    private long listenerBlockTimeout = 0;
+    private TimeUnit listenerBlockTimeUnit = TimeUnit.MILLISECONDS;
+
+    /**
+     * <p>Specifies the source of the router URIs that the connectors of the group register with. The URIs are looked
+     * up once for the whole group each router update interval, rather than once per connector.</p>
+     * <p>A connector that has its own router URIs set with {@link CrankerConnectorBuilder#withRouterUris(Supplier)}
+     * uses those instead.</p>
+     *
+     * @param supplier A function returning router websocket URIs to connect to. Note that no path is required.
+     * @return This builder
+     */
+    public CrankerConnectorGroupBuilder withRouterUris(Supplier<Collection<URI>> supplier) {
+        this.routerUris = supplier;
+        return this;
+    }
+
+    /**
+     * <p>Registers all A-records associated with the given URIs and uses those to connect to the cranker routers.</p>
+     * <p>This is just a shortcut for <code>withRouterUris(RegistrationUriSuppliers.dnsLookup(uris))</code></p>
+     *
+     * @param uris The URIs to perform a DNS lookup on, and then connect to. Example: <code>URI.create("wss://router.example.org");</code>
+     * @return This builder
+     */
+    public CrankerConnectorGroupBuilder withRouterLookupByDNS(URI... uris) {
+        return withRouterUris(RegistrationUriSuppliers.dnsLookup(uris));
+    }
+
+    /**
+     * Optional setting of the router update interval of every connector in the group.
+     * Default is 1 minute.
+     *
+     * @param interval the interval
+     * @param timeUnit the time unit of the interval
+     * @return This builder
+     */
+    public CrankerConnectorGroupBuilder withRouterUpdateInterval(int interval, TimeUnit timeUnit) {
+        if (interval < 1) throw new IllegalArgumentException("interval must be at least 1");
+        this.routerUpdateInterval = interval;
+        this.routerUpdateTimeUnit = timeUnit;
+        return this;
+    }
+
+    /**
+     * Optionally sets the HTTP client shared by the connectors of the group. If not set, then a default one will be used.
+     * <p>A connector that has its own client or client shards set on its builder uses those instead.</p>
+     *
+     * @param client The client to use to connect to the routers and target servers
+     * @return This builder
+     */
+    public CrankerConnectorGroupBuilder withHttpClient(HttpClient client) {
+        this.client = client;
+        return this;
+    }
+
+    /**
+     * Optionally sets the number of HTTP clients shared by the connectors of the group, so that the socket IO of
+     * all the connectors is spread over that many selector threads (see {@link CrankerConnectorBuilder#withHttpClientShards(int)}).
+     * <p>This cannot be used with {@link #withHttpClient(HttpClient)}.</p>
+     *
+     * @param shards The number of clients to create. Default is 1.
+     * @return This builder
+     */
+    public CrankerConnectorGroupBuilder withHttpClientShards(int shards) {
+        if (shards < 1) throw new IllegalArgumentException("shards must be at least 1");
+        this.httpClientShards = shards;
+        return this;
+    }
+
+    /**
+     * Optionally sets the number of worker threads that process the <code>cranker_3.0</code> streams of all the
+     * connectors of the group (see {@link CrankerConnectorBuilder#withStreamWorkerThreads(int)}).
+     *
+     * @param threads the number of worker threads, or <code>0</code> (the default) for each connector to use
+     *                its own setting
+     * @return This builder
+     */
+    public CrankerConnectorGroupBuilder withStreamWorkerThreads(int threads) {
+        if (threads < 0) throw new IllegalArgumentException("threads cannot be negative");
+        this.streamWorkerThreads = threads;
+        return this;
+    }
+
+    /**
+     * Optionally processes the <code>cranker_3.0</code> streams of all the connectors of the group on virtual
+     * threads, and uses a virtual thread per task for the default HTTP clients
+     * (see {@link CrankerConnectorBuilder#withVirtualThreads(boolean)}).
+     *
+     * @param useVirtualThreads <code>true</code> to use virtual threads. Default is <code>false</code>.
+     * @return This builder
+     */
+    public CrankerConnectorGroupBuilder withVirtualThreads(boolean useVirtualThreads) {
+        this.useVirtualThreads = useVirtualThreads;
+        return this;
+    }
+
+    /**
+     * Optionally calls the listener callbacks of all the connectors of the group from one dedicated thread (see
+     * {@link CrankerConnectorBuilder#withAsyncListenerDispatch(int, ListenerOverflowPolicy, long, TimeUnit)}),
+     * rather than from a thread per connector.
+     * <p>A connector that sets its own async listener dispatch uses its own thread instead. For the other connectors,
+     * {@link CrankerConnector#droppedListenerEvents()} is the number of events dropped by the whole group.</p>
+     *
+     * @param bufferSize     the maximum number of events waiting to be dispatched
+     * @param overflowPolicy what to do with an event when the buffer is full
+     * @param blockTimeout   when the policy is {@link ListenerOverflowPolicy#BLOCK}, the maximum time to wait
+     *                       for space in the buffer before dropping the event
+     * @param timeUnit       the unit of the block timeout
+     * @return This builder
+     */
+    public CrankerConnectorGroupBuilder withAsyncListenerDispatch(int bufferSize, ListenerOverflowPolicy overflowPolicy, long blockTimeout, TimeUnit timeUnit) {
+        if (bufferSize < 1) throw new IllegalArgumentException("bufferSize must be at least 1");
+        if (overflowPolicy == null) throw new IllegalArgumentException("overflowPolicy cannot be null");
+        if (timeUnit == null) throw new IllegalArgumentException("timeUnit cannot be null");
+        this.listenerBufferSize = bufferSize;
+        this.listenerOverflowPolicy = overflowPolicy;
+        this.listenerBlockTimeout = blockTimeout;
+        this.listenerBlockTimeUnit = timeUnit;
+        return this;
+    }
+
+    /**
+     * Creates a new builder
+     *
+     * @return A new builder
+     */
+    public static CrankerConnectorGroupBuilder connectorGroup() {
+        return new CrankerConnectorGroupBuilder();
+    }
+
+    /**
+     * Creates a group. Add connectors to it with {@link CrankerConnectorGroup#add(CrankerConnectorBuilder)}.
+     *
+     * @return A group that has not been started
+     */
+    public CrankerConnectorGroup build() {
+        if (useVirtualThreads && !VirtualThreads.isSupported()) throw new IllegalStateException("Virtual threads require JDK 21 or later");
+        if (client != null && httpClientShards > 1) {
+            throw new IllegalStateException("HTTP client shards cannot be used when an HTTP client is specified");
+        }
+        List<ExecutorService> httpClientExecutors = new ArrayList<>();
+        HttpClientPool httpClients = client != null ? HttpClientPool.of(client) : HttpClientPool.create(httpClientShards, () -> createDefaultHttpClient(httpClientExecutors));
+        StreamExecutor streamExecutor = null;
+        if (useVirtualThreads) {
+            streamExecutor = StreamExecutor.virtualThreads("cranker-group-stream-");
+        } else if (streamWorkerThreads > 0) {
+            streamExecutor = StreamExecutor.fixedThreads(streamWorkerThreads, "cranker-group-stream-worker-");
+        }
+        EventDispatcher eventDispatcher = listenerBufferSize > 0 ? new EventDispatcher(listenerBufferSize, listenerOverflowPolicy,
+            listenerBlockTimeout, listenerBlockTimeUnit, "cranker-group-listener-dispatcher") : null;
+        return new CrankerConnectorGroupImpl(httpClients, httpClientExecutors, routerUris, routerUpdateInterval, routerUpdateTimeUnit,
+            streamExecutor, eventDispatcher);
+    }
+
+    private HttpClient createDefaultHttpClient(List<ExecutorService> executors) {
+        HttpClient.Builder clientBuilder = CrankerConnectorBuilder.createHttpClient(false);
+        if (useVirtualThreads) {
+            ExecutorService executor = VirtualThreads.newVirtualThreadPerTaskExecutor("cranker-http-");
+            executors.add(executor);
+            clientBuilder.executor(executor);
+        }
+        return clientBuilder.build();
+    }
+}
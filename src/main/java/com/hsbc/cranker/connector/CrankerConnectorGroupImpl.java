@@ -0,0 +1,180 @@
+package com.hsbc.cranker.connector;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.function.Supplier;
+
+class CrankerConnectorGroupImpl implements CrankerConnectorGroup {
+
+    private final HttpClientPool httpClients;
+    private final List<ExecutorService> httpClientExecutors;
+    private final SharedRouterUris routerUris;
+    private final int routerUpdateInterval;
+    private final TimeUnit routerUpdateTimeUnit;
+    private final ScheduledExecutorService executor;
+    private final ScheduledExecutorService routerUpdateExecutor;
+    private final StreamExecutor streamExecutor;
+    private final EventDispatcher eventDispatcher;
+    private final List<CrankerConnectorImpl> connectors = new CopyOnWriteArrayList<>();
+    private volatile boolean isStarted;
+    private volatile boolean isStopped;
+
+    CrankerConnectorGroupImpl(HttpClientPool httpClients, List<ExecutorService> httpClientExecutors, Supplier<Collection<URI>> routerUris,
+                              int routerUpdateInterval, TimeUnit routerUpdateTimeUnit, StreamExecutor streamExecutor,
+                              EventDispatcher eventDispatcher) {
+        this.httpClients = httpClients;
+        this.httpClientExecutors = httpClientExecutors;
+        this.routerUris = routerUris == null ? null
+            : new SharedRouterUris(routerUris, routerUpdateTimeUnit.toNanos(routerUpdateInterval) / 2);
+        this.routerUpdateInterval = routerUpdateInterval;
+        this.routerUpdateTimeUnit = routerUpdateTimeUnit;
+        this.streamExecutor = streamExecutor;
+        this.eventDispatcher = eventDispatcher;
+        this.executor = RequestDeadlines.newScheduler(runnable -> new Thread(runnable, "cranker-group-scheduler"));
+        this.routerUpdateExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> new Thread(runnable, "cranker-group-router-updates"));
+    }
+
+    HttpClientPool httpClients() {
+        return httpClients;
+    }
+
+    Supplier<Collection<URI>> routerUris() {
+        return routerUris;
+    }
+
+    int routerUpdateInterval() {
+        return routerUpdateInterval;
+    }
+
+    TimeUnit routerUpdateTimeUnit() {
+        return routerUpdateTimeUnit;
+    }
+
+    ScheduledExecutorService executor() {
+        return executor;
+    }
+
+    ScheduledExecutorService routerUpdateExecutor() {
+        return routerUpdateExecutor;
+    }
+
+    StreamExecutor streamExecutor() {
+        return streamExecutor;
+    }
+
+    /**
+     * The dispatcher of listener events shared by the connectors of this group
+     * @return The dispatcher, or null if listener callbacks are called on the IO threads
+     */
+    EventDispatcher eventDispatcher() {
+        return eventDispatcher;
+    }
+
+    @Override
+    public synchronized CrankerConnector add(CrankerConnectorBuilder connectorBuilder) {
+        if (isStopped) throw new IllegalStateException("Connectors cannot be added to a group that has been stopped");
+        CrankerConnectorImpl connector = connectorBuilder.build(this);
+        connectors.add(connector);
+        if (isStarted) {
+            connector.start();
+        }
+        return connector;
+    }
+
+    @Override
+    public List<CrankerConnector> connectors() {
+        return Collections.unmodifiableList(connectors);
+    }
+
+    @Override
+    public synchronized void start() {
+        if (isStopped) throw new IllegalStateException("A group that has been stopped cannot be started again");
+        if (isStarted) throw new IllegalStateException("The group has already been started");
+        isStarted = true;
+        if (eventDispatcher != null) {
+            eventDispatcher.start();
+        }
+        for (CrankerConnectorImpl connector : connectors) {
+            connector.start();
+        }
+    }
+
+    @Override
+    public boolean stop(long timeout, TimeUnit timeUnit) {
+        List<CompletableFuture<Boolean>> stops = new ArrayList<>();
+        synchronized (this) {
+            if (!isStarted || isStopped) {
+                throw new IllegalStateException("Cannot call stop() when the group is not running. Did you call stop() twice?");
+            }
+            isStopped = true;
+            for (CrankerConnectorImpl connector : connectors) {
+                stops.add(connector.stopAsync(timeout, timeUnit).exceptionally(error -> false));
+            }
+        }
+        try {
+            boolean allStopped = true;
+            for (CompletableFuture<Boolean> stop : stops) {
+                allStopped &= stop.get();
+            }
+            return allStopped;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (ExecutionException e) {
+            return false;
+        } finally {
+            routerUpdateExecutor.shutdownNow();
+            executor.shutdownNow();
+            if (streamExecutor != null) {
+                streamExecutor.shutdown();
+            }
+            for (ExecutorService httpClientExecutor : httpClientExecutors) {
+                httpClientExecutor.shutdown();
+            }
+            if (eventDispatcher != null) {
+                eventDispatcher.stop();
+            }
+            if (routerUris != null) {
+                CrankerConnectorImpl.closeMaybe(routerUris.source);
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "CrankerConnectorGroup{" +
+            "connectors=" + connectors.size() +
+            ", routerUpdateInterval=" + routerUpdateInterval + " " + routerUpdateTimeUnit +
+            '}';
+    }
+
+    /**
+     * Looks up the router URIs once for all the connectors of a group. The connectors update their routers one
+     * after the other on the group's router update thread, so each round of updates gets the result of a single lookup.
+     */
+    static class SharedRouterUris implements Supplier<Collection<URI>> {
+        private final Supplier<Collection<URI>> source;
+        private final long maxAgeNanos;
+        private Collection<URI> latest;
+        private long lookedUpAt;
+
+        SharedRouterUris(Supplier<Collection<URI>> source, long maxAgeNanos) {
+            this.source = source;
+            this.maxAgeNanos = maxAgeNanos;
+        }
+
+        @Override
+        public synchronized Collection<URI> get() {
+            long now = System.nanoTime();
+            if (latest == null || now - lookedUpAt >= maxAgeNanos) {
+                latest = source.get();
+                lookedUpAt = now;
+            }
+            return latest;
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package com.hsbc.cranker.connector;
+
+import java.net.URI;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Flow;
+
+/**
+ * An in-process target that handles the requests received from routers directly, set with
+ * {@link CrankerConnectorBuilder#withTarget(CrankerHandler)}.
+ * <p>When the target server runs in the same JVM as the connector, proxying to it with an HTTP client means
+ * encoding each request as HTTP, sending it over a loopback TCP connection, and parsing it again. A handler instead
+ * receives the method, URI, headers and body of the request as they are decoded from the router socket, and its
+ * response status, headers and body are written straight back to the router socket.</p>
+ * <p>The handler is called on the thread that reads the router socket (or a stream worker thread, see
+ * {@link CrankerConnectorBuilder#withStreamWorkerThreads(int)}), so it must not block. Any blocking work should be
+ * done on another thread, completing the returned stage when the response is ready. If the handler throws an
+ * exception or the stage fails, the request fails as it would if a target server could not be reached.</p>
+ */
+@FunctionalInterface
+public interface CrankerHandler {
+
+    /**
+     * Handles a request
+     * @param request the request from the router
+     * @return A stage that completes with the response once its status and headers are known. The response body
+     * may be published after that.
+     * @throws Exception if the request cannot be handled
+     */
+    CompletionStage<Response> handle(Request request) throws Exception;
+
+    /**
+     * A request received from a router
+     */
+    interface Request {
+
+        /**
+         * The request method
+         * @return The HTTP method, for example <code>GET</code>
+         */
+        String method();
+
+        /**
+         * The request URI
+         * @return The URI of the request, resolved against the target URI of the connector
+         */
+        URI uri();
+
+        /**
+         * The request headers
+         * @return The headers of the request, excluding any that the JDK HTTP client does not allow to be set
+         */
+        HttpHeaders headers();
+
+        /**
+         * The request body, which is published as it is received from the router. Exactly one subscriber must
+         * subscribe to it, even if the body is not needed, so that the router socket can continue.
+         * @return The request body, which completes without any data if the request has no body
+         */
+        Flow.Publisher<ByteBuffer> body();
+    }
+
+    /**
+     * The response to a request
+     */
+    final class Response {
+        private final int status;
+        private final Map<String, List<String>> headers;
+        private final Flow.Publisher<ByteBuffer> body;
+
+        private Response(int status, Map<String, List<String>> headers, Flow.Publisher<ByteBuffer> body) {
+            this.status = status;
+            this.headers = headers;
+            this.body = body;
+        }
+
+        /**
+         * Creates a response
+         * <p>A body that is already in memory can be published with
+         * {@link HttpRequest.BodyPublishers#ofString(String)} or {@link HttpRequest.BodyPublishers#ofByteArray(byte[])},
+         * in which case a <code>content-length</code> header should also be set.</p>
+         * @param status the HTTP status code
+         * @param headers the response headers
+         * @param body the response body, or null if there is no body
+         * @return A new response
+         */
+        public static Response response(int status, Map<String, List<String>> headers, Flow.Publisher<ByteBuffer> body) {
+            if (status < 100 || status > 999) throw new IllegalArgumentException("Invalid status code " + status);
+            if (headers == null) throw new IllegalArgumentException("headers cannot be null");
+            return new Response(status, Map.copyOf(headers), body != null ? body : HttpRequest.BodyPublishers.noBody());
+        }
+
+        /**
+         * The response status
+         * @return The HTTP status code
+         */
+        public int status() {
+            return status;
+        }
+
+        /**
+         * The response headers
+         * @return The headers of the response
+         */
+        public Map<String, List<String>> headers() {
+            return headers;
+        }
+
+        /**
+         * The response body
+         * @return The body of the response, which publishes no data if there is no body
+         */
+        public Flow.Publisher<ByteBuffer> body() {
+            return body;
+        }
+
+        @Override
+        public String toString() {
+            return "Response{" +
+                "status=" + status +
+                ", headers=" + headers +
+                '}';
+        }
+    }
+}
@@ -0,0 +1,258 @@
+package com.hsbc.cranker.connector;
+
+import java.net.http.HttpRequest;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Calls listener callbacks on a dedicated thread so that slow listeners do not hold up the connector's IO threads.
+ * <p>Callbacks are put in a bounded, lock-free ring buffer which is drained in order by a single thread. When the
+ * buffer is full, the {@link ListenerOverflowPolicy} decides whether the event is dropped or the caller waits.</p>
+ */
+class EventDispatcher {
+
+    private static final long FULL_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+    private final int mask;
+    private final AtomicReferenceArray<Runnable> buffer;
+    private final AtomicLongArray sequences;
+    private final AtomicLong tail = new AtomicLong();
+    private long head; // only used by the dispatcher thread
+
+    private final ListenerOverflowPolicy overflowPolicy;
+    private final long blockTimeoutNanos;
+    private final AtomicLong dispatched = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final String threadName;
+
+    private volatile Thread thread;
+    private volatile boolean running;
+    private volatile boolean waiting;
+
+    EventDispatcher(int bufferSize, ListenerOverflowPolicy overflowPolicy, long blockTimeout, TimeUnit timeUnit, String threadName) {
+        if (bufferSize < 1) throw new IllegalArgumentException("bufferSize must be at least 1");
+        if (overflowPolicy == null) throw new IllegalArgumentException("overflowPolicy cannot be null");
+        int capacity = Integer.highestOneBit(bufferSize);
+        if (capacity < bufferSize) capacity <<= 1;
+        this.mask = capacity - 1;
+        this.buffer = new AtomicReferenceArray<>(capacity);
+        this.sequences = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            sequences.set(i, i);
+        }
+        this.overflowPolicy = overflowPolicy;
+        this.blockTimeoutNanos = timeUnit.toNanos(blockTimeout);
+        this.threadName = threadName;
+    }
+
+    void start() {
+        running = true;
+        Thread t = new Thread(this::drain, threadName);
+        t.setDaemon(true);
+        thread = t;
+        t.start();
+    }
+
+    /**
+     * Stops the dispatcher thread after the events already in the buffer have been dispatched.
+     * Events dispatched after this are run on the calling thread.
+     */
+    void stop() {
+        running = false;
+        Thread t = thread;
+        if (t != null) {
+            LockSupport.unpark(t);
+            try {
+                t.join(TimeUnit.SECONDS.toMillis(5));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Queues the event to be run on the dispatcher thread.
+     * @param event the listener callback
+     */
+    void dispatch(Runnable event) {
+        if (thread != null && !running) {
+            runSafely(event);
+            return;
+        }
+        if (!offer(event) && !offerAfterWaiting(event)) {
+            dropped.incrementAndGet();
+            return;
+        }
+        if (waiting) {
+            Thread t = thread;
+            if (t != null) LockSupport.unpark(t);
+        }
+    }
+
+    private boolean offerAfterWaiting(Runnable event) {
+        if (overflowPolicy != ListenerOverflowPolicy.BLOCK) {
+            return false;
+        }
+        final long deadline = System.nanoTime() + blockTimeoutNanos;
+        do {
+            Thread t = thread;
+            if (t != null) LockSupport.unpark(t);
+            LockSupport.parkNanos(this, FULL_PARK_NANOS);
+            if (offer(event)) {
+                return true;
+            }
+        } while (deadline - System.nanoTime() > 0);
+        return false;
+    }
+
+    private boolean offer(Runnable event) {
+        long position = tail.get();
+        while (true) {
+            final int index = (int) (position & mask);
+            final long difference = sequences.get(index) - position;
+            if (difference == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    buffer.set(index, event);
+                    sequences.set(index, position + 1);
+                    return true;
+                }
+            } else if (difference < 0) {
+                return false; // full
+            }
+            position = tail.get();
+        }
+    }
+
+    private Runnable poll() {
+        final int index = (int) (head & mask);
+        if (sequences.get(index) != head + 1) {
+            return null; // empty, or the producer has not finished writing yet
+        }
+        final Runnable event = buffer.get(index);
+        buffer.set(index, null);
+        sequences.set(index, head + mask + 1);
+        head++;
+        return event;
+    }
+
+    private void drain() {
+        while (true) {
+            Runnable event = poll();
+            if (event != null) {
+                runSafely(event);
+                continue;
+            }
+            if (!running) {
+                return;
+            }
+            waiting = true;
+            event = poll(); // check again in case an event arrived before the flag was visible to producers
+            if (event == null) {
+                // producers see the flag and unpark this thread after adding an event, as does stop()
+                LockSupport.park(this);
+            } else {
+                runSafely(event);
+            }
+            waiting = false;
+        }
+    }
+
+    private void runSafely(Runnable event) {
+        try {
+            event.run();
+        } catch (Throwable ignored) {
+            // an exception from a listener must not stop the dispatching of other events
+        } finally {
+            dispatched.incrementAndGet();
+        }
+    }
+
+    /**
+     * The number of events that were dropped because the buffer was full
+     * @return the number of dropped events
+     */
+    long droppedEvents() {
+        return dropped.get();
+    }
+
+    /**
+     * The number of events that have been run
+     * @return the number of dispatched events
+     */
+    long dispatchedEvents() {
+        return dispatched.get();
+    }
+
+    /**
+     * Wraps the listener so that {@link ProxyEventListener#onProxyError(HttpRequest, Throwable)} is dispatched
+     * asynchronously. The <code>beforeProxyToTarget</code> callbacks are still called synchronously as they may
+     * change the request.
+     * @param listener the listener to wrap
+     * @return the wrapped listener
+     */
+    ProxyEventListener wrap(ProxyEventListener listener) {
+        return new DispatchingProxyEventListener(listener);
+    }
+
+    class DispatchingProxyEventListener implements ProxyEventListener {
+        private final ProxyEventListener listener;
+
+        private DispatchingProxyEventListener(ProxyEventListener listener) {
+            this.listener = listener;
+        }
+
+        ProxyEventListener listener() {
+            return listener;
+        }
+
+        @Override
+        public void beforeProxyToTarget(ProxyRequest request) {
+            listener.beforeProxyToTarget(request);
+        }
+
+        @Override
+        public HttpRequest beforeProxyToTarget(HttpRequest request, HttpRequest.Builder requestBuilder) {
+            return listener.beforeProxyToTarget(request, requestBuilder);
+        }
+
+        @Override
+        public void onProxyError(HttpRequest request, Throwable error) {
+            dispatch(() -> listener.onProxyError(request, error));
+        }
+    }
+
+    /**
+     * Wraps the listener so that {@link RouterEventListener#onSocketConnectionError(RouterRegistration, Throwable)}
+     * and {@link RouterEventListener#onCapacityRestored(RouterRegistration, Duration)} are dispatched asynchronously. The other callbacks happen on the router update thread rather than an IO thread,
+     * so are still called synchronously.
+     * @param listener the listener to wrap
+     * @return the wrapped listener
+     */
+    RouterEventListener wrap(RouterEventListener listener) {
+        return new RouterEventListener() {
+            @Override
+            public void onRegistrationChanged(ChangeData data) {
+                listener.onRegistrationChanged(data);
+            }
+
+            @Override
+            public void onSocketConnectionError(RouterRegistration router, Throwable exception) {
+                dispatch(() -> listener.onSocketConnectionError(router, exception));
+            }
+
+            @Override
+            public void onRouterDnsLookupError(Throwable error) {
+                listener.onRouterDnsLookupError(error);
+            }
+
+            @Override
+            public void onCapacityRestored(RouterRegistration router, Duration restoreTime) {
+                dispatch(() -> listener.onCapacityRestored(router, restoreTime));
+            }
+        };
+    }
+}
@@ -0,0 +1,257 @@
+package com.hsbc.cranker.connector;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+
+/**
+ * A request to the target that keeps the header lines exactly as they were received from the router.
+ * <p>Building a request with {@link HttpRequest.Builder} validates every header and drops the ones that the JDK
+ * HTTP client restricts, which is wasted work for a transport such as {@link Http1TargetTransport} that writes
+ * the header lines to the target as they are. The headers are only parsed into {@link HttpHeaders} if something,
+ * such as a {@link ProxyEventListener}, asks for them.</p>
+ */
+class ForwardedRequest extends HttpRequest {
+
+    private final String method;
+    private final URI uri;
+    private final BodyPublisher bodyPublisher;
+    private final String[] headerLines;
+    private final Duration timeout;
+    private volatile HttpHeaders headers;
+
+    ForwardedRequest(String method, URI uri, BodyPublisher bodyPublisher, String[] headerLines) {
+        this(method, uri, bodyPublisher, headerLines, null);
+    }
+
+    ForwardedRequest(String method, URI uri, BodyPublisher bodyPublisher, String[] headerLines, Duration timeout) {
+        this.method = method;
+        this.uri = uri;
+        this.bodyPublisher = bodyPublisher;
+        this.headerLines = headerLines;
+        this.timeout = timeout;
+    }
+
+    /**
+     * The header lines received from the router, in the form <code>name:value</code>
+     * @return the header lines, which must not be changed
+     */
+    String[] headerLines() {
+        return headerLines;
+    }
+
+    /**
+     * Checks whether a transport sends forwarded requests as they are, rather than needing a request built with
+     * {@link HttpRequest.Builder}
+     * @param transport the transport requests are sent with
+     * @return true if a {@link ForwardedRequest} can be given to the transport
+     */
+    static boolean isAcceptedBy(TargetTransport transport) {
+        if (transport instanceof TargetConnectionLimiter) {
+            return isAcceptedBy(((TargetConnectionLimiter) transport).transport());
+        }
+        if (transport instanceof TargetCircuitBreaker) {
+            return isAcceptedBy(((TargetCircuitBreaker) transport).transport());
+        }
+        return transport instanceof Http1TargetTransport || transport instanceof TargetPool || transport instanceof PathPrefixRouter;
+    }
+
+    /**
+     * Creates a copy of this request that is sent to a different URI
+     * @param uri the new URI
+     * @return a new request with the same method, body, header lines and timeout
+     */
+    ForwardedRequest withUri(URI uri) {
+        return new ForwardedRequest(method, uri, bodyPublisher, headerLines, timeout);
+    }
+
+    /**
+     * Builds a request with the values of this one, validating the headers, for transports that need one
+     * @return a new request
+     */
+    HttpRequest toHttpRequest() {
+        return new LazyBuilder(this).builder().build();
+    }
+
+    /**
+     * Creates a builder that starts with the values of this request, for a listener that changes the request
+     * @return a builder that only does the work of copying this request when it is first used
+     */
+    HttpRequest.Builder toBuilder() {
+        return new LazyBuilder(this);
+    }
+
+    @Override
+    public Optional<BodyPublisher> bodyPublisher() {
+        return Optional.of(bodyPublisher);
+    }
+
+    @Override
+    public String method() {
+        return method;
+    }
+
+    @Override
+    public Optional<Duration> timeout() {
+        return Optional.ofNullable(timeout);
+    }
+
+    @Override
+    public boolean expectContinue() {
+        return false;
+    }
+
+    @Override
+    public URI uri() {
+        return uri;
+    }
+
+    @Override
+    public Optional<HttpClient.Version> version() {
+        return Optional.empty();
+    }
+
+    @Override
+    public HttpHeaders headers() {
+        HttpHeaders result = headers;
+        if (result == null) {
+            Map<String, List<String>> map = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+            for (String line : headerLines) {
+                int pos = line.indexOf(':');
+                // this will ignore HTTP/2 pseudo request headers like :method, :path, :authority
+                if (pos > 0) {
+                    map.computeIfAbsent(line.substring(0, pos).trim().toLowerCase(), name -> new ArrayList<>(1)).add(line.substring(pos + 1));
+                }
+            }
+            result = headers = HttpHeaders.of(map, (name, value) -> true);
+        }
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return uri + " " + method;
+    }
+
+    /**
+     * A builder that is only populated from the request, validating its headers, if it is used
+     */
+    private static class LazyBuilder implements HttpRequest.Builder {
+        private final ForwardedRequest request;
+        private HttpRequest.Builder builder;
+
+        private LazyBuilder(ForwardedRequest request) {
+            this.request = request;
+        }
+
+        private HttpRequest.Builder builder() {
+            if (builder == null) {
+                builder = HttpRequest.newBuilder()
+                    .uri(request.uri)
+                    .method(request.method, request.bodyPublisher);
+                if (request.timeout != null) {
+                    builder.timeout(request.timeout);
+                }
+                for (String line : request.headerLines) {
+                    int pos = line.indexOf(':');
+                    if (pos > 0) {
+                        String header = line.substring(0, pos).trim().toLowerCase();
+                        if (!HttpUtils.DISALLOWED_REQUEST_HEADERS.contains(header)) {
+                            builder.header(header, line.substring(pos + 1));
+                        }
+                    }
+                }
+            }
+            return builder;
+        }
+
+        @Override
+        public HttpRequest.Builder uri(URI uri) {
+            builder().uri(uri);
+            return this;
+        }
+
+        @Override
+        public HttpRequest.Builder expectContinue(boolean enable) {
+            builder().expectContinue(enable);
+            return this;
+        }
+
+        @Override
+        public HttpRequest.Builder version(HttpClient.Version version) {
+            builder().version(version);
+            return this;
+        }
+
+        @Override
+        public HttpRequest.Builder header(String name, String value) {
+            builder().header(name, value);
+            return this;
+        }
+
+        @Override
+        public HttpRequest.Builder headers(String... headers) {
+            builder().headers(headers);
+            return this;
+        }
+
+        @Override
+        public HttpRequest.Builder timeout(Duration duration) {
+            builder().timeout(duration);
+            return this;
+        }
+
+        @Override
+        public HttpRequest.Builder setHeader(String name, String value) {
+            builder().setHeader(name, value);
+            return this;
+        }
+
+        @Override
+        public HttpRequest.Builder GET() {
+            builder().GET();
+            return this;
+        }
+
+        @Override
+        public HttpRequest.Builder POST(BodyPublisher bodyPublisher) {
+            builder().POST(bodyPublisher);
+            return this;
+        }
+
+        @Override
+        public HttpRequest.Builder PUT(BodyPublisher bodyPublisher) {
+            builder().PUT(bodyPublisher);
+            return this;
+        }
+
+        @Override
+        public HttpRequest.Builder DELETE() {
+            builder().DELETE();
+            return this;
+        }
+
+        @Override
+        public HttpRequest.Builder method(String method, BodyPublisher bodyPublisher) {
+            builder().method(method, bodyPublisher);
+            return this;
+        }
+
+        @Override
+        public HttpRequest build() {
+            return builder == null ? request : builder.build();
+        }
+
+        @Override
+        public HttpRequest.Builder copy() {
+            return builder().copy();
+        }
+    }
+}
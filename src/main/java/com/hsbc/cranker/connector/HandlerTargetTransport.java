@@ -0,0 +1,137 @@
+package com.hsbc.cranker.connector;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Flow;
+
+/**
+ * Sends requests to a {@link CrankerHandler} in the same JVM rather than to an HTTP server.
+ * <p>The response status and headers from the handler are given to the socket's response body handler as if they
+ * had been received by an HTTP client, and each buffer of the response body is passed on as it is published, so
+ * the sockets frame handler responses exactly as they frame responses from a target server.</p>
+ */
+class HandlerTargetTransport implements TargetTransport {
+
+    private final CrankerHandler handler;
+
+    HandlerTargetTransport(CrankerHandler handler) {
+        this.handler = handler;
+    }
+
+    @Override
+    public <T> CompletableFuture<HttpResponse<T>> sendAsync(HttpRequest request, HttpResponse.BodyHandler<T> responseBodyHandler) {
+        CompletableFuture<HttpResponse<T>> result = new CompletableFuture<>();
+        CompletionStage<CrankerHandler.Response> response;
+        try {
+            response = handler.handle(new HandlerRequest(request));
+            if (response == null) {
+                throw new IllegalStateException("The handler returned null rather than a CompletionStage");
+            }
+        } catch (Throwable e) {
+            result.completeExceptionally(e);
+            return result;
+        }
+        response.whenComplete((handlerResponse, error) -> {
+            if (error != null) {
+                result.completeExceptionally(error);
+            } else if (!result.isDone()) {
+                respond(request, handlerResponse, responseBodyHandler, result);
+            }
+        });
+        return result;
+    }
+
+    private static <T> void respond(HttpRequest request, CrankerHandler.Response handlerResponse,
+                                    HttpResponse.BodyHandler<T> responseBodyHandler, CompletableFuture<HttpResponse<T>> result) {
+        HttpHeaders headers = HttpHeaders.of(handlerResponse.headers(), (name, value) -> true);
+        TargetResponse.Info info = new TargetResponse.Info(handlerResponse.status(), headers, HttpClient.Version.HTTP_1_1);
+        HttpResponse.BodySubscriber<T> bodySubscriber;
+        try {
+            bodySubscriber = responseBodyHandler.apply(info);
+        } catch (Throwable e) {
+            result.completeExceptionally(e);
+            return;
+        }
+        bodySubscriber.getBody().whenComplete((body, error) -> {
+            if (error != null) {
+                result.completeExceptionally(error);
+            } else {
+                result.complete(new TargetResponse<>(request, info, body));
+            }
+        });
+        handlerResponse.body().subscribe(new Flow.Subscriber<>() {
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                // cancelling the response, for example when the router resets the stream, stops the body
+                result.whenComplete((r, e) -> {
+                    if (result.isCancelled()) {
+                        subscription.cancel();
+                    }
+                });
+                bodySubscriber.onSubscribe(subscription);
+            }
+
+            @Override
+            public void onNext(ByteBuffer item) {
+                bodySubscriber.onNext(List.of(item));
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                bodySubscriber.onError(throwable);
+            }
+
+            @Override
+            public void onComplete() {
+                bodySubscriber.onComplete();
+            }
+        });
+    }
+
+    @Override
+    public String toString() {
+        return "HandlerTargetTransport{" +
+            "handler=" + handler +
+            '}';
+    }
+
+    private static class HandlerRequest implements CrankerHandler.Request {
+        private final HttpRequest request;
+
+        private HandlerRequest(HttpRequest request) {
+            this.request = request;
+        }
+
+        @Override
+        public String method() {
+            return request.method();
+        }
+
+        @Override
+        public URI uri() {
+            return request.uri();
+        }
+
+        @Override
+        public HttpHeaders headers() {
+            return request.headers();
+        }
+
+        @Override
+        public Flow.Publisher<ByteBuffer> body() {
+            return request.bodyPublisher().isPresent() ? request.bodyPublisher().get() : HttpRequest.BodyPublishers.noBody();
+        }
+
+        @Override
+        public String toString() {
+            return method() + " " + uri();
+        }
+    }
+}
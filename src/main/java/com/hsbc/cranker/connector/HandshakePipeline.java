@@ -0,0 +1,67 @@
+package com.hsbc.cranker.connector;
+
+/**
+ * Estimates how many extra <code>cranker_1.0</code> sockets to open so that handshakes are in progress ahead of demand.
+ * <p>A <code>cranker_1.0</code> socket carries a single request, so each request starts the handshake of a
+ * replacement socket. Under sustained load the idle sockets of a window are partly sockets that are still being
+ * connected, which cannot take requests yet. By Little's law the number of handshakes in progress is the rate that
+ * sockets are used multiplied by the handshake time, so opening that many extra sockets keeps the window full of
+ * connected sockets. When requests stop, the estimate falls back to zero.</p>
+ * <p>Times are passed in as {@link System#nanoTime()} values. This class is thread safe.</p>
+ */
+class HandshakePipeline {
+
+    private static final double SMOOTHING = 0.2;
+
+    private final int maxHandshakesAhead;
+    private long lastAcquiredNanos = -1;
+    private double acquireIntervalNanos = -1;
+    private double handshakeNanos = -1;
+
+    HandshakePipeline(int maxHandshakesAhead) {
+        if (maxHandshakesAhead < 1) throw new IllegalArgumentException("maxHandshakesAhead must be at least 1");
+        this.maxHandshakesAhead = maxHandshakesAhead;
+    }
+
+    /**
+     * Called when a request uses up a socket
+     * @param nowNanos the current time
+     */
+    synchronized void onAcquired(long nowNanos) {
+        if (lastAcquiredNanos >= 0) {
+            double interval = nowNanos - lastAcquiredNanos;
+            acquireIntervalNanos = acquireIntervalNanos < 0 ? interval : acquireIntervalNanos + (interval - acquireIntervalNanos) * SMOOTHING;
+        }
+        lastAcquiredNanos = nowNanos;
+    }
+
+    /**
+     * Called when a socket has been connected
+     * @param durationNanos the time the handshake took
+     */
+    synchronized void onConnected(long durationNanos) {
+        handshakeNanos = handshakeNanos < 0 ? durationNanos : handshakeNanos + (durationNanos - handshakeNanos) * SMOOTHING;
+    }
+
+    /**
+     * @param nowNanos the current time
+     * @return The number of sockets to open on top of the window size
+     */
+    synchronized int handshakesAhead(long nowNanos) {
+        if (acquireIntervalNanos < 0 || handshakeNanos < 0) {
+            return 0;
+        }
+        // if there has not been a request for longer than the average interval, then the rate has dropped
+        double interval = Math.max(1, Math.max(acquireIntervalNanos, nowNanos - lastAcquiredNanos));
+        return (int) Math.min(maxHandshakesAhead, Math.round(handshakeNanos / interval));
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "HandshakePipeline{" +
+            "maxHandshakesAhead=" + maxHandshakesAhead +
+            ", acquireIntervalNanos=" + acquireIntervalNanos +
+            ", handshakeNanos=" + handshakeNanos +
+            '}';
+    }
+}
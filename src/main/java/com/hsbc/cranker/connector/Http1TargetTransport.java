@@ -0,0 +1,851 @@
+package com.hsbc.cranker.connector;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Sends requests to the target as HTTP/1.1 over socket channels, keeping connections open for reuse.
+ * <p>This is used for targets that the JDK HTTP client cannot connect to, such as Unix domain sockets, and as a
+ * lighter alternative to the JDK HTTP client for plain HTTP targets (see {@link TargetTransport#http1(URI, int)}).
+ * Each request is run on a thread of its own (a virtual thread where available, or else one of a bounded pool of
+ * threads) using blocking IO: the request head and body are written as the body is received from the router, then
+ * the response head is read and given to the socket's response body handler, and the response body is read as the
+ * handler asks for it.</p>
+ * <p>A blocked thread is never left waiting on a target that has stopped responding: connections are opened with
+ * a timeout, the request's {@link HttpRequest#timeout() timeout} limits how long the response head is waited for,
+ * and cancelling the response or its body closes the connection, which wakes up the thread.</p>
+ * <p>The header lines of a {@link ForwardedRequest} are written as they were received from the router, without
+ * being parsed or validated. Each connection has its own direct buffers, so the request head is encoded straight
+ * into the buffer that is written to the socket and responses are read without an extra copy by the channel.</p>
+ * <p>Request bodies of unknown length are sent with chunked encoding. Response bodies may be fixed length,
+ * chunked, or delimited by the target closing the connection.</p>
+ */
+class Http1TargetTransport implements TargetTransport {
+
+    /**
+     * Opens a new connection to the target
+     */
+    interface ChannelOpener {
+        /**
+         * @param connectTimeoutMillis how long to wait for the connection to be established
+         * @return a connected blocking channel
+         * @throws IOException if the connection could not be established in time
+         */
+        SocketChannel open(int connectTimeoutMillis) throws IOException;
+    }
+
+    /**
+     * The default maximum number of connections kept open for reuse
+     */
+    static final int DEFAULT_MAX_IDLE_CONNECTIONS = 64;
+
+    /**
+     * The maximum number of platform threads running requests when virtual threads are not available. Further
+     * requests wait for a thread.
+     */
+    static final int MAX_PLATFORM_THREADS = 256;
+
+    /**
+     * How long to wait for a connection to the target to be established
+     */
+    static final int CONNECT_TIMEOUT_MILLIS = 5000;
+
+    private static final int READ_BUFFER_SIZE = 16 * 1024;
+    private static final int WRITE_BUFFER_SIZE = 8 * 1024;
+    private static final int MAX_LINE_LENGTH = 64 * 1024;
+    private static final int MAX_HEADER_COUNT = 500;
+    private static final long IDLE_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(30);
+    private static final long POLL_MILLIS = 1000;
+    private static final Set<String> METHODS_WITH_BODY = Set.of("POST", "PUT", "PATCH");
+    private static final Set<String> RETRYABLE_METHODS = Set.of("GET", "HEAD", "OPTIONS", "PUT", "DELETE");
+    private static final String LAST_CHUNK = "0\r\n\r\n";
+    private static final AtomicInteger THREAD_COUNTER = new AtomicInteger();
+
+    private final ChannelOpener opener;
+    private final String hostHeader;
+    private final String description;
+    private final int maxIdleConnections;
+    private final Executor executor;
+    private final Deque<Connection> idleConnections = new ConcurrentLinkedDeque<>();
+    private final AtomicInteger idleCount = new AtomicInteger();
+    private final AtomicInteger openCount = new AtomicInteger();
+    private final AtomicLong openedCount = new AtomicLong();
+
+    Http1TargetTransport(ChannelOpener opener, String hostHeader, String description, int maxIdleConnections, Executor executor) {
+        this.opener = opener;
+        this.hostHeader = hostHeader;
+        this.description = description;
+        this.maxIdleConnections = maxIdleConnections;
+        this.executor = executor;
+    }
+
+    /**
+     * Creates a transport to a target listening on a Unix domain socket
+     * @param target a URI such as <code>unix:/var/run/app.sock</code> giving the path of the socket file
+     * @return a new transport
+     */
+    static Http1TargetTransport unixDomainSocket(URI target) {
+        Path path = unixSocketPath(target);
+        // a local connection is accepted or refused straight away, so there is no connect timeout
+        return new Http1TargetTransport(connectTimeoutMillis -> UnixSockets.open(path), "localhost", target.toString(), DEFAULT_MAX_IDLE_CONNECTIONS, defaultExecutor());
+    }
+
+    /**
+     * Creates a transport to a plain HTTP target
+     * @param target the <code>http</code> URI of the target
+     * @param maxIdleConnections the maximum number of connections kept open for reuse
+     * @return a new transport
+     */
+    static Http1TargetTransport tcp(URI target, int maxIdleConnections) {
+        if (!"http".equalsIgnoreCase(target.getScheme()) || target.getHost() == null) {
+            throw new IllegalArgumentException("The HTTP/1.1 target transport only supports http targets, but got " + target);
+        }
+        String host = target.getHost();
+        int port = target.getPort() == -1 ? 80 : target.getPort();
+        String hostHeader = target.getPort() == -1 ? host : host + ":" + port;
+        return new Http1TargetTransport(connectTimeoutMillis -> {
+            SocketChannel channel = SocketChannel.open();
+            try {
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                channel.socket().connect(new InetSocketAddress(host, port), connectTimeoutMillis);
+            } catch (IOException | RuntimeException e) {
+                channel.close();
+                throw e;
+            }
+            return channel;
+        }, hostHeader, target.toString(), maxIdleConnections, defaultExecutor());
+    }
+
+    static boolean isUnixDomainSocket(URI target) {
+        return "unix".equalsIgnoreCase(target.getScheme());
+    }
+
+    static Path unixSocketPath(URI target) {
+        String path = target.getPath() != null ? target.getPath() : target.getSchemeSpecificPart();
+        if (path == null || path.isEmpty() || path.endsWith("/")) throw new IllegalArgumentException("A unix target must have the path of the socket file, for example unix:/var/run/app.sock");
+        return Path.of(path);
+    }
+
+    static Executor defaultExecutor() {
+        if (VirtualThreads.isSupported()) {
+            return VirtualThreads.newVirtualThreadPerTaskExecutor("cranker-target-io-");
+        }
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(MAX_PLATFORM_THREADS, MAX_PLATFORM_THREADS, 60, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(), runnable -> {
+            Thread thread = new Thread(runnable, "cranker-target-io-" + THREAD_COUNTER.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    @Override
+    public <T> CompletableFuture<HttpResponse<T>> sendAsync(HttpRequest request, HttpResponse.BodyHandler<T> responseBodyHandler) {
+        CompletableFuture<HttpResponse<T>> result = new CompletableFuture<>();
+        Exchange exchange = new Exchange();
+        // cancelling the response, for example when the router resets the stream or the request deadline passes,
+        // closes the connection so that the thread is not left blocked on the target
+        result.whenComplete((response, error) -> {
+            if (result.isCancelled()) {
+                exchange.abort();
+            }
+        });
+        request.timeout().ifPresent(timeout -> exchange.startHeadTimeout(timeout, result));
+        try {
+            executor.execute(() -> exchange(request, responseBodyHandler, exchange, result));
+        } catch (RejectedExecutionException e) {
+            result.completeExceptionally(e);
+        }
+        return result;
+    }
+
+    /**
+     * The number of open connections that are waiting to be reused
+     * @return the number of idle connections
+     */
+    int idleConnections() {
+        return idleCount.get();
+    }
+
+    /**
+     * The number of connections to the target that are open, including idle ones
+     * @return the number of open connections
+     */
+    int openConnections() {
+        return openCount.get();
+    }
+
+    /**
+     * The number of connections opened to the target since this transport was created
+     * @return the number of connections opened
+     */
+    long connectionsOpened() {
+        return openedCount.get();
+    }
+
+    private Connection openConnection() throws IOException {
+        Connection connection = new Connection(opener.open(CONNECT_TIMEOUT_MILLIS));
+        openCount.incrementAndGet();
+        openedCount.incrementAndGet();
+        return connection;
+    }
+
+    private <T> void exchange(HttpRequest request, HttpResponse.BodyHandler<T> responseBodyHandler, Exchange exchange,
+                              CompletableFuture<HttpResponse<T>> result) {
+        if (result.isDone()) {
+            // cancelled or timed out while waiting for a thread
+            return;
+        }
+        Connection connection = null;
+        try {
+            connection = pooledConnection();
+            boolean isReused = connection != null;
+            if (!isReused) {
+                connection = openConnection();
+            }
+            exchange.use(connection);
+            ResponseHead head;
+            try {
+                head = sendRequest(connection, request, result);
+            } catch (IOException e) {
+                connection.close();
+                if (!isReused || exchange.isAborted() || !RETRYABLE_METHODS.contains(request.method()) || hasBody(request)) {
+                    throw e;
+                }
+                // the target closed the idle connection before this request was sent, so try once on a new connection
+                connection = openConnection();
+                exchange.use(connection);
+                head = sendRequest(connection, request, result);
+            }
+            exchange.headReceived();
+            readResponse(connection, request, head, responseBodyHandler, exchange, result);
+        } catch (Throwable e) {
+            exchange.headReceived();
+            if (connection != null) {
+                connection.close();
+            }
+            result.completeExceptionally(e);
+        }
+    }
+
+    private static boolean hasBody(HttpRequest request) {
+        return request.bodyPublisher().isPresent() && request.bodyPublisher().get().contentLength() != 0;
+    }
+
+    private ResponseHead sendRequest(Connection connection, HttpRequest request, CompletableFuture<?> result) throws IOException, InterruptedException {
+        URI uri = request.uri();
+        String path = uri.getRawPath() == null || uri.getRawPath().isEmpty() ? "/" : uri.getRawPath();
+        String method = request.method();
+        connection.append(method).append(" ").append(path);
+        if (uri.getRawQuery() != null) {
+            connection.append("?").append(uri.getRawQuery());
+        }
+        connection.append(" HTTP/1.1\r\n");
+        boolean hasHost = false;
+        if (request instanceof ForwardedRequest) {
+            for (String line : ((ForwardedRequest) request).headerLines()) {
+                int pos = line.indexOf(':');
+                // this will ignore HTTP/2 pseudo request headers like :method, :path, :authority
+                if (pos > 0) {
+                    String name = line.substring(0, pos).trim();
+                    if (!isFramingHeader(name)) {
+                        hasHost |= name.equalsIgnoreCase("host");
+                        connection.append(line).append("\r\n");
+                    }
+                }
+            }
+        } else {
+            for (Map.Entry<String, List<String>> header : request.headers().map().entrySet()) {
+                String name = header.getKey();
+                if (!isFramingHeader(name)) {
+                    hasHost |= name.equalsIgnoreCase("host");
+                    for (String value : header.getValue()) {
+                        connection.append(name).append(": ").append(value).append("\r\n");
+                    }
+                }
+            }
+        }
+        if (!hasHost) {
+            connection.append("host: ").append(hostHeader).append("\r\n");
+        }
+        Flow.Publisher<ByteBuffer> body = request.bodyPublisher().orElse(null);
+        long contentLength = body == null ? 0 : request.bodyPublisher().get().contentLength();
+        if (contentLength > 0) {
+            connection.append("content-length: ").append(Long.toString(contentLength)).append("\r\n");
+        } else if (contentLength < 0) {
+            connection.append("transfer-encoding: chunked\r\n");
+        } else if (METHODS_WITH_BODY.contains(method)) {
+            connection.append("content-length: 0\r\n");
+        }
+        connection.append("\r\n");
+        if (body != null && contentLength != 0) {
+            writeBody(connection, body, contentLength < 0, result);
+        }
+        connection.flush();
+        return connection.readResponseHead();
+    }
+
+    /**
+     * Headers that describe how the body is sent, which are written from the body publisher instead
+     */
+    private static boolean isFramingHeader(String name) {
+        return name.equalsIgnoreCase("content-length") || name.equalsIgnoreCase("transfer-encoding") || name.equalsIgnoreCase("expect");
+    }
+
+    private static void writeBody(Connection connection, Flow.Publisher<ByteBuffer> body, boolean isChunked, CompletableFuture<?> result) throws IOException, InterruptedException {
+        BodyQueue queue = new BodyQueue();
+        body.subscribe(queue);
+        try {
+            ByteBuffer buffer;
+            while ((buffer = queue.take(result)) != null) {
+                if (buffer.hasRemaining()) {
+                    if (isChunked) {
+                        connection.append(Integer.toHexString(buffer.remaining())).append("\r\n");
+                        connection.write(buffer);
+                        connection.append("\r\n");
+                    } else {
+                        connection.write(buffer);
+                    }
+                }
+                queue.requestNext();
+                if (queue.isEmpty()) {
+                    // send what has been received so far rather than holding it while waiting for more
+                    connection.flush();
+                }
+            }
+            if (isChunked) {
+                connection.append(LAST_CHUNK);
+            }
+        } catch (IOException | InterruptedException | RuntimeException e) {
+            queue.cancel();
+            throw e;
+        }
+    }
+
+    private <T> void readResponse(Connection connection, HttpRequest request, ResponseHead head, HttpResponse.BodyHandler<T> responseBodyHandler,
+                                  Exchange exchange, CompletableFuture<HttpResponse<T>> result) throws IOException {
+        TargetResponse.Info info = new TargetResponse.Info(head.status, HttpHeaders.of(head.headers, (name, value) -> true), HttpClient.Version.HTTP_1_1);
+        HttpResponse.BodySubscriber<T> bodySubscriber = responseBodyHandler.apply(info);
+        bodySubscriber.getBody().whenComplete((body, error) -> {
+            if (error != null) {
+                result.completeExceptionally(error);
+            } else {
+                result.complete(new TargetResponse<>(request, info, body));
+            }
+        });
+        // cancelling the body closes the connection, as the thread may be blocked reading from it
+        Demand demand = new Demand(exchange::abort);
+        // cancelling the response, for example when the router resets the stream, stops the body
+        result.whenComplete((response, error) -> {
+            if (result.isCancelled()) {
+                demand.cancel();
+            }
+        });
+        bodySubscriber.onSubscribe(demand);
+
+        boolean isComplete;
+        try {
+            isComplete = readBody(connection, request, head, bodySubscriber, demand);
+        } catch (IOException | InterruptedException | RuntimeException e) {
+            connection.close();
+            bodySubscriber.onError(e);
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            return;
+        }
+        if (!isComplete) {
+            connection.close();
+            return;
+        }
+        if (head.isKeepAlive() && !connection.hasBufferedData() && exchange.finish()) {
+            release(connection);
+        } else {
+            connection.close();
+        }
+        bodySubscriber.onComplete();
+    }
+
+    /**
+     * Passes the response body to the subscriber as it asks for it
+     * @return true if the whole body was read, or false if the subscriber cancelled
+     */
+    private static boolean readBody(Connection connection, HttpRequest request, ResponseHead head,
+                                    HttpResponse.BodySubscriber<?> bodySubscriber, Demand demand) throws IOException, InterruptedException {
+        if (request.method().equals("HEAD") || head.status == 204 || head.status == 304) {
+            return true;
+        }
+        if (head.isChunked()) {
+            while (true) {
+                String sizeLine = connection.readLine();
+                int extension = sizeLine.indexOf(';');
+                long size;
+                try {
+                    size = Long.parseLong((extension == -1 ? sizeLine : sizeLine.substring(0, extension)).trim(), 16);
+                } catch (NumberFormatException e) {
+                    throw new IOException("Invalid chunk size from target: " + sizeLine);
+                }
+                if (size == 0) {
+                    // skip any trailers
+                    while (!connection.readLine().isEmpty()) {
+                    }
+                    return true;
+                }
+                if (!readFixedLength(connection, size, bodySubscriber, demand)) {
+                    return false;
+                }
+                connection.readLine();
+            }
+        }
+        long contentLength = head.contentLength();
+        if (contentLength >= 0) {
+            return readFixedLength(connection, contentLength, bodySubscriber, demand);
+        }
+        head.isCloseDelimited = true;
+        ByteBuffer buffer;
+        while ((buffer = connection.readUpTo(READ_BUFFER_SIZE)) != null) {
+            if (!demand.await()) {
+                return false;
+            }
+            bodySubscriber.onNext(List.of(buffer));
+        }
+        return true;
+    }
+
+    private static boolean readFixedLength(Connection connection, long length, HttpResponse.BodySubscriber<?> bodySubscriber, Demand demand) throws IOException, InterruptedException {
+        long remaining = length;
+        while (remaining > 0) {
+            ByteBuffer buffer = connection.readUpTo((int) Math.min(remaining, READ_BUFFER_SIZE));
+            if (buffer == null) {
+                throw new EOFException("The target closed the connection with " + remaining + " bytes of the response body remaining");
+            }
+            remaining -= buffer.remaining();
+            if (!demand.await()) {
+                return false;
+            }
+            bodySubscriber.onNext(List.of(buffer));
+        }
+        return true;
+    }
+
+    private Connection pooledConnection() {
+        Connection connection;
+        while ((connection = idleConnections.pollFirst()) != null) {
+            idleCount.decrementAndGet();
+            if (System.nanoTime() - connection.idleSince < IDLE_TIMEOUT_NANOS && connection.channel.isOpen()) {
+                return connection;
+            }
+            connection.close();
+        }
+        return null;
+    }
+
+    private void release(Connection connection) {
+        if (idleCount.incrementAndGet() > maxIdleConnections) {
+            idleCount.decrementAndGet();
+            connection.close();
+        } else {
+            connection.idleSince = System.nanoTime();
+            idleConnections.addFirst(connection);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "Http1TargetTransport{" +
+            "target=" + description +
+            ", openConnections=" + openCount.get() +
+            ", idleConnections=" + idleCount.get() +
+            '}';
+    }
+
+    private static class ResponseHead {
+        private final String version;
+        private final int status;
+        private final Map<String, List<String>> headers;
+        private boolean isCloseDelimited;
+
+        private ResponseHead(String version, int status, Map<String, List<String>> headers) {
+            this.version = version;
+            this.status = status;
+            this.headers = headers;
+        }
+
+        private String header(String name) {
+            List<String> values = headers.get(name);
+            return values == null || values.isEmpty() ? null : values.get(values.size() - 1);
+        }
+
+        private boolean isChunked() {
+            String transferEncoding = header("transfer-encoding");
+            return transferEncoding != null && transferEncoding.toLowerCase(Locale.ROOT).contains("chunked");
+        }
+
+        private long contentLength() throws IOException {
+            String value = header("content-length");
+            if (value == null) {
+                return -1;
+            }
+            try {
+                return Long.parseLong(value.trim());
+            } catch (NumberFormatException e) {
+                throw new IOException("Invalid content-length from target: " + value);
+            }
+        }
+
+        private boolean isKeepAlive() {
+            if (isCloseDelimited) {
+                return false;
+            }
+            String connection = header("connection");
+            String value = connection == null ? "" : connection.toLowerCase(Locale.ROOT);
+            return version.equals("HTTP/1.0") ? value.contains("keep-alive") : !value.contains("close");
+        }
+    }
+
+    private class Connection {
+        private final SocketChannel channel;
+        private final AtomicBoolean isClosed = new AtomicBoolean();
+        private final ByteBuffer in = ByteBuffer.allocateDirect(READ_BUFFER_SIZE).flip();
+        private final ByteBuffer out = ByteBuffer.allocateDirect(WRITE_BUFFER_SIZE);
+        private volatile long idleSince;
+
+        private Connection(SocketChannel channel) {
+            this.channel = channel;
+        }
+
+        /**
+         * Adds the characters of a string, which must be ISO-8859-1, to the output buffer
+         */
+        private Connection append(String value) throws IOException {
+            for (int i = 0; i < value.length(); i++) {
+                if (!out.hasRemaining()) {
+                    flush();
+                }
+                out.put((byte) value.charAt(i));
+            }
+            return this;
+        }
+
+        /**
+         * Adds a buffer to the output buffer if it fits, or otherwise writes what is buffered and then the buffer
+         */
+        private void write(ByteBuffer buffer) throws IOException {
+            if (buffer.remaining() <= out.remaining()) {
+                out.put(buffer);
+                return;
+            }
+            flush();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+
+        private void flush() throws IOException {
+            out.flip();
+            try {
+                while (out.hasRemaining()) {
+                    channel.write(out);
+                }
+            } finally {
+                out.clear();
+            }
+        }
+
+        /**
+         * Reads more data into the input buffer
+         * @return false if the target closed the connection
+         */
+        private boolean fill() throws IOException {
+            in.compact();
+            int read;
+            try {
+                read = channel.read(in);
+            } finally {
+                in.flip();
+            }
+            return read >= 0;
+        }
+
+        private boolean hasBufferedData() {
+            return in.hasRemaining();
+        }
+
+        private String readLine() throws IOException {
+            StringBuilder line = new StringBuilder();
+            while (true) {
+                if (!in.hasRemaining() && !fill()) {
+                    throw new EOFException("The target closed the connection");
+                }
+                byte b = in.get();
+                if (b == '\n') {
+                    int length = line.length();
+                    if (length > 0 && line.charAt(length - 1) == '\r') {
+                        line.setLength(length - 1);
+                    }
+                    return line.toString();
+                }
+                if (line.length() >= MAX_LINE_LENGTH) {
+                    throw new IOException("The response from the target has a line longer than " + MAX_LINE_LENGTH + " bytes");
+                }
+                line.append((char) (b & 0xff));
+            }
+        }
+
+        private ResponseHead readResponseHead() throws IOException {
+            while (true) {
+                String statusLine = readLine();
+                String[] parts = statusLine.split(" ", 3);
+                int status;
+                try {
+                    status = parts.length >= 2 && parts[0].startsWith("HTTP/") ? Integer.parseInt(parts[1]) : -1;
+                } catch (NumberFormatException e) {
+                    status = -1;
+                }
+                if (status < 100) {
+                    throw new IOException("Invalid status line from target: " + statusLine);
+                }
+                Map<String, List<String>> headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+                String line;
+                while (!(line = readLine()).isEmpty()) {
+                    int colon = line.indexOf(':');
+                    if (colon <= 0) {
+                        throw new IOException("Invalid header from target: " + line);
+                    }
+                    if (headers.size() >= MAX_HEADER_COUNT) {
+                        throw new IOException("The response from the target has more than " + MAX_HEADER_COUNT + " headers");
+                    }
+                    headers.computeIfAbsent(line.substring(0, colon).trim(), name -> new ArrayList<>(1)).add(line.substring(colon + 1).trim());
+                }
+                // informational responses such as 100 Continue are followed by the real response
+                if (status >= 200 || status == 101) {
+                    return new ResponseHead(parts[0], status, headers);
+                }
+            }
+        }
+
+        /**
+         * Reads up to the given number of bytes into a new buffer
+         * @return the data read, or null if the target closed the connection
+         */
+        private ByteBuffer readUpTo(int maxBytes) throws IOException {
+            if (!in.hasRemaining() && !fill()) {
+                return null;
+            }
+            int length = Math.min(maxBytes, in.remaining());
+            ByteBuffer buffer = ByteBuffer.allocate(length);
+            ByteBuffer slice = in.slice();
+            slice.limit(length);
+            buffer.put(slice).flip();
+            in.position(in.position() + length);
+            return buffer;
+        }
+
+        private void close() {
+            if (isClosed.compareAndSet(false, true)) {
+                openCount.decrementAndGet();
+            }
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    /**
+     * The connection used by a request, which is closed if the request is cancelled or times out so that the
+     * request's thread stops waiting for the target
+     */
+    private static class Exchange {
+        private Connection connection;
+        private boolean isAborted;
+        private boolean isFinished;
+        private volatile CompletableFuture<Void> headTimeout;
+
+        /**
+         * Fails the response if its head has not been received within the timeout, like the JDK HTTP client
+         */
+        private void startHeadTimeout(Duration timeout, CompletableFuture<?> result) {
+            CompletableFuture<Void> deadline = new CompletableFuture<>();
+            headTimeout = deadline;
+            deadline.orTimeout(timeout.toMillis(), TimeUnit.MILLISECONDS).whenComplete((ignored, error) -> {
+                if (error instanceof TimeoutException) {
+                    // the response is failed before the connection is closed, so it fails with the timeout
+                    result.completeExceptionally(new HttpTimeoutException("The target did not respond within " + timeout));
+                    abort();
+                }
+            });
+        }
+
+        private void headReceived() {
+            CompletableFuture<Void> deadline = headTimeout;
+            if (deadline != null) {
+                // this also removes the timeout task
+                deadline.complete(null);
+            }
+        }
+
+        private synchronized void use(Connection connection) throws IOException {
+            if (isAborted) {
+                connection.close();
+                throw new IOException("The request to the target was cancelled");
+            }
+            this.connection = connection;
+        }
+
+        private synchronized boolean isAborted() {
+            return isAborted;
+        }
+
+        private synchronized void abort() {
+            if (!isFinished) {
+                isAborted = true;
+                if (connection != null) {
+                    connection.close();
+                }
+            }
+        }
+
+        /**
+         * Stops the connection from being closed by a later cancellation, so that it can be reused
+         * @return false if the request was cancelled, in which case the connection is closed
+         */
+        private synchronized boolean finish() {
+            isFinished = true;
+            return !isAborted;
+        }
+    }
+
+    /**
+     * Receives a request body from its publisher one buffer at a time, for writing on the request's thread
+     */
+    private static class BodyQueue implements Flow.Subscriber<ByteBuffer> {
+        private static final Object COMPLETE = new Object();
+        private final BlockingQueue<Object> items = new LinkedBlockingQueue<>();
+        private volatile Flow.Subscription subscription;
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            subscription.request(1);
+        }
+
+        @Override
+        public void onNext(ByteBuffer item) {
+            items.add(item);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            items.add(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            items.add(COMPLETE);
+        }
+
+        /**
+         * Waits for the next buffer
+         * @param result the response, which stops the wait if it is completed or cancelled
+         * @return the next buffer, or null if the body is complete
+         */
+        private ByteBuffer take(CompletableFuture<?> result) throws IOException, InterruptedException {
+            while (true) {
+                Object item = items.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (item == COMPLETE) {
+                    return null;
+                } else if (item instanceof Throwable) {
+                    throw new IOException("Error reading the request body", (Throwable) item);
+                } else if (item != null) {
+                    return (ByteBuffer) item;
+                } else if (result.isDone()) {
+                    throw new IOException("The request was cancelled while sending the request body");
+                }
+            }
+        }
+
+        private boolean isEmpty() {
+            return items.isEmpty();
+        }
+
+        private void requestNext() {
+            subscription.request(1);
+        }
+
+        private void cancel() {
+            Flow.Subscription current = subscription;
+            if (current != null) {
+                current.cancel();
+            }
+        }
+    }
+
+    /**
+     * The demand of the response body subscriber
+     */
+    private static class Demand implements Flow.Subscription {
+        private final Runnable onCancel;
+        private long requested;
+        private boolean isCancelled;
+
+        private Demand(Runnable onCancel) {
+            this.onCancel = onCancel;
+        }
+
+        @Override
+        public synchronized void request(long n) {
+            if (n <= 0) {
+                cancel();
+                return;
+            }
+            requested = requested + n < 0 ? Long.MAX_VALUE : requested + n;
+            notifyAll();
+        }
+
+        @Override
+        public void cancel() {
+            synchronized (this) {
+                if (isCancelled) {
+                    return;
+                }
+                isCancelled = true;
+                notifyAll();
+            }
+            onCancel.run();
+        }
+
+        /**
+         * Waits until the subscriber has asked for another buffer, and uses up that request
+         * @return false if the subscriber has cancelled
+         */
+        private synchronized boolean await() throws InterruptedException {
+            while (requested == 0 && !isCancelled) {
+                wait(POLL_MILLIS);
+            }
+            if (isCancelled) {
+                return false;
+            }
+            requested--;
+            return true;
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.hsbc.cranker.connector;
+
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * A fixed set of HTTP clients that work is spread over in turn.
+ * <p>Each JDK HTTP client does all of its socket IO on a single selector thread, so using several clients
+ * allows the IO of one connector to use more than one core.</p>
+ */
+class HttpClientPool implements TargetTransport {
+
+    private final List<HttpClient> clients;
+    private final AtomicInteger counter = new AtomicInteger();
+
+    private HttpClientPool(List<HttpClient> clients) {
+        if (clients.isEmpty()) throw new IllegalArgumentException("At least one client is required");
+        this.clients = clients;
+    }
+
+    /**
+     * Creates a pool containing just the given client
+     * @param client the client
+     * @return a new pool
+     */
+    static HttpClientPool of(HttpClient client) {
+        return new HttpClientPool(List.of(client));
+    }
+
+    /**
+     * Creates a pool of newly created clients
+     * @param size the number of clients to create
+     * @param clientFactory creates each client
+     * @return a new pool
+     */
+    static HttpClientPool create(int size, Supplier<HttpClient> clientFactory) {
+        if (size < 1) throw new IllegalArgumentException("size must be at least 1");
+        HttpClient[] clients = new HttpClient[size];
+        for (int i = 0; i < size; i++) {
+            clients[i] = clientFactory.get();
+        }
+        return new HttpClientPool(List.of(clients));
+    }
+
+    /**
+     * Gets the next client in turn
+     * @return a client
+     */
+    HttpClient next() {
+        if (clients.size() == 1) {
+            return clients.get(0);
+        }
+        return clients.get(Math.floorMod(counter.getAndIncrement(), clients.size()));
+    }
+
+    /**
+     * Sends a request with the next client in turn
+     */
+    @Override
+    public <T> CompletableFuture<HttpResponse<T>> sendAsync(HttpRequest request, HttpResponse.BodyHandler<T> responseBodyHandler) {
+        return next().sendAsync(request, responseBodyHandler);
+    }
+
+    /**
+     * The first client of this pool
+     * @return the first client
+     */
+    HttpClient first() {
+        return clients.get(0);
+    }
+
+    /**
+     * All the clients of this pool
+     * @return all the clients
+     */
+    List<HttpClient> clients() {
+        return clients;
+    }
+}
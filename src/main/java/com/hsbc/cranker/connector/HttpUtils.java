@@ -60,6 +60,17 @@ class HttpUtils {
     }
 
     private static void trustAll(HttpClient.Builder builder) {
+        builder.sslContext(TrustAllContext.SSL_CONTEXT);
+    }
+
+    /**
+     * The trust-all SSL context, created once so that every client using it shares its TLS session cache
+     */
+    private static class TrustAllContext {
+        private static final SSLContext SSL_CONTEXT = createTrustAllContext();
+    }
+
+    private static SSLContext createTrustAllContext() {
         try {
             final TrustManager[] trustAllCerts = new TrustManager[]{
                 new X509ExtendedTrustManager() {
@@ -103,7 +114,7 @@ class HttpUtils {
                 }};
             SSLContext sslContext = SSLContext.getInstance("SSL");
             sslContext.init(null, trustAllCerts, new java.security.SecureRandom());
-            builder.sslContext(sslContext);
+            return sslContext;
 
         } catch (NoSuchAlgorithmException | KeyManagementException e) {
             throw new RuntimeException(e);
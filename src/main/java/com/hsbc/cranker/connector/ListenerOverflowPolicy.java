@@ -0,0 +1,17 @@
+package com.hsbc.cranker.connector;
+
+/**
+ * What to do with a listener event when the buffer of events waiting to be dispatched is full.
+ * <p>See {@link CrankerConnectorBuilder#withAsyncListenerDispatch(int, ListenerOverflowPolicy, long, java.util.concurrent.TimeUnit)}</p>
+ */
+public enum ListenerOverflowPolicy {
+    /**
+     * The event is dropped straight away, so the connector thread raising the event is never delayed.
+     */
+    DROP,
+    /**
+     * The connector thread raising the event waits for space in the buffer, up to the configured timeout, after
+     * which the event is dropped.
+     */
+    BLOCK
+}
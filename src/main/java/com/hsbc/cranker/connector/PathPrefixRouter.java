@@ -0,0 +1,154 @@
+package com.hsbc.cranker.connector;
+
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Sends each request to the target for the longest path prefix that matches the request path, so that the
+ * processes making up a service can share one connector, cranker route and set of router sockets.
+ * <p>Prefixes match whole path segments: <code>/api</code> matches <code>/api</code> and <code>/api/users</code>
+ * but not <code>/apis</code>. The prefixes are held in a trie of path segments, so a lookup only walks as many
+ * segments of the request path as there are in the longest matching prefix, however many prefixes there are.
+ * Requests that match no prefix go to the default target. The path is not changed. The sockets choose the target
+ * with {@link #select(URI)} before building the request.</p>
+ */
+class PathPrefixRouter implements TargetTransport, TargetSelector {
+
+    private final Node root = new Node();
+    private final TargetTransport defaultTarget;
+    private final TargetSelector defaultSelector;
+    private final boolean defaultAcceptsForwardedRequests;
+    private final Map<String, TargetPool> routes = new LinkedHashMap<>();
+
+    /**
+     * @param defaultTarget the transport for requests that match no prefix
+     */
+    PathPrefixRouter(TargetTransport defaultTarget) {
+        this.defaultTarget = defaultTarget;
+        this.defaultSelector = TargetSelector.of(defaultTarget);
+        this.defaultAcceptsForwardedRequests = ForwardedRequest.isAcceptedBy(defaultTarget);
+    }
+
+    /**
+     * Adds a prefix. This must not be called once requests are being sent.
+     * @param pathPrefix a path starting with <code>/</code>
+     * @param target the target of requests with paths starting with the prefix
+     */
+    void add(String pathPrefix, TargetPool target) {
+        Node node = root;
+        for (String segment : segments(pathPrefix)) {
+            node = node.children.computeIfAbsent(segment, s -> new Node());
+        }
+        node.target = target;
+        routes.put(pathPrefix, target);
+    }
+
+    /**
+     * A copy of this router whose prefix targets do not go through their circuit breakers
+     * @param defaultTarget the transport for requests that match no prefix
+     * @return a new router
+     */
+    PathPrefixRouter withoutCircuitBreakers(TargetTransport defaultTarget) {
+        PathPrefixRouter router = new PathPrefixRouter(defaultTarget);
+        for (Map.Entry<String, TargetPool> route : routes.entrySet()) {
+            router.add(route.getKey(), route.getValue().withoutCircuitBreakers());
+        }
+        return router;
+    }
+
+    private static List<String> segments(String path) {
+        List<String> segments = new ArrayList<>();
+        for (String segment : path.split("/")) {
+            if (!segment.isEmpty()) {
+                segments.add(segment);
+            }
+        }
+        return segments;
+    }
+
+    /**
+     * Finds the target for the longest prefix matching a raw path
+     * @param rawPath the path of a request
+     * @return the target, or null if no prefix matches
+     */
+    TargetPool find(String rawPath) {
+        Node node = root;
+        TargetPool match = root.target;
+        int start = 0;
+        int length = rawPath == null ? 0 : rawPath.length();
+        while (start < length && !node.children.isEmpty()) {
+            if (rawPath.charAt(start) == '/') {
+                start++;
+                continue;
+            }
+            int end = rawPath.indexOf('/', start);
+            if (end == -1) {
+                end = length;
+            }
+            node = node.children.get(rawPath.substring(start, end));
+            if (node == null) {
+                break;
+            }
+            if (node.target != null) {
+                match = node.target;
+            }
+            start = end;
+        }
+        return match;
+    }
+
+    @Override
+    public TargetSelector.Selection select(URI uri) {
+        TargetPool target = find(uri.getRawPath());
+        if (target != null) {
+            return target.select(uri);
+        }
+        return defaultSelector.select(uri);
+    }
+
+    @Override
+    public <T> CompletableFuture<HttpResponse<T>> sendAsync(HttpRequest request, HttpResponse.BodyHandler<T> responseBodyHandler) {
+        TargetPool target = find(request.uri().getRawPath());
+        if (target != null) {
+            return target.sendAsync(request, responseBodyHandler);
+        }
+        if (request instanceof ForwardedRequest && !defaultAcceptsForwardedRequests) {
+            request = ((ForwardedRequest) request).toHttpRequest();
+        }
+        return defaultTarget.sendAsync(request, responseBodyHandler);
+    }
+
+    /**
+     * The statistics of the default target and all the prefix targets added together
+     * @param defaultStats the statistics of the default target
+     * @return the current statistics
+     */
+    TargetConnectionStats stats(TargetConnectionStats defaultStats) {
+        List<TargetConnectionStats> stats = new ArrayList<>(routes.size() + 1);
+        stats.add(defaultStats);
+        for (TargetPool route : routes.values()) {
+            stats.add(route.stats());
+        }
+        return TargetConnectionStats.sum(stats);
+    }
+
+    @Override
+    public String toString() {
+        return "PathPrefixRouter{" +
+            "routes=" + routes +
+            ", defaultTarget=" + defaultTarget +
+            '}';
+    }
+
+    private static class Node {
+        private final Map<String, Node> children = new HashMap<>();
+        private TargetPool target;
+    }
+}
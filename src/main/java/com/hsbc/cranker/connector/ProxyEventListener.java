@@ -7,9 +7,20 @@ import java.net.http.HttpRequest;
  */
 public interface ProxyEventListener {
     /**
-     * Called when the request headers are received, before the request is sent to the target server.
+     * Called when the request headers are received, before the request to the target server is built.
+     * <p>This is the cheapest way to inspect or change a request, for example to add an authorization or
+     * tracing header, as the changes are made before the request to the target is built, so it is built once.</p>
+     * @param request A view of the request, which can be changed during this call
+     */
+    default void beforeProxyToTarget(ProxyRequest request) {
+    }
+
+    /**
+     * Called when the request to the target server has been built, before it is sent to the target server.
      * <p>This callback can be used to inspect or change the request before it is sent to the target
-     * server.</p>
+     * server. Changing the request means building it again with the builder, so
+     * {@link #beforeProxyToTarget(ProxyRequest)} should be used to change headers instead. When this method is not
+     * overridden, the connector does not call it.</p>
      * @param request The request that was prepared to be sent to the target server
      * @param requestBuilder The builder that created the request, which may be used to generate a new
      *                       request if the original request needs to be modified
@@ -0,0 +1,66 @@
+package com.hsbc.cranker.connector;
+
+import java.util.List;
+
+/**
+ * A request received from a router, before the request to the target server is built from it.
+ * <p>This is given to {@link ProxyEventListener#beforeProxyToTarget(ProxyRequest)} so that a listener can add,
+ * change or remove headers, or change the method or path, without the request to the target being built more
+ * than once. Header names are case-insensitive. The view is only valid during that callback.</p>
+ */
+public interface ProxyRequest {
+
+    /**
+     * @return The HTTP method, such as <code>GET</code>
+     */
+    String method();
+
+    /**
+     * Changes the HTTP method of the request to the target
+     * @param method The new method
+     */
+    void setMethod(String method);
+
+    /**
+     * @return The raw path and query string, such as <code>/things?sort=name</code>
+     */
+    String path();
+
+    /**
+     * Changes the path and query string of the request to the target
+     * @param path The new raw path and query string, starting with <code>/</code>
+     */
+    void setPath(String path);
+
+    /**
+     * @param name The header name
+     * @return The first value of the header, or <code>null</code> if the request does not have it
+     */
+    String header(String name);
+
+    /**
+     * @param name The header name
+     * @return All the values of the header, which is empty if the request does not have it
+     */
+    List<String> headers(String name);
+
+    /**
+     * Adds a header value, keeping any existing values of the header
+     * @param name The header name
+     * @param value The value to add
+     */
+    void addHeader(String name, String value);
+
+    /**
+     * Sets a header, replacing any existing values of the header
+     * @param name The header name
+     * @param value The value
+     */
+    void setHeader(String name, String value);
+
+    /**
+     * Removes all the values of a header
+     * @param name The header name
+     */
+    void removeHeader(String name);
+}
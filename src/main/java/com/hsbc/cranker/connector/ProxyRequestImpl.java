@@ -0,0 +1,141 @@
+package com.hsbc.cranker.connector;
+
+import java.net.http.HttpRequest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A {@link ProxyRequest} over the header lines received from the router, which are only copied if a listener
+ * changes them.
+ */
+class ProxyRequestImpl implements ProxyRequest {
+
+    private String method;
+    private String path;
+    private String[] headerLines;
+    private List<String> changedLines;
+
+    ProxyRequestImpl(String method, String path, String[] headerLines) {
+        this.method = method;
+        this.path = path;
+        this.headerLines = headerLines;
+    }
+
+    /**
+     * Checks whether a listener overrides {@link ProxyEventListener#beforeProxyToTarget(HttpRequest, HttpRequest.Builder)},
+     * which needs the request to the target to be built before it is called, so that the work can be skipped when it does not
+     * @param listener the listener
+     * @return true if the listener's request builder callback must be called
+     */
+    static boolean usesRequestBuilder(ProxyEventListener listener) {
+        if (listener instanceof EventDispatcher.DispatchingProxyEventListener) {
+            return usesRequestBuilder(((EventDispatcher.DispatchingProxyEventListener) listener).listener());
+        }
+        try {
+            return listener.getClass().getMethod("beforeProxyToTarget", HttpRequest.class, HttpRequest.Builder.class)
+                .getDeclaringClass() != ProxyEventListener.class;
+        } catch (NoSuchMethodException e) {
+            return true;
+        }
+    }
+
+    /**
+     * @return the header lines, in the form <code>name:value</code>, which are the lines given to the
+     * constructor if no headers were changed
+     */
+    String[] headerLines() {
+        if (changedLines != null) {
+            headerLines = changedLines.toArray(new String[0]);
+            changedLines = null;
+        }
+        return headerLines;
+    }
+
+    @Override
+    public String method() {
+        return method;
+    }
+
+    @Override
+    public void setMethod(String method) {
+        if (method == null || method.isEmpty()) throw new IllegalArgumentException("method cannot be empty");
+        this.method = method;
+    }
+
+    @Override
+    public String path() {
+        return path;
+    }
+
+    @Override
+    public void setPath(String path) {
+        if (path == null || !path.startsWith("/")) throw new IllegalArgumentException("path must start with '/'");
+        this.path = path;
+    }
+
+    @Override
+    public String header(String name) {
+        for (String line : lines()) {
+            if (isHeader(line, name)) {
+                return line.substring(name.length() + 1).trim();
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public List<String> headers(String name) {
+        List<String> values = new ArrayList<>(1);
+        for (String line : lines()) {
+            if (isHeader(line, name)) {
+                values.add(line.substring(name.length() + 1).trim());
+            }
+        }
+        return values;
+    }
+
+    @Override
+    public void addHeader(String name, String value) {
+        checkHeader(name, value);
+        changeableLines().add(name + ":" + value);
+    }
+
+    @Override
+    public void setHeader(String name, String value) {
+        checkHeader(name, value);
+        removeHeader(name);
+        changeableLines().add(name + ":" + value);
+    }
+
+    @Override
+    public void removeHeader(String name) {
+        changeableLines().removeIf(line -> isHeader(line, name));
+    }
+
+    private List<String> lines() {
+        return changedLines != null ? changedLines : Arrays.asList(headerLines);
+    }
+
+    private List<String> changeableLines() {
+        if (changedLines == null) {
+            changedLines = new ArrayList<>(headerLines.length + 2);
+            changedLines.addAll(Arrays.asList(headerLines));
+        }
+        return changedLines;
+    }
+
+    private static void checkHeader(String name, String value) {
+        if (name == null || name.isEmpty() || name.indexOf(':') >= 0) throw new IllegalArgumentException("Invalid header name: " + name);
+        if (value == null || value.indexOf('\r') >= 0 || value.indexOf('\n') >= 0) throw new IllegalArgumentException("Invalid value for header " + name);
+    }
+
+    private static boolean isHeader(String line, String name) {
+        return line.length() > name.length() && line.charAt(name.length()) == ':' && line.regionMatches(true, 0, name, 0, name.length());
+    }
+
+    @Override
+    public String toString() {
+        return method + " " + path;
+    }
+}
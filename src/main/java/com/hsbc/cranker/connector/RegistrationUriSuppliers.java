@@ -4,7 +4,11 @@ import java.net.InetAddress;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.UnknownHostException;
+import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
@@ -80,6 +84,62 @@ public class RegistrationUriSuppliers {
         return new DnsLookupSupplier(asList(registrationUris));
     }
 
+    /**
+     * Creates a supplier that generates registration URIs based on a DNS name, like {@link #dnsLookup(Collection)},
+     * but resolves the hostnames in parallel on background threads and caches the results.
+     * <p>Each hostname's addresses are cached for <code>ttl</code>. When the supplier is called, any expired
+     * hostnames are looked up again in the background while the cached addresses are returned straight away, so a
+     * slow DNS server does not hold up the connector's router updates. Only hostnames that have never been resolved
+     * are waited for, in parallel and for at most <code>lookupTimeout</code>. If a lookup fails, the last successful
+     * result for that hostname is used until a lookup succeeds.</p>
+     * <p>The returned supplier also records how long each lookup takes; see {@link AsyncDnsLookupSupplier#lookupTimes()}.</p>
+     * <p>The lookup threads are released by {@link AsyncDnsLookupSupplier#close()}, which the connector or connector
+     * group that the supplier is given to calls when it stops.</p>
+     * <p>The note about hostname checking in {@link #dnsLookup(Collection)} also applies to this supplier.</p>
+     * @param ttl How long to use the results of a lookup before looking the hostname up again
+     * @param lookupTimeout The maximum time to wait for hostnames that have not been resolved yet
+     * @param registrationUris The URI(s) to return, in the format <code>wss://crankerrouter.example.org</code>
+     * @return A registration URI supplier
+     */
+    public static AsyncDnsLookupSupplier asyncDnsLookup(Duration ttl, Duration lookupTimeout, Collection<URI> registrationUris) {
+        return new AsyncDnsLookupSupplier(ttl, lookupTimeout, registrationUris, InetAddress::getAllByName);
+    }
+
+    /**
+     * Creates a supplier that generates registration URIs based on a DNS name, resolving the hostnames in parallel
+     * and caching the results. See {@link #asyncDnsLookup(Duration, Duration, Collection)} for details.
+     * @param ttl How long to use the results of a lookup before looking the hostname up again
+     * @param lookupTimeout The maximum time to wait for hostnames that have not been resolved yet
+     * @param registrationUris The URI(s) to return, in the format <code>wss://crankerrouter.example.org</code>
+     * @return A registration URI supplier
+     */
+    public static AsyncDnsLookupSupplier asyncDnsLookup(Duration ttl, Duration lookupTimeout, URI... registrationUris) {
+        return asyncDnsLookup(ttl, lookupTimeout, asList(registrationUris));
+    }
+
+    private static void validateDnsUris(Collection<URI> registrationAddresses) {
+        if (registrationAddresses == null || registrationAddresses.isEmpty()) {
+            throw new IllegalArgumentException("No registration URLs were specified");
+        }
+        for (URI dns : registrationAddresses) {
+            if (!List.of("ws", "wss").contains(dns.getScheme())) {
+                throw new IllegalArgumentException("The registration DNS URI should have a 'wss' or 'ws' scheme. It was '" + dns + "'");
+            }
+        }
+    }
+
+    private static List<URI> toRegistrationUris(URI uri, InetAddress[] machines) {
+        return Arrays.stream(machines)
+            .map(address -> {
+                try {
+                    return new URI(uri.getScheme(), null, address.getHostAddress(), uri.getPort(), null, null, null);
+                } catch (URISyntaxException e) {
+                    throw new RuntimeException("Error generating registration URI based on " + uri, e);
+                }
+            })
+            .collect(Collectors.toList());
+    }
+
 
     private static class FixedUrls implements Supplier<Collection<URI>> {
         private final Collection<URI> urls;
@@ -98,14 +158,7 @@ public class RegistrationUriSuppliers {
         private final Collection<URI> registrationAddresses;
 
         private DnsLookupSupplier(Collection<URI> registrationAddresses) {
-            if (registrationAddresses == null || registrationAddresses.isEmpty()) {
-                throw new IllegalArgumentException("No registration URLs were specified");
-            }
-            for (URI dns : registrationAddresses) {
-                if (!List.of("ws", "wss").contains(dns.getScheme())) {
-                    throw new IllegalArgumentException("The registration DNS URI should have a 'wss' or 'ws' scheme. It was '" + dns + "'");
-                }
-            }
+            validateDnsUris(registrationAddresses);
             this.registrationAddresses = registrationAddresses;
 
         }
@@ -120,20 +173,171 @@ public class RegistrationUriSuppliers {
                 } catch (UnknownHostException e) {
                     throw new RuntimeException("Error running DNS lookup for " + uri, e);
                 }
-                resolved.addAll(Arrays.stream(machines)
-                    .map(address -> {
-                        try {
-                            return new URI(uri.getScheme(), null, address.getHostAddress(), uri.getPort(), null, null, null);
-                        } catch (URISyntaxException e) {
-                            throw new RuntimeException("Error generating registration URI based on " + uri, e);
-                        }
-                    })
-                    .collect(Collectors.toList()));
+                resolved.addAll(toRegistrationUris(uri, machines));
+            }
+            return resolved;
+
+        }
+
+    }
+
+    /**
+     * Looks up hostnames in DNS
+     */
+    interface HostResolver {
+        InetAddress[] resolve(String host) throws UnknownHostException;
+    }
+
+    /**
+     * A registration URI supplier that resolves hostnames in parallel on background threads and caches the results.
+     * <p>Create with {@link #asyncDnsLookup(Duration, Duration, Collection)}</p>
+     */
+    public static final class AsyncDnsLookupSupplier implements Supplier<Collection<URI>>, AutoCloseable {
+        private static final AtomicInteger threadCounter = new AtomicInteger();
+        private final List<URI> registrationAddresses;
+        private final long ttlNanos;
+        private final long lookupTimeoutNanos;
+        private final HostResolver resolver;
+        private final ExecutorService lookupExecutor;
+        private final Map<URI, CachedLookup> cache = new ConcurrentHashMap<>();
+        private final Map<URI, CompletableFuture<List<URI>>> inProgress = new ConcurrentHashMap<>();
+        private final Map<URI, Duration> lookupTimes = new ConcurrentHashMap<>();
+        private final AtomicLong failedLookups = new AtomicLong();
+
+        AsyncDnsLookupSupplier(Duration ttl, Duration lookupTimeout, Collection<URI> registrationAddresses, HostResolver resolver) {
+            validateDnsUris(registrationAddresses);
+            if (ttl == null || ttl.isNegative()) throw new IllegalArgumentException("ttl must not be negative");
+            if (lookupTimeout == null || lookupTimeout.isNegative()) throw new IllegalArgumentException("lookupTimeout must not be negative");
+            this.registrationAddresses = List.copyOf(registrationAddresses);
+            this.ttlNanos = ttl.toNanos();
+            this.lookupTimeoutNanos = lookupTimeout.toNanos();
+            this.resolver = resolver;
+            this.lookupExecutor = Executors.newCachedThreadPool(runnable -> {
+                Thread thread = new Thread(runnable, "cranker-dns-lookup-" + threadCounter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+
+        @Override
+        public Collection<URI> get() {
+            long now = System.nanoTime();
+            List<CompletableFuture<List<URI>>> firstLookups = new ArrayList<>();
+            for (URI uri : registrationAddresses) {
+                CachedLookup cached = cache.get(uri);
+                if (cached == null) {
+                    firstLookups.add(lookup(uri));
+                } else if (now - cached.resolvedAt >= ttlNanos) {
+                    // the cached addresses are returned until the lookup completes, so it is not waited for
+                    lookup(uri);
+                }
+            }
+            Throwable lookupError = null;
+            if (!firstLookups.isEmpty()) {
+                try {
+                    CompletableFuture.allOf(firstLookups.toArray(new CompletableFuture<?>[0])).get(lookupTimeoutNanos, TimeUnit.NANOSECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    lookupError = e;
+                } catch (ExecutionException e) {
+                    lookupError = e.getCause();
+                } catch (TimeoutException e) {
+                    lookupError = e;
+                }
+            }
+            List<URI> resolved = new ArrayList<>();
+            for (URI uri : registrationAddresses) {
+                CachedLookup cached = cache.get(uri);
+                if (cached != null) {
+                    resolved.addAll(cached.uris);
+                }
+            }
+            if (resolved.isEmpty() && lookupError != null) {
+                throw new RuntimeException("Error running DNS lookup for " + registrationAddresses, lookupError);
             }
             return resolved;
+        }
+
+        private CompletableFuture<List<URI>> lookup(URI uri) {
+            CompletableFuture<List<URI>> existing = inProgress.get(uri);
+            if (existing != null) {
+                return existing;
+            }
+            CompletableFuture<List<URI>> lookup = new CompletableFuture<>();
+            existing = inProgress.putIfAbsent(uri, lookup);
+            if (existing != null) {
+                return existing;
+            }
+            try {
+                lookupExecutor.execute(() -> resolve(uri, lookup));
+            } catch (RejectedExecutionException e) {
+                inProgress.remove(uri, lookup);
+                lookup.completeExceptionally(new IllegalStateException("The DNS lookup supplier is closed", e));
+            }
+            return lookup;
+        }
+
+        private void resolve(URI uri, CompletableFuture<List<URI>> lookup) {
+            long start = System.nanoTime();
+            try {
+                List<URI> uris = toRegistrationUris(uri, resolver.resolve(uri.getHost()));
+                long end = System.nanoTime();
+                lookupTimes.put(uri, Duration.ofNanos(end - start));
+                cache.put(uri, new CachedLookup(uris, end));
+                lookup.complete(uris);
+            } catch (Throwable e) {
+                lookupTimes.put(uri, Duration.ofNanos(System.nanoTime() - start));
+                failedLookups.incrementAndGet();
+                lookup.completeExceptionally(new RuntimeException("Error running DNS lookup for " + uri, e));
+            } finally {
+                inProgress.remove(uri, lookup);
+            }
+        }
+
+        /**
+         * How long the most recent lookup of each registration URI took, whether it succeeded or failed
+         * @return The lookup durations of the registration URIs that have been looked up at least once
+         */
+        public Map<URI, Duration> lookupTimes() {
+            return Collections.unmodifiableMap(new HashMap<>(lookupTimes));
+        }
 
+        /**
+         * The number of lookups that failed. The last good results are used for a hostname whose lookup failed.
+         * @return The number of failed lookups since this supplier was created
+         */
+        public long failedLookups() {
+            return failedLookups.get();
         }
 
+        /**
+         * Stops the lookup threads. After closing, the cached addresses are still returned, but hostnames are no
+         * longer looked up.
+         */
+        @Override
+        public void close() {
+            lookupExecutor.shutdownNow();
+        }
+
+        @Override
+        public String toString() {
+            return "AsyncDnsLookupSupplier{" +
+                "registrationAddresses=" + registrationAddresses +
+                ", ttl=" + Duration.ofNanos(ttlNanos) +
+                ", lookupTimes=" + lookupTimes +
+                ", failedLookups=" + failedLookups +
+                '}';
+        }
+
+        private static class CachedLookup {
+            private final List<URI> uris;
+            private final long resolvedAt;
+
+            private CachedLookup(List<URI> uris, long resolvedAt) {
+                this.uris = uris;
+                this.resolvedAt = resolvedAt;
+            }
+        }
     }
 
 }
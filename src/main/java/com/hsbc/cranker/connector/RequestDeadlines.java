@@ -0,0 +1,129 @@
+package com.hsbc.cranker.connector;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Decides how long a proxied request may take, so that the work for a request whose client has given up does
+ * not stay on the target and in the connector for ever.
+ * <p>A deadline can be set for every request on the route, overridden for requests whose paths start with a
+ * prefix, and shortened by the client with a request header holding the number of milliseconds it will wait.
+ * The shortest of these applies. The time left is sent on to the target in the same header, so that it can give
+ * up too.</p>
+ */
+class RequestDeadlines {
+
+    /**
+     * The header used to send the deadline on to the target when no header is read from the client
+     */
+    static final String DEFAULT_HEADER = "X-Request-Deadline";
+
+    private final long routeMillis;
+    private final List<Map.Entry<String, Long>> prefixMillis = new ArrayList<>();
+    private final String clientHeader;
+    private final String targetHeader;
+
+    /**
+     * @param routeDeadline the deadline of every request, or null for none
+     * @param prefixDeadlines deadlines for requests with paths starting with a prefix, which replace the route deadline
+     * @param clientHeader the request header that clients can set a deadline with, or null to ignore deadlines from clients
+     */
+    RequestDeadlines(Duration routeDeadline, Map<String, Duration> prefixDeadlines, String clientHeader) {
+        this.routeMillis = routeDeadline == null ? -1 : routeDeadline.toMillis();
+        for (Map.Entry<String, Duration> entry : prefixDeadlines.entrySet()) {
+            String prefix = entry.getKey().endsWith("/") ? entry.getKey().substring(0, entry.getKey().length() - 1) : entry.getKey();
+            prefixMillis.add(Map.entry(prefix, entry.getValue().toMillis()));
+        }
+        // longest first, so that the first match is the most specific
+        prefixMillis.sort(Comparator.comparingInt((Map.Entry<String, Long> e) -> e.getKey().length()).reversed());
+        this.clientHeader = clientHeader;
+        this.targetHeader = clientHeader != null ? clientHeader : DEFAULT_HEADER;
+    }
+
+    /**
+     * Finds the deadline of a request
+     * @param rawPath the path of the request
+     * @param headerLines the header lines of the request, in the form <code>name:value</code>
+     * @return the number of milliseconds the request may take, or <code>-1</code> if there is no deadline
+     */
+    long millisFor(String rawPath, String[] headerLines) {
+        long millis = routeMillis;
+        String path = rawPath == null ? "" : rawPath;
+        for (Map.Entry<String, Long> prefix : prefixMillis) {
+            String p = prefix.getKey();
+            if (path.startsWith(p) && (path.length() == p.length() || path.charAt(p.length()) == '/')) {
+                millis = prefix.getValue();
+                break;
+            }
+        }
+        if (clientHeader != null) {
+            long fromClient = clientMillis(headerLines);
+            if (fromClient >= 0 && (millis < 0 || fromClient < millis)) {
+                millis = fromClient;
+            }
+        }
+        return millis;
+    }
+
+    private long clientMillis(String[] headerLines) {
+        for (String line : headerLines) {
+            if (isHeader(line, clientHeader)) {
+                try {
+                    return Math.max(0, Long.parseLong(line.substring(clientHeader.length() + 1).trim()));
+                } catch (NumberFormatException e) {
+                    return -1;
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Replaces any deadline header the client sent with the time left
+     * @param headerLines the header lines received from the router
+     * @param millis the number of milliseconds the target has
+     * @return a new array of header lines
+     */
+    String[] withDeadlineHeader(String[] headerLines, long millis) {
+        List<String> lines = new ArrayList<>(headerLines.length + 1);
+        for (String line : headerLines) {
+            if (!isHeader(line, targetHeader)) {
+                lines.add(line);
+            }
+        }
+        lines.add(targetHeader + ":" + millis);
+        return lines.toArray(new String[0]);
+    }
+
+    /**
+     * Creates the single thread that the sockets schedule their deadlines and other timers on. Nearly every
+     * deadline is cancelled when its request completes, so cancelled tasks are removed from the queue straight away
+     * rather than staying there until they would have run.
+     * @param threadFactory the factory for the thread
+     * @return a new scheduler
+     */
+    static ScheduledExecutorService newScheduler(ThreadFactory threadFactory) {
+        ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1, threadFactory);
+        scheduler.setRemoveOnCancelPolicy(true);
+        return scheduler;
+    }
+
+    private static boolean isHeader(String line, String name) {
+        return line.length() > name.length() && line.charAt(name.length()) == ':' && line.regionMatches(true, 0, name, 0, name.length());
+    }
+
+    @Override
+    public String toString() {
+        return "RequestDeadlines{" +
+            "routeMillis=" + routeMillis +
+            ", prefixMillis=" + prefixMillis +
+            ", clientHeader=" + clientHeader +
+            '}';
+    }
+}
@@ -1,5 +1,6 @@
 package com.hsbc.cranker.connector;
 
+import java.time.Duration;
 import java.util.List;
 
 /**
@@ -29,6 +30,14 @@ public interface RouterEventListener {
      */
     default void onRouterDnsLookupError(Throwable error) {}
 
+    /**
+     * Called when the connector has got back to the expected number of connections to a router after
+     * connections were lost, for example because the router restarted.
+     * @param router The router that the connector reconnected to
+     * @param restoreTime The time from the first lost connection until the expected number of connections were open again
+     */
+    default void onCapacityRestored(RouterRegistration router, Duration restoreTime) {}
+
     /**
      * The data about a change in router registration passed to {@link #onRegistrationChanged(ChangeData)}
      */
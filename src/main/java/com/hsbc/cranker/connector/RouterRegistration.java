@@ -1,15 +1,18 @@
 package com.hsbc.cranker.connector;
 
 import java.net.URI;
-import java.net.http.HttpClient;
 import java.net.http.WebSocket;
 import java.time.Duration;
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Stream;
 
 /**
@@ -19,7 +22,13 @@ import java.util.stream.Stream;
 public interface RouterRegistration {
 
     /**
-     * The number of expected idle connections to this router
+     * The number of expected idle connections to this router.
+     * <p>This is the sliding window size, unless an adaptive window is configured with
+     * {@link CrankerConnectorBuilder#withAdaptiveSlidingWindow(int, int)} in which case it is the window size
+     * currently chosen for this router. Likewise, if {@link CrankerConnectorBuilder#withStreamAwareSocketScaling(int, long, int)}
+     * is used with a <code>cranker_3.0</code> router, it is the number of connections currently needed for the load.</p>
+     * <p>If {@link CrankerConnectorBuilder#withSocketBudget(int)} is used, this router's share of the budget takes the
+     * place of the sliding window size.</p>
      * @return The number of expected idle connections to this router
      */
     int expectedWindowSize();
@@ -36,6 +45,15 @@ public interface RouterRegistration {
      */
     Collection<ConnectorSocket> idleSockets();
 
+    /**
+     * The number of requests from this router that are currently being processed. This can be used to follow the
+     * progress of {@link CrankerConnector#stopAsync(long, TimeUnit)}.
+     * @return The number of in-flight requests (or streams, for cranker_3.0) on the connections to this router
+     */
+    default int inFlightRequests() {
+        return 0;
+    }
+
     /**
      * The router's websocket registration URI
      * @return The router's websocket registration URI
@@ -49,7 +67,7 @@ public interface RouterRegistration {
     State state();
 
     /**
-     * If a router is unavailable, then the connector will repeatedly retry (with exponential backoff, up to 10 seconds).
+     * If a router is unavailable, then the connector will repeatedly retry (with jittered exponential backoff, up to 10 seconds).
      * This returns the current number of failed attempts. When an attempt is succesful, this is reset to 0.
      *
      * @return The current number of failed attempts to connect to this router
@@ -62,6 +80,16 @@ public interface RouterRegistration {
      */
     Throwable lastConnectionError();
 
+    /**
+     * How long it took to get back to the expected number of connections the last time connections to this
+     * router were lost, for example because the router restarted.
+     * @return The time from the first lost connection until the window was full again, or null if connections
+     * have not been lost
+     */
+    default Duration lastCapacityRestoreTime() {
+        return null;
+    }
+
     /**
      * The state of a router from the connector's point of view
      */
@@ -86,53 +114,105 @@ public interface RouterRegistration {
 
 }
 
-class RouterRegistrationImpl implements ConnectorSocketListener, RouterRegistration {
+class RouterRegistrationImpl implements ConnectorSocketListener, RouterRegistration, TargetCircuitBreaker.Listener {
 
     private final static String CRANKER_PROTOCOL = "CrankerProtocol"; // 1.0
 
     private volatile State state = State.NOT_STARTED;
     private final List<String> preferredProtocols;
-    private final HttpClient client;
+    private final String[] lessPreferredProtocols;
+    private final HttpClientPool routerClients;
+    private final TargetTransport targetTransport;
+    private final TargetCircuitBreakers circuitBreakers;
+    private final RequestDeadlines deadlines;
     private final URI registrationUri;
     private final String domain;
     private final String route;
     private final int windowSize;
+    private volatile int allocatedWindowSize;
+    private volatile double budgetWeight = -1;
+    private final SocketBudget.RouterLoad load = new SocketBudget.RouterLoad();
     private final Set<ConnectorSocket> idleSockets = ConcurrentHashMap.newKeySet();
     private final Set<ConnectorSocket> runningSockets = ConcurrentHashMap.newKeySet();
-    private final URI targetUri;
+    private final TargetUriCache targetUris;
     private final ScheduledExecutorService executor;
+    private final StreamExecutor streamExecutor;
     private final AtomicInteger connectAttempts = new AtomicInteger();
     private volatile Throwable lastConnectionError;
     private final RouterEventListener routerEventListener;
     private final ProxyEventListener proxyEventListener;
     private final RegistrationEventListener registrationEventListener;
+    private final AtomicBoolean isStarted = new AtomicBoolean(false);
     private final AtomicBoolean isAddMissingScheduled = new AtomicBoolean(false);
-
-    RouterRegistrationImpl(List<String> preferredProtocols, HttpClient client, URI registrationUri, String domain, String route, int windowSize, URI targetUri,
-                           ScheduledExecutorService executor, RouterEventListener routerEventListener,
-                           ProxyEventListener proxyEventListener, RegistrationEventListener registrationEventListener) {
+    private final AtomicBoolean isRateLimitedRetryScheduled = new AtomicBoolean(false);
+    private final ConnectionRateLimiter rateLimiter;
+    private final AtomicLong lastBackoffMillis = new AtomicLong();
+    private final AtomicInteger pendingConnects = new AtomicInteger();
+    private final AtomicLong capacityLostAtNanos = new AtomicLong(-1);
+    private volatile Duration lastCapacityRestoreTime;
+    private final Queue<ReadinessWaiter> readinessWaiters = new ConcurrentLinkedQueue<>();
+    private final AdaptiveWindow adaptiveWindow;
+    private final Map<ConnectorSocket, Long> acquiredTimes = new ConcurrentHashMap<>();
+    private volatile String negotiatedProtocol;
+    private final SocketScaler socketScaler;
+    private final HandshakePipeline handshakePipeline;
+    private volatile int scaledSocketCount;
+    private volatile ScheduledFuture<?> windowAdjustmentTask;
+
+    RouterRegistrationImpl(List<String> preferredProtocols, HttpClientPool routerClients, TargetTransport targetTransport, TargetCircuitBreakers circuitBreakers, RequestDeadlines deadlines, URI registrationUri, String domain, String route, int windowSize, TargetUriCache targetUris,
+                           AdaptiveWindow adaptiveWindow, SocketScaler socketScaler, HandshakePipeline handshakePipeline, ConnectionRateLimiter rateLimiter,
+                           ScheduledExecutorService executor, StreamExecutor streamExecutor,
+                           RouterEventListener routerEventListener, ProxyEventListener proxyEventListener,
+                           RegistrationEventListener registrationEventListener) {
         this.preferredProtocols = preferredProtocols;
-        this.client = client;
+        this.lessPreferredProtocols = getLessPreferredProtocol(preferredProtocols);
+        this.routerClients = routerClients;
+        this.targetTransport = targetTransport;
+        this.circuitBreakers = circuitBreakers;
+        this.deadlines = deadlines;
         this.registrationUri = registrationUri;
         this.domain = domain;
         this.route = route;
         this.windowSize = windowSize;
-        this.targetUri = targetUri;
+        this.allocatedWindowSize = windowSize;
+        this.targetUris = targetUris;
+        this.adaptiveWindow = adaptiveWindow;
+        this.socketScaler = socketScaler;
+        this.handshakePipeline = handshakePipeline;
+        this.rateLimiter = rateLimiter;
+        this.scaledSocketCount = windowSize;
         this.executor = executor;
+        this.streamExecutor = streamExecutor;
         this.routerEventListener = routerEventListener;
         this.proxyEventListener = proxyEventListener;
         this.registrationEventListener = registrationEventListener;
     }
 
     void start() {
+        // a second start would register the circuit listener and open the initial sockets again
+        if (!isStarted.compareAndSet(false, true)) {
+            return;
+        }
         state = State.ACTIVE;
+        if (circuitBreakers != null) {
+            circuitBreakers.addListener(this);
+        }
         addAnyMissing();
+        if ((adaptiveWindow != null || socketScaler != null || handshakePipeline != null) && windowAdjustmentTask == null) {
+            windowAdjustmentTask = executor.scheduleWithFixedDelay(this::adjustWindow, 1, 1, TimeUnit.SECONDS);
+        }
     }
 
     CompletableFuture<Void> stop(int timeout, TimeUnit timeUnit) {
         state = State.STOPPING;
+        if (windowAdjustmentTask != null) {
+            windowAdjustmentTask.cancel(false);
+        }
+        if (circuitBreakers != null) {
+            circuitBreakers.removeListener(this);
+        }
         URI deregisterUri = registrationUri.resolve("/deregister/?" + registrationUri.getRawQuery());
-        return client.newWebSocketBuilder()
+        return routerClients.next().newWebSocketBuilder()
             .header(CRANKER_PROTOCOL, "1.0") // for backward compatibility
             .header("Route", this.route)
             .header("Domain", this.domain)
@@ -181,42 +261,230 @@ class RouterRegistrationImpl implements ConnectorSocketListener, RouterRegistrat
 
     private void addAnythingMissingWithBackoff() {
         if (isAddMissingScheduled.compareAndSet(false, true)) {
-            int attempts = connectAttempts.incrementAndGet();
+            connectAttempts.incrementAndGet();
+            long delay = ConnectionRateLimiter.backoffMillis(lastBackoffMillis.get(), ThreadLocalRandom.current());
+            lastBackoffMillis.set(delay);
             executor.schedule(() -> {
                 isAddMissingScheduled.set(false);
                 addAnyMissing();
-            }, retryAfterMillis(attempts), TimeUnit.MILLISECONDS);
+            }, delay, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void addAnythingMissingAfter(long delayNanos) {
+        if (isRateLimitedRetryScheduled.compareAndSet(false, true)) {
+            executor.schedule(() -> {
+                isRateLimitedRetryScheduled.set(false);
+                addAnyMissing();
+            }, delayNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Gets a future that completes when at least the given number of sockets are connected to the router
+     * @param sockets the number of connected sockets to wait for
+     * @return a future that completes when the sockets are connected
+     */
+    CompletableFuture<Void> whenConnected(int sockets) {
+        ReadinessWaiter waiter = new ReadinessWaiter(sockets);
+        readinessWaiters.add(waiter);
+        checkReadiness();
+        return waiter.future;
+    }
+
+    private int connectedSockets() {
+        return idleSockets.size() - pendingConnects.get() + runningSockets.size();
+    }
+
+    private void checkReadiness() {
+        if (readinessWaiters.isEmpty()) {
+            return;
+        }
+        int connected = connectedSockets();
+        for (ReadinessWaiter waiter : readinessWaiters) {
+            if (connected >= waiter.sockets && readinessWaiters.remove(waiter)) {
+                waiter.future.complete(null);
+            }
+        }
+    }
+
+    private static class ReadinessWaiter {
+        private final int sockets;
+        private final CompletableFuture<Void> future = new CompletableFuture<>();
+
+        private ReadinessWaiter(int sockets) {
+            this.sockets = sockets;
+        }
+    }
+
+    private void onCapacityLost() {
+        if (state == State.ACTIVE) {
+            capacityLostAtNanos.compareAndSet(-1, System.nanoTime());
+        }
+    }
+
+    private void checkCapacityRestored() {
+        long lostAt = capacityLostAtNanos.get();
+        if (lostAt != -1 && idleSockets.size() - pendingConnects.get() >= expectedWindowSize()
+            && capacityLostAtNanos.compareAndSet(lostAt, -1)) {
+            Duration restoreTime = Duration.ofNanos(System.nanoTime() - lostAt);
+            lastCapacityRestoreTime = restoreTime;
+            if (routerEventListener != null) {
+                routerEventListener.onCapacityRestored(this, restoreTime);
+            }
+        }
+    }
+
+    /**
+     * The number of idle sockets to keep, which is the window size plus, when pipelining <code>cranker_1.0</code>
+     * handshakes, the number of sockets expected to be still connecting at any moment.
+     */
+    private int targetIdleSockets() {
+        int windowSize = expectedWindowSize();
+        if (handshakePipeline != null && CrankerConnectorBuilder.CRANKER_PROTOCOL_1.equals(negotiatedProtocol)) {
+            return windowSize + handshakePipeline.handshakesAhead(System.nanoTime());
+        }
+        return windowSize;
+    }
+
+    private boolean isAdaptive() {
+        return adaptiveWindow != null && CrankerConnectorBuilder.CRANKER_PROTOCOL_1.equals(negotiatedProtocol);
+    }
+
+    private boolean isScaling() {
+        return socketScaler != null && CrankerConnectorBuilder.CRANKER_PROTOCOL_3.equals(negotiatedProtocol);
+    }
+
+    /**
+     * Sets this router's share of the connector's socket budget, which replaces the configured window size.
+     * @param windowSize the number of sockets allocated to this router
+     * @param weight the proportion of the budget this router was given
+     */
+    void allocateWindowSize(int windowSize, double weight) {
+        this.budgetWeight = weight;
+        if (this.allocatedWindowSize != windowSize) {
+            this.allocatedWindowSize = windowSize;
+            if (state == State.ACTIVE) {
+                executor.execute(this::adjustWindow);
+            }
+        }
+    }
+
+    SocketBudget.RouterLoad load() {
+        return load;
+    }
+
+    /**
+     * Opens more sockets if the window or the cranker_3.0 load has grown, or closes surplus sockets
+     * that are not processing any requests if it has shrunk.
+     */
+    private void adjustWindow() {
+        if (state != State.ACTIVE) {
+            return;
+        }
+        boolean isScaling = isScaling();
+        if (isScaling) {
+            int activeStreams = 0;
+            long bytesInFlight = 0;
+            for (ConnectorSocket socket : idleSockets) {
+                ConnectorSocketAdapter adapter = (ConnectorSocketAdapter) socket;
+                activeStreams += adapter.activeStreams();
+                bytesInFlight += adapter.bytesInFlight();
+            }
+            scaledSocketCount = socketScaler.desiredSockets(allocatedWindowSize, idleSockets.size(), activeStreams, bytesInFlight);
+        }
+        int surplus = idleSockets.size() - targetIdleSockets();
+        for (ConnectorSocket socket : idleSockets) {
+            if (surplus <= 0) {
+                break;
+            }
+            ConnectorSocketAdapter adapter = (ConnectorSocketAdapter) socket;
+            boolean isUnused = CrankerConnectorBuilder.CRANKER_PROTOCOL_3.equals(negotiatedProtocol)
+                ? adapter.activeStreams() == 0 && adapter.state() != ConnectorSocket.State.NOT_STARTED && !adapter.state().isCompleted()
+                : adapter.state() == ConnectorSocket.State.IDLE;
+            if (isUnused && idleSockets.remove(socket)) {
+                adapter.close();
+                surplus--;
+            }
         }
+        addAnyMissing();
     }
 
     private void addAnyMissing() {
-        while (state == State.ACTIVE && idleSockets.size() < windowSize) {
+        addAnyMissing(true);
+    }
+
+    /**
+     * Opens sockets until the window is full, unless the target is unavailable.
+     * @param isRateLimited false when replacing a socket that was used by a request, which is normal churn
+     *                      rather than reconnection, so does not go through the connection rate limiter
+     */
+    private void addAnyMissing(boolean isRateLimited) {
+        while (state == State.ACTIVE && idleSockets.size() < targetIdleSockets() && (circuitBreakers == null || circuitBreakers.isAvailable())) {
+
+            final boolean holdsPermit = isRateLimited && rateLimiter != null;
+            if (holdsPermit) {
+                long waitNanos = rateLimiter.tryAcquire(System.nanoTime());
+                if (waitNanos > 0) {
+                    addAnythingMissingAfter(waitNanos);
+                    return;
+                }
+            }
 
             ConnectorSocketAdapter connectorSocket = new ConnectorSocketAdapter(
-                targetUri, client, this, proxyEventListener, executor
+                targetUris, targetTransport, deadlines, this, proxyEventListener, executor, streamExecutor
             );
             idleSockets.add(connectorSocket);
 
-            WebSocket.Builder builder = client.newWebSocketBuilder()
-                .header(CRANKER_PROTOCOL, "1.0") // for backward compatibility
-                .subprotocols(preferredProtocols.get(0), getLessPreferredProtocol(preferredProtocols))
-                .header("Route", route)
-                .header("Domain", domain)
-                .connectTimeout(Duration.ofMillis(5000));
-
-            registrationEventListener.beforeRegisterToRouter(new RouterRegistrationContextImpl(builder, this));
+            final long connectStart = System.nanoTime();
+            pendingConnects.incrementAndGet();
+            CompletableFuture<WebSocket> connection;
+            try {
+                // spread the router sockets over the clients so that their IO is done by different selector threads
+                WebSocket.Builder builder = routerClients.next().newWebSocketBuilder()
+                    .header(CRANKER_PROTOCOL, "1.0") // for backward compatibility
+                    .subprotocols(preferredProtocols.get(0), lessPreferredProtocols)
+                    .header("Route", route)
+                    .header("Domain", domain)
+                    .connectTimeout(Duration.ofMillis(5000));
+
+                if (registrationEventListener != null) {
+                    registrationEventListener.beforeRegisterToRouter(new RouterRegistrationContextImpl(builder, this));
+                }
+                connection = builder.buildAsync(registrationUri, connectorSocket);
+            } catch (Throwable throwable) {
+                // for example a listener that throws, or sets an invalid header; this is handled like a failed connection
+                connection = CompletableFuture.failedFuture(throwable);
+            }
 
-            builder
-                .buildAsync(registrationUri, connectorSocket)
+            connection
                 .whenComplete((webSocket, throwable) -> {
+                    pendingConnects.decrementAndGet();
+                    if (holdsPermit) {
+                        rateLimiter.release();
+                    }
                     if (throwable == null) {
                         connectAttempts.set(0);
+                        lastBackoffMillis.set(0);
                         lastConnectionError = null;
+                        negotiatedProtocol = webSocket.getSubprotocol();
+                        load.onConnected(System.nanoTime() - connectStart);
+                        if (adaptiveWindow != null) {
+                            adaptiveWindow.onConnected(System.nanoTime() - connectStart);
+                        }
+                        if (handshakePipeline != null) {
+                            handshakePipeline.onConnected(System.nanoTime() - connectStart);
+                        }
                         if (state == State.STOPPING || state == State.STOPPED) {
                             connectorSocket.onClose(webSocket, 1000, "connector stop");
+                        } else {
+                            checkCapacityRestored();
+                            checkReadiness();
                         }
                     } else {
                         lastConnectionError = throwable;
+                        load.onError();
+                        onCapacityLost();
                         idleSockets.remove(connectorSocket);
                         if (routerEventListener != null) {
                             routerEventListener.onSocketConnectionError(this, throwable);
@@ -224,38 +492,85 @@ class RouterRegistrationImpl implements ConnectorSocketListener, RouterRegistrat
                         addAnythingMissingWithBackoff();
                     }
                 });
+            if (connection.isCompletedExceptionally()) {
+                // tried again after the backoff rather than straight away
+                return;
+            }
         }
     }
 
     /**
-     * @return Milliseconds to wait until trying again, increasing exponentially, capped at 10 seconds
-     * @param retryAttempts retry attempts
+     * While the target is unavailable, closes the cranker_1.0 sockets waiting for requests, so that the router
+     * sends its clients to other connectors rather than to this one, and opens them again once it may be available.
+     * A cranker_3.0 socket is left open, as it rejects each new stream at once.
      */
-    private static int retryAfterMillis(int retryAttempts) {
-        return 500 + Math.min(10000, (int) Math.pow(2, retryAttempts));
+    @Override
+    public void onCircuitStateChanged(TargetCircuitBreaker.State circuitState) {
+        if (state != State.ACTIVE) {
+            return;
+        }
+        if (circuitState == TargetCircuitBreaker.State.OPEN) {
+            if (!CrankerConnectorBuilder.CRANKER_PROTOCOL_3.equals(negotiatedProtocol)) {
+                for (ConnectorSocket socket : idleSockets) {
+                    ConnectorSocketAdapter adapter = (ConnectorSocketAdapter) socket;
+                    if (adapter.state() == ConnectorSocket.State.IDLE && idleSockets.remove(socket)) {
+                        adapter.close();
+                    }
+                }
+            }
+        } else {
+            executor.execute(this::addAnyMissing);
+        }
     }
 
     @Override
     public void onConnectionAcquired(ConnectorSocket socket) {
         runningSockets.add(socket);
         idleSockets.remove(socket);
-        addAnyMissing();
+        load.onRequest();
+        if (handshakePipeline != null) {
+            handshakePipeline.onAcquired(System.nanoTime());
+        }
+        if (adaptiveWindow != null) {
+            long now = System.nanoTime();
+            adaptiveWindow.onAcquired(now);
+            acquiredTimes.put(socket, now);
+        }
+        addAnyMissing(false);
+    }
+
+    @Override
+    public void onStreamStarted(ConnectorSocket socket) {
+        load.onRequest();
     }
 
     @Override
     public void onClose(ConnectorSocket socket, Throwable error) {
-        runningSockets.remove(socket);
-        idleSockets.remove(socket);
+        boolean wasRunning = runningSockets.remove(socket);
+        if (idleSockets.remove(socket)) {
+            // an unused socket was closed by the router or failed, rather than closed by this registration
+            onCapacityLost();
+        }
+        if (adaptiveWindow != null) {
+            Long acquiredAt = acquiredTimes.remove(socket);
+            if (acquiredAt != null && error == null) {
+                adaptiveWindow.onRequestCompleted(System.nanoTime() - acquiredAt);
+            }
+        }
         if (error == null) {
-            addAnyMissing();
+            addAnyMissing(!wasRunning);
         } else {
+            load.onError();
             addAnythingMissingWithBackoff();
         }
     }
 
     @Override
     public int expectedWindowSize() {
-        return windowSize;
+        if (isAdaptive()) {
+            return adaptiveWindow.windowSize(System.nanoTime());
+        }
+        return isScaling() ? scaledSocketCount : allocatedWindowSize;
     }
 
     @Override
@@ -268,6 +583,18 @@ class RouterRegistrationImpl implements ConnectorSocketListener, RouterRegistrat
         return idleSockets;
     }
 
+    @Override
+    public int inFlightRequests() {
+        int requests = 0;
+        for (ConnectorSocket socket : runningSockets) {
+            requests += ((ConnectorSocketAdapter) socket).activeStreams();
+        }
+        for (ConnectorSocket socket : idleSockets) {
+            requests += ((ConnectorSocketAdapter) socket).activeStreams();
+        }
+        return requests;
+    }
+
     @Override
     public URI registrationUri() {
         return registrationUri;
@@ -288,14 +615,20 @@ class RouterRegistrationImpl implements ConnectorSocketListener, RouterRegistrat
         return lastConnectionError;
     }
 
+    @Override
+    public Duration lastCapacityRestoreTime() {
+        return lastCapacityRestoreTime;
+    }
+
     @Override
     public String toString() {
         return "RouterRegistration{" +
             "state=" + state +
             ", registrationUri=" + registrationUri +
             ", route='" + route + '\'' +
-            ", windowSize=" + windowSize +
-            ", targetUri=" + targetUri +
+            ", windowSize=" + expectedWindowSize() +
+            (budgetWeight >= 0 ? ", budgetWeight=" + budgetWeight : "") +
+            ", targetUri=" + targetUris.targetUri() +
             ", connectAttempts=" + connectAttempts +
             ", lastConnectionError=" + lastConnectionError +
             ", idleSockets=" + idleSockets +
@@ -304,39 +637,122 @@ class RouterRegistrationImpl implements ConnectorSocketListener, RouterRegistrat
 
     static class Factory {
         private final List<String> preferredProtocols;
-        private final HttpClient client;
+        private final HttpClientPool routerClients;
+        private final List<ExecutorService> httpClientExecutors;
+        private final TargetTransport targetTransport;
+        private final TargetCircuitBreakers circuitBreakers;
+        private final RequestDeadlines deadlines;
         private final String domain;
         private final String route;
         private final int windowSize;
-        private final URI targetUri;
+        private final int minAdaptiveWindowSize;
+        private final int maxAdaptiveWindowSize;
+        private final int maxStreamsPerSocket;
+        private final long maxBytesInFlightPerSocket;
+        private final int maxScaledSockets;
+        private final int maxHandshakesAhead;
+        private final ConnectionRateLimiter rateLimiter;
+        private final TargetUriCache targetUris;
         private volatile ScheduledExecutorService executor;
+        private final int streamWorkerThreads;
+        private final boolean useVirtualThreads;
+        private volatile StreamExecutor streamExecutor;
+        private volatile ScheduledExecutorService sharedExecutor;
+        private volatile StreamExecutor sharedStreamExecutor;
         private final RouterEventListener routerEventListener;
         private final ProxyEventListener proxyEventListener;
         private final RegistrationEventListener registrationEventListener;
 
-        Factory(List<String> preferredProtocols, HttpClient client, String domain, String route, int windowSize, URI targetUri,
-                RouterEventListener routerEventListener, ProxyEventListener proxyEventListener, RegistrationEventListener registrationEventListenerToUse) {
+        Factory(List<String> preferredProtocols, HttpClientPool routerClients, List<ExecutorService> httpClientExecutors, TargetTransport targetTransport, TargetCircuitBreakers circuitBreakers, RequestDeadlines deadlines, String domain, String route, int windowSize,
+                int minAdaptiveWindowSize, int maxAdaptiveWindowSize, int maxStreamsPerSocket, long maxBytesInFlightPerSocket, int maxScaledSockets,
+                int maxHandshakesAhead, ConnectionRateLimiter rateLimiter, TargetUriCache targetUris, int streamWorkerThreads, boolean useVirtualThreads, RouterEventListener routerEventListener,
+                ProxyEventListener proxyEventListener, RegistrationEventListener registrationEventListenerToUse) {
             this.preferredProtocols = preferredProtocols;
-            this.client = client;
+            this.routerClients = routerClients;
+            this.httpClientExecutors = httpClientExecutors;
+            this.targetTransport = targetTransport;
+            this.circuitBreakers = circuitBreakers;
+            this.deadlines = deadlines;
             this.domain = domain;
             this.route = route;
             this.windowSize = windowSize;
-            this.targetUri = targetUri;
+            this.minAdaptiveWindowSize = minAdaptiveWindowSize;
+            this.maxAdaptiveWindowSize = maxAdaptiveWindowSize;
+            this.maxStreamsPerSocket = maxStreamsPerSocket;
+            this.maxBytesInFlightPerSocket = maxBytesInFlightPerSocket;
+            this.maxScaledSockets = maxScaledSockets;
+            this.maxHandshakesAhead = maxHandshakesAhead;
+            this.rateLimiter = rateLimiter;
+            this.targetUris = targetUris;
+            this.streamWorkerThreads = streamWorkerThreads;
+            this.useVirtualThreads = useVirtualThreads;
             this.routerEventListener = routerEventListener;
             this.proxyEventListener = proxyEventListener;
             this.registrationEventListener = registrationEventListenerToUse;
         }
 
         RouterRegistrationImpl create(URI registrationUri) {
-            return new RouterRegistrationImpl(preferredProtocols, client, registrationUri, domain, route, windowSize, targetUri, executor, routerEventListener, proxyEventListener, registrationEventListener);
+            AdaptiveWindow adaptiveWindow = maxAdaptiveWindowSize > 0 ? new AdaptiveWindow(minAdaptiveWindowSize, maxAdaptiveWindowSize) : null;
+            SocketScaler socketScaler = maxScaledSockets > 0 ? new SocketScaler(maxStreamsPerSocket, maxBytesInFlightPerSocket, maxScaledSockets) : null;
+            HandshakePipeline handshakePipeline = maxHandshakesAhead > 0 ? new HandshakePipeline(maxHandshakesAhead) : null;
+            return new RouterRegistrationImpl(preferredProtocols, routerClients, targetTransport, circuitBreakers, deadlines, registrationUri, domain, route, windowSize, targetUris,
+                adaptiveWindow, socketScaler, handshakePipeline, rateLimiter, executor, streamExecutor, routerEventListener, proxyEventListener, registrationEventListener);
+        }
+
+        /**
+         * Uses executors owned by a {@link CrankerConnectorGroup} rather than creating them on start. Shared
+         * executors are not shut down when this factory is stopped.
+         * @param executor the executor for socket timers and reconnections
+         * @param streamExecutor the executor for cranker_3.0 streams, or null to use this factory's own settings
+         */
+        void useSharedExecutors(ScheduledExecutorService executor, StreamExecutor streamExecutor) {
+            this.sharedExecutor = executor;
+            this.sharedStreamExecutor = streamExecutor;
         }
 
         void start() {
-            executor = Executors.newSingleThreadScheduledExecutor();
+            executor = sharedExecutor != null ? sharedExecutor : RequestDeadlines.newScheduler(Executors.defaultThreadFactory());
+            if (sharedStreamExecutor != null) {
+                streamExecutor = sharedStreamExecutor;
+            } else if (useVirtualThreads) {
+                streamExecutor = StreamExecutor.virtualThreads("cranker-stream-");
+            } else if (streamWorkerThreads > 0) {
+                streamExecutor = StreamExecutor.fixedThreads(streamWorkerThreads, "cranker-stream-worker-");
+            }
+            if (circuitBreakers != null) {
+                circuitBreakers.start(executor);
+            }
+        }
+
+        ScheduledExecutorService executor() {
+            return executor;
+        }
+
+        TargetUriCacheStats targetUriCacheStats() {
+            return targetUris.stats();
+        }
+
+        boolean isTargetAvailable() {
+            return circuitBreakers == null || circuitBreakers.isAvailable();
+        }
+
+        StreamExecutor streamExecutor() {
+            return streamExecutor;
         }
 
         void stop() {
-            executor.shutdownNow();
+            if (circuitBreakers != null) {
+                circuitBreakers.stop();
+            }
+            if (executor != sharedExecutor) {
+                executor.shutdownNow();
+            }
+            if (streamExecutor != null && streamExecutor != sharedStreamExecutor) {
+                streamExecutor.shutdown();
+            }
+            for (ExecutorService httpClientExecutor : httpClientExecutors) {
+                httpClientExecutor.shutdown();
+            }
         }
     }
 
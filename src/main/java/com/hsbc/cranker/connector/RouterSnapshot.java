@@ -0,0 +1,100 @@
+package com.hsbc.cranker.connector;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Saves the last known set of router URIs to a file, so that a restarted connector can connect to the routers
+ * straight away rather than waiting for the router URI supplier.
+ * <p>The file has one URI per line. It is written to a temporary file in the same directory which is then
+ * moved over the snapshot, so the snapshot is never partially written.</p>
+ */
+class RouterSnapshot {
+
+    private final Path file;
+    private Set<URI> lastWritten;
+
+    RouterSnapshot(Path file) {
+        this.file = file;
+    }
+
+    /**
+     * Reads the snapshot
+     * @return The router URIs in the snapshot, or an empty list if there is no snapshot or it cannot be read
+     */
+    synchronized List<URI> read() {
+        if (!Files.isRegularFile(file)) {
+            return Collections.emptyList();
+        }
+        try {
+            List<URI> uris = new ArrayList<>();
+            for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+                String trimmed = line.trim();
+                if (!trimmed.isEmpty()) {
+                    try {
+                        URI uri = URI.create(trimmed);
+                        if (uri.getScheme() != null && uri.getAuthority() != null) {
+                            uris.add(uri);
+                        }
+                    } catch (IllegalArgumentException ignored) {
+                        // skip lines that are not URIs
+                    }
+                }
+            }
+            lastWritten = Set.copyOf(uris);
+            return uris;
+        } catch (IOException e) {
+            // a missing or corrupt snapshot just means waiting for the supplier as if there was no snapshot
+            return Collections.emptyList();
+        }
+    }
+
+    /**
+     * Saves the router URIs if they are different from the last ones saved
+     * @param uris the current router URIs
+     * @throws IOException if the snapshot could not be written, in which case the previous snapshot is unchanged
+     */
+    synchronized void write(Collection<URI> uris) throws IOException {
+        Set<URI> toWrite = Set.copyOf(uris);
+        if (toWrite.equals(lastWritten)) {
+            return;
+        }
+        Path dir = file.toAbsolutePath().getParent();
+        if (dir != null) {
+            Files.createDirectories(dir);
+        }
+        StringBuilder content = new StringBuilder();
+        for (URI uri : toWrite) {
+            content.append(uri).append('\n');
+        }
+        Path temp = Files.createTempFile(dir, file.getFileName().toString(), ".tmp");
+        try {
+            Files.write(temp, content.toString().getBytes(StandardCharsets.UTF_8));
+            try {
+                Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        lastWritten = toWrite;
+    }
+
+    @Override
+    public String toString() {
+        return "RouterSnapshot{" +
+            "file=" + file +
+            '}';
+    }
+}
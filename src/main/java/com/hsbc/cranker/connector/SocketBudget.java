@@ -0,0 +1,205 @@
+package com.hsbc.cranker.connector;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Divides a total number of sockets between the routers of a connector.
+ * <p>Each router gets a share of the budget in proportion to the share of requests it has recently sent to this
+ * connector. The share is reduced for routers that take much longer to connect to than the closest router (which
+ * usually means they are in another region) and for routers where connections often fail. Every router always
+ * gets at least one socket, so that it can still send requests and its share can grow again.</p>
+ */
+class SocketBudget {
+
+    private static final double EVEN_SHARE_PORTION = 0.2;
+    private static final double MIN_LATENCY_FACTOR = 0.1;
+    private static final double MIN_HEALTH_FACTOR = 0.05;
+
+    private final int totalSockets;
+
+    SocketBudget(int totalSockets) {
+        if (totalSockets < 1) throw new IllegalArgumentException("totalSockets must be at least 1");
+        this.totalSockets = totalSockets;
+    }
+
+    int totalSockets() {
+        return totalSockets;
+    }
+
+    /**
+     * Calculates the weight of each router. This should be called periodically, as it takes a sample of each load.
+     * @param loads the load of each router
+     * @param nowNanos the current time
+     * @return the weight of each router, in the same order as the loads, adding up to 1
+     */
+    double[] weights(List<RouterLoad> loads, long nowNanos) {
+        int count = loads.size();
+        double[] weights = new double[count];
+        if (count == 0) {
+            return weights;
+        }
+        double totalRate = 0;
+        double minConnectMillis = Double.MAX_VALUE;
+        for (RouterLoad load : loads) {
+            load.sample(nowNanos);
+            totalRate += load.requestRate();
+            if (load.connectMillis() > 0) {
+                minConnectMillis = Math.min(minConnectMillis, load.connectMillis());
+            }
+        }
+        double totalWeight = 0;
+        for (int i = 0; i < count; i++) {
+            RouterLoad load = loads.get(i);
+            double share = totalRate > 0 ? load.requestRate() / totalRate : 1.0 / count;
+            double weight = share * (1 - EVEN_SHARE_PORTION) + EVEN_SHARE_PORTION / count;
+            if (load.connectMillis() > 0 && minConnectMillis < Double.MAX_VALUE) {
+                weight *= Math.max(MIN_LATENCY_FACTOR, Math.sqrt(minConnectMillis / load.connectMillis()));
+            }
+            weight *= Math.max(MIN_HEALTH_FACTOR, 1 - load.errorRatio());
+            weights[i] = weight;
+            totalWeight += weight;
+        }
+        for (int i = 0; i < count; i++) {
+            weights[i] /= totalWeight;
+        }
+        return weights;
+    }
+
+    /**
+     * Splits the budget by weight, using the largest remainder method so that the sizes add up to the budget.
+     * @param weights the weight of each router
+     * @return the number of sockets for each router, which is at least 1 even if this exceeds the budget
+     */
+    int[] allocate(double[] weights) {
+        int count = weights.length;
+        int[] sizes = new int[count];
+        if (count == 0) {
+            return sizes;
+        }
+        int remaining = Math.max(0, totalSockets - count);
+        double totalWeight = 0;
+        for (double weight : weights) {
+            totalWeight += weight;
+        }
+        double[] remainders = new double[count];
+        int allocated = 0;
+        for (int i = 0; i < count; i++) {
+            double exact = totalWeight > 0 ? remaining * weights[i] / totalWeight : (double) remaining / count;
+            sizes[i] = 1 + (int) exact;
+            remainders[i] = exact - (int) exact;
+            allocated += (int) exact;
+        }
+        for (; allocated < remaining; allocated++) {
+            int largest = 0;
+            for (int i = 1; i < count; i++) {
+                if (remainders[i] > remainders[largest]) {
+                    largest = i;
+                }
+            }
+            sizes[largest]++;
+            remainders[largest] = -1;
+        }
+        return sizes;
+    }
+
+    @Override
+    public String toString() {
+        return "SocketBudget{" +
+            "totalSockets=" + totalSockets +
+            '}';
+    }
+
+    /**
+     * The recent traffic, connection latency and connection failures of a router.
+     */
+    static class RouterLoad {
+
+        private static final double SMOOTHING = 0.3;
+
+        private final LongAdder requests = new LongAdder();
+        private final LongAdder connects = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+        private long lastSampleNanos = -1;
+        private long lastRequests;
+        private long lastConnects;
+        private long lastErrors;
+        private double requestRate;
+        private double errorRatio;
+        private double connectMillis = -1;
+
+        /**
+         * Called when the router sends a request to this connector
+         */
+        void onRequest() {
+            requests.increment();
+        }
+
+        /**
+         * Called when a socket to the router has been opened
+         * @param durationNanos the time taken to open the socket
+         */
+        synchronized void onConnected(long durationNanos) {
+            connects.increment();
+            double millis = durationNanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+            connectMillis = connectMillis < 0 ? millis : connectMillis + (millis - connectMillis) * SMOOTHING;
+        }
+
+        /**
+         * Called when a socket to the router could not be opened or closed with an error
+         */
+        void onError() {
+            errors.increment();
+        }
+
+        synchronized void sample(long nowNanos) {
+            long requestCount = requests.sum();
+            long connectCount = connects.sum();
+            long errorCount = errors.sum();
+            if (lastSampleNanos >= 0) {
+                double seconds = Math.max(0.001, (nowNanos - lastSampleNanos) / (double) TimeUnit.SECONDS.toNanos(1));
+                double rate = (requestCount - lastRequests) / seconds;
+                requestRate += (rate - requestRate) * SMOOTHING;
+                long newErrors = errorCount - lastErrors;
+                long outcomes = newErrors + connectCount - lastConnects;
+                double ratio = outcomes > 0 ? newErrors / (double) outcomes : 0;
+                errorRatio += (ratio - errorRatio) * SMOOTHING;
+            }
+            lastSampleNanos = nowNanos;
+            lastRequests = requestCount;
+            lastConnects = connectCount;
+            lastErrors = errorCount;
+        }
+
+        /**
+         * @return The smoothed number of requests per second, as of the last sample
+         */
+        synchronized double requestRate() {
+            return requestRate;
+        }
+
+        /**
+         * @return The smoothed proportion of connection attempts that failed, as of the last sample
+         */
+        synchronized double errorRatio() {
+            return errorRatio;
+        }
+
+        /**
+         * @return The smoothed time to open a socket, or -1 if no socket has been opened yet
+         */
+        synchronized double connectMillis() {
+            return connectMillis;
+        }
+
+        @Override
+        public synchronized String toString() {
+            return "RouterLoad{" +
+                "requestRate=" + requestRate +
+                ", errorRatio=" + errorRatio +
+                ", connectMillis=" + connectMillis +
+                '}';
+        }
+    }
+}
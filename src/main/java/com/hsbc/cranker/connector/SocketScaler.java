@@ -0,0 +1,68 @@
+package com.hsbc.cranker.connector;
+
+/**
+ * Works out how many <code>cranker_3.0</code> sockets a router registration should keep open.
+ * <p>As cranker_3.0 multiplexes many requests over a socket, the number of sockets needed depends on the load
+ * rather than the number of concurrent requests. A socket is added when the average number of active streams or
+ * bytes in flight per socket goes over its threshold, and removed again once the load has been low enough for a
+ * number of consecutive checks, so that short dips in traffic do not cause sockets to be closed and re-opened.</p>
+ */
+class SocketScaler {
+
+    static final int SCALE_DOWN_CHECKS = 5;
+
+    private final int maxStreamsPerSocket;
+    private final long maxBytesInFlightPerSocket;
+    private final int maxSockets;
+    private int lowLoadChecks;
+
+    SocketScaler(int maxStreamsPerSocket, long maxBytesInFlightPerSocket, int maxSockets) {
+        if (maxStreamsPerSocket < 1) throw new IllegalArgumentException("maxStreamsPerSocket must be at least 1");
+        if (maxBytesInFlightPerSocket < 1) throw new IllegalArgumentException("maxBytesInFlightPerSocket must be at least 1");
+        if (maxSockets < 1) throw new IllegalArgumentException("maxSockets must be at least 1");
+        this.maxStreamsPerSocket = maxStreamsPerSocket;
+        this.maxBytesInFlightPerSocket = maxBytesInFlightPerSocket;
+        this.maxSockets = maxSockets;
+    }
+
+    /**
+     * Calculates the number of sockets to have open. This should be called periodically.
+     * @param minSockets the minimum number of sockets
+     * @param currentSockets the number of sockets currently open
+     * @param activeStreams the number of active streams over all sockets
+     * @param bytesInFlight the number of bytes sent but not yet acknowledged over all sockets
+     * @return the number of sockets that should be open
+     */
+    synchronized int desiredSockets(int minSockets, int currentSockets, int activeStreams, long bytesInFlight) {
+        long neededForStreams = ceilDiv(activeStreams, maxStreamsPerSocket);
+        long neededForBytes = ceilDiv(bytesInFlight, maxBytesInFlightPerSocket);
+        long needed = Math.max(neededForStreams, neededForBytes);
+        if (currentSockets > 0 && (activeStreams >= (long) currentSockets * maxStreamsPerSocket
+            || bytesInFlight >= (long) currentSockets * maxBytesInFlightPerSocket)) {
+            // the sockets are at their thresholds on average, so add one more
+            needed = Math.max(needed, currentSockets + 1L);
+        }
+        needed = Math.max(minSockets, Math.min(Math.max(minSockets, maxSockets), needed));
+        if (needed < currentSockets) {
+            lowLoadChecks++;
+            if (lowLoadChecks < SCALE_DOWN_CHECKS) {
+                return currentSockets;
+            }
+        }
+        lowLoadChecks = 0;
+        return (int) needed;
+    }
+
+    private static long ceilDiv(long value, long divisor) {
+        return (value + divisor - 1) / divisor;
+    }
+
+    @Override
+    public String toString() {
+        return "SocketScaler{" +
+            "maxStreamsPerSocket=" + maxStreamsPerSocket +
+            ", maxBytesInFlightPerSocket=" + maxBytesInFlightPerSocket +
+            ", maxSockets=" + maxSockets +
+            '}';
+    }
+}
@@ -0,0 +1,144 @@
+package com.hsbc.cranker.connector;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs per-stream work of cranker_3.0 sockets off the websocket selector thread.
+ * <p>Tasks are assigned to a fixed number of lanes by stream ID, and each lane runs its tasks one at a time in
+ * submission order, so frames of the same stream are always processed in the order they arrived while different
+ * streams can be processed in parallel.</p>
+ */
+class StreamExecutor {
+
+    private static final int VIRTUAL_THREAD_LANES = 1024;
+
+    private final ExecutorService pool;
+    private final SerialLane[] lanes;
+
+    StreamExecutor(ExecutorService pool, int lanes) {
+        this.pool = pool;
+        this.lanes = new SerialLane[lanes];
+        for (int i = 0; i < lanes; i++) {
+            this.lanes[i] = new SerialLane(pool);
+        }
+    }
+
+    /**
+     * Creates an executor backed by a fixed pool of threads, with one lane per thread
+     * @param threads the number of worker threads
+     * @param threadNamePrefix the prefix of the worker thread names
+     * @return a new stream executor
+     */
+    static StreamExecutor fixedThreads(int threads, String threadNamePrefix) {
+        if (threads < 1) throw new IllegalArgumentException("threads must be at least 1");
+        final AtomicInteger counter = new AtomicInteger();
+        ThreadFactory threadFactory = runnable -> {
+            Thread thread = new Thread(runnable, threadNamePrefix + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+        return new StreamExecutor(Executors.newFixedThreadPool(threads, threadFactory), threads);
+    }
+
+    /**
+     * Creates an executor that runs each lane on a virtual thread. As virtual threads are cheap, many more
+     * lanes are used than with {@link #fixedThreads(int, String)} so that concurrent streams rarely share a lane.
+     * @param threadNamePrefix the prefix of the virtual thread names
+     * @return a new stream executor
+     * @throws UnsupportedOperationException if virtual threads are not supported by this JVM
+     */
+    static StreamExecutor virtualThreads(String threadNamePrefix) {
+        return new StreamExecutor(VirtualThreads.newVirtualThreadPerTaskExecutor(threadNamePrefix), VIRTUAL_THREAD_LANES);
+    }
+
+    /**
+     * Submits a task for the given stream.
+     * @param streamId the stream the task belongs to
+     * @param task the task to run after all previously submitted tasks of the same lane
+     * @throws RejectedExecutionException if the pool did not accept the task, in which case the task is not queued
+     */
+    void execute(int streamId, Runnable task) {
+        lanes[Math.floorMod(streamId, lanes.length)].execute(task);
+    }
+
+    /**
+     * The number of lanes
+     * @return The number of lanes streams are spread over
+     */
+    int lanes() {
+        return lanes.length;
+    }
+
+    void shutdown() {
+        pool.shutdownNow();
+    }
+
+    /**
+     * Runs the tasks one at a time on the underlying executor, in the order they were submitted.
+     */
+    private static class SerialLane implements Executor {
+        private final Executor underlying;
+        private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+        private final AtomicBoolean isRunning = new AtomicBoolean(false);
+
+        private SerialLane(Executor underlying) {
+            this.underlying = underlying;
+        }
+
+        @Override
+        public void execute(Runnable task) {
+            tasks.add(task);
+            try {
+                scheduleMaybe();
+            } catch (RejectedExecutionException e) {
+                // the caller decides what to do with a rejected task, so it must not also run later from the lane
+                tasks.remove(task);
+                throw e;
+            }
+        }
+
+        private void scheduleMaybe() {
+            if (!tasks.isEmpty() && isRunning.compareAndSet(false, true)) {
+                try {
+                    underlying.execute(this::drain);
+                } catch (RejectedExecutionException e) {
+                    // nothing is draining the lane, so the next task must be able to schedule it again
+                    isRunning.set(false);
+                    throw e;
+                }
+            }
+        }
+
+        private void drain() {
+            try {
+                Runnable task;
+                while ((task = tasks.poll()) != null) {
+                    try {
+                        task.run();
+                    } catch (Throwable throwable) {
+                        // tasks are responsible for their own error handling (ConnectorSocketV3 resets the stream
+                        // and tells the proxy listener), so anything else is reported like an uncaught exception
+                        // without stalling the lane
+                        Thread thread = Thread.currentThread();
+                        thread.getUncaughtExceptionHandler().uncaughtException(thread, throwable);
+                    }
+                }
+            } finally {
+                isRunning.set(false);
+                try {
+                    scheduleMaybe();
+                } catch (RejectedExecutionException e) {
+                    // the pool is shut down, so the tasks queued meanwhile are dropped with the pool's own queue
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,312 @@
+package com.hsbc.cranker.connector;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Tracks the health of the target and fails requests straight away while it is unhealthy.
+ * <p>Every request is recorded in a sliding window as a success or a failure, where a failure is a request that
+ * could not be sent or received, a <code>502</code>, <code>503</code> or <code>504</code> response, or a response
+ * that took longer than the slow response threshold to start. When there have been enough requests in the window
+ * and the proportion of failures reaches the threshold, the circuit opens: requests then fail immediately, so that
+ * the router is told at once (with a stream reset for <code>cranker_3.0</code> or an error for
+ * <code>cranker_1.0</code>) rather than after the HTTP client's timeouts, and the router registrations stop
+ * replacing their idle sockets so that the router sends its clients elsewhere.</p>
+ * <p>After the open duration, a single trial request is let through (half open), which closes the circuit if it
+ * succeeds or opens it again if it fails. If the router cancels the trial, the circuit stays half open and the next
+ * request is tried instead. If an active health check is configured, it is requested periodically
+ * and its results are recorded like any other request, so that a target that has hung is detected even with no
+ * traffic; while the circuit is open, the health check alone decides when it closes.</p>
+ */
+class TargetCircuitBreaker implements TargetTransport {
+
+    enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    /**
+     * Notified when the circuit changes state
+     */
+    interface Listener {
+        void onCircuitStateChanged(State state);
+    }
+
+    private static final int BUCKETS = 10;
+
+    private final TargetTransport transport;
+    private final double failureRateThreshold;
+    private final long slowResponseNanos;
+    private final int minimumRequests;
+    private final long bucketNanos;
+    private final long openNanos;
+    private final URI healthCheckUri;
+    private final Duration healthCheckInterval;
+    private final Duration healthCheckTimeout;
+    private final long[] bucketStarts = new long[BUCKETS];
+    private final int[] bucketRequests = new int[BUCKETS];
+    private final int[] bucketFailures = new int[BUCKETS];
+    private final CopyOnWriteArrayList<Listener> listeners = new CopyOnWriteArrayList<>();
+    private final Object listenerLock = new Object();
+    private State state = State.CLOSED;
+    private long transitions;
+    private long deliveredTransition;
+    private long openUntilNanos;
+    private boolean isTrialInFlight;
+    private ScheduledExecutorService executor;
+    private volatile ScheduledFuture<?> halfOpenTask;
+    private volatile ScheduledFuture<?> healthCheckTask;
+
+    /**
+     * @param transport the transport that sends the requests
+     * @param failureRateThreshold the proportion of failed requests, from 0 to 1, that opens the circuit
+     * @param slowResponseThreshold responses that take longer than this to start count as failures, or null for no limit
+     * @param minimumRequests the number of requests there must be in the window before the circuit can open
+     * @param window the length of the sliding window
+     * @param openDuration how long the circuit stays open before a request is let through to try the target
+     * @param healthCheckUri the URI to check the target's health with, or null for no active health checks
+     * @param healthCheckInterval the time between health checks
+     * @param healthCheckTimeout how long a health check can take before it counts as a failure
+     */
+    TargetCircuitBreaker(TargetTransport transport, double failureRateThreshold, Duration slowResponseThreshold, int minimumRequests,
+                         Duration window, Duration openDuration, URI healthCheckUri, Duration healthCheckInterval, Duration healthCheckTimeout) {
+        this.transport = transport;
+        this.failureRateThreshold = failureRateThreshold;
+        this.slowResponseNanos = slowResponseThreshold == null ? Long.MAX_VALUE : slowResponseThreshold.toNanos();
+        this.minimumRequests = minimumRequests;
+        this.bucketNanos = Math.max(1, window.toNanos() / BUCKETS);
+        this.openNanos = openDuration.toNanos();
+        this.healthCheckUri = healthCheckUri;
+        this.healthCheckInterval = healthCheckInterval;
+        this.healthCheckTimeout = healthCheckTimeout;
+    }
+
+    TargetTransport transport() {
+        return transport;
+    }
+
+    void addListener(Listener listener) {
+        listeners.addIfAbsent(listener);
+    }
+
+    void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Starts the health checks, if there are any, and the timer that lets a trial request through
+     * @param executor the executor to schedule them with
+     */
+    synchronized void start(ScheduledExecutorService executor) {
+        this.executor = executor;
+        if (healthCheckUri != null && healthCheckTask == null) {
+            long intervalMillis = healthCheckInterval.toMillis();
+            healthCheckTask = executor.scheduleWithFixedDelay(this::checkHealth, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    void stop() {
+        ScheduledFuture<?> task = healthCheckTask;
+        if (task != null) {
+            task.cancel(false);
+            healthCheckTask = null;
+        }
+        task = halfOpenTask;
+        if (task != null) {
+            task.cancel(false);
+        }
+    }
+
+    /**
+     * @return false while the circuit is open and requests are failing fast
+     */
+    synchronized boolean isAvailable() {
+        return state != State.OPEN;
+    }
+
+    synchronized State state() {
+        return state;
+    }
+
+    @Override
+    public <T> CompletableFuture<HttpResponse<T>> sendAsync(HttpRequest request, HttpResponse.BodyHandler<T> responseBodyHandler) {
+        boolean isTrial = false;
+        synchronized (this) {
+            if (state == State.OPEN) {
+                return CompletableFuture.failedFuture(new IOException("The target is unavailable as too many requests to it have failed"));
+            }
+            if (state == State.HALF_OPEN) {
+                if (isTrialInFlight) {
+                    return CompletableFuture.failedFuture(new IOException("The target is unavailable while it is being tried again"));
+                }
+                isTrialInFlight = true;
+                isTrial = true;
+            }
+        }
+        return send(request, responseBodyHandler, isTrial, false);
+    }
+
+    private <T> CompletableFuture<HttpResponse<T>> send(HttpRequest request, HttpResponse.BodyHandler<T> responseBodyHandler, boolean isTrial, boolean isHealthCheck) {
+        long start = System.nanoTime();
+        AtomicBoolean isRecorded = new AtomicBoolean();
+        HttpResponse.BodyHandler<T> recordingHandler = responseInfo -> {
+            if (isRecorded.compareAndSet(false, true)) {
+                int status = responseInfo.statusCode();
+                boolean isFailure = status == 502 || status == 503 || status == 504 || (isHealthCheck && status >= 300)
+                    || System.nanoTime() - start > slowResponseNanos;
+                onOutcome(isFailure, isTrial, isHealthCheck);
+            }
+            return responseBodyHandler.apply(responseInfo);
+        };
+        CompletableFuture<HttpResponse<T>> sent;
+        try {
+            sent = transport.sendAsync(request, recordingHandler);
+        } catch (Throwable e) {
+            onOutcome(true, isTrial, isHealthCheck);
+            return CompletableFuture.failedFuture(e);
+        }
+        sent.whenComplete((response, error) -> {
+            if (isRecorded.compareAndSet(false, true)) {
+                if (!sent.isCancelled()) {
+                    onOutcome(error != null, isTrial, isHealthCheck);
+                } else if (isTrial) {
+                    // a request cancelled by the router says nothing about the target, so another trial is let through
+                    onTrialCancelled();
+                }
+            }
+        });
+        return sent;
+    }
+
+    private void checkHealth() {
+        HttpRequest request = HttpRequest.newBuilder(healthCheckUri).timeout(healthCheckTimeout).GET().build();
+        // a custom transport may not honour the request timeout, and a hung target may never respond
+        send(request, HttpResponse.BodyHandlers.discarding(), false, true)
+            .orTimeout(healthCheckTimeout.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    private synchronized void onTrialCancelled() {
+        isTrialInFlight = false;
+    }
+
+    private void onOutcome(boolean isFailure, boolean isTrial, boolean isHealthCheck) {
+        State newState = null;
+        long transition;
+        synchronized (this) {
+            long now = System.nanoTime();
+            if (isTrial) {
+                isTrialInFlight = false;
+            }
+            if (state == State.OPEN) {
+                if (isHealthCheck) {
+                    newState = isFailure ? open(now) : close();
+                }
+            } else if (state == State.HALF_OPEN) {
+                if (isTrial || isHealthCheck) {
+                    newState = isFailure ? open(now) : close();
+                }
+            } else {
+                record(now, isFailure);
+                if (isFailure && shouldOpen(now)) {
+                    newState = open(now);
+                }
+            }
+            transition = newState == null ? 0 : ++transitions;
+        }
+        if (newState != null) {
+            notifyListeners(newState, transition);
+        }
+    }
+
+    /**
+     * Tells the listeners about a change of state, unless a later change has already been delivered, so that two
+     * changes racing each other cannot leave the listeners with the earlier state
+     * @param state the new state
+     * @param transition the number of the change, which is higher for later changes
+     */
+    private void notifyListeners(State state, long transition) {
+        synchronized (listenerLock) {
+            if (transition <= deliveredTransition) {
+                return;
+            }
+            deliveredTransition = transition;
+            for (Listener listener : listeners) {
+                listener.onCircuitStateChanged(state);
+            }
+        }
+    }
+
+    private State open(long now) {
+        state = State.OPEN;
+        openUntilNanos = now + openNanos;
+        if (healthCheckUri == null && executor != null) {
+            halfOpenTask = executor.schedule(this::halfOpen, openNanos, TimeUnit.NANOSECONDS);
+        }
+        return State.OPEN;
+    }
+
+    private State close() {
+        state = State.CLOSED;
+        for (int i = 0; i < BUCKETS; i++) {
+            bucketRequests[i] = 0;
+            bucketFailures[i] = 0;
+        }
+        return State.CLOSED;
+    }
+
+    private void halfOpen() {
+        long transition;
+        synchronized (this) {
+            if (state != State.OPEN || System.nanoTime() < openUntilNanos) {
+                return;
+            }
+            state = State.HALF_OPEN;
+            isTrialInFlight = false;
+            transition = ++transitions;
+        }
+        notifyListeners(State.HALF_OPEN, transition);
+    }
+
+    private void record(long now, boolean isFailure) {
+        long bucketStart = now - Math.floorMod(now, bucketNanos);
+        int index = (int) Math.floorMod(now / bucketNanos, (long) BUCKETS);
+        if (bucketStarts[index] != bucketStart) {
+            bucketStarts[index] = bucketStart;
+            bucketRequests[index] = 0;
+            bucketFailures[index] = 0;
+        }
+        bucketRequests[index]++;
+        if (isFailure) {
+            bucketFailures[index]++;
+        }
+    }
+
+    private boolean shouldOpen(long now) {
+        long oldest = now - bucketNanos * BUCKETS;
+        int requests = 0;
+        int failures = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            if (bucketStarts[i] > oldest) {
+                requests += bucketRequests[i];
+                failures += bucketFailures[i];
+            }
+        }
+        return requests >= minimumRequests && failures >= failureRateThreshold * requests;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "TargetCircuitBreaker{" +
+            "state=" + state +
+            ", transport=" + transport +
+            '}';
+    }
+}
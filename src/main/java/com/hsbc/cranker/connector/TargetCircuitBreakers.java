@@ -0,0 +1,83 @@
+package com.hsbc.cranker.connector;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledExecutorService;
+
+/**
+ * The circuit breakers of all the targets of a connector, one per target.
+ * <p>With several targets (see {@link TargetPool} and {@link PathPrefixRouter}), each target has its own circuit
+ * breaker so that one failing target does not stop requests to the others. The targets are only unavailable, and
+ * the router registrations only stop replacing their idle sockets, once the circuits of all the targets are open.</p>
+ */
+class TargetCircuitBreakers implements TargetCircuitBreaker.Listener {
+
+    private final List<TargetCircuitBreaker> breakers;
+    private final CopyOnWriteArrayList<TargetCircuitBreaker.Listener> listeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * @param breakers the circuit breaker of each target
+     */
+    TargetCircuitBreakers(List<TargetCircuitBreaker> breakers) {
+        this.breakers = List.copyOf(breakers);
+        for (TargetCircuitBreaker breaker : this.breakers) {
+            breaker.addListener(this);
+        }
+    }
+
+    List<TargetCircuitBreaker> breakers() {
+        return breakers;
+    }
+
+    void addListener(TargetCircuitBreaker.Listener listener) {
+        listeners.addIfAbsent(listener);
+    }
+
+    void removeListener(TargetCircuitBreaker.Listener listener) {
+        listeners.remove(listener);
+    }
+
+    void start(ScheduledExecutorService executor) {
+        for (TargetCircuitBreaker breaker : breakers) {
+            breaker.start(executor);
+        }
+    }
+
+    void stop() {
+        for (TargetCircuitBreaker breaker : breakers) {
+            breaker.stop();
+        }
+    }
+
+    /**
+     * @return false while the circuits of all the targets are open
+     */
+    boolean isAvailable() {
+        for (TargetCircuitBreaker breaker : breakers) {
+            if (breaker.isAvailable()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public synchronized void onCircuitStateChanged(TargetCircuitBreaker.State state) {
+        // the changes of different targets can arrive in any order, so the availability is read again to pass on
+        // only what is still true
+        boolean isAvailable = isAvailable();
+        if (state == TargetCircuitBreaker.State.OPEN ? isAvailable : !isAvailable) {
+            return;
+        }
+        for (TargetCircuitBreaker.Listener listener : listeners) {
+            listener.onCircuitStateChanged(state);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "TargetCircuitBreakers{" +
+            "breakers=" + breakers +
+            '}';
+    }
+}
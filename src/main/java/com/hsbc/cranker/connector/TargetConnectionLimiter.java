@@ -0,0 +1,160 @@
+package com.hsbc.cranker.connector;
+
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Limits the number of requests sent to the target at the same time, and counts them.
+ * <p>Every request to a target holds either an HTTP/1.1 connection or an HTTP/2 stream until its response has
+ * been received, so capping the requests in flight caps the target connections at
+ * <code>maxConnections * maxStreamsPerConnection</code> streams. Requests over the limit wait, in the order they
+ * arrived, for an earlier request to complete, rather than making the HTTP client open more connections during a
+ * burst. A waiting request that is cancelled, for example because the router reset it, is never sent.</p>
+ */
+class TargetConnectionLimiter implements TargetTransport {
+
+    private final TargetTransport transport;
+    private final int maxConcurrentRequests;
+    private final Queue<Pending<?>> waiting = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger activeRequests = new AtomicInteger();
+    private final AtomicInteger queuedRequests = new AtomicInteger();
+    private final AtomicLong completedRequests = new AtomicLong();
+
+    /**
+     * @param transport the transport that sends the requests
+     * @param maxConcurrentRequests the maximum number of requests in flight, or <code>0</code> for no limit
+     */
+    TargetConnectionLimiter(TargetTransport transport, int maxConcurrentRequests) {
+        this.transport = transport;
+        this.maxConcurrentRequests = maxConcurrentRequests;
+    }
+
+    @Override
+    public <T> CompletableFuture<HttpResponse<T>> sendAsync(HttpRequest request, HttpResponse.BodyHandler<T> responseBodyHandler) {
+        if (maxConcurrentRequests == 0 || (waiting.isEmpty() && tryAcquire())) {
+            if (maxConcurrentRequests == 0) {
+                activeRequests.incrementAndGet();
+            }
+            CompletableFuture<HttpResponse<T>> result = new CompletableFuture<>();
+            send(new Pending<>(request, responseBodyHandler, result));
+            return result;
+        }
+        Pending<T> pending = new Pending<>(request, responseBodyHandler, new CompletableFuture<>());
+        queuedRequests.incrementAndGet();
+        waiting.add(pending);
+        sendWaiting();
+        return pending.result;
+    }
+
+    TargetTransport transport() {
+        return transport;
+    }
+
+    private boolean tryAcquire() {
+        int active;
+        do {
+            active = activeRequests.get();
+            if (active >= maxConcurrentRequests) {
+                return false;
+            }
+        } while (!activeRequests.compareAndSet(active, active + 1));
+        return true;
+    }
+
+    private void release() {
+        activeRequests.decrementAndGet();
+        completedRequests.incrementAndGet();
+        if (maxConcurrentRequests > 0) {
+            sendWaiting();
+        }
+    }
+
+    /**
+     * Sends waiting requests while there is capacity. This is called after every change to the queue or to the
+     * number of active requests, so a request is never left waiting when there is capacity for it.
+     */
+    private void sendWaiting() {
+        while (!waiting.isEmpty() && tryAcquire()) {
+            Pending<?> pending = waiting.poll();
+            if (pending == null) {
+                activeRequests.decrementAndGet();
+                continue;
+            }
+            queuedRequests.decrementAndGet();
+            if (pending.result.isDone()) {
+                activeRequests.decrementAndGet();
+                continue;
+            }
+            send(pending);
+        }
+    }
+
+    private <T> void send(Pending<T> pending) {
+        CompletableFuture<HttpResponse<T>> sent;
+        try {
+            sent = transport.sendAsync(pending.request, pending.responseBodyHandler);
+        } catch (Throwable e) {
+            release();
+            pending.result.completeExceptionally(e);
+            return;
+        }
+        sent.whenComplete((response, error) -> {
+            release();
+            if (error != null) {
+                pending.result.completeExceptionally(error);
+            } else {
+                pending.result.complete(response);
+            }
+        });
+        pending.result.whenComplete((response, error) -> {
+            if (pending.result.isCancelled()) {
+                sent.cancel(true);
+            }
+        });
+    }
+
+    /**
+     * A snapshot of the requests to the target, and the connections if the transport opens them itself
+     * @return the current statistics
+     */
+    TargetConnectionStats stats() {
+        int openConnections = -1;
+        int idleConnections = -1;
+        long connectionsOpened = -1;
+        if (transport instanceof Http1TargetTransport) {
+            Http1TargetTransport http1 = (Http1TargetTransport) transport;
+            openConnections = http1.openConnections();
+            idleConnections = http1.idleConnections();
+            connectionsOpened = http1.connectionsOpened();
+        }
+        return new TargetConnectionStats(activeRequests.get(), queuedRequests.get(), maxConcurrentRequests,
+            completedRequests.get(), openConnections, idleConnections, connectionsOpened);
+    }
+
+    @Override
+    public String toString() {
+        return "TargetConnectionLimiter{" +
+            "transport=" + transport +
+            ", maxConcurrentRequests=" + maxConcurrentRequests +
+            ", activeRequests=" + activeRequests.get() +
+            ", queuedRequests=" + queuedRequests.get() +
+            '}';
+    }
+
+    private static class Pending<T> {
+        private final HttpRequest request;
+        private final HttpResponse.BodyHandler<T> responseBodyHandler;
+        private final CompletableFuture<HttpResponse<T>> result;
+
+        private Pending(HttpRequest request, HttpResponse.BodyHandler<T> responseBodyHandler, CompletableFuture<HttpResponse<T>> result) {
+            this.request = request;
+            this.responseBodyHandler = responseBodyHandler;
+            this.result = result;
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package com.hsbc.cranker.connector;
+
+import java.net.URI;
+import java.util.List;
+
+/**
+ * A snapshot of the requests and connections from a connector to its target.
+ * <p>The connection numbers are only known when the connector opens the target connections itself, such as with
+ * {@link TargetTransport#http1(URI, int)} or a Unix domain socket target. They are <code>-1</code> when the JDK
+ * HTTP client or a custom {@link TargetTransport} is used, as those manage their own connections.</p>
+ * @see CrankerConnector#targetConnectionStats()
+ * @see CrankerConnectorBuilder#withTargetConnectionLimit(int, int)
+ */
+public final class TargetConnectionStats {
+
+    private final int activeRequests;
+    private final int queuedRequests;
+    private final int maxConcurrentRequests;
+    private final long completedRequests;
+    private final int openConnections;
+    private final int idleConnections;
+    private final long connectionsOpened;
+
+    TargetConnectionStats(int activeRequests, int queuedRequests, int maxConcurrentRequests, long completedRequests,
+                          int openConnections, int idleConnections, long connectionsOpened) {
+        this.activeRequests = activeRequests;
+        this.queuedRequests = queuedRequests;
+        this.maxConcurrentRequests = maxConcurrentRequests;
+        this.completedRequests = completedRequests;
+        this.openConnections = openConnections;
+        this.idleConnections = idleConnections;
+        this.connectionsOpened = connectionsOpened;
+    }
+
+    /**
+     * Adds together the statistics of several targets
+     * @param all the statistics of each target
+     * @return the totals, where a connection number is unknown if it is unknown for any of the targets
+     */
+    static TargetConnectionStats sum(List<TargetConnectionStats> all) {
+        int active = 0, queued = 0, maxConcurrent = 0, open = 0, idle = 0;
+        long completed = 0, opened = 0;
+        boolean isUnlimited = false;
+        for (TargetConnectionStats stats : all) {
+            active += stats.activeRequests;
+            queued += stats.queuedRequests;
+            isUnlimited |= stats.maxConcurrentRequests == 0;
+            maxConcurrent += stats.maxConcurrentRequests;
+            completed += stats.completedRequests;
+            open = open < 0 || stats.openConnections < 0 ? -1 : open + stats.openConnections;
+            idle = idle < 0 || stats.idleConnections < 0 ? -1 : idle + stats.idleConnections;
+            opened = opened < 0 || stats.connectionsOpened < 0 ? -1 : opened + stats.connectionsOpened;
+        }
+        return new TargetConnectionStats(active, queued, isUnlimited ? 0 : maxConcurrent, completed, open, idle, opened);
+    }
+
+    /**
+     * @return The number of requests that have been sent to the target and have not yet completed
+     */
+    public int activeRequests() {
+        return activeRequests;
+    }
+
+    /**
+     * @return The number of requests waiting to be sent because the target connection limit has been reached
+     */
+    public int queuedRequests() {
+        return queuedRequests;
+    }
+
+    /**
+     * @return The maximum number of requests sent to the target at the same time, or <code>0</code> if there
+     * is no limit
+     */
+    public int maxConcurrentRequests() {
+        return maxConcurrentRequests;
+    }
+
+    /**
+     * @return The number of requests to the target that have completed, successfully or not
+     */
+    public long completedRequests() {
+        return completedRequests;
+    }
+
+    /**
+     * @return The number of open connections to the target, including idle ones, or <code>-1</code> if unknown
+     */
+    public int openConnections() {
+        return openConnections;
+    }
+
+    /**
+     * @return The number of open connections to the target waiting to be reused, or <code>-1</code> if unknown
+     */
+    public int idleConnections() {
+        return idleConnections;
+    }
+
+    /**
+     * @return The number of connections to the target opened since the connector was built, or <code>-1</code>
+     * if unknown
+     */
+    public long connectionsOpened() {
+        return connectionsOpened;
+    }
+
+    @Override
+    public String toString() {
+        return "TargetConnectionStats{" +
+            "activeRequests=" + activeRequests +
+            ", queuedRequests=" + queuedRequests +
+            ", maxConcurrentRequests=" + maxConcurrentRequests +
+            ", completedRequests=" + completedRequests +
+            ", openConnections=" + openConnections +
+            ", idleConnections=" + idleConnections +
+            ", connectionsOpened=" + connectionsOpened +
+            '}';
+    }
+}
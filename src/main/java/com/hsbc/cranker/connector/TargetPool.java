@@ -0,0 +1,266 @@
+package com.hsbc.cranker.connector;
+
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Spreads requests over several instances of the target, such as one worker process per core group of a host.
+ * <p>Each request goes to the better of two randomly chosen targets ("power of two choices"), where a target is
+ * better if it has a lower cost: the number of requests it has outstanding, weighted by the moving average of the
+ * time it takes to start responding. Looking at two targets rather than all of them is nearly as good at evening out
+ * load, costs the same however many targets there are, and avoids every socket sending to the same least loaded
+ * target at once. A target that fails a request is treated as slow for a while, so that a target that fails
+ * quickly does not attract more requests.</p>
+ * <p>With a circuit breaker for each target, a target whose circuit is open is only chosen when the other choice
+ * is open too, in which case the request fails straight away.</p>
+ * <p>The sockets resolve request URIs against the first target, and then choose the target before building the
+ * request, resolving the request's path and query against the chosen target instead. The targets have the same
+ * path (see {@link CrankerConnectorBuilder#withTargets(java.util.Collection)}), so the request has the same path
+ * on whichever target is chosen.</p>
+ */
+class TargetPool implements TargetTransport, TargetSelector {
+
+    private static final double SMOOTHING = 0.2;
+    private static final long FAILURE_PENALTY_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final List<Target> targets;
+
+    /**
+     * @param targetUris the URIs of the targets
+     * @param transports the transport to each target, in the same order as the URIs
+     */
+    TargetPool(List<URI> targetUris, List<TargetConnectionLimiter> transports) {
+        this(targetUris, transports, null);
+    }
+
+    /**
+     * @param targetUris the URIs of the targets
+     * @param transports the transport to each target, in the same order as the URIs
+     * @param circuitBreakers the circuit breaker of each target, wrapping its transport, or null for none
+     */
+    TargetPool(List<URI> targetUris, List<TargetConnectionLimiter> transports, List<TargetCircuitBreaker> circuitBreakers) {
+        if (targetUris.isEmpty() || targetUris.size() != transports.size()) throw new IllegalArgumentException("There must be a transport for each target");
+        if (circuitBreakers != null && circuitBreakers.size() != transports.size()) throw new IllegalArgumentException("There must be a circuit breaker for each target");
+        List<Target> targets = new ArrayList<>(targetUris.size());
+        for (int i = 0; i < targetUris.size(); i++) {
+            targets.add(new Target(targetUris.get(i), transports.get(i), circuitBreakers == null ? null : circuitBreakers.get(i)));
+        }
+        this.targets = List.copyOf(targets);
+    }
+
+    /**
+     * A pool of the same targets and transports that does not go through the circuit breakers, for requests such
+     * as warm-up requests that should not count towards the health of the targets
+     * @return a pool without circuit breakers, or this pool if it has none
+     */
+    TargetPool withoutCircuitBreakers() {
+        if (targets.stream().allMatch(target -> target.circuitBreaker == null)) {
+            return this;
+        }
+        List<URI> uris = new ArrayList<>(targets.size());
+        List<TargetConnectionLimiter> transports = new ArrayList<>(targets.size());
+        for (Target target : targets) {
+            uris.add(target.uri);
+            transports.add(target.transport);
+        }
+        return new TargetPool(uris, transports);
+    }
+
+    /**
+     * Chooses the target of a request, so that the request can be built with the target's URI
+     * @param uri the URI of the request, resolved against the first target
+     * @return the chosen target, which the request must then be sent to
+     */
+    @Override
+    public Target select(URI uri) {
+        return choose(ThreadLocalRandom.current());
+    }
+
+    /**
+     * Sends a request that was built before its target was chosen, which means copying it with the URI of the
+     * chosen target. The sockets use {@link #select(URI)} instead, so that their requests are only built once.
+     */
+    @Override
+    public <T> CompletableFuture<HttpResponse<T>> sendAsync(HttpRequest request, HttpResponse.BodyHandler<T> responseBodyHandler) {
+        Target target = choose(ThreadLocalRandom.current());
+        HttpRequest requestToTarget;
+        try {
+            requestToTarget = target.requestFor(request);
+        } catch (Throwable e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        return target.sendAsync(requestToTarget, responseBodyHandler);
+    }
+
+    /**
+     * Picks the target with the lower cost out of two different random targets
+     * @param random the source of randomness
+     * @return the target to send the next request to
+     */
+    Target choose(Random random) {
+        int count = targets.size();
+        if (count == 1) {
+            return targets.get(0);
+        }
+        int first = random.nextInt(count);
+        int second = random.nextInt(count - 1);
+        if (second >= first) {
+            second++;
+        }
+        Target a = targets.get(first);
+        Target b = targets.get(second);
+        return a.cost() <= b.cost() ? a : b;
+    }
+
+    List<Target> targets() {
+        return targets;
+    }
+
+    /**
+     * The statistics of all the targets added together
+     * @return the current statistics
+     */
+    TargetConnectionStats stats() {
+        List<TargetConnectionStats> stats = new ArrayList<>(targets.size());
+        for (Target target : targets) {
+            stats.add(target.transport.stats());
+        }
+        return TargetConnectionStats.sum(stats);
+    }
+
+    @Override
+    public String toString() {
+        return "TargetPool{" +
+            "targets=" + targets +
+            '}';
+    }
+
+    /**
+     * Creates a copy of a request with a different URI
+     */
+    static HttpRequest copyWithUri(HttpRequest request, URI uri) {
+        HttpRequest.Builder builder = HttpRequest.newBuilder(uri)
+            .expectContinue(request.expectContinue())
+            .method(request.method(), request.bodyPublisher().orElseGet(HttpRequest.BodyPublishers::noBody));
+        request.timeout().ifPresent(builder::timeout);
+        request.version().ifPresent(builder::version);
+        for (Map.Entry<String, List<String>> header : request.headers().map().entrySet()) {
+            for (String value : header.getValue()) {
+                builder.header(header.getKey(), value);
+            }
+        }
+        return builder.build();
+    }
+
+    static class Target implements TargetSelector.Selection {
+        private final URI uri;
+        private final boolean isUnixDomainSocket;
+        private final TargetConnectionLimiter transport;
+        private final TargetCircuitBreaker circuitBreaker;
+        private final boolean acceptsForwardedRequests;
+        private final AtomicInteger outstanding = new AtomicInteger();
+        private volatile double responseNanos = -1;
+
+        private Target(URI uri, TargetConnectionLimiter transport, TargetCircuitBreaker circuitBreaker) {
+            this.uri = uri;
+            this.isUnixDomainSocket = Http1TargetTransport.isUnixDomainSocket(uri);
+            this.transport = transport;
+            this.circuitBreaker = circuitBreaker;
+            this.acceptsForwardedRequests = ForwardedRequest.isAcceptedBy(transport);
+        }
+
+        /**
+         * The outstanding requests weighted by the average response time, with targets that have no response time
+         * yet counting as fast so that they are tried. A target whose circuit is open costs the most.
+         */
+        double cost() {
+            if (circuitBreaker != null && !circuitBreaker.isAvailable()) {
+                return Double.POSITIVE_INFINITY;
+            }
+            return (outstanding.get() + 1) * Math.max(1.0, responseNanos);
+        }
+
+        int outstanding() {
+            return outstanding.get();
+        }
+
+        private synchronized void onResponseTime(long nanos) {
+            responseNanos = responseNanos < 0 ? nanos : responseNanos + (nanos - responseNanos) * SMOOTHING;
+        }
+
+        @Override
+        public URI uri(URI requestUri) {
+            // the transport to a Unix domain socket only uses the path and query
+            if (isUnixDomainSocket || (uri.getScheme().equalsIgnoreCase(requestUri.getScheme())
+                && uri.getRawAuthority().equalsIgnoreCase(requestUri.getRawAuthority()))) {
+                return requestUri;
+            }
+            // resolved against this target in the same way as against the first one
+            return uri.resolve(requestUri.getRawPath() + (requestUri.getRawQuery() == null ? "" : "?" + requestUri.getRawQuery()));
+        }
+
+        @Override
+        public boolean acceptsForwardedRequests() {
+            return acceptsForwardedRequests;
+        }
+
+        @Override
+        public <T> CompletableFuture<HttpResponse<T>> sendAsync(HttpRequest request, HttpResponse.BodyHandler<T> responseBodyHandler) {
+            HttpRequest requestToTarget;
+            try {
+                requestToTarget = request instanceof ForwardedRequest && !acceptsForwardedRequests ? ((ForwardedRequest) request).toHttpRequest() : request;
+            } catch (Throwable e) {
+                return CompletableFuture.failedFuture(e);
+            }
+            outstanding.incrementAndGet();
+            long start = System.nanoTime();
+            AtomicBoolean isMeasured = new AtomicBoolean();
+            HttpResponse.BodyHandler<T> timedHandler = responseInfo -> {
+                if (isMeasured.compareAndSet(false, true)) {
+                    onResponseTime(System.nanoTime() - start);
+                }
+                return responseBodyHandler.apply(responseInfo);
+            };
+            CompletableFuture<HttpResponse<T>> sent;
+            try {
+                sent = (circuitBreaker != null ? circuitBreaker : transport).sendAsync(requestToTarget, timedHandler);
+            } catch (Throwable e) {
+                outstanding.decrementAndGet();
+                onResponseTime(FAILURE_PENALTY_NANOS);
+                return CompletableFuture.failedFuture(e);
+            }
+            sent.whenComplete((response, error) -> {
+                outstanding.decrementAndGet();
+                // a request cancelled by the router says nothing about the target
+                if (error != null && !sent.isCancelled() && isMeasured.compareAndSet(false, true)) {
+                    onResponseTime(System.nanoTime() - start + FAILURE_PENALTY_NANOS);
+                }
+            });
+            return sent;
+        }
+
+        private HttpRequest requestFor(HttpRequest request) {
+            URI requestUri = request.uri();
+            URI uri = uri(requestUri);
+            if (request instanceof ForwardedRequest) {
+                return uri == requestUri ? request : ((ForwardedRequest) request).withUri(uri);
+            }
+            return uri == requestUri ? request : copyWithUri(request, uri);
+        }
+
+        @Override
+        public String toString() {
+            return uri + " (outstanding=" + outstanding.get() + ", responseMillis=" + String.format("%.2f", responseNanos / 1e6) + ")";
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.hsbc.cranker.connector;
+
+import javax.net.ssl.SSLSession;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.Optional;
+
+/**
+ * A response received by a {@link TargetTransport} that does not use the JDK HTTP client.
+ * @param <T> the response body type
+ */
+class TargetResponse<T> implements HttpResponse<T> {
+    private final HttpRequest request;
+    private final Info info;
+    private final T body;
+
+    TargetResponse(HttpRequest request, Info info, T body) {
+        this.request = request;
+        this.info = info;
+        this.body = body;
+    }
+
+    @Override
+    public int statusCode() {
+        return info.statusCode();
+    }
+
+    @Override
+    public HttpRequest request() {
+        return request;
+    }
+
+    @Override
+    public Optional<HttpResponse<T>> previousResponse() {
+        return Optional.empty();
+    }
+
+    @Override
+    public HttpHeaders headers() {
+        return info.headers();
+    }
+
+    @Override
+    public T body() {
+        return body;
+    }
+
+    @Override
+    public Optional<SSLSession> sslSession() {
+        return Optional.empty();
+    }
+
+    @Override
+    public URI uri() {
+        return request.uri();
+    }
+
+    @Override
+    public HttpClient.Version version() {
+        return info.version();
+    }
+
+    @Override
+    public String toString() {
+        return "(" + request.method() + " " + request.uri() + ") " + statusCode();
+    }
+
+    /**
+     * The status and headers of a response, which are given to a body handler before the body is received
+     */
+    static class Info implements HttpResponse.ResponseInfo {
+        private final int status;
+        private final HttpHeaders headers;
+        private final HttpClient.Version version;
+
+        Info(int status, HttpHeaders headers, HttpClient.Version version) {
+            this.status = status;
+            this.headers = headers;
+            this.version = version;
+        }
+
+        @Override
+        public int statusCode() {
+            return status;
+        }
+
+        @Override
+        public HttpHeaders headers() {
+            return headers;
+        }
+
+        @Override
+        public HttpClient.Version version() {
+            return version;
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package com.hsbc.cranker.connector;
+
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A transport that sends each request to one of several targets, and can choose the target before the request is
+ * built. The sockets select the target first and build the request with the URI of the chosen target, so that the
+ * request does not have to be copied to change its URI once the target is known.
+ */
+interface TargetSelector {
+
+    /**
+     * Chooses the target of a request
+     * @param uri the URI of the request, resolved against the first target
+     * @return the chosen target
+     */
+    Selection select(URI uri);
+
+    /**
+     * A target chosen for a request, which sends requests as they are given
+     */
+    interface Selection extends TargetTransport {
+
+        /**
+         * @param uri the URI of the request, resolved against the first target
+         * @return the URI to build the request to this target with
+         */
+        URI uri(URI uri);
+
+        /**
+         * @return true if a {@link ForwardedRequest} can be sent to this target as it is
+         */
+        boolean acceptsForwardedRequests();
+    }
+
+    /**
+     * The selector to use for a transport: the transport itself if it chooses between targets, or else a selector
+     * that always chooses the transport
+     * @param transport the transport requests are sent with
+     * @return a selector for the transport
+     */
+    static TargetSelector of(TargetTransport transport) {
+        if (transport instanceof TargetSelector) {
+            return (TargetSelector) transport;
+        }
+        Selection selection = single(transport);
+        return uri -> selection;
+    }
+
+    /**
+     * A selection that is always the given transport, for a single target
+     * @param transport the transport to the target
+     * @return a selection that sends to the transport without changing the request URI
+     */
+    static Selection single(TargetTransport transport) {
+        boolean acceptsForwardedRequests = ForwardedRequest.isAcceptedBy(transport);
+        return new Selection() {
+            @Override
+            public URI uri(URI uri) {
+                return uri;
+            }
+
+            @Override
+            public boolean acceptsForwardedRequests() {
+                return acceptsForwardedRequests;
+            }
+
+            @Override
+            public <T> CompletableFuture<HttpResponse<T>> sendAsync(HttpRequest request, HttpResponse.BodyHandler<T> responseBodyHandler) {
+                return transport.sendAsync(request, responseBodyHandler);
+            }
+
+            @Override
+            public String toString() {
+                return transport.toString();
+            }
+        };
+    }
+}
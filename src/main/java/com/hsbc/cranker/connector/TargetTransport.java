@@ -0,0 +1,67 @@
+package com.hsbc.cranker.connector;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Sends the requests received from routers to the target.
+ * <p>This is the part of {@link java.net.http.HttpClient} that connector sockets use, so that the target can be
+ * reached with something other than the JDK HTTP client, such as a {@link CrankerHandler} in the same JVM or the
+ * built-in HTTP/1.1 client returned by {@link #http1(URI, int)}. A transport is set on a connector with
+ * {@link CrankerConnectorBuilder#withTargetTransport(TargetTransport)}; by default the JDK HTTP client is used.</p>
+ * <p>Implementations must be thread safe, and should not block the calling thread. The body publisher of a
+ * request publishes the request body as it is received from the router, and the response body handler passes the
+ * response to the router as it is published to the handler's subscriber, with back pressure. If the returned future
+ * is cancelled, for example because the router reset the request, the transport should stop sending the response
+ * body.</p>
+ */
+public interface TargetTransport {
+
+    /**
+     * The target URI used when the target is not reached by URI, such as a handler or a Unix domain socket, which
+     * the paths of requests are resolved against
+     */
+    URI LOCAL_TARGET_URI = URI.create("http://localhost/");
+
+    /**
+     * Sends a request to the target
+     * @param request the request, with a URI resolved against the target URI
+     * @param responseBodyHandler the handler that receives the response status, headers and body
+     * @param <T> the response body type
+     * @return A future that completes when the response has been fully received, or fails if the request fails
+     */
+    <T> CompletableFuture<HttpResponse<T>> sendAsync(HttpRequest request, HttpResponse.BodyHandler<T> responseBodyHandler);
+
+    /**
+     * Creates a transport that sends requests with the given JDK HTTP client, which is what connectors do by default
+     * @param client the client to use
+     * @return a new transport
+     */
+    static TargetTransport httpClient(HttpClient client) {
+        if (client == null) throw new IllegalArgumentException("client cannot be null");
+        return HttpClientPool.of(client);
+    }
+
+    /**
+     * Creates a transport that sends requests to a plain HTTP target with a lightweight built-in HTTP/1.1 client.
+     * <p>Compared with the JDK HTTP client, this writes the request headers received from the router to the target
+     * as they are, without validating each one or dropping the ones the JDK client restricts (such as <code>host</code>
+     * on JDK 11), and encodes requests and decodes responses directly in per-connection buffers. Each request uses
+     * blocking IO on its own thread, which is a virtual thread on JDK 21 or later and otherwise one of a bounded
+     * pool of threads. The request {@link HttpRequest#timeout() timeout} limits the wait for the response, and
+     * cancelling a request closes its connection.</p>
+     * <p>Up to <code>maxIdleConnections</code> connections are kept open after a request completes so that later
+     * requests can reuse them. HTTPS targets are not supported; use the JDK HTTP client for those.</p>
+     * @param target the <code>http</code> URI of the target, which should be the same as the connector's target
+     * @param maxIdleConnections the maximum number of connections kept open for reuse
+     * @return a new transport
+     */
+    static TargetTransport http1(URI target, int maxIdleConnections) {
+        if (target == null) throw new IllegalArgumentException("target cannot be null");
+        if (maxIdleConnections < 0) throw new IllegalArgumentException("maxIdleConnections cannot be negative");
+        return Http1TargetTransport.tcp(target, maxIdleConnections);
+    }
+}
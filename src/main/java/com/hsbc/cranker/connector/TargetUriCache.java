@@ -0,0 +1,87 @@
+package com.hsbc.cranker.connector;
+
+import java.net.URI;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Resolves the paths of requests against the target URI, remembering the most recently used results.
+ * <p>Resolving parses and normalises a new {@link URI} for every request, although most traffic is usually
+ * to a small set of paths. With a capacity, the URIs of up to that many paths (with their query strings) are
+ * kept, and the least recently used is dropped when it is full. Very long paths are not kept, as they are
+ * unlikely to be repeated. With no capacity, every path is resolved.</p>
+ */
+class TargetUriCache {
+
+    private static final int MAX_CACHED_PATH_LENGTH = 1024;
+
+    private final URI targetUri;
+    private final int maxEntries;
+    private final Map<String, URI> uris;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * @param targetUri the URI that paths are resolved against
+     * @param maxEntries the most paths to keep, or <code>0</code> to resolve every path
+     */
+    TargetUriCache(URI targetUri, int maxEntries) {
+        this.targetUri = targetUri;
+        this.maxEntries = maxEntries;
+        this.uris = maxEntries == 0 ? null : new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, URI> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    URI targetUri() {
+        return targetUri;
+    }
+
+    /**
+     * @param dest the raw path and query string of a request
+     * @return the target URI resolved with the path
+     */
+    URI resolve(String dest) {
+        if (uris == null || dest.length() > MAX_CACHED_PATH_LENGTH) {
+            return targetUri.resolve(dest);
+        }
+        URI uri;
+        synchronized (uris) {
+            uri = uris.get(dest);
+        }
+        if (uri != null) {
+            hits.increment();
+            return uri;
+        }
+        misses.increment();
+        uri = targetUri.resolve(dest);
+        synchronized (uris) {
+            uris.put(dest, uri);
+        }
+        return uri;
+    }
+
+    TargetUriCacheStats stats() {
+        int size;
+        if (uris == null) {
+            size = 0;
+        } else {
+            synchronized (uris) {
+                size = uris.size();
+            }
+        }
+        return new TargetUriCacheStats(hits.sum(), misses.sum(), size, maxEntries);
+    }
+
+    @Override
+    public String toString() {
+        return "TargetUriCache{" +
+            "targetUri=" + targetUri +
+            ", maxEntries=" + maxEntries +
+            '}';
+    }
+}
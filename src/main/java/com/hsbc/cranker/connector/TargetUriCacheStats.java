@@ -0,0 +1,67 @@
+package com.hsbc.cranker.connector;
+
+/**
+ * A snapshot of the cache of resolved target URIs set with {@link CrankerConnectorBuilder#withTargetUriCache(int)}
+ * @see CrankerConnector#targetUriCacheStats()
+ */
+public final class TargetUriCacheStats {
+
+    private final long hits;
+    private final long misses;
+    private final int size;
+    private final int maxEntries;
+
+    TargetUriCacheStats(long hits, long misses, int size, int maxEntries) {
+        this.hits = hits;
+        this.misses = misses;
+        this.size = size;
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * @return The number of requests whose target URI was found in the cache
+     */
+    public long hits() {
+        return hits;
+    }
+
+    /**
+     * @return The number of requests whose target URI had to be resolved and was then added to the cache
+     */
+    public long misses() {
+        return misses;
+    }
+
+    /**
+     * @return The proportion of lookups that were hits, from 0 to 1, or 0 if there have been none
+     */
+    public double hitRate() {
+        long total = hits + misses;
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    /**
+     * @return The number of target URIs in the cache
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return The most target URIs the cache holds, or <code>0</code> if there is no cache
+     */
+    public int maxEntries() {
+        return maxEntries;
+    }
+
+    @Override
+    public String toString() {
+        return "TargetUriCacheStats{" +
+            "hits=" + hits +
+            ", misses=" + misses +
+            ", hitRate=" + String.format("%.3f", hitRate()) +
+            ", size=" + size +
+            ", maxEntries=" + maxEntries +
+            '}';
+    }
+}
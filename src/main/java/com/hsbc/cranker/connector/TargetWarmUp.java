@@ -0,0 +1,209 @@
+package com.hsbc.cranker.connector;
+
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.WebSocket;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+
+/**
+ * Warms up the connector before it registers with any routers, so that the first real requests are not slowed
+ * down by connection setup, TLS handshakes and code that has not been compiled by the JIT yet.
+ * <p>First, a number of requests are sent to the target's health path at the same time, which leaves that many
+ * keep-alive connections in the target HTTP clients' pools (for a {@link CrankerHandler} target, this just runs
+ * the handler). Then synthetic requests to the health path are passed
+ * through a cranker_3.0 socket connected to an in-memory websocket, so that the whole request and response
+ * pipeline is run without a router.</p>
+ * <p>Warming up is best effort: errors are ignored, and it stops when the timeout is reached.</p>
+ */
+class TargetWarmUp {
+
+    private static final ConnectorSocketListener NO_OP_SOCKET_LISTENER = new ConnectorSocketListener() {
+        @Override
+        public void onConnectionAcquired(ConnectorSocket socket) {
+        }
+
+        @Override
+        public void onStreamStarted(ConnectorSocket socket) {
+        }
+
+        @Override
+        public void onClose(ConnectorSocket socket, Throwable error) {
+        }
+    };
+    private static final ProxyEventListener NO_OP_PROXY_LISTENER = new ProxyEventListener() {
+    };
+
+    private final URI targetUri;
+    private final TargetTransport targetTransport;
+    private final String healthPath;
+    private final int connections;
+    private final int requests;
+    private final long timeoutNanos;
+
+    TargetWarmUp(URI targetUri, TargetTransport targetTransport, String healthPath, int connections, int requests, Duration timeout) {
+        this.targetUri = targetUri;
+        this.targetTransport = targetTransport;
+        this.healthPath = healthPath;
+        this.connections = connections;
+        this.requests = requests;
+        this.timeoutNanos = timeout.toNanos();
+    }
+
+    /**
+     * Runs the warm up, blocking until it is complete or the timeout is reached
+     * @param executor the executor used by connector sockets
+     * @param streamExecutor the executor for cranker_3.0 streams, or null to process them inline
+     * @return The time taken
+     */
+    Duration run(ScheduledExecutorService executor, StreamExecutor streamExecutor) {
+        long start = System.nanoTime();
+        long deadline = start + timeoutNanos;
+        try {
+            openConnections(deadline);
+            sendThroughPipeline(deadline, executor, streamExecutor);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return Duration.ofNanos(System.nanoTime() - start);
+    }
+
+    private void openConnections(long deadline) throws InterruptedException {
+        URI uri = targetUri.resolve(healthPath);
+        TargetSelector selector = TargetSelector.of(targetTransport);
+        List<CompletableFuture<?>> responses = new ArrayList<>();
+        for (int i = 0; i < connections; i++) {
+            TargetSelector.Selection target = selector.select(uri);
+            HttpRequest request = HttpRequest.newBuilder(target.uri(uri)).GET().build();
+            responses.add(target.sendAsync(request, HttpResponse.BodyHandlers.discarding()));
+        }
+        await(responses, deadline);
+    }
+
+    private void sendThroughPipeline(long deadline, ScheduledExecutorService executor, StreamExecutor streamExecutor) throws InterruptedException {
+        if (requests < 1) {
+            return;
+        }
+        WarmUpWebSocket webSocket = new WarmUpWebSocket();
+        ConnectorSocketV3 socket = new ConnectorSocketV3(new TargetUriCache(targetUri, 0), targetTransport, null, NO_OP_SOCKET_LISTENER, NO_OP_PROXY_LISTENER, executor, streamExecutor);
+        socket.onOpen(webSocket);
+        try {
+            String headerLine = "GET " + healthPath + " HTTP/1.1\nuser-agent:cranker-connector-warm-up";
+            int streamId = 1;
+            int sent = 0;
+            while (sent < requests && System.nanoTime() < deadline) {
+                int batch = Math.min(Math.max(1, connections), requests - sent);
+                List<CompletableFuture<?>> responses = new ArrayList<>();
+                for (int i = 0; i < batch; i++) {
+                    responses.add(webSocket.expectStreamEnd(streamId));
+                    socket.onBinary(webSocket, ConnectorSocketV3.headerMessage(streamId, true, true, headerLine), true);
+                    streamId += 2;
+                }
+                await(responses, deadline);
+                sent += batch;
+            }
+        } finally {
+            socket.close();
+        }
+    }
+
+    private static void await(List<CompletableFuture<?>> futures, long deadline) throws InterruptedException {
+        try {
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0]))
+                .get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (ExecutionException | TimeoutException ignored) {
+            // warming up is best effort
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "TargetWarmUp{" +
+            "targetUri=" + targetUri +
+            ", healthPath='" + healthPath + '\'' +
+            ", connections=" + connections +
+            ", requests=" + requests +
+            '}';
+    }
+
+    /**
+     * An in-memory websocket that plays the part of the router, completing a future when a stream's response ends.
+     */
+    private static class WarmUpWebSocket implements WebSocket {
+        private final Map<Integer, CompletableFuture<Void>> streamEnds = new ConcurrentHashMap<>();
+        private volatile boolean isOutputClosed;
+
+        CompletableFuture<Void> expectStreamEnd(int streamId) {
+            return streamEnds.computeIfAbsent(streamId, id -> new CompletableFuture<>());
+        }
+
+        @Override
+        public CompletableFuture<WebSocket> sendBinary(ByteBuffer data, boolean last) {
+            int position = data.position();
+            if (data.remaining() >= 6) {
+                byte messageType = data.get(position);
+                byte flags = data.get(position + 1);
+                int streamId = data.getInt(position + 2);
+                boolean isStreamEnd = (messageType == ConnectorSocketV3.MESSAGE_TYPE_DATA || messageType == ConnectorSocketV3.MESSAGE_TYPE_HEADER)
+                    && (flags & 1) > 0;
+                if (isStreamEnd || messageType == ConnectorSocketV3.MESSAGE_TYPE_RST_STREAM) {
+                    CompletableFuture<Void> end = streamEnds.remove(streamId);
+                    if (end != null) {
+                        end.complete(null);
+                    }
+                }
+            }
+            return CompletableFuture.completedFuture(this);
+        }
+
+        @Override
+        public CompletableFuture<WebSocket> sendText(CharSequence data, boolean last) {
+            return CompletableFuture.completedFuture(this);
+        }
+
+        @Override
+        public CompletableFuture<WebSocket> sendPing(ByteBuffer message) {
+            return CompletableFuture.completedFuture(this);
+        }
+
+        @Override
+        public CompletableFuture<WebSocket> sendPong(ByteBuffer message) {
+            return CompletableFuture.completedFuture(this);
+        }
+
+        @Override
+        public CompletableFuture<WebSocket> sendClose(int statusCode, String reason) {
+            isOutputClosed = true;
+            return CompletableFuture.completedFuture(this);
+        }
+
+        @Override
+        public void request(long n) {
+        }
+
+        @Override
+        public String getSubprotocol() {
+            return CrankerConnectorBuilder.CRANKER_PROTOCOL_3;
+        }
+
+        @Override
+        public boolean isOutputClosed() {
+            return isOutputClosed;
+        }
+
+        @Override
+        public boolean isInputClosed() {
+            return isOutputClosed;
+        }
+
+        @Override
+        public void abort() {
+            isOutputClosed = true;
+        }
+    }
+}
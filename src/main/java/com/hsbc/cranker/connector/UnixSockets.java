@@ -0,0 +1,66 @@
+package com.hsbc.cranker.connector;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.SocketAddress;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Path;
+
+/**
+ * Access to Unix domain sockets.
+ * <p>Unix domain socket channels need JDK 16 or later, while this library is built for JDK 11, so the socket
+ * address class is looked up when this class loads. This works whether the library is loaded from its JAR or
+ * from a classes directory.</p>
+ */
+class UnixSockets {
+
+    private static final Method ADDRESS_FACTORY = addressFactory();
+
+    private UnixSockets() {}
+
+    private static Method addressFactory() {
+        try {
+            return Class.forName("java.net.UnixDomainSocketAddress").getMethod("of", Path.class);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Whether Unix domain sockets can be used
+     * @return true if Unix domain socket channels are available in this JVM
+     */
+    static boolean isSupported() {
+        return ADDRESS_FACTORY != null;
+    }
+
+    /**
+     * The address of a Unix domain socket
+     * @param path the path of the socket file
+     * @return a <code>java.net.UnixDomainSocketAddress</code> for the path
+     * @throws UnsupportedOperationException if Unix domain sockets are not supported by this JVM
+     */
+    static SocketAddress address(Path path) {
+        if (ADDRESS_FACTORY == null) throw new UnsupportedOperationException("Unix domain sockets require JDK 16 or later");
+        try {
+            return (SocketAddress) ADDRESS_FACTORY.invoke(null, path);
+        } catch (InvocationTargetException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            throw new IllegalStateException("Could not create a Unix domain socket address for " + path, cause);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException("Could not create a Unix domain socket address for " + path, e);
+        }
+    }
+
+    /**
+     * Opens a blocking channel connected to a Unix domain socket
+     * @param path the path of the socket file
+     * @return a connected channel
+     * @throws IOException if the channel cannot be connected
+     */
+    static SocketChannel open(Path path) throws IOException {
+        return SocketChannel.open(address(path));
+    }
+}
@@ -0,0 +1,30 @@
+package com.hsbc.cranker.connector;
+
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Access to virtual threads.
+ * <p>Virtual threads need JDK 21 or later, so this version, which is used on older JDKs, does not support them.
+ * The JDK 21 version of this class is in the <code>META-INF/versions/21</code> entry of the multi-release JAR.</p>
+ */
+class VirtualThreads {
+
+    private VirtualThreads() {}
+
+    /**
+     * Whether virtual threads can be used
+     * @return true if virtual threads are available in this JVM
+     */
+    static boolean isSupported() {
+        return false;
+    }
+
+    /**
+     * Creates an executor that starts a new virtual thread for each task
+     * @param threadNamePrefix the prefix of the thread names
+     * @return a new executor
+     */
+    static ExecutorService newVirtualThreadPerTaskExecutor(String threadNamePrefix) {
+        throw new UnsupportedOperationException("Virtual threads require JDK 21 or later");
+    }
+}
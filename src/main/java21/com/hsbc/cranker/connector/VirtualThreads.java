@@ -0,0 +1,31 @@
+package com.hsbc.cranker.connector;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Access to virtual threads.
+ * <p>This is the JDK 21 version of this class, packaged in the <code>META-INF/versions/21</code> entry of the
+ * multi-release JAR.</p>
+ */
+class VirtualThreads {
+
+    private VirtualThreads() {}
+
+    /**
+     * Whether virtual threads can be used
+     * @return true if virtual threads are available in this JVM
+     */
+    static boolean isSupported() {
+        return true;
+    }
+
+    /**
+     * Creates an executor that starts a new virtual thread for each task
+     * @param threadNamePrefix the prefix of the thread names
+     * @return a new executor
+     */
+    static ExecutorService newVirtualThreadPerTaskExecutor(String threadNamePrefix) {
+        return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(threadNamePrefix, 0).factory());
+    }
+}
@@ -0,0 +1,88 @@
+package com.hsbc.cranker.connector;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class AdaptiveWindowTest {
+
+    private static final long MILLIS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    @Test
+    void startsAtTheMinimum() {
+        AdaptiveWindow window = new AdaptiveWindow(2, 50);
+        assertThat(window.windowSize(0), equalTo(2));
+    }
+
+    @Test
+    void growsWithTheAcquisitionRateAndConnectTime() {
+        AdaptiveWindow window = new AdaptiveWindow(2, 50);
+        window.onConnected(100 * MILLIS);
+        long now = 0;
+        for (int i = 0; i < 200; i++) { // 100 requests per second
+            now += 10 * MILLIS;
+            window.onAcquired(now);
+        }
+        // about 100/s * 0.1s * 2 headroom
+        int size = window.windowSize(now);
+        assertThat(size, greaterThan(10));
+        assertThat(size, lessThan(50));
+    }
+
+    @Test
+    void shrinksWhenTrafficStops() {
+        AdaptiveWindow window = new AdaptiveWindow(2, 50);
+        window.onConnected(100 * MILLIS);
+        long now = 0;
+        for (int i = 0; i < 200; i++) {
+            now += 10 * MILLIS;
+            window.onAcquired(now);
+        }
+        int busySize = window.windowSize(now);
+        assertThat(window.windowSize(now + TimeUnit.SECONDS.toNanos(5)), lessThan(busySize));
+        assertThat(window.windowSize(now + TimeUnit.SECONDS.toNanos(120)), equalTo(2));
+    }
+
+    @Test
+    void neverExceedsTheMaximum() {
+        AdaptiveWindow window = new AdaptiveWindow(2, 8);
+        window.onConnected(500 * MILLIS);
+        long now = 0;
+        for (int i = 0; i < 10000; i++) {
+            now += MILLIS;
+            window.onAcquired(now);
+        }
+        assertThat(window.windowSize(now), equalTo(8));
+    }
+
+    @Test
+    void shrinksWhenTheTargetIsSlow() {
+        AdaptiveWindow window = new AdaptiveWindow(1, 100);
+        window.onConnected(100 * MILLIS);
+        long now = 0;
+        for (int i = 0; i < 200; i++) {
+            now += 10 * MILLIS;
+            window.onAcquired(now);
+            window.onRequestCompleted(5 * MILLIS);
+        }
+        int healthySize = window.windowSize(now);
+        for (int i = 0; i < 20; i++) {
+            now += 10 * MILLIS;
+            window.onAcquired(now);
+            window.onRequestCompleted(100 * MILLIS);
+        }
+        assertThat(window.windowSize(now), lessThan(healthySize));
+    }
+
+    @Test
+    void limitsAreValidated() {
+        assertThrows(IllegalArgumentException.class, () -> new AdaptiveWindow(0, 10));
+        assertThrows(IllegalArgumentException.class, () -> new AdaptiveWindow(5, 4));
+    }
+}
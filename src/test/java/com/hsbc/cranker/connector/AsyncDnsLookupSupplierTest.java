@@ -0,0 +1,166 @@
+package com.hsbc.cranker.connector;
+
+import org.junit.jupiter.api.Test;
+
+import java.net.InetAddress;
+import java.net.URI;
+import java.net.UnknownHostException;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class AsyncDnsLookupSupplierTest {
+
+    private static final URI ROUTER_A = URI.create("wss://router-a.example.org:8443");
+    private static final URI ROUTER_B = URI.create("wss://router-b.example.org:8443");
+
+    private final Map<String, InetAddress[]> dns = new ConcurrentHashMap<>();
+    private final AtomicInteger lookups = new AtomicInteger();
+
+    private InetAddress[] resolve(String host) throws UnknownHostException {
+        lookups.incrementAndGet();
+        InetAddress[] addresses = dns.get(host);
+        if (addresses == null) {
+            throw new UnknownHostException(host);
+        }
+        return addresses;
+    }
+
+    private static InetAddress[] ips(String... ips) throws UnknownHostException {
+        InetAddress[] addresses = new InetAddress[ips.length];
+        for (int i = 0; i < ips.length; i++) {
+            addresses[i] = InetAddress.getByName(ips[i]);
+        }
+        return addresses;
+    }
+
+    @Test
+    void resolvesAllHostsAndCachesTheResults() throws Exception {
+        dns.put("router-a.example.org", ips("10.0.0.1", "10.0.0.2"));
+        dns.put("router-b.example.org", ips("10.0.1.1"));
+        var supplier = new RegistrationUriSuppliers.AsyncDnsLookupSupplier(Duration.ofMinutes(1), Duration.ofSeconds(5), List.of(ROUTER_A, ROUTER_B), this::resolve);
+        Collection<URI> uris = supplier.get();
+        assertThat(uris, containsInAnyOrder(URI.create("wss://10.0.0.1:8443"), URI.create("wss://10.0.0.2:8443"), URI.create("wss://10.0.1.1:8443")));
+        assertThat(supplier.get(), equalTo(uris));
+        assertThat(lookups.get(), equalTo(2));
+        assertThat(supplier.lookupTimes().keySet(), containsInAnyOrder(ROUTER_A, ROUTER_B));
+    }
+
+    @Test
+    void expiredResultsAreLookedUpAgain() throws Exception {
+        dns.put("router-a.example.org", ips("10.0.0.1"));
+        var supplier = new RegistrationUriSuppliers.AsyncDnsLookupSupplier(Duration.ZERO, Duration.ofSeconds(5), List.of(ROUTER_A), this::resolve);
+        assertThat(supplier.get(), contains(URI.create("wss://10.0.0.1:8443")));
+        dns.put("router-a.example.org", ips("10.0.0.9"));
+        assertThat(eventually(supplier, uris -> uris.contains(URI.create("wss://10.0.0.9:8443"))), contains(URI.create("wss://10.0.0.9:8443")));
+        supplier.close();
+    }
+
+    @Test
+    void expiredResultsAreReturnedWithoutWaitingForTheLookup() throws Exception {
+        dns.put("router-a.example.org", ips("10.0.0.1"));
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger calls = new AtomicInteger();
+        var supplier = new RegistrationUriSuppliers.AsyncDnsLookupSupplier(Duration.ZERO, Duration.ofSeconds(5), List.of(ROUTER_A), host -> {
+            if (calls.incrementAndGet() > 1) {
+                try {
+                    release.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException ignored) {
+                }
+                return ips("10.0.0.9");
+            }
+            return resolve(host);
+        });
+        assertThat(supplier.get(), contains(URI.create("wss://10.0.0.1:8443")));
+        long start = System.nanoTime();
+        assertThat(supplier.get(), contains(URI.create("wss://10.0.0.1:8443")));
+        assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), lessThan(1000L));
+        release.countDown();
+        assertThat(eventually(supplier, uris -> uris.contains(URI.create("wss://10.0.0.9:8443"))), contains(URI.create("wss://10.0.0.9:8443")));
+        supplier.close();
+    }
+
+    @Test
+    void theLastGoodResultIsUsedWhenALookupFails() throws Exception {
+        dns.put("router-a.example.org", ips("10.0.0.1"));
+        dns.put("router-b.example.org", ips("10.0.1.1"));
+        var supplier = new RegistrationUriSuppliers.AsyncDnsLookupSupplier(Duration.ZERO, Duration.ofSeconds(5), List.of(ROUTER_A, ROUTER_B), this::resolve);
+        supplier.get();
+        dns.remove("router-a.example.org");
+        assertThat(supplier.get(), containsInAnyOrder(URI.create("wss://10.0.0.1:8443"), URI.create("wss://10.0.1.1:8443")));
+        long deadline = System.currentTimeMillis() + 5000;
+        while (supplier.failedLookups() == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(supplier.failedLookups(), equalTo(1L));
+        assertThat(supplier.get(), containsInAnyOrder(URI.create("wss://10.0.0.1:8443"), URI.create("wss://10.0.1.1:8443")));
+        supplier.close();
+    }
+
+    @Test
+    void closingStopsTheLookupsButKeepsTheCachedResults() throws Exception {
+        dns.put("router-a.example.org", ips("10.0.0.1"));
+        var supplier = new RegistrationUriSuppliers.AsyncDnsLookupSupplier(Duration.ZERO, Duration.ofSeconds(5), List.of(ROUTER_A, ROUTER_B), this::resolve);
+        assertThat(supplier.get(), contains(URI.create("wss://10.0.0.1:8443")));
+        supplier.close();
+        dns.put("router-b.example.org", ips("10.0.1.1"));
+        assertThat(supplier.get(), contains(URI.create("wss://10.0.0.1:8443")));
+    }
+
+    @Test
+    void slowLookupsDoNotHoldUpTheOtherHosts() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        dns.put("router-b.example.org", ips("10.0.1.1"));
+        var supplier = new RegistrationUriSuppliers.AsyncDnsLookupSupplier(Duration.ofMinutes(1), Duration.ofMillis(200), List.of(ROUTER_A, ROUTER_B), host -> {
+            if (host.equals("router-a.example.org")) {
+                try {
+                    release.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException ignored) {
+                }
+                return ips("10.0.0.1");
+            }
+            return resolve(host);
+        });
+        long start = System.nanoTime();
+        assertThat(supplier.get(), contains(URI.create("wss://10.0.1.1:8443")));
+        assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), lessThan(5000L));
+        release.countDown();
+        long deadline = System.currentTimeMillis() + 5000;
+        while (supplier.get().size() < 2 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(supplier.get(), containsInAnyOrder(URI.create("wss://10.0.0.1:8443"), URI.create("wss://10.0.1.1:8443")));
+    }
+
+    private static Collection<URI> eventually(Supplier<Collection<URI>> supplier, Predicate<Collection<URI>> condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        Collection<URI> uris = supplier.get();
+        while (!condition.test(uris) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+            uris = supplier.get();
+        }
+        return uris;
+    }
+
+    @Test
+    void anErrorIsThrownIfNothingCanBeResolved() {
+        var supplier = new RegistrationUriSuppliers.AsyncDnsLookupSupplier(Duration.ofMinutes(1), Duration.ofSeconds(5), List.of(ROUTER_A), this::resolve);
+        assertThrows(RuntimeException.class, supplier::get);
+    }
+
+    @Test
+    void onlyWebsocketUrisAreAllowed() {
+        assertThrows(IllegalArgumentException.class, () -> RegistrationUriSuppliers.asyncDnsLookup(Duration.ofMinutes(1), Duration.ofSeconds(1), URI.create("http://router.example.org")));
+    }
+}
@@ -0,0 +1,101 @@
+package com.hsbc.cranker.connector;
+
+import org.junit.jupiter.api.Test;
+
+import java.net.URI;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static scaffolding.AssertUtils.assertEventually;
+
+class ConnectionRateLimiterTest {
+
+    private static final long MILLIS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    @Test
+    void allowsABurstOfOneSecondThenPacesConnections() {
+        ConnectionRateLimiter limiter = new ConnectionRateLimiter(10, 100);
+        for (int i = 0; i < 10; i++) {
+            assertThat(limiter.tryAcquire(0), equalTo(0L));
+        }
+        long wait = limiter.tryAcquire(0);
+        assertThat(wait, greaterThan(90 * MILLIS));
+        assertThat(wait, lessThanOrEqualTo(100 * MILLIS));
+        assertThat(limiter.tryAcquire(100 * MILLIS), equalTo(0L));
+    }
+
+    @Test
+    void limitsConcurrentHandshakes() {
+        ConnectionRateLimiter limiter = new ConnectionRateLimiter(1000, 2);
+        assertThat(limiter.tryAcquire(0), equalTo(0L));
+        assertThat(limiter.tryAcquire(0), equalTo(0L));
+        assertThat(limiter.tryAcquire(0), greaterThan(0L));
+        assertThat(limiter.inProgress(), equalTo(2));
+        limiter.release();
+        assertThat(limiter.tryAcquire(0), equalTo(0L));
+    }
+
+    @Test
+    void backoffIsJitteredAndCapped() {
+        Random random = new Random(1);
+        long previous = 0;
+        long first = ConnectionRateLimiter.backoffMillis(previous, random);
+        assertThat(first, greaterThanOrEqualTo(ConnectionRateLimiter.BASE_BACKOFF_MILLIS));
+        assertThat(first, lessThanOrEqualTo(ConnectionRateLimiter.BASE_BACKOFF_MILLIS + 1));
+        for (int i = 0; i < 100; i++) {
+            long next = ConnectionRateLimiter.backoffMillis(previous, random);
+            assertThat(next, greaterThanOrEqualTo(ConnectionRateLimiter.BASE_BACKOFF_MILLIS));
+            assertThat(next, lessThanOrEqualTo(Math.max(ConnectionRateLimiter.BASE_BACKOFF_MILLIS + 1, Math.min(ConnectionRateLimiter.MAX_BACKOFF_MILLIS, previous * 3))));
+            previous = next;
+        }
+    }
+
+    @Test
+    void backoffsOfDifferentConnectorsSpreadOut() {
+        long a = ConnectionRateLimiter.backoffMillis(5000, new Random(1));
+        long b = ConnectionRateLimiter.backoffMillis(5000, new Random(2));
+        assertThat(a == b, equalTo(false));
+    }
+
+    @Test
+    void invalidValuesAreRejected() {
+        assertThrows(IllegalArgumentException.class, () -> new ConnectionRateLimiter(0, 1));
+        assertThrows(IllegalArgumentException.class, () -> new ConnectionRateLimiter(1, 0));
+    }
+
+    @Test
+    void aFailureBeforeTheHandshakeReleasesItsPermitAndIsRetried() {
+        AtomicInteger attempts = new AtomicInteger();
+        CrankerConnector connector = CrankerConnectorBuilder.connector()
+            .withRouterUris(RegistrationUriSuppliers.fixedUris(URI.create("ws://localhost:1")))
+            .withRoute("*")
+            .withTarget(URI.create("http://localhost:1234"))
+            .withSlidingWindowSize(1)
+            .withConnectionRateLimit(1000, 1)
+            .withRegistrationEventListener(new RegistrationEventListener() {
+                @Override
+                public void beforeRegisterToRouter(RouterRegistrationContext context) {
+                    attempts.incrementAndGet();
+                    throw new IllegalStateException("Expected for test");
+                }
+            })
+            .start();
+        try {
+            RouterRegistration registration = connector.routers().get(0);
+            // only one handshake is allowed at a time, so a leaked permit would stop any further attempts
+            assertEventually(attempts::get, greaterThanOrEqualTo(2));
+            assertThat(registration.lastConnectionError(), instanceOf(IllegalStateException.class));
+            assertThat(registration.idleSocketSize(), equalTo(0));
+        } finally {
+            connector.stop(1, TimeUnit.SECONDS);
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package com.hsbc.cranker.connector;
+
+import org.junit.jupiter.api.Test;
+
+import java.net.URI;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class CrankerConnectorGroupTest {
+
+    @Test
+    void connectorsShareTheRouterLookupAndClients() {
+        AtomicInteger lookups = new AtomicInteger();
+        CrankerConnectorGroup group = CrankerConnectorGroupBuilder.connectorGroup()
+            .withRouterUris(() -> {
+                lookups.incrementAndGet();
+                return List.of();
+            })
+            .build();
+        CrankerConnector orders = group.add(CrankerConnectorBuilder.connector().withRoute("orders").withTarget(URI.create("http://localhost:1234")));
+        CrankerConnector payments = group.add(CrankerConnectorBuilder.connector().withRoute("payments").withTarget(URI.create("http://localhost:5678")));
+        assertThat(group.connectors(), equalTo(List.of(orders, payments)));
+        assertThat(orders.httpClient(), sameInstance(payments.httpClient()));
+
+        group.start();
+        assertThat(lookups.get(), equalTo(1));
+        assertThat(group.stop(1, TimeUnit.SECONDS), equalTo(true));
+
+        assertThrows(IllegalStateException.class, () -> group.stop(1, TimeUnit.SECONDS));
+        assertThrows(IllegalStateException.class, () -> group.add(CrankerConnectorBuilder.connector().withRoute("late").withTarget(URI.create("http://localhost:1234"))));
+    }
+
+    @Test
+    void connectorSettingsTakePrecedenceOverTheGroup() {
+        CrankerConnectorGroup group = CrankerConnectorGroupBuilder.connectorGroup().withRouterUris(List::of).build();
+        CrankerConnector shared = group.add(CrankerConnectorBuilder.connector().withRoute("shared").withTarget(URI.create("http://localhost:1234")));
+        CrankerConnector own = group.add(CrankerConnectorBuilder.connector().withRoute("own").withTarget(URI.create("http://localhost:1234"))
+            .withHttpClientShards(2));
+        group.start();
+        try {
+            assertThat(own.httpClient(), not(sameInstance(shared.httpClient())));
+        } finally {
+            assertThat(group.stop(1, TimeUnit.SECONDS), equalTo(true));
+        }
+    }
+
+    @Test
+    void connectorsShareOneListenerDispatchThread() {
+        CrankerConnectorGroup group = CrankerConnectorGroupBuilder.connectorGroup()
+            .withRouterUris(List::of)
+            .withAsyncListenerDispatch(16, ListenerOverflowPolicy.DROP, 0, TimeUnit.MILLISECONDS)
+            .build();
+        group.add(CrankerConnectorBuilder.connector().withRoute("orders").withTarget(URI.create("http://localhost:1234")));
+        group.add(CrankerConnectorBuilder.connector().withRoute("payments").withTarget(URI.create("http://localhost:5678")));
+        CrankerConnector own = group.add(CrankerConnectorBuilder.connector().withRoute("own").withTarget(URI.create("http://localhost:1234"))
+            .withAsyncListenerDispatch(16, ListenerOverflowPolicy.DROP, 0, TimeUnit.MILLISECONDS));
+        group.start();
+        try {
+            assertThat(dispatcherThreads("cranker-group-listener-dispatcher"), equalTo(1L));
+            assertThat(dispatcherThreads("cranker-listener-dispatcher-" + own.connectorId()), equalTo(1L));
+        } finally {
+            assertThat(group.stop(1, TimeUnit.SECONDS), equalTo(true));
+        }
+        assertThat(dispatcherThreads("cranker-group-listener-dispatcher"), equalTo(0L));
+        assertThat(dispatcherThreads("cranker-listener-dispatcher-" + own.connectorId()), equalTo(0L));
+    }
+
+    private static long dispatcherThreads(String name) {
+        return Thread.getAllStackTraces().keySet().stream().filter(thread -> thread.getName().equals(name) && thread.isAlive()).count();
+    }
+
+    @Test
+    void theLookupIsRepeatedOnceTheResultIsOld() throws InterruptedException {
+        AtomicInteger lookups = new AtomicInteger();
+        CrankerConnectorGroupImpl.SharedRouterUris uris = new CrankerConnectorGroupImpl.SharedRouterUris(() -> {
+            lookups.incrementAndGet();
+            return List.<URI>of();
+        }, TimeUnit.MILLISECONDS.toNanos(20));
+        Collection<URI> first = uris.get();
+        assertThat(uris.get(), sameInstance(first));
+        assertThat(lookups.get(), equalTo(1));
+        Thread.sleep(30);
+        uris.get();
+        assertThat(lookups.get(), equalTo(2));
+    }
+}
@@ -254,6 +254,59 @@ public class CrankerConnectorStopTest {
         this.targetServer.stop();
     }
 
+    @RepeatedTest(3)
+    void startAsyncCompletesWhenConnectedAndStopAsyncShowsInFlightRequests(RepetitionInfo repetitionInfo) throws Exception {
+
+        AtomicInteger serverCounter = new AtomicInteger(0);
+
+        this.targetServer = httpsServer()
+            .withHttp2Config(Http2ConfigBuilder.http2Config().enabled(true))
+            .addHandler(Method.GET, "/test", (request, response, pathParams) -> {
+                serverCounter.incrementAndGet();
+                final AsyncHandle asyncHandle = request.handleAsync();
+                executorService.schedule(() -> {
+                    asyncHandle.write(ByteBuffer.wrap("hello world".getBytes()));
+                    asyncHandle.complete();
+                }, 2, TimeUnit.SECONDS);
+            })
+            .start();
+
+        this.crankerRouter = crankerRouter()
+            .withSupportedCrankerProtocols(List.of("cranker_3.0", "cranker_1.0"))
+            .start();
+
+        this.routerServer = httpsServer()
+            .withHttp2Config(Http2ConfigBuilder.http2Config().enabled(false))
+            .addHandler(crankerRouter.createRegistrationHandler())
+            .addHandler(crankerRouter.createHttpHandler())
+            .start();
+
+        this.connector = CrankerConnectorBuilder.connector()
+            .withPreferredProtocols(preferredProtocols(repetitionInfo))
+            .withHttpClient(CrankerConnectorBuilder.createHttpClient(true).build())
+            .withRouterUris(RegistrationUriSuppliers.fixedUris(registrationUri(routerServer.uri())))
+            .withRoute("*")
+            .withTarget(targetServer.uri())
+            .withComponentName("cranker-connector-unit-test")
+            .withSlidingWindowSize(2)
+            .withReadySocketsPerRouter(2)
+            .build();
+
+        connector.startAsync().get(10, TimeUnit.SECONDS);
+        assertThat(connector.routers(), hasSize(1));
+        assertThat(connector.routers().get(0).idleSocketSize(), greaterThanOrEqualTo(2));
+
+        executorService.submit(() -> swallowException(() -> httpClient.send(HttpRequest.newBuilder()
+            .uri(this.routerServer.uri().resolve("/test"))
+            .build(), HttpResponse.BodyHandlers.ofString())));
+        assertEventually(serverCounter::get, equalTo(1));
+
+        CompletableFuture<Boolean> stopped = connector.stopAsync(10, TimeUnit.SECONDS);
+        assertThat(connector.routers().get(0).inFlightRequests(), is(1));
+        assertThat(stopped.get(10, TimeUnit.SECONDS), is(true));
+        assertThat(connector.routers(), hasSize(0));
+    }
+
     @RepeatedTest(3)
     public void throwIllegalStateExceptionWhenCallingStopBeforeCallingStart(RepetitionInfo repetitionInfo) {
 
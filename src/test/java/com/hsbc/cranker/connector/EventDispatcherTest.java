@@ -0,0 +1,117 @@
+package com.hsbc.cranker.connector;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.is;
+import static scaffolding.AssertUtils.assertEventually;
+
+class EventDispatcherTest {
+
+    private EventDispatcher dispatcher;
+
+    @AfterEach
+    void after() {
+        if (dispatcher != null) dispatcher.stop();
+    }
+
+    @Test
+    void eventsAreDispatchedInOrderOnTheDispatcherThread() {
+        dispatcher = new EventDispatcher(16, ListenerOverflowPolicy.BLOCK, 10, TimeUnit.SECONDS, "event-dispatcher-test");
+        dispatcher.start();
+        final List<Integer> received = new CopyOnWriteArrayList<>();
+        final List<String> threads = new CopyOnWriteArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            final int value = i;
+            dispatcher.dispatch(() -> {
+                received.add(value);
+                threads.add(Thread.currentThread().getName());
+            });
+        }
+        assertEventually(received::size, equalTo(1000));
+        for (int i = 0; i < 1000; i++) {
+            assertThat(received.get(i), equalTo(i));
+        }
+        assertThat(threads.stream().allMatch("event-dispatcher-test"::equals), is(true));
+        assertThat(dispatcher.droppedEvents(), equalTo(0L));
+    }
+
+    @Test
+    void eventsAreDroppedWhenTheBufferIsFull() throws InterruptedException {
+        dispatcher = new EventDispatcher(4, ListenerOverflowPolicy.DROP, 0, TimeUnit.MILLISECONDS, "event-dispatcher-test");
+        dispatcher.start();
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch blocking = new CountDownLatch(1);
+        final AtomicInteger count = new AtomicInteger();
+        dispatcher.dispatch(() -> {
+            blocking.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException ignored) {
+            }
+        });
+        assertThat(blocking.await(10, TimeUnit.SECONDS), is(true));
+        for (int i = 0; i < 10; i++) {
+            dispatcher.dispatch(count::incrementAndGet);
+        }
+        assertThat(dispatcher.droppedEvents(), equalTo(6L));
+        release.countDown();
+        assertEventually(count::get, equalTo(4));
+    }
+
+    @Test
+    void blockingPolicyWaitsForSpace() throws InterruptedException {
+        dispatcher = new EventDispatcher(2, ListenerOverflowPolicy.BLOCK, 10, TimeUnit.SECONDS, "event-dispatcher-test");
+        dispatcher.start();
+        final AtomicInteger count = new AtomicInteger();
+        for (int i = 0; i < 100; i++) {
+            dispatcher.dispatch(() -> {
+                try {
+                    Thread.sleep(1);
+                } catch (InterruptedException ignored) {
+                }
+                count.incrementAndGet();
+            });
+        }
+        assertEventually(count::get, equalTo(100));
+        assertThat(dispatcher.droppedEvents(), equalTo(0L));
+        assertThat(dispatcher.dispatchedEvents(), greaterThanOrEqualTo(100L));
+    }
+
+    @Test
+    void listenerExceptionsDoNotStopDispatching() {
+        dispatcher = new EventDispatcher(8, ListenerOverflowPolicy.DROP, 0, TimeUnit.MILLISECONDS, "event-dispatcher-test");
+        dispatcher.start();
+        final AtomicInteger count = new AtomicInteger();
+        dispatcher.dispatch(() -> {
+            throw new RuntimeException("Expected for test");
+        });
+        dispatcher.dispatch(count::incrementAndGet);
+        assertEventually(count::get, equalTo(1));
+    }
+
+    @Test
+    void anIdleDispatcherWaitsUntilThereIsAnEvent() throws InterruptedException {
+        dispatcher = new EventDispatcher(8, ListenerOverflowPolicy.DROP, 0, TimeUnit.MILLISECONDS, "idle-event-dispatcher-test");
+        dispatcher.start();
+        final Thread dispatcherThread = Thread.getAllStackTraces().keySet().stream()
+            .filter(thread -> thread.getName().equals("idle-event-dispatcher-test"))
+            .findFirst().orElseThrow();
+        // an untimed park, rather than waking up to poll for events
+        assertEventually(dispatcherThread::getState, equalTo(Thread.State.WAITING));
+
+        final CountDownLatch received = new CountDownLatch(1);
+        dispatcher.dispatch(received::countDown);
+        assertThat(received.await(10, TimeUnit.SECONDS), is(true));
+        assertEventually(dispatcherThread::getState, equalTo(Thread.State.WAITING));
+    }
+}
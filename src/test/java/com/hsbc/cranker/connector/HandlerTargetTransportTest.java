@@ -0,0 +1,119 @@
+package com.hsbc.cranker.connector;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class HandlerTargetTransportTest {
+
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+
+    @AfterEach
+    void after() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void theRequestAndResponseArePassedDirectly() throws Exception {
+        HandlerTargetTransport transport = new HandlerTargetTransport(request -> {
+            CompletableFuture<CrankerHandler.Response> response = new CompletableFuture<>();
+            request.body().subscribe(new BodyCollector(body -> {
+                String text = request.method() + " " + request.uri().getPath() + " " + request.headers().firstValue("x-test").orElse("") + " " + body;
+                response.complete(CrankerHandler.Response.response(201, Map.of("content-type", List.of("text/plain")),
+                    HttpRequest.BodyPublishers.ofString(text)));
+            }));
+            return response;
+        });
+
+        HttpRequest request = HttpRequest.newBuilder(TargetTransport.LOCAL_TARGET_URI.resolve("/things?a=b"))
+            .header("x-test", "hello")
+            .POST(HttpRequest.BodyPublishers.ofString("the body"))
+            .build();
+        HttpResponse<String> response = transport.sendAsync(request, HttpResponse.BodyHandlers.ofString()).get(10, TimeUnit.SECONDS);
+
+        assertThat(response.statusCode(), equalTo(201));
+        assertThat(response.headers().firstValue("content-type").orElse(null), equalTo("text/plain"));
+        assertThat(response.body(), equalTo("POST /things hello the body"));
+        assertThat(response.request(), sameInstance(request));
+    }
+
+    @Test
+    void handlerErrorsFailTheRequest() {
+        HandlerTargetTransport throwing = new HandlerTargetTransport(request -> {
+            throw new IllegalStateException("oops");
+        });
+        HandlerTargetTransport failing = new HandlerTargetTransport(request -> CompletableFuture.failedFuture(new IllegalStateException("oops")));
+        HttpRequest request = HttpRequest.newBuilder(TargetTransport.LOCAL_TARGET_URI).build();
+
+        for (HandlerTargetTransport transport : List.of(throwing, failing)) {
+            ExecutionException e = assertThrows(ExecutionException.class,
+                () -> transport.sendAsync(request, HttpResponse.BodyHandlers.discarding()).get(10, TimeUnit.SECONDS));
+            assertThat(e.getCause(), instanceOf(IllegalStateException.class));
+        }
+    }
+
+    @Test
+    void handlerResponsesAreFramedByCrankerSockets() {
+        AtomicInteger requests = new AtomicInteger();
+        HandlerTargetTransport transport = new HandlerTargetTransport(request -> {
+            requests.incrementAndGet();
+            return CompletableFuture.completedFuture(CrankerHandler.Response.response(200, Map.of("content-length", List.of("2")),
+                HttpRequest.BodyPublishers.ofString("OK")));
+        });
+        TargetWarmUp warmUp = new TargetWarmUp(TargetTransport.LOCAL_TARGET_URI, transport, "/health", 2, 10, Duration.ofSeconds(10));
+
+        Duration time = warmUp.run(executor, null);
+
+        assertThat(requests.get(), equalTo(12));
+        assertThat(time, lessThan(Duration.ofSeconds(10)));
+    }
+
+    @Test
+    void responsesMustHaveAValidStatus() {
+        assertThrows(IllegalArgumentException.class, () -> CrankerHandler.Response.response(99, Map.of(), null));
+        assertThat(CrankerHandler.Response.response(204, Map.of(), null).body(), notNullValue());
+    }
+
+    private static class BodyCollector implements Flow.Subscriber<ByteBuffer> {
+        private final Consumer<String> onBody;
+        private final StringBuilder body = new StringBuilder();
+
+        private BodyCollector(Consumer<String> onBody) {
+            this.onBody = onBody;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            subscription.request(Long.MAX_VALUE);
+        }
+
+        @Override
+        public void onNext(ByteBuffer item) {
+            body.append(StandardCharsets.UTF_8.decode(item));
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+        }
+
+        @Override
+        public void onComplete() {
+            onBody.accept(body.toString());
+        }
+    }
+}
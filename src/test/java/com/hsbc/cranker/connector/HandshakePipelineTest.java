@@ -0,0 +1,60 @@
+package com.hsbc.cranker.connector;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class HandshakePipelineTest {
+
+    private static final long MILLIS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    @Test
+    void nothingIsOpenedAheadUntilThereAreMeasurements() {
+        HandshakePipeline pipeline = new HandshakePipeline(10);
+        assertThat(pipeline.handshakesAhead(0), equalTo(0));
+        pipeline.onAcquired(0);
+        pipeline.onConnected(20 * MILLIS);
+        assertThat(pipeline.handshakesAhead(MILLIS), equalTo(0));
+    }
+
+    @Test
+    void handshakesInProgressIsTheRateTimesTheHandshakeTime() {
+        HandshakePipeline pipeline = new HandshakePipeline(10);
+        pipeline.onConnected(20 * MILLIS);
+        long now = 0;
+        for (int i = 0; i < 50; i++) {
+            pipeline.onAcquired(now);
+            now += 5 * MILLIS;
+        }
+        // a request every 5ms and 20ms handshakes means 4 handshakes are in progress at any time
+        assertThat(pipeline.handshakesAhead(now - 5 * MILLIS), equalTo(4));
+    }
+
+    @Test
+    void theNumberAheadIsCapped() {
+        HandshakePipeline pipeline = new HandshakePipeline(3);
+        pipeline.onConnected(100 * MILLIS);
+        pipeline.onAcquired(0);
+        pipeline.onAcquired(MILLIS);
+        assertThat(pipeline.handshakesAhead(MILLIS), equalTo(3));
+    }
+
+    @Test
+    void theEstimateFallsWhenRequestsStop() {
+        HandshakePipeline pipeline = new HandshakePipeline(10);
+        pipeline.onConnected(20 * MILLIS);
+        pipeline.onAcquired(0);
+        pipeline.onAcquired(5 * MILLIS);
+        assertThat(pipeline.handshakesAhead(5 * MILLIS), equalTo(4));
+        assertThat(pipeline.handshakesAhead(TimeUnit.SECONDS.toNanos(1)), equalTo(0));
+    }
+
+    @Test
+    void maxMustBePositive() {
+        assertThrows(IllegalArgumentException.class, () -> new HandshakePipeline(0));
+    }
+}
@@ -0,0 +1,218 @@
+package com.hsbc.cranker.connector;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import scaffolding.UnixSocketHttpServer;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assumptions.assumeFalse;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+import static scaffolding.AssertUtils.assertEventually;
+
+class Http1TargetTransportTest {
+
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final AtomicInteger connectionsOpened = new AtomicInteger();
+    private final CountDownLatch release = new CountDownLatch(1);
+    private HttpServer target;
+    private Http1TargetTransport transport;
+
+    @BeforeEach
+    void before() throws IOException {
+        target = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        target.setExecutor(Executors.newFixedThreadPool(4));
+        target.createContext("/echo", exchange -> {
+            byte[] body;
+            try (InputStream in = exchange.getRequestBody()) {
+                body = in.readAllBytes();
+            }
+            String text = exchange.getRequestMethod() + " " + exchange.getRequestURI() + " "
+                + exchange.getRequestHeaders().getFirst("x-test") + " " + new String(body, StandardCharsets.UTF_8);
+            byte[] response = text.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("content-type", "text/plain");
+            exchange.sendResponseHeaders(200, response.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(response);
+            }
+        });
+        target.createContext("/chunked", exchange -> {
+            exchange.sendResponseHeaders(200, 0);
+            try (OutputStream out = exchange.getResponseBody()) {
+                for (int i = 0; i < 1000; i++) {
+                    out.write(("line " + i + "\n").getBytes(StandardCharsets.UTF_8));
+                    out.flush();
+                }
+            }
+        });
+        target.createContext("/hang", exchange -> {
+            try {
+                release.await(30, TimeUnit.SECONDS);
+            } catch (InterruptedException ignored) {
+            }
+            exchange.sendResponseHeaders(200, -1);
+            exchange.close();
+        });
+        target.start();
+        int port = target.getAddress().getPort();
+        transport = new Http1TargetTransport(connectTimeoutMillis -> {
+            connectionsOpened.incrementAndGet();
+            return SocketChannel.open(new InetSocketAddress("localhost", port));
+        }, "localhost", "localhost:" + port, 2, executor);
+    }
+
+    @AfterEach
+    void after() {
+        release.countDown();
+        target.stop(0);
+        executor.shutdownNow();
+    }
+
+    private static HttpRequest.Builder request(String path) {
+        return HttpRequest.newBuilder(TargetTransport.LOCAL_TARGET_URI.resolve(path));
+    }
+
+    @Test
+    void requestsAndResponsesAreSentAsHttp1() throws Exception {
+        HttpResponse<String> response = transport.sendAsync(request("/echo?a=b%20c").header("x-test", "hi")
+            .POST(HttpRequest.BodyPublishers.ofString("hello")).build(), HttpResponse.BodyHandlers.ofString()).get(10, TimeUnit.SECONDS);
+        assertThat(response.statusCode(), equalTo(200));
+        assertThat(response.headers().firstValue("content-type").orElse(null), equalTo("text/plain"));
+        assertThat(response.body(), equalTo("POST /echo?a=b%20c hi hello"));
+    }
+
+    @Test
+    void requestBodiesOfUnknownLengthAreChunked() throws Exception {
+        HttpRequest.BodyPublisher body = HttpRequest.BodyPublishers.ofInputStream(() -> new ByteArrayInputStream("streamed body".getBytes(StandardCharsets.UTF_8)));
+        HttpResponse<String> response = transport.sendAsync(request("/echo").PUT(body).build(), HttpResponse.BodyHandlers.ofString()).get(10, TimeUnit.SECONDS);
+        assertThat(response.body(), equalTo("PUT /echo null streamed body"));
+    }
+
+    @Test
+    void chunkedResponsesAreStreamed() throws Exception {
+        HttpResponse<String> response = transport.sendAsync(request("/chunked").build(), HttpResponse.BodyHandlers.ofString()).get(10, TimeUnit.SECONDS);
+        String[] lines = response.body().split("\n");
+        assertThat(lines.length, equalTo(1000));
+        assertThat(lines[999], equalTo("line 999"));
+    }
+
+    @Test
+    void connectionsAreReused() throws Exception {
+        for (int i = 0; i < 10; i++) {
+            HttpResponse<String> response = transport.sendAsync(request("/echo").build(), HttpResponse.BodyHandlers.ofString()).get(10, TimeUnit.SECONDS);
+            assertThat(response.body(), equalTo("GET /echo null "));
+        }
+        assertThat(connectionsOpened.get(), equalTo(1));
+        assertThat(transport.idleConnections(), equalTo(1));
+        assertThat(transport.openConnections(), equalTo(1));
+        assertThat(transport.connectionsOpened(), equalTo(1L));
+    }
+
+    @Test
+    void connectionFailuresFailTheRequest() {
+        Http1TargetTransport unavailable = new Http1TargetTransport(connectTimeoutMillis -> SocketChannel.open(new InetSocketAddress("localhost", 1)),
+            "localhost", "unavailable", 2, executor);
+        assertThrows(Exception.class, () -> unavailable.sendAsync(request("/echo").build(), HttpResponse.BodyHandlers.ofString()).get(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void cancellingARequestClosesItsConnection() throws Exception {
+        CompletableFuture<HttpResponse<String>> response = transport.sendAsync(request("/hang").build(), HttpResponse.BodyHandlers.ofString());
+        assertEventually(() -> transport.openConnections(), equalTo(1));
+        response.cancel(true);
+        assertEventually(() -> transport.openConnections(), equalTo(0));
+        assertThat(transport.idleConnections(), equalTo(0));
+    }
+
+    @Test
+    void theRequestTimeoutLimitsTheWaitForTheResponse() {
+        CompletableFuture<HttpResponse<String>> response = transport.sendAsync(request("/hang").timeout(Duration.ofMillis(200)).build(),
+            HttpResponse.BodyHandlers.ofString());
+        ExecutionException error = assertThrows(ExecutionException.class, () -> response.get(10, TimeUnit.SECONDS));
+        assertThat(error.getCause(), instanceOf(HttpTimeoutException.class));
+        assertEventually(() -> transport.openConnections(), equalTo(0));
+    }
+
+    @Test
+    void withoutVirtualThreadsRequestsRunOnABoundedPool() {
+        assumeFalse(VirtualThreads.isSupported(), "virtual threads are used when available");
+        ThreadPoolExecutor pool = (ThreadPoolExecutor) Http1TargetTransport.defaultExecutor();
+        assertThat(pool.getMaximumPoolSize(), equalTo(Http1TargetTransport.MAX_PLATFORM_THREADS));
+        pool.shutdown();
+    }
+
+    @Test
+    void headerLinesFromTheRouterAreForwardedAsTheyAre() throws Exception {
+        target.createContext("/headers", exchange -> {
+            byte[] response = (exchange.getRequestHeaders().getFirst("host") + " " + exchange.getRequestHeaders().getFirst("x-test")
+                + " " + exchange.getRequestHeaders().getFirst("content-length")).getBytes(StandardCharsets.UTF_8);
+            exchange.getRequestBody().readAllBytes();
+            exchange.sendResponseHeaders(200, response.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(response);
+            }
+        });
+        ForwardedRequest request = new ForwardedRequest("POST", TargetTransport.LOCAL_TARGET_URI.resolve("/headers"),
+            HttpRequest.BodyPublishers.ofString("abc"), new String[]{":method:POST", "Host:example.org", "X-Test: a, b", "content-length:100"});
+        HttpResponse<String> response = transport.sendAsync(request, HttpResponse.BodyHandlers.ofString()).get(10, TimeUnit.SECONDS);
+        assertThat(response.body(), equalTo("example.org a, b 3"));
+        assertThat(request.headers().firstValue("x-test").orElse(null), equalTo("a, b"));
+    }
+
+    @Test
+    void theBuiltInClientOnlySupportsHttpTargets() {
+        assertThrows(IllegalArgumentException.class, () -> TargetTransport.http1(URI.create("https://localhost:8443"), 10));
+        assertThrows(IllegalArgumentException.class, () -> TargetTransport.http1(URI.create("http://localhost"), -1));
+        assertThat(TargetTransport.http1(URI.create("http://localhost:8080"), 10), instanceOf(Http1TargetTransport.class));
+    }
+
+    @Test
+    void unixTargetsMustHaveAPath() {
+        assertThat(Http1TargetTransport.isUnixDomainSocket(URI.create("unix:/var/run/app.sock")), equalTo(true));
+        assertThat(Http1TargetTransport.unixSocketPath(URI.create("unix:/var/run/app.sock")).toString(), equalTo("/var/run/app.sock"));
+        assertThat(Http1TargetTransport.unixSocketPath(URI.create("unix:///var/run/app.sock")).toString(), equalTo("/var/run/app.sock"));
+        assertThrows(IllegalArgumentException.class, () -> Http1TargetTransport.unixSocketPath(URI.create("unix:///")));
+    }
+
+    @Test
+    void requestsCanBeSentOverUnixDomainSockets(@TempDir Path tempDir) throws Exception {
+        assumeTrue(UnixSockets.isSupported() && UnixSocketHttpServer.isSupported(), "Unix domain sockets need JDK 16");
+        try (UnixSocketHttpServer unixTarget = UnixSocketHttpServer.start(tempDir.resolve("target.sock"))) {
+            Http1TargetTransport unixTransport = Http1TargetTransport.unixDomainSocket(URI.create("unix:" + unixTarget.path()));
+            for (int i = 0; i < 3; i++) {
+                HttpResponse<String> response = unixTransport.sendAsync(request("/things?i=" + i)
+                    .POST(HttpRequest.BodyPublishers.ofString("hello " + i)).build(), HttpResponse.BodyHandlers.ofString()).get(10, TimeUnit.SECONDS);
+                assertThat(response.statusCode(), equalTo(200));
+                assertThat(response.body(), equalTo("POST /things?i=" + i + " hello " + i));
+            }
+            assertThat(unixTransport.connectionsOpened(), equalTo(1L));
+        }
+    }
+}
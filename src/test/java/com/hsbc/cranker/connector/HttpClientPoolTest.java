@@ -0,0 +1,44 @@
+package com.hsbc.cranker.connector;
+
+import org.junit.jupiter.api.Test;
+
+import java.net.http.HttpClient;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class HttpClientPoolTest {
+
+    @Test
+    void clientsAreUsedInTurn() {
+        HttpClientPool pool = HttpClientPool.create(3, HttpClient::newHttpClient);
+        assertThat(pool.clients().size(), equalTo(3));
+
+        Map<HttpClient, Integer> usages = new HashMap<>();
+        for (int i = 0; i < 30; i++) {
+            usages.merge(pool.next(), 1, Integer::sum);
+        }
+        assertThat(usages.size(), equalTo(3));
+        for (Integer count : usages.values()) {
+            assertThat(count, equalTo(10));
+        }
+    }
+
+    @Test
+    void aSingleClientPoolAlwaysReturnsThatClient() {
+        HttpClient client = HttpClient.newHttpClient();
+        HttpClientPool pool = HttpClientPool.of(client);
+        assertThat(pool.next(), sameInstance(client));
+        assertThat(pool.next(), sameInstance(client));
+        assertThat(pool.first(), sameInstance(client));
+    }
+
+    @Test
+    void atLeastOneClientIsRequired() {
+        assertThrows(IllegalArgumentException.class, () -> HttpClientPool.create(0, HttpClient::newHttpClient));
+    }
+}
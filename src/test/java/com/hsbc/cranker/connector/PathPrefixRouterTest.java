@@ -0,0 +1,90 @@
+package com.hsbc.cranker.connector;
+
+import org.junit.jupiter.api.Test;
+import scaffolding.FakeTarget;
+
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+class PathPrefixRouterTest {
+
+    private static TargetPool pool(String uri, TargetTransport transport) {
+        return new TargetPool(List.of(URI.create(uri)), List.of(new TargetConnectionLimiter(transport, 0)));
+    }
+
+    @Test
+    void theLongestPrefixOfWholeSegmentsIsUsed() {
+        PathPrefixRouter router = new PathPrefixRouter(new FakeTarget());
+        TargetPool api = pool("http://localhost:8081", new FakeTarget());
+        TargetPool users = pool("http://localhost:8082", new FakeTarget());
+        TargetPool assets = pool("http://localhost:8083", new FakeTarget());
+        router.add("/api", api);
+        router.add("/api/users/", users);
+        router.add("/static/assets", assets);
+
+        assertThat(router.find("/api"), sameInstance(api));
+        assertThat(router.find("/api/"), sameInstance(api));
+        assertThat(router.find("/api/orders/1"), sameInstance(api));
+        assertThat(router.find("/api/users"), sameInstance(users));
+        assertThat(router.find("/api/users/1"), sameInstance(users));
+        assertThat(router.find("//api//users"), sameInstance(users));
+        assertThat(router.find("/apis"), nullValue());
+        assertThat(router.find("/static"), nullValue());
+        assertThat(router.find("/static/assets/app.js"), sameInstance(assets));
+        assertThat(router.find("/"), nullValue());
+        assertThat(router.find(""), nullValue());
+    }
+
+    @Test
+    void aRootPrefixReplacesTheDefaultTarget() {
+        PathPrefixRouter router = new PathPrefixRouter(new FakeTarget());
+        TargetPool root = pool("http://localhost:8081", new FakeTarget());
+        TargetPool api = pool("http://localhost:8082", new FakeTarget());
+        router.add("/", root);
+        router.add("/api", api);
+        assertThat(router.find("/anything"), sameInstance(root));
+        assertThat(router.find("/api/x"), sameInstance(api));
+    }
+
+    @Test
+    void requestsAreSentToTheTargetOfTheirPrefixWithTheSamePath() {
+        FakeTarget defaultTarget = new FakeTarget();
+        FakeTarget api = new FakeTarget();
+        PathPrefixRouter router = new PathPrefixRouter(new TargetConnectionLimiter(defaultTarget, 0));
+        router.add("/api", pool("http://localhost:8081", api));
+
+        router.sendAsync(new ForwardedRequest("GET", URI.create("http://localhost:8080/api/things?a=b"), HttpRequest.BodyPublishers.noBody(),
+            new String[]{"x-test:hello"}), HttpResponse.BodyHandlers.discarding());
+        router.sendAsync(new ForwardedRequest("GET", URI.create("http://localhost:8080/index.html"), HttpRequest.BodyPublishers.noBody(),
+            new String[]{"x-test:hello"}), HttpResponse.BodyHandlers.discarding());
+
+        assertThat(api.requests().get(0).uri(), equalTo(URI.create("http://localhost:8081/api/things?a=b")));
+        assertThat(defaultTarget.requests().get(0).uri(), equalTo(URI.create("http://localhost:8080/index.html")));
+        assertThat(defaultTarget.requests().get(0), not(instanceOf(ForwardedRequest.class)));
+        assertThat(defaultTarget.requests().get(0).headers().firstValue("x-test").orElse(null), equalTo("hello"));
+        assertThat(ForwardedRequest.isAcceptedBy(router), equalTo(true));
+    }
+
+    @Test
+    void theTargetIsSelectedByPathBeforeTheRequestIsBuilt() {
+        FakeTarget defaultTarget = new FakeTarget();
+        PathPrefixRouter router = new PathPrefixRouter(defaultTarget);
+        TargetPool api = pool("http://localhost:8081", new FakeTarget());
+        router.add("/api", api);
+
+        TargetSelector.Selection apiTarget = router.select(URI.create("http://localhost:8080/api/things?a=b"));
+        assertThat(apiTarget, sameInstance(api.targets().get(0)));
+        assertThat(apiTarget.uri(URI.create("http://localhost:8080/api/things?a=b")), equalTo(URI.create("http://localhost:8081/api/things?a=b")));
+
+        TargetSelector.Selection other = router.select(URI.create("http://localhost:8080/index.html"));
+        assertThat(other.uri(URI.create("http://localhost:8080/index.html")), equalTo(URI.create("http://localhost:8080/index.html")));
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:8080/index.html")).build();
+        other.sendAsync(request, HttpResponse.BodyHandlers.discarding());
+        assertThat(defaultTarget.requests(), contains(sameInstance(request)));
+    }
+}
@@ -0,0 +1,72 @@
+package com.hsbc.cranker.connector;
+
+import org.junit.jupiter.api.Test;
+
+import java.net.http.HttpRequest;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ProxyRequestImplTest {
+
+    @Test
+    void theHeaderLinesAreOnlyCopiedWhenChanged() {
+        String[] lines = {"accept:*/*", "X-Trace: a", "x-trace:b"};
+        ProxyRequestImpl request = new ProxyRequestImpl("GET", "/things?a=b", lines);
+        assertThat(request.header("x-trace"), equalTo("a"));
+        assertThat(request.headers("X-TRACE"), contains("a", "b"));
+        assertThat(request.header("authorization"), nullValue());
+        assertThat(request.headerLines(), sameInstance(lines));
+
+        request.setHeader("x-trace", "c");
+        request.addHeader("Authorization", "Bearer token");
+        request.removeHeader("ACCEPT");
+        request.setMethod("POST");
+        request.setPath("/other");
+        assertThat(request.headerLines(), arrayContaining("x-trace:c", "Authorization:Bearer token"));
+        assertThat(request.method(), equalTo("POST"));
+        assertThat(request.path(), equalTo("/other"));
+        assertThat("the received lines are not changed", lines, arrayContaining("accept:*/*", "X-Trace: a", "x-trace:b"));
+    }
+
+    @Test
+    void invalidHeadersAreRejected() {
+        ProxyRequestImpl request = new ProxyRequestImpl("GET", "/", new String[0]);
+        assertThrows(IllegalArgumentException.class, () -> request.addHeader("x:y", "z"));
+        assertThrows(IllegalArgumentException.class, () -> request.setHeader("x-test", "a\r\nx-injected:b"));
+        assertThrows(IllegalArgumentException.class, () -> request.setPath("things"));
+    }
+
+    @Test
+    void theRequestBuilderCallbackIsOnlyUsedWhenOverridden() {
+        ProxyEventListener headerAdder = new ProxyEventListener() {
+            @Override
+            public void beforeProxyToTarget(ProxyRequest request) {
+                request.addHeader("x-added", "yes");
+            }
+        };
+        ProxyEventListener builderUser = new ProxyEventListener() {
+            @Override
+            public HttpRequest beforeProxyToTarget(HttpRequest request, HttpRequest.Builder requestBuilder) {
+                return requestBuilder.header("x-added", "yes").build();
+            }
+        };
+        assertThat(ProxyRequestImpl.usesRequestBuilder(headerAdder), equalTo(false));
+        assertThat(ProxyRequestImpl.usesRequestBuilder(new ProxyEventListener() {}), equalTo(false));
+        assertThat(ProxyRequestImpl.usesRequestBuilder(builderUser), equalTo(true));
+
+        EventDispatcher dispatcher = new EventDispatcher(16, ListenerOverflowPolicy.DROP, 0, TimeUnit.MILLISECONDS, "test-dispatcher");
+        try {
+            assertThat(ProxyRequestImpl.usesRequestBuilder(dispatcher.wrap(headerAdder)), equalTo(false));
+            assertThat(ProxyRequestImpl.usesRequestBuilder(dispatcher.wrap(builderUser)), equalTo(true));
+            ProxyRequestImpl request = new ProxyRequestImpl("GET", "/", new String[0]);
+            dispatcher.wrap(headerAdder).beforeProxyToTarget(request);
+            assertThat(List.of(request.headerLines()), contains("x-added:yes"));
+        } finally {
+            dispatcher.stop();
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package com.hsbc.cranker.connector;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.RepeatedTest;
+import org.junit.jupiter.api.RepetitionInfo;
+import scaffolding.RecordingHttpClient;
+
+import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static com.hsbc.cranker.connector.CrankerConnectorBuilder.CRANKER_PROTOCOL_3;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.hasItem;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static scaffolding.AssertUtils.assertEventually;
+
+public class RequestDeadlineProxyTest extends BaseEndToEndTest {
+
+    private final RecordingHttpClient routerClient = new RecordingHttpClient(CrankerConnectorBuilder.createHttpClient(true).build());
+    private final Queue<Throwable> proxyErrors = new ConcurrentLinkedQueue<>();
+    private final HangingTarget target = new HangingTarget();
+    private CrankerConnector connector;
+
+    @AfterEach
+    void stop() {
+        if (connector != null) assertThat(connector.stop(10, TimeUnit.SECONDS), is(true));
+    }
+
+    /**
+     * A target that never finishes its responses. With headers, it starts the response and then sends no body.
+     */
+    private static class HangingTarget implements TargetTransport {
+        private final Queue<CompletableFuture<?>> responses = new ConcurrentLinkedQueue<>();
+        private final CompletableFuture<Void> bodyCancelled = new CompletableFuture<>();
+        private volatile boolean sendsHeaders;
+
+        @Override
+        public <T> CompletableFuture<HttpResponse<T>> sendAsync(HttpRequest request, HttpResponse.BodyHandler<T> responseBodyHandler) {
+            CompletableFuture<HttpResponse<T>> response = new CompletableFuture<>();
+            responses.add(response);
+            if (sendsHeaders) {
+                HttpResponse.BodySubscriber<T> body = responseBodyHandler.apply(new HttpResponse.ResponseInfo() {
+                    @Override
+                    public int statusCode() {
+                        return 200;
+                    }
+
+                    @Override
+                    public HttpHeaders headers() {
+                        return HttpHeaders.of(Map.of("content-type", List.of("text/plain")), (name, value) -> true);
+                    }
+
+                    @Override
+                    public HttpClient.Version version() {
+                        return HttpClient.Version.HTTP_1_1;
+                    }
+                });
+                body.onSubscribe(new Flow.Subscription() {
+                    @Override
+                    public void request(long n) {
+                    }
+
+                    @Override
+                    public void cancel() {
+                        bodyCancelled.complete(null);
+                    }
+                });
+                body.onNext(List.of(ByteBuffer.wrap("partial".getBytes())));
+            }
+            return response;
+        }
+    }
+
+    private void startConnector(RepetitionInfo repetitionInfo) {
+        connector = CrankerConnectorBuilder.connector()
+            .withPreferredProtocols(preferredProtocols(repetitionInfo))
+            .withHttpClient(routerClient)
+            .withRouterUris(RegistrationUriSuppliers.fixedUris(registrationUri(registrationServer.uri())))
+            .withRoute("*")
+            .withTarget(TargetTransport.LOCAL_TARGET_URI)
+            .withTargetTransport(target)
+            .withRequestDeadline(Duration.ofMillis(300))
+            .withProxyEventListener(new ProxyEventListener() {
+                @Override
+                public void onProxyError(HttpRequest request, Throwable error) {
+                    proxyErrors.add(error);
+                }
+            })
+            .start();
+        waitForRegistration("*", connector.connectorId(), 2, crankerRouter);
+    }
+
+    private void assertTheRouterWasToldTheRequestFailed(RepetitionInfo repetitionInfo) {
+        if (preferredProtocols(repetitionInfo).get(0).equals(CRANKER_PROTOCOL_3)) {
+            assertEventually(routerClient::resetCodes, contains(1011));
+        } else {
+            assertEventually(routerClient::closeCodes, hasItem(1011));
+        }
+        assertEventually(() -> proxyErrors.size(), is(1));
+        assertThat(proxyErrors.peek(), instanceOf(TimeoutException.class));
+    }
+
+    @RepeatedTest(3)
+    void aTargetThatNeverRespondsIsCancelledAtTheDeadline(RepetitionInfo repetitionInfo) throws Exception {
+        startConnector(repetitionInfo);
+
+        HttpResponse<String> response = testClient.send(HttpRequest.newBuilder(crankerServer.uri().resolve("/never")).build(),
+            HttpResponse.BodyHandlers.ofString());
+        assertThat(response.statusCode(), greaterThanOrEqualTo(500));
+
+        assertThat(target.responses.size(), is(1));
+        assertEventually(() -> target.responses.peek().isCancelled(), is(true));
+        assertTheRouterWasToldTheRequestFailed(repetitionInfo);
+    }
+
+    @RepeatedTest(3)
+    void aResponseBodyThatNeverEndsIsCancelledAtTheDeadline(RepetitionInfo repetitionInfo) {
+        target.sendsHeaders = true;
+        startConnector(repetitionInfo);
+
+        CompletableFuture<HttpResponse<String>> response = testClient.sendAsync(HttpRequest.newBuilder(crankerServer.uri().resolve("/partial")).build(),
+            HttpResponse.BodyHandlers.ofString());
+        assertEventually(target.bodyCancelled::isDone, is(true));
+        assertEventually(() -> target.responses.peek().isCancelled(), is(true));
+        assertTheRouterWasToldTheRequestFailed(repetitionInfo);
+        assertEventually(response::isCompletedExceptionally, is(true));
+    }
+}
@@ -0,0 +1,82 @@
+package com.hsbc.cranker.connector;
+
+import org.junit.jupiter.api.Test;
+
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+class RequestDeadlinesTest {
+
+    private static final String[] NO_HEADERS = new String[0];
+
+    @Test
+    void theLongestMatchingPrefixReplacesTheRouteDeadline() {
+        Map<String, Duration> prefixes = new LinkedHashMap<>();
+        prefixes.put("/reports", Duration.ofSeconds(60));
+        prefixes.put("/reports/quick/", Duration.ofSeconds(2));
+        RequestDeadlines deadlines = new RequestDeadlines(Duration.ofSeconds(10), prefixes, null);
+
+        assertThat(deadlines.millisFor("/things", NO_HEADERS), equalTo(10000L));
+        assertThat(deadlines.millisFor("/reports", NO_HEADERS), equalTo(60000L));
+        assertThat(deadlines.millisFor("/reports/monthly", NO_HEADERS), equalTo(60000L));
+        assertThat(deadlines.millisFor("/reports/quick/1", NO_HEADERS), equalTo(2000L));
+        assertThat(deadlines.millisFor("/reportsx", NO_HEADERS), equalTo(10000L));
+        assertThat(new RequestDeadlines(null, prefixes, null).millisFor("/things", NO_HEADERS), equalTo(-1L));
+    }
+
+    @Test
+    void clientsCanOnlyShortenTheDeadlineWhenTheHeaderIsEnabled() {
+        String[] headers = {"accept:*/*", "x-request-deadline: 500"};
+        assertThat(new RequestDeadlines(Duration.ofSeconds(10), Map.of(), null).millisFor("/", headers), equalTo(10000L));
+
+        RequestDeadlines deadlines = new RequestDeadlines(Duration.ofSeconds(10), Map.of(), "X-Request-Deadline");
+        assertThat(deadlines.millisFor("/", headers), equalTo(500L));
+        assertThat(deadlines.millisFor("/", new String[]{"X-Request-Deadline:60000"}), equalTo(10000L));
+        assertThat(deadlines.millisFor("/", new String[]{"X-Request-Deadline:soon"}), equalTo(10000L));
+        assertThat(new RequestDeadlines(null, Map.of(), "X-Request-Deadline").millisFor("/", headers), equalTo(500L));
+        assertThat(new RequestDeadlines(null, Map.of(), "X-Request-Deadline").millisFor("/", NO_HEADERS), equalTo(-1L));
+    }
+
+    @Test
+    void theDeadlineHeaderIsReplacedWithTheTimeLeft() {
+        RequestDeadlines deadlines = new RequestDeadlines(Duration.ofSeconds(10), Map.of(), "X-Deadline");
+        assertThat(deadlines.withDeadlineHeader(new String[]{"accept:*/*", "x-deadline:900", "x-deadliner:1"}, 850),
+            arrayContaining("accept:*/*", "x-deadliner:1", "X-Deadline:850"));
+        assertThat(new RequestDeadlines(Duration.ofSeconds(10), Map.of(), null).withDeadlineHeader(new String[]{"accept:*/*"}, 10000),
+            arrayContaining("accept:*/*", RequestDeadlines.DEFAULT_HEADER + ":10000"));
+    }
+
+    @Test
+    void forwardedRequestsKeepTheirTimeout() {
+        ForwardedRequest request = new ForwardedRequest("GET", URI.create("http://localhost:8080/things"), HttpRequest.BodyPublishers.noBody(),
+            new String[]{"x-request-deadline:250"}, Duration.ofMillis(250));
+        assertThat(request.timeout().orElse(null), equalTo(Duration.ofMillis(250)));
+        assertThat(request.withUri(URI.create("http://localhost:8081/things")).timeout().orElse(null), equalTo(Duration.ofMillis(250)));
+        assertThat(request.toHttpRequest().timeout().orElse(null), equalTo(Duration.ofMillis(250)));
+    }
+
+    @Test
+    void cancelledDeadlinesDoNotStayInTheSchedulerQueue() {
+        ScheduledExecutorService scheduler = RequestDeadlines.newScheduler(Executors.defaultThreadFactory());
+        try {
+            for (int i = 0; i < 1000; i++) {
+                ScheduledFuture<?> deadline = scheduler.schedule(() -> { }, 1, TimeUnit.HOURS);
+                deadline.cancel(false);
+            }
+            assertThat(((ScheduledThreadPoolExecutor) scheduler).getQueue().size(), equalTo(0));
+        } finally {
+            scheduler.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package com.hsbc.cranker.connector;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static java.util.stream.Collectors.toList;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static scaffolding.AssertUtils.assertEventually;
+
+class RouterSnapshotTest {
+
+    private static final URI ROUTER_1 = URI.create("wss://10.0.0.1:8443");
+    private static final URI ROUTER_2 = URI.create("wss://10.0.0.2:8443");
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void aMissingSnapshotIsEmpty() {
+        assertThat(new RouterSnapshot(dir.resolve("routers.txt")).read(), empty());
+    }
+
+    @Test
+    void writtenRoutersCanBeReadBack() throws Exception {
+        Path file = dir.resolve("nested/routers.txt");
+        new RouterSnapshot(file).write(List.of(ROUTER_1, ROUTER_2));
+        assertThat(new RouterSnapshot(file).read(), containsInAnyOrder(ROUTER_1, ROUTER_2));
+        try (Stream<Path> files = Files.list(file.getParent())) {
+            assertThat("No temp files are left behind", files.count(), equalTo(1L));
+        }
+    }
+
+    @Test
+    void theFileIsReplacedWhenTheRoutersChange() throws Exception {
+        Path file = dir.resolve("routers.txt");
+        RouterSnapshot snapshot = new RouterSnapshot(file);
+        snapshot.write(List.of(ROUTER_1, ROUTER_2));
+        snapshot.write(List.of(ROUTER_2));
+        assertThat(new RouterSnapshot(file).read(), contains(ROUTER_2));
+    }
+
+    @Test
+    void unchangedRoutersAreNotRewritten() throws Exception {
+        Path file = dir.resolve("routers.txt");
+        RouterSnapshot snapshot = new RouterSnapshot(file);
+        snapshot.write(List.of(ROUTER_1));
+        Files.writeString(file, "wss://10.0.0.9:8443\n");
+        snapshot.write(List.of(ROUTER_1));
+        assertThat(Files.readString(file), containsString("10.0.0.9"));
+    }
+
+    @Test
+    void invalidLinesAreIgnored() throws Exception {
+        Path file = dir.resolve("routers.txt");
+        Files.write(file, ("\n" + ROUTER_1 + "\nnot a uri\n  \n").getBytes(StandardCharsets.UTF_8));
+        assertThat(new RouterSnapshot(file).read(), contains(ROUTER_1));
+    }
+
+    @Test
+    void aConnectorStartsWithTheSnapshotRoutersAndThenMovesToTheLiveOnes() throws Exception {
+        Path file = dir.resolve("routers.txt");
+        URI snapshotRouter = URI.create("ws://localhost:1");
+        URI liveRouter = URI.create("ws://localhost:2");
+        new RouterSnapshot(file).write(List.of(snapshotRouter));
+        CountDownLatch lookupAllowed = new CountDownLatch(1);
+        CrankerConnector connector = CrankerConnectorBuilder.connector()
+            .withRouterUris(() -> {
+                try {
+                    lookupAllowed.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return List.of(liveRouter);
+            })
+            .withRouterSnapshotFile(file)
+            .withRoute("*")
+            .withTarget(URI.create("http://localhost:1234"))
+            .start();
+        try {
+            RouterRegistration fromSnapshot = connector.routers().get(0);
+            assertThat(fromSnapshot.registrationUri().getAuthority(), equalTo(snapshotRouter.getAuthority()));
+            assertThat(fromSnapshot.state(), equalTo(RouterRegistration.State.ACTIVE));
+
+            lookupAllowed.countDown();
+            assertEventually(() -> connector.routers().stream().map(router -> router.registrationUri().getAuthority()).collect(toList()),
+                contains(liveRouter.getAuthority()));
+            // the router that is no longer live is stopped, and not started again
+            assertEventually(fromSnapshot::state, equalTo(RouterRegistration.State.STOPPED));
+            assertThat(new RouterSnapshot(file).read(), contains(liveRouter));
+        } finally {
+            connector.stop(1, TimeUnit.SECONDS);
+        }
+    }
+}
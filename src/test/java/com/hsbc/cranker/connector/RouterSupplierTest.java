@@ -11,6 +11,7 @@ import java.net.URI;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
 import java.util.*;
+import java.util.concurrent.SubmissionPublisher;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
@@ -175,6 +176,91 @@ public class RouterSupplierTest extends BaseEndToEndTest {
         client.stop();
     }
 
+    @RepeatedTest(3)
+    public void routersCanBePushedByAPublisher(RepetitionInfo repetitionInfo) throws Exception {
+        URI reg1 = registrationUri(routerServer1);
+        URI reg2 = registrationUri(routerServer2);
+        SubmissionPublisher<Collection<URI>> publisher = new SubmissionPublisher<>();
+        CrankerConnectorImpl connector = (CrankerConnectorImpl) CrankerConnectorBuilder.connector()
+            .withPreferredProtocols(preferredProtocols(repetitionInfo))
+            .withTarget(target.uri())
+            .withRoute(route)
+            .withRouterUriPublisher(publisher)
+            .start();
+
+        publisher.submit(List.of(reg1));
+        waitForRegistration(route, connector.connectorId(), 2, router1);
+        assertGetWorks(routerServer1.uri());
+
+        // a quick series of changes ends up with the last one, well before the one minute poll
+        publisher.submit(List.of(reg1, reg2));
+        publisher.submit(List.of(reg2));
+        waitForRegistration(route, connector.connectorId(), 2, router2);
+        assertEventually(() -> connector.routers().size(), is(1));
+        assertGetWorks(routerServer2.uri());
+
+        assertStoppable(connector);
+        publisher.close();
+    }
+
+    @RepeatedTest(3)
+    public void aRouterPublishedDuringTheFirstUpdateIsOnlyRegisteredWithOnce(RepetitionInfo repetitionInfo) throws Exception {
+        URI reg1 = registrationUri(routerServer1);
+        SubmissionPublisher<Collection<URI>> publisher = new SubmissionPublisher<>();
+        List<RouterRegistration> added = Collections.synchronizedList(new ArrayList<>());
+        CrankerConnectorImpl connector = (CrankerConnectorImpl) CrankerConnectorBuilder.connector()
+            .withPreferredProtocols(preferredProtocols(repetitionInfo))
+            .withTarget(target.uri())
+            .withRoute(route)
+            .withRouterUris(() -> {
+                // the published update is due while the first update is still waiting for the supplier
+                publisher.submit(List.of(reg1));
+                swallowException(() -> Thread.sleep(500));
+                return List.of(reg1);
+            })
+            .withRouterUriPublisher(publisher)
+            .withRouterRegistrationListener(new RouterEventListener() {
+                @Override
+                public void onRegistrationChanged(ChangeData data) {
+                    added.addAll(data.added());
+                }
+            })
+            .start();
+
+        waitForRegistration(route, connector.connectorId(), 2, router1);
+        Thread.sleep(500);
+        assertThat(added, hasSize(1));
+        assertThat(connector.routers(), hasSize(1));
+
+        assertStoppable(connector);
+        publisher.close();
+    }
+
+    @RepeatedTest(3)
+    public void theSupplierIsPolledAgainIfThePublisherCompletes(RepetitionInfo repetitionInfo) throws Exception {
+        URI reg1 = registrationUri(routerServer1);
+        URI reg2 = registrationUri(routerServer2);
+        SubmissionPublisher<Collection<URI>> publisher = new SubmissionPublisher<>();
+        CrankerConnectorImpl connector = (CrankerConnectorImpl) CrankerConnectorBuilder.connector()
+            .withPreferredProtocols(preferredProtocols(repetitionInfo))
+            .withTarget(target.uri())
+            .withRoute(route)
+            .withRouterUris(() -> List.of(reg2))
+            .withRouterUriPublisher(publisher)
+            .withRouterUpdateInterval(200, TimeUnit.MILLISECONDS)
+            .start();
+
+        publisher.submit(List.of(reg1));
+        waitForRegistration(route, connector.connectorId(), 2, router1);
+        assertEventually(() -> connector.routers().size(), is(1));
+
+        publisher.close();
+        waitForRegistration(route, connector.connectorId(), 2, router2);
+        assertEventually(() -> connector.routers().get(0).registrationUri().getPort(), is(reg2.getPort()));
+
+        assertStoppable(connector);
+    }
+
     @RepeatedTest(3)
     @Disabled("Takes a minute to run so not normally run as part of build")
     public void nonExistentDomainsReturnErrorsToListener(RepetitionInfo repetitionInfo) throws Exception {
@@ -0,0 +1,86 @@
+package com.hsbc.cranker.connector;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class SocketBudgetTest {
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+    private static final long MILLIS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    @Test
+    void routersWithNoHistoryShareEvenly() {
+        SocketBudget budget = new SocketBudget(12);
+        double[] weights = budget.weights(List.of(new SocketBudget.RouterLoad(), new SocketBudget.RouterLoad(), new SocketBudget.RouterLoad()), 0);
+        assertThat(budget.allocate(weights), equalTo(new int[]{4, 4, 4}));
+    }
+
+    @Test
+    void busierRoutersGetMoreSockets() {
+        SocketBudget budget = new SocketBudget(20);
+        SocketBudget.RouterLoad busy = new SocketBudget.RouterLoad();
+        SocketBudget.RouterLoad quiet = new SocketBudget.RouterLoad();
+        List<SocketBudget.RouterLoad> loads = List.of(busy, quiet);
+        double[] weights = null;
+        for (int second = 0; second < 20; second++) {
+            for (int i = 0; i < 90; i++) busy.onRequest();
+            for (int i = 0; i < 10; i++) quiet.onRequest();
+            weights = budget.weights(loads, second * SECOND);
+        }
+        int[] sizes = budget.allocate(weights);
+        assertThat(sizes[0] + sizes[1], equalTo(20));
+        assertThat(sizes[0], greaterThan(14));
+        assertThat(sizes[1], lessThan(6));
+    }
+
+    @Test
+    void distantAndFailingRoutersAreWeightedDown() {
+        SocketBudget budget = new SocketBudget(20);
+        SocketBudget.RouterLoad local = new SocketBudget.RouterLoad();
+        SocketBudget.RouterLoad remote = new SocketBudget.RouterLoad();
+        SocketBudget.RouterLoad failing = new SocketBudget.RouterLoad();
+        local.onConnected(2 * MILLIS);
+        remote.onConnected(200 * MILLIS);
+        failing.onConnected(2 * MILLIS);
+        List<SocketBudget.RouterLoad> loads = List.of(local, remote, failing);
+        double[] weights = null;
+        for (int second = 0; second < 20; second++) {
+            for (SocketBudget.RouterLoad load : loads) {
+                for (int i = 0; i < 50; i++) load.onRequest();
+            }
+            for (int i = 0; i < 10; i++) failing.onError();
+            weights = budget.weights(loads, second * SECOND);
+        }
+        assertThat(weights[0] + weights[1] + weights[2], closeTo(1.0, 0.0001));
+        assertThat(weights[1], lessThan(weights[0] / 2));
+        assertThat(weights[2], lessThan(weights[0] / 2));
+    }
+
+    @Test
+    void everyRouterGetsAtLeastOneSocket() {
+        SocketBudget budget = new SocketBudget(2);
+        assertThat(budget.allocate(new double[]{0.98, 0.01, 0.01}), equalTo(new int[]{1, 1, 1}));
+        assertThat(new SocketBudget(10).allocate(new double[]{0.98, 0.01, 0.01}), equalTo(new int[]{8, 1, 1}));
+    }
+
+    @Test
+    void theBudgetIsFullyAllocated() {
+        SocketBudget budget = new SocketBudget(10);
+        int[] sizes = budget.allocate(new double[]{1 / 3.0, 1 / 3.0, 1 / 3.0});
+        assertThat(sizes[0] + sizes[1] + sizes[2], equalTo(10));
+    }
+
+    @Test
+    void invalidBudgetsAreRejected() {
+        assertThrows(IllegalArgumentException.class, () -> new SocketBudget(0));
+    }
+}
@@ -0,0 +1,62 @@
+package com.hsbc.cranker.connector;
+
+import org.junit.jupiter.api.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class SocketScalerTest {
+
+    @Test
+    void staysAtTheMinimumWhenQuiet() {
+        SocketScaler scaler = new SocketScaler(100, 1_000_000, 10);
+        assertThat(scaler.desiredSockets(2, 2, 0, 0), equalTo(2));
+        assertThat(scaler.desiredSockets(2, 2, 150, 1000), equalTo(2));
+    }
+
+    @Test
+    void addsASocketWhenTheStreamThresholdIsPassed() {
+        SocketScaler scaler = new SocketScaler(100, 1_000_000, 10);
+        assertThat(scaler.desiredSockets(2, 2, 200, 0), equalTo(3));
+        assertThat(scaler.desiredSockets(2, 3, 450, 0), equalTo(5));
+    }
+
+    @Test
+    void addsASocketWhenTheBytesThresholdIsPassed() {
+        SocketScaler scaler = new SocketScaler(100, 1_000_000, 10);
+        assertThat(scaler.desiredSockets(2, 2, 10, 2_000_000), equalTo(3));
+    }
+
+    @Test
+    void neverGoesAboveTheMaximum() {
+        SocketScaler scaler = new SocketScaler(100, 1_000_000, 4);
+        assertThat(scaler.desiredSockets(2, 4, 10_000, 0), equalTo(4));
+    }
+
+    @Test
+    void onlyScalesDownAfterTheLoadHasBeenLowForAWhile() {
+        SocketScaler scaler = new SocketScaler(100, 1_000_000, 10);
+        for (int i = 1; i < SocketScaler.SCALE_DOWN_CHECKS; i++) {
+            assertThat(scaler.desiredSockets(2, 6, 10, 0), equalTo(6));
+        }
+        assertThat(scaler.desiredSockets(2, 6, 10, 0), equalTo(2));
+    }
+
+    @Test
+    void aBusyCheckResetsTheScaleDownCount() {
+        SocketScaler scaler = new SocketScaler(100, 1_000_000, 10);
+        for (int i = 1; i < SocketScaler.SCALE_DOWN_CHECKS; i++) {
+            scaler.desiredSockets(2, 6, 10, 0);
+        }
+        assertThat(scaler.desiredSockets(2, 6, 600, 0), equalTo(7));
+        assertThat(scaler.desiredSockets(2, 7, 10, 0), equalTo(7));
+    }
+
+    @Test
+    void invalidValuesAreRejected() {
+        assertThrows(IllegalArgumentException.class, () -> new SocketScaler(0, 1, 1));
+        assertThrows(IllegalArgumentException.class, () -> new SocketScaler(1, 0, 1));
+        assertThrows(IllegalArgumentException.class, () -> new SocketScaler(1, 1, 0));
+    }
+}
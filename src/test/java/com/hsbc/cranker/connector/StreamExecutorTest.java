@@ -0,0 +1,125 @@
+package com.hsbc.cranker.connector;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class StreamExecutorTest {
+
+    private final StreamExecutor executor = StreamExecutor.fixedThreads(4, "stream-executor-test-");
+
+    @AfterEach
+    void after() {
+        executor.shutdown();
+    }
+
+    @Test
+    void tasksOfTheSameStreamRunInSubmissionOrder() throws InterruptedException {
+        final int streams = 50;
+        final int tasksPerStream = 200;
+        final Map<Integer, List<Integer>> results = new ConcurrentHashMap<>();
+        final CountDownLatch latch = new CountDownLatch(streams * tasksPerStream);
+        for (int i = 0; i < tasksPerStream; i++) {
+            for (int streamId = 0; streamId < streams; streamId++) {
+                final int sequence = i;
+                final int stream = streamId;
+                executor.execute(streamId, () -> {
+                    results.computeIfAbsent(stream, key -> new ArrayList<>()).add(sequence);
+                    latch.countDown();
+                });
+            }
+        }
+        assertThat(latch.await(10, TimeUnit.SECONDS), is(true));
+        for (int streamId = 0; streamId < streams; streamId++) {
+            List<Integer> sequences = results.get(streamId);
+            assertThat(sequences.size(), equalTo(tasksPerStream));
+            for (int i = 0; i < tasksPerStream; i++) {
+                assertThat(sequences.get(i), equalTo(i));
+            }
+        }
+    }
+
+    @Test
+    void differentStreamsCanRunInParallel() throws InterruptedException {
+        final Set<String> threads = ConcurrentHashMap.newKeySet();
+        final CountDownLatch allStarted = new CountDownLatch(executor.lanes());
+        final CountDownLatch done = new CountDownLatch(executor.lanes());
+        for (int streamId = 0; streamId < executor.lanes(); streamId++) {
+            executor.execute(streamId, () -> {
+                threads.add(Thread.currentThread().getName());
+                allStarted.countDown();
+                try {
+                    allStarted.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException ignored) {
+                }
+                done.countDown();
+            });
+        }
+        assertThat(done.await(10, TimeUnit.SECONDS), is(true));
+        assertThat(threads.size(), greaterThan(1));
+    }
+
+    @Test
+    void aFailingTaskDoesNotStopTheLane() throws InterruptedException {
+        final CountDownLatch latch = new CountDownLatch(1);
+        executor.execute(1, () -> {
+            throw new RuntimeException("Expected for test");
+        });
+        executor.execute(1, latch::countDown);
+        assertThat(latch.await(10, TimeUnit.SECONDS), is(true));
+    }
+
+    @Test
+    void aLaneStillRunsTasksAfterThePoolRejectedOne() throws InterruptedException {
+        // a single worker and no queue, so the pool rejects work while its worker is busy
+        final ThreadPoolExecutor pool = new ThreadPoolExecutor(1, 1, 0, TimeUnit.SECONDS, new SynchronousQueue<>());
+        final StreamExecutor lanes = new StreamExecutor(pool, 2);
+        try {
+            final CountDownLatch busy = new CountDownLatch(1);
+            final CountDownLatch release = new CountDownLatch(1);
+            lanes.execute(0, () -> {
+                busy.countDown();
+                try {
+                    release.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException ignored) {
+                }
+            });
+            assertThat(busy.await(10, TimeUnit.SECONDS), is(true));
+
+            final AtomicInteger rejectedRuns = new AtomicInteger();
+            assertThrows(RejectedExecutionException.class, () -> lanes.execute(1, rejectedRuns::incrementAndGet));
+            release.countDown();
+
+            final CountDownLatch ran = new CountDownLatch(1);
+            for (int attempt = 0; attempt < 100 && ran.getCount() > 0; attempt++) {
+                try {
+                    lanes.execute(1, ran::countDown);
+                } catch (RejectedExecutionException e) {
+                    // the worker has not finished the blocking task yet
+                    Thread.sleep(20);
+                }
+            }
+            assertThat(ran.await(10, TimeUnit.SECONDS), is(true));
+            assertThat(rejectedRuns.get(), equalTo(0));
+        } finally {
+            lanes.shutdown();
+        }
+    }
+}
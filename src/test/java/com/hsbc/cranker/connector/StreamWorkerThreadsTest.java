@@ -0,0 +1,82 @@
+package com.hsbc.cranker.connector;
+
+import io.muserver.Method;
+import io.muserver.MuServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+import static com.hsbc.cranker.connector.CrankerConnectorBuilder.CRANKER_PROTOCOL_3;
+import static io.muserver.MuServerBuilder.httpServer;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+
+public class StreamWorkerThreadsTest extends BaseEndToEndTest {
+
+    private final Queue<Throwable> proxyErrors = new ConcurrentLinkedQueue<>();
+
+    private final MuServer targetServer = httpServer()
+        .addHandler(Method.POST, "/echo", (request, response, pathParams) -> response.write(request.readBodyAsString()))
+        .start();
+
+    private CrankerConnector connector;
+
+    @BeforeEach
+    void setUp() {
+        connector = CrankerConnectorBuilder.connector()
+            .withPreferredProtocols(List.of(CRANKER_PROTOCOL_3))
+            .withHttpClient(CrankerConnectorBuilder.createHttpClient(true).build())
+            .withRouterUris(RegistrationUriSuppliers.fixedUris(registrationUri(registrationServer.uri())))
+            .withRoute("*")
+            .withTarget(targetServer.uri())
+            .withStreamWorkerThreads(4)
+            .withProxyEventListener(new ProxyEventListener() {
+                @Override
+                public void onProxyError(HttpRequest request, Throwable error) {
+                    proxyErrors.add(error);
+                }
+            })
+            .start();
+        waitForRegistration("*", connector.connectorId(), 2, crankerRouter);
+    }
+
+    @AfterEach
+    void stop() {
+        if (connector != null) assertThat(connector.stop(10, TimeUnit.SECONDS), is(true));
+        targetServer.stop();
+    }
+
+    @Test
+    void framesOfEachStreamStayInOrderWhenStreamsAreProcessedOnWorkerThreads() {
+        // many concurrent uploads of numbered lines, each large enough to be sent as many data frames
+        List<String> bodies = new ArrayList<>();
+        List<CompletableFuture<HttpResponse<String>>> responses = new ArrayList<>();
+        for (int request = 0; request < 20; request++) {
+            StringBuilder body = new StringBuilder();
+            for (int line = 0; line < 20000; line++) {
+                body.append(request).append('-').append(line).append('\n');
+            }
+            bodies.add(body.toString());
+            responses.add(testClient.sendAsync(HttpRequest.newBuilder(crankerServer.uri().resolve("/echo"))
+                .POST(HttpRequest.BodyPublishers.ofString(body.toString()))
+                .build(), HttpResponse.BodyHandlers.ofString()));
+        }
+        for (int i = 0; i < responses.size(); i++) {
+            HttpResponse<String> response = responses.get(i).join();
+            assertThat(response.statusCode(), equalTo(200));
+            assertThat("body of request " + i, response.body(), equalTo(bodies.get(i)));
+        }
+        assertThat(proxyErrors, empty());
+    }
+}
@@ -0,0 +1,222 @@
+package com.hsbc.cranker.connector;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import scaffolding.FakeTarget;
+
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class TargetCircuitBreakerTest {
+
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+
+    @AfterEach
+    void stopExecutor() {
+        executor.shutdownNow();
+    }
+
+    private TargetCircuitBreaker breaker(FakeTarget target, Duration slowResponseThreshold, Duration openDuration) {
+        TargetCircuitBreaker breaker = new TargetCircuitBreaker(target, 0.5, slowResponseThreshold, 4,
+            Duration.ofMinutes(1), openDuration, null, null, null);
+        breaker.start(executor);
+        return breaker;
+    }
+
+    private static CompletableFuture<HttpResponse<Void>> send(TargetTransport transport) {
+        return transport.sendAsync(HttpRequest.newBuilder(URI.create("http://localhost:8080/things")).build(), HttpResponse.BodyHandlers.discarding());
+    }
+
+    @Test
+    void theCircuitOpensWhenTheFailureRateIsReachedAndRequestsThenFailWithoutBeingSent() {
+        FakeTarget target = new FakeTarget();
+        TargetCircuitBreaker breaker = breaker(target, null, Duration.ofMinutes(1));
+        List<TargetCircuitBreaker.State> changes = new CopyOnWriteArrayList<>();
+        breaker.addListener(changes::add);
+        for (int i = 0; i < 4; i++) {
+            send(breaker);
+        }
+        target.respond(0, 200);
+        target.respond(1, 503);
+        target.sent().get(2).completeExceptionally(new RuntimeException("connection refused"));
+        assertThat("only three requests have completed", breaker.isAvailable(), equalTo(true));
+        target.respond(3, 200);
+        assertThat(breaker.isAvailable(), equalTo(true));
+
+        send(breaker);
+        target.sent().get(4).completeExceptionally(new RuntimeException("connection refused"));
+        assertThat(breaker.state(), equalTo(TargetCircuitBreaker.State.OPEN));
+        assertThat(changes, contains(TargetCircuitBreaker.State.OPEN));
+
+        CompletableFuture<HttpResponse<Void>> rejected = send(breaker);
+        assertThat(rejected.isCompletedExceptionally(), equalTo(true));
+        assertThat(target.sent(), hasSize(5));
+    }
+
+    @Test
+    void slowResponsesCountAsFailuresButCancelledRequestsDoNotCount() throws InterruptedException {
+        FakeTarget target = new FakeTarget();
+        TargetCircuitBreaker breaker = breaker(target, Duration.ofMillis(1), Duration.ofMinutes(1));
+        for (int i = 0; i < 4; i++) {
+            send(breaker).cancel(true);
+        }
+        assertThat(breaker.isAvailable(), equalTo(true));
+        send(breaker);
+        send(breaker);
+        Thread.sleep(5);
+        target.respond(4, 200);
+        target.respond(5, 200);
+        send(breaker);
+        send(breaker);
+        target.respond(7, 200);
+        assertThat("only three requests count", breaker.isAvailable(), equalTo(true));
+        target.sent().get(6).completeExceptionally(new RuntimeException("reset"));
+        assertThat(breaker.isAvailable(), equalTo(false));
+    }
+
+    @Test
+    void afterTheOpenDurationOneTrialRequestIsSentAndClosesTheCircuitIfItSucceeds() throws Exception {
+        FakeTarget target = new FakeTarget();
+        TargetCircuitBreaker breaker = breaker(target, null, Duration.ofMillis(50));
+        CompletableFuture<TargetCircuitBreaker.State> halfOpen = new CompletableFuture<>();
+        breaker.addListener(state -> {
+            if (state == TargetCircuitBreaker.State.HALF_OPEN) {
+                halfOpen.complete(state);
+            }
+        });
+        for (int i = 0; i < 4; i++) {
+            send(breaker).completeExceptionally(new RuntimeException("connection refused"));
+        }
+        assertThat(breaker.state(), equalTo(TargetCircuitBreaker.State.OPEN));
+        halfOpen.get();
+
+        send(breaker);
+        assertThat(target.sent(), hasSize(5));
+        ExecutionException whileTrying = assertThrows(ExecutionException.class, () -> send(breaker).get());
+        assertThat(whileTrying.getCause().getMessage(), containsString("being tried again"));
+        assertThat(target.sent(), hasSize(5));
+
+        target.respond(4, 200);
+        assertThat(breaker.state(), equalTo(TargetCircuitBreaker.State.CLOSED));
+        send(breaker);
+        send(breaker);
+        assertThat(target.sent(), hasSize(7));
+    }
+
+    @Test
+    void aFailedTrialOpensTheCircuitAgain() throws Exception {
+        FakeTarget target = new FakeTarget();
+        TargetCircuitBreaker breaker = breaker(target, null, Duration.ofMillis(50));
+        CompletableFuture<Void> halfOpen = new CompletableFuture<>();
+        breaker.addListener(state -> {
+            if (state == TargetCircuitBreaker.State.HALF_OPEN) {
+                halfOpen.complete(null);
+            }
+        });
+        for (int i = 0; i < 4; i++) {
+            send(breaker).completeExceptionally(new RuntimeException("connection refused"));
+        }
+        halfOpen.get();
+        send(breaker);
+        target.respond(4, 502);
+        assertThat(breaker.state(), equalTo(TargetCircuitBreaker.State.OPEN));
+    }
+
+    @Test
+    void aCancelledTrialLeavesTheCircuitHalfOpen() throws Exception {
+        FakeTarget target = new FakeTarget();
+        TargetCircuitBreaker breaker = breaker(target, null, Duration.ofMillis(50));
+        CompletableFuture<Void> halfOpen = new CompletableFuture<>();
+        breaker.addListener(state -> {
+            if (state == TargetCircuitBreaker.State.HALF_OPEN) {
+                halfOpen.complete(null);
+            }
+        });
+        for (int i = 0; i < 4; i++) {
+            send(breaker).completeExceptionally(new RuntimeException("connection refused"));
+        }
+        halfOpen.get();
+        send(breaker).cancel(true);
+        assertThat(breaker.state(), equalTo(TargetCircuitBreaker.State.HALF_OPEN));
+
+        send(breaker);
+        assertThat("the next request is the trial", target.sent(), hasSize(6));
+        target.respond(5, 200);
+        assertThat(breaker.state(), equalTo(TargetCircuitBreaker.State.CLOSED));
+    }
+
+    @Test
+    void listenersAreOnlyAddedOnce() {
+        FakeTarget target = new FakeTarget();
+        TargetCircuitBreaker breaker = breaker(target, null, Duration.ofMinutes(1));
+        List<TargetCircuitBreaker.State> changes = new CopyOnWriteArrayList<>();
+        TargetCircuitBreaker.Listener listener = changes::add;
+        breaker.addListener(listener);
+        breaker.addListener(listener);
+        for (int i = 0; i < 4; i++) {
+            send(breaker).completeExceptionally(new RuntimeException("connection refused"));
+        }
+        assertThat(changes, contains(TargetCircuitBreaker.State.OPEN));
+    }
+
+    @Test
+    void severalTargetsAreOnlyUnavailableOnceEveryCircuitIsOpen() {
+        FakeTarget first = new FakeTarget();
+        FakeTarget second = new FakeTarget();
+        TargetCircuitBreaker firstBreaker = breaker(first, null, Duration.ofMinutes(1));
+        TargetCircuitBreaker secondBreaker = breaker(second, null, Duration.ofMinutes(1));
+        TargetCircuitBreakers breakers = new TargetCircuitBreakers(List.of(firstBreaker, secondBreaker));
+        List<TargetCircuitBreaker.State> changes = new CopyOnWriteArrayList<>();
+        breakers.addListener(changes::add);
+
+        for (int i = 0; i < 4; i++) {
+            send(firstBreaker).completeExceptionally(new RuntimeException("connection refused"));
+        }
+        assertThat(firstBreaker.isAvailable(), equalTo(false));
+        assertThat(breakers.isAvailable(), equalTo(true));
+        assertThat(changes, empty());
+
+        for (int i = 0; i < 4; i++) {
+            send(secondBreaker).completeExceptionally(new RuntimeException("connection refused"));
+        }
+        assertThat(breakers.isAvailable(), equalTo(false));
+        assertThat(changes, contains(TargetCircuitBreaker.State.OPEN));
+    }
+
+    @Test
+    void changesThatAreNoLongerTrueAreNotPassedOn() {
+        FakeTarget first = new FakeTarget();
+        FakeTarget second = new FakeTarget();
+        TargetCircuitBreaker firstBreaker = breaker(first, null, Duration.ofMinutes(1));
+        TargetCircuitBreaker secondBreaker = breaker(second, null, Duration.ofMinutes(1));
+        TargetCircuitBreakers breakers = new TargetCircuitBreakers(List.of(firstBreaker, secondBreaker));
+        List<TargetCircuitBreaker.State> changes = new CopyOnWriteArrayList<>();
+        breakers.addListener(changes::add);
+
+        // an open circuit delivered late, after the target has closed again
+        breakers.onCircuitStateChanged(TargetCircuitBreaker.State.OPEN);
+        assertThat(changes, empty());
+
+        for (int i = 0; i < 4; i++) {
+            send(firstBreaker).completeExceptionally(new RuntimeException("connection refused"));
+            send(secondBreaker).completeExceptionally(new RuntimeException("connection refused"));
+        }
+        assertThat(changes, contains(TargetCircuitBreaker.State.OPEN));
+
+        // a closed circuit delivered late, after every circuit has opened
+        breakers.onCircuitStateChanged(TargetCircuitBreaker.State.CLOSED);
+        assertThat(changes, contains(TargetCircuitBreaker.State.OPEN));
+    }
+}
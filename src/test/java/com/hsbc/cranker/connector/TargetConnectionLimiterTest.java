@@ -0,0 +1,87 @@
+package com.hsbc.cranker.connector;
+
+import org.junit.jupiter.api.Test;
+
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+
+class TargetConnectionLimiterTest {
+
+    private final List<CompletableFuture<HttpResponse<Void>>> sent = new CopyOnWriteArrayList<>();
+    private final List<HttpRequest> sentRequests = new CopyOnWriteArrayList<>();
+
+    private final TargetTransport transport = new TargetTransport() {
+        @Override
+        @SuppressWarnings("unchecked")
+        public <T> CompletableFuture<HttpResponse<T>> sendAsync(HttpRequest request, HttpResponse.BodyHandler<T> responseBodyHandler) {
+            CompletableFuture<HttpResponse<Void>> future = new CompletableFuture<>();
+            sent.add(future);
+            sentRequests.add(request);
+            return (CompletableFuture<HttpResponse<T>>) (CompletableFuture<?>) future;
+        }
+    };
+
+    private static HttpRequest request(String path) {
+        return HttpRequest.newBuilder(TargetTransport.LOCAL_TARGET_URI.resolve(path)).build();
+    }
+
+    @Test
+    void requestsOverTheLimitWaitInOrder() {
+        TargetConnectionLimiter limiter = new TargetConnectionLimiter(transport, 2);
+        for (int i = 0; i < 5; i++) {
+            limiter.sendAsync(request("/" + i), HttpResponse.BodyHandlers.discarding());
+        }
+        assertThat(sent.size(), equalTo(2));
+        assertThat(limiter.stats().activeRequests(), equalTo(2));
+        assertThat(limiter.stats().queuedRequests(), equalTo(3));
+
+        sent.get(0).complete(null);
+        assertThat(sent.size(), equalTo(3));
+        assertThat(sentRequests.get(2).uri().getPath(), equalTo("/2"));
+
+        sent.get(1).completeExceptionally(new RuntimeException("failed"));
+        assertThat(sent.size(), equalTo(4));
+        assertThat(sentRequests.get(3).uri().getPath(), equalTo("/3"));
+
+        TargetConnectionStats stats = limiter.stats();
+        assertThat(stats.activeRequests(), equalTo(2));
+        assertThat(stats.queuedRequests(), equalTo(1));
+        assertThat(stats.completedRequests(), equalTo(2L));
+        assertThat(stats.maxConcurrentRequests(), equalTo(2));
+        assertThat(stats.openConnections(), equalTo(-1));
+    }
+
+    @Test
+    void cancelledRequestsAreNotSentAndCancelTheTargetRequest() {
+        TargetConnectionLimiter limiter = new TargetConnectionLimiter(transport, 1);
+        CompletableFuture<HttpResponse<Void>> first = limiter.sendAsync(request("/first"), HttpResponse.BodyHandlers.discarding());
+        CompletableFuture<HttpResponse<Void>> second = limiter.sendAsync(request("/second"), HttpResponse.BodyHandlers.discarding());
+        limiter.sendAsync(request("/third"), HttpResponse.BodyHandlers.discarding());
+
+        second.cancel(true);
+        first.cancel(true);
+
+        assertThat(sent.get(0).isCancelled(), equalTo(true));
+        assertThat(sent.size(), equalTo(2));
+        assertThat(sentRequests.get(1).uri().getPath(), equalTo("/third"));
+        assertThat(limiter.stats().queuedRequests(), equalTo(0));
+    }
+
+    @Test
+    void withNoLimitRequestsAreSentImmediatelyAndCounted() {
+        TargetConnectionLimiter limiter = new TargetConnectionLimiter(transport, 0);
+        for (int i = 0; i < 100; i++) {
+            limiter.sendAsync(request("/" + i), HttpResponse.BodyHandlers.discarding());
+        }
+        assertThat(sent.size(), equalTo(100));
+        sent.get(0).complete(null);
+        assertThat(limiter.stats().activeRequests(), equalTo(99));
+        assertThat(limiter.stats().completedRequests(), equalTo(1L));
+    }
+}
@@ -0,0 +1,161 @@
+package com.hsbc.cranker.connector;
+
+import org.junit.jupiter.api.Test;
+import scaffolding.FakeTarget;
+
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class TargetPoolTest {
+
+    private static TargetPool pool(List<FakeTarget> fakes) {
+        List<URI> uris = new ArrayList<>();
+        List<TargetConnectionLimiter> transports = new ArrayList<>();
+        for (int i = 0; i < fakes.size(); i++) {
+            uris.add(URI.create("http://localhost:" + (8080 + i)));
+            transports.add(new TargetConnectionLimiter(fakes.get(i), 0));
+        }
+        return new TargetPool(uris, transports);
+    }
+
+    private static List<FakeTarget> fakes(int count) {
+        List<FakeTarget> fakes = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            fakes.add(new FakeTarget());
+        }
+        return fakes;
+    }
+
+    private static HttpRequest request() {
+        return HttpRequest.newBuilder(URI.create("http://localhost:8080/things?a=b")).build();
+    }
+
+    @Test
+    void outstandingRequestsAreSpreadEvenly() {
+        List<FakeTarget> fakes = fakes(4);
+        TargetPool pool = pool(fakes);
+        for (int i = 0; i < 400; i++) {
+            pool.sendAsync(request(), HttpResponse.BodyHandlers.discarding());
+        }
+        int min = Integer.MAX_VALUE, max = 0;
+        for (TargetPool.Target target : pool.targets()) {
+            min = Math.min(min, target.outstanding());
+            max = Math.max(max, target.outstanding());
+        }
+        assertThat(max - min, lessThanOrEqualTo(4));
+        assertThat(pool.stats().activeRequests(), equalTo(400));
+    }
+
+    @Test
+    void theTargetWithFewerOutstandingRequestsIsChosen() {
+        List<FakeTarget> fakes = fakes(2);
+        TargetPool pool = pool(fakes);
+        pool.sendAsync(request(), HttpResponse.BodyHandlers.discarding());
+        TargetPool.Target busy = pool.targets().get(fakes.get(0).sent().isEmpty() ? 1 : 0);
+        Random random = new Random(1);
+        for (int i = 0; i < 10; i++) {
+            assertThat(pool.choose(random), not(sameInstance(busy)));
+        }
+    }
+
+    @Test
+    void failingTargetsAreAvoided() {
+        List<FakeTarget> fakes = fakes(2);
+        TargetPool pool = pool(fakes);
+        for (int i = 0; i < 10; i++) {
+            pool.sendAsync(request(), HttpResponse.BodyHandlers.discarding());
+        }
+        for (CompletableFuture<HttpResponse<Void>> future : fakes.get(0).sent()) {
+            future.completeExceptionally(new RuntimeException("connection refused"));
+        }
+        for (CompletableFuture<HttpResponse<Void>> future : fakes.get(1).sent()) {
+            future.complete(null);
+        }
+        int before = fakes.get(0).sent().size();
+        for (int i = 0; i < 20; i++) {
+            pool.sendAsync(request(), HttpResponse.BodyHandlers.discarding()).complete(null);
+        }
+        assertThat(fakes.get(0).sent().size(), equalTo(before));
+    }
+
+    @Test
+    void requestsAreSentToTheChosenTarget() {
+        List<FakeTarget> fakes = fakes(2);
+        TargetPool pool = pool(fakes);
+        for (int i = 0; i < 10; i++) {
+            pool.sendAsync(new ForwardedRequest("GET", URI.create("http://localhost:8080/things?a=b"), HttpRequest.BodyPublishers.noBody(),
+                new String[]{"x-test:hello"}), HttpResponse.BodyHandlers.discarding());
+        }
+        for (int i = 0; i < fakes.size(); i++) {
+            assertThat(fakes.get(i).requests(), not(empty()));
+            for (HttpRequest request : fakes.get(i).requests()) {
+                assertThat(request.uri(), equalTo(URI.create("http://localhost:" + (8080 + i) + "/things?a=b")));
+                // these targets do not accept forwarded requests, so get a request built with the validated headers
+                assertThat(request, not(instanceOf(ForwardedRequest.class)));
+                assertThat(request.headers().firstValue("x-test").orElse(null), equalTo("hello"));
+            }
+        }
+    }
+
+    @Test
+    void targetsWhoseCircuitIsOpenAreOnlyChosenWhenTheOtherIsOpenToo() {
+        List<FakeTarget> fakes = fakes(2);
+        List<URI> uris = List.of(URI.create("http://localhost:8080"), URI.create("http://localhost:8081"));
+        List<TargetConnectionLimiter> limiters = List.of(new TargetConnectionLimiter(fakes.get(0), 0), new TargetConnectionLimiter(fakes.get(1), 0));
+        List<TargetCircuitBreaker> breakers = List.of(
+            new TargetCircuitBreaker(limiters.get(0), 0.5, null, 1, Duration.ofMinutes(1), Duration.ofMinutes(1), null, null, null),
+            new TargetCircuitBreaker(limiters.get(1), 0.5, null, 1, Duration.ofMinutes(1), Duration.ofMinutes(1), null, null, null));
+        TargetPool pool = new TargetPool(uris, limiters, breakers);
+
+        while (fakes.get(0).sent().isEmpty()) {
+            pool.sendAsync(request(), HttpResponse.BodyHandlers.discarding());
+        }
+        fakes.get(0).respond(0, 503);
+        assertThat(breakers.get(0).isAvailable(), equalTo(false));
+        assertThat(breakers.get(1).isAvailable(), equalTo(true));
+
+        int sentToOpenTarget = fakes.get(0).sent().size();
+        for (int i = 0; i < 20; i++) {
+            pool.sendAsync(request(), HttpResponse.BodyHandlers.discarding());
+        }
+        assertThat(fakes.get(0).sent().size(), equalTo(sentToOpenTarget));
+        assertThat(pool.withoutCircuitBreakers().targets().get(0).cost(), lessThan(Double.POSITIVE_INFINITY));
+    }
+
+    @Test
+    void requestsBuiltForTheSelectedTargetAreSentWithoutBeingCopied() {
+        List<FakeTarget> fakes = fakes(2);
+        TargetPool pool = pool(fakes);
+        URI resolved = URI.create("http://localhost:8080/things?a=b");
+        for (int i = 0; i < 10; i++) {
+            TargetPool.Target target = pool.select(resolved);
+            HttpRequest request = HttpRequest.newBuilder(target.uri(resolved)).build();
+            target.sendAsync(request, HttpResponse.BodyHandlers.discarding());
+            int index = pool.targets().indexOf(target);
+            List<HttpRequest> received = fakes.get(index).requests();
+            assertThat(received.get(received.size() - 1), sameInstance(request));
+            assertThat(request.uri(), equalTo(URI.create("http://localhost:" + (8080 + index) + "/things?a=b")));
+            assertThat(target.outstanding(), equalTo(received.size()));
+        }
+    }
+
+    @Test
+    void theTargetsMustHaveTheSamePath() {
+        assertThrows(IllegalArgumentException.class, () -> CrankerConnectorBuilder.connector()
+            .withTargets(List.of(URI.create("http://localhost:8080/app"), URI.create("http://localhost:8081/other"))));
+        assertThrows(IllegalArgumentException.class, () -> CrankerConnectorBuilder.connector()
+            .withTargets(List.of(URI.create("http://localhost:8080"), URI.create("http://localhost:8081/app"))));
+        CrankerConnectorBuilder.connector().withTargets(List.of(URI.create("http://localhost:8080"), URI.create("http://localhost:8081/"),
+            URI.create("unix:/var/run/app.sock")));
+    }
+}
@@ -0,0 +1,164 @@
+package com.hsbc.cranker.connector;
+
+import io.muserver.Method;
+import io.muserver.MuServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.RepeatedTest;
+import org.junit.jupiter.api.RepetitionInfo;
+
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static io.muserver.MuServerBuilder.httpServer;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.is;
+import static scaffolding.Action.swallowException;
+import static scaffolding.AssertUtils.assertEventually;
+
+public class TargetRoutingTest extends BaseEndToEndTest {
+
+    private final List<MuServer> targetServers = new ArrayList<>();
+    private CrankerConnector connector;
+
+    @AfterEach
+    void after() {
+        if (connector != null) assertThat(connector.stop(10, TimeUnit.SECONDS), is(true));
+        for (MuServer targetServer : targetServers) {
+            swallowException(targetServer::stop);
+        }
+    }
+
+    private MuServer startTarget(String name) {
+        MuServer server = httpServer()
+            .addHandler(Method.GET, "/slow", (request, response, pathParams) -> {
+                Thread.sleep(20);
+                response.write(name);
+            })
+            .addHandler((request, response) -> {
+                response.write(name + " " + request.uri().getRawPath());
+                return true;
+            })
+            .start();
+        targetServers.add(server);
+        return server;
+    }
+
+    private CrankerConnectorBuilder connectorBuilder(RepetitionInfo repetitionInfo) {
+        return CrankerConnectorBuilder.connector()
+            .withPreferredProtocols(preferredProtocols(repetitionInfo))
+            .withRouterUris(RegistrationUriSuppliers.fixedUris(registrationUri(registrationServer.uri())))
+            .withRoute("*");
+    }
+
+    private CrankerConnector start(CrankerConnectorBuilder builder) {
+        CrankerConnector connector = builder.start();
+        waitForRegistration("*", connector.connectorId(), 2, crankerRouter);
+        return connector;
+    }
+
+    private HttpResponse<String> get(String path) throws Exception {
+        return testClient.send(HttpRequest.newBuilder(crankerServer.uri().resolve(path)).build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    @RepeatedTest(3)
+    void requestsAreSpreadOverAllTheTargets(RepetitionInfo repetitionInfo) {
+        List<URI> targets = List.of(startTarget("one").uri(), startTarget("two").uri(), startTarget("three").uri());
+        connector = start(connectorBuilder(repetitionInfo).withTargets(targets));
+
+        List<CompletableFuture<HttpResponse<String>>> responses = new ArrayList<>();
+        for (int i = 0; i < 60; i++) {
+            responses.add(testClient.sendAsync(HttpRequest.newBuilder(crankerServer.uri().resolve("/slow")).build(), HttpResponse.BodyHandlers.ofString()));
+        }
+        Set<String> respondedBy = ConcurrentHashMap.newKeySet();
+        for (CompletableFuture<HttpResponse<String>> response : responses) {
+            assertThat(response.join().statusCode(), equalTo(200));
+            respondedBy.add(response.join().body());
+        }
+        assertThat(respondedBy, containsInAnyOrder("one", "two", "three"));
+    }
+
+    @RepeatedTest(3)
+    void requestsAreRoutedByTheLongestMatchingPathPrefix(RepetitionInfo repetitionInfo) throws Exception {
+        connector = start(connectorBuilder(repetitionInfo)
+            .withTarget(startTarget("default").uri())
+            .withTargetRoute("/api", startTarget("api").uri())
+            .withTargetRoute("/api/users", startTarget("users").uri()));
+
+        assertThat(get("/index.html").body(), equalTo("default /index.html"));
+        assertThat(get("/api/orders/1").body(), equalTo("api /api/orders/1"));
+        assertThat(get("/api/users/1").body(), equalTo("users /api/users/1"));
+        assertThat(get("/apis").body(), equalTo("default /apis"));
+    }
+
+    @RepeatedTest(3)
+    void theCircuitOpensWhileTheTargetFailsAndClosesWhenItRecovers(RepetitionInfo repetitionInfo) throws Exception {
+        AtomicBoolean isFailing = new AtomicBoolean(true);
+        AtomicInteger received = new AtomicInteger();
+        MuServer targetServer = httpServer()
+            .addHandler(Method.GET, "/things", (request, response, pathParams) -> {
+                received.incrementAndGet();
+                response.status(isFailing.get() ? 503 : 200);
+                response.write("things");
+            })
+            .start();
+        targetServers.add(targetServer);
+        connector = start(connectorBuilder(repetitionInfo)
+            .withTarget(targetServer.uri())
+            .withCircuitBreaker(0.5, null, 4, Duration.ofSeconds(30), Duration.ofMillis(500)));
+
+        for (int i = 0; i < 4; i++) {
+            assertThat(get("/things").statusCode(), equalTo(503));
+        }
+        assertEventually(connector::isTargetAvailable, is(false));
+
+        // while the circuit is open, requests fail without reaching the target
+        int receivedWhileClosed = received.get();
+        assertThat(get("/things").statusCode(), greaterThanOrEqualTo(500));
+        assertThat(received.get(), equalTo(receivedWhileClosed));
+
+        isFailing.set(false);
+        assertEventually(() -> get("/things").statusCode(), equalTo(200));
+        assertThat(connector.isTargetAvailable(), is(true));
+    }
+
+    @RepeatedTest(3)
+    void eachTargetOfAPoolHasItsOwnCircuit(RepetitionInfo repetitionInfo) throws Exception {
+        AtomicInteger receivedByFailingTarget = new AtomicInteger();
+        MuServer failingTarget = httpServer()
+            .addHandler(Method.GET, "/things", (request, response, pathParams) -> {
+                receivedByFailingTarget.incrementAndGet();
+                response.status(503);
+                response.write("failing");
+            })
+            .start();
+        targetServers.add(failingTarget);
+        connector = start(connectorBuilder(repetitionInfo)
+            .withTargets(List.of(startTarget("healthy").uri(), failingTarget.uri()))
+            .withCircuitBreaker(0.5, null, 2, Duration.ofSeconds(30), Duration.ofMinutes(1)));
+
+        while (receivedByFailingTarget.get() < 2) {
+            get("/things");
+        }
+        int receivedWhenOpened = receivedByFailingTarget.get();
+        for (int i = 0; i < 20; i++) {
+            HttpResponse<String> response = get("/things");
+            assertThat(response.statusCode(), equalTo(200));
+            assertThat(response.body(), equalTo("healthy /things"));
+        }
+        assertThat(receivedByFailingTarget.get(), equalTo(receivedWhenOpened));
+        assertThat(connector.isTargetAvailable(), is(true));
+    }
+}
@@ -0,0 +1,61 @@
+package com.hsbc.cranker.connector;
+
+import org.junit.jupiter.api.Test;
+
+import java.net.URI;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+class TargetUriCacheTest {
+
+    private static final URI TARGET = URI.create("http://localhost:8080/base/");
+
+    @Test
+    void pathsAreResolvedTheSameWayWithAndWithoutTheCache() {
+        TargetUriCache cached = new TargetUriCache(TARGET, 10);
+        TargetUriCache uncached = new TargetUriCache(TARGET, 0);
+        for (String dest : new String[]{"/things?a=b", "/a/../b/%20c", "relative", "/things?a=b"}) {
+            assertThat(cached.resolve(dest), equalTo(TARGET.resolve(dest)));
+            assertThat(uncached.resolve(dest), equalTo(TARGET.resolve(dest)));
+        }
+        assertThat(uncached.stats().hits() + uncached.stats().misses(), equalTo(0L));
+        assertThat(uncached.stats().maxEntries(), equalTo(0));
+    }
+
+    @Test
+    void repeatedPathsAreHits() {
+        TargetUriCache cache = new TargetUriCache(TARGET, 10);
+        URI first = cache.resolve("/things?a=b");
+        assertThat(cache.resolve("/things?a=b"), sameInstance(first));
+        cache.resolve("/things?a=b");
+        cache.resolve("/other");
+        TargetUriCacheStats stats = cache.stats();
+        assertThat(stats.hits(), equalTo(2L));
+        assertThat(stats.misses(), equalTo(2L));
+        assertThat(stats.hitRate(), closeTo(0.5, 0.0001));
+        assertThat(stats.size(), equalTo(2));
+    }
+
+    @Test
+    void theLeastRecentlyUsedPathIsDroppedWhenFull() {
+        TargetUriCache cache = new TargetUriCache(TARGET, 2);
+        URI a = cache.resolve("/a");
+        cache.resolve("/b");
+        assertThat(cache.resolve("/a"), sameInstance(a));
+        cache.resolve("/c");
+        assertThat(cache.stats().size(), equalTo(2));
+        assertThat("a was used more recently than b", cache.resolve("/a"), sameInstance(a));
+        long misses = cache.stats().misses();
+        cache.resolve("/b");
+        assertThat(cache.stats().misses(), equalTo(misses + 1));
+    }
+
+    @Test
+    void longPathsAreNotKept() {
+        TargetUriCache cache = new TargetUriCache(TARGET, 10);
+        String dest = "/search?q=" + "x".repeat(2000);
+        assertThat(cache.resolve(dest), equalTo(TARGET.resolve(dest)));
+        assertThat(cache.stats().size(), equalTo(0));
+    }
+}
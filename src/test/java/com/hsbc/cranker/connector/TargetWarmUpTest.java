@@ -0,0 +1,67 @@
+package com.hsbc.cranker.connector;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+class TargetWarmUpTest {
+
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+    private HttpServer target;
+
+    @AfterEach
+    void after() {
+        executor.shutdownNow();
+        if (target != null) target.stop(0);
+    }
+
+    @Test
+    void opensConnectionsAndSendsRequestsThroughThePipeline() throws Exception {
+        AtomicInteger healthRequests = new AtomicInteger();
+        AtomicInteger warmUpRequests = new AtomicInteger();
+        target = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        target.setExecutor(Executors.newFixedThreadPool(4));
+        target.createContext("/health", exchange -> {
+            healthRequests.incrementAndGet();
+            if ("cranker-connector-warm-up".equals(exchange.getRequestHeaders().getFirst("user-agent"))) {
+                warmUpRequests.incrementAndGet();
+            }
+            byte[] body = "OK".getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, body.length);
+            exchange.getResponseBody().write(body);
+            exchange.close();
+        });
+        target.start();
+
+        URI targetUri = URI.create("http://localhost:" + target.getAddress().getPort());
+        HttpClientPool clients = HttpClientPool.of(HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build());
+        TargetWarmUp warmUp = new TargetWarmUp(targetUri, clients, "/health", 3, 10, Duration.ofSeconds(10));
+
+        Duration time = warmUp.run(executor, null);
+
+        assertThat(warmUpRequests.get(), equalTo(10));
+        assertThat(healthRequests.get(), equalTo(13));
+        assertThat(time, lessThan(Duration.ofSeconds(10)));
+    }
+
+    @Test
+    void anUnavailableTargetDoesNotFailTheWarmUp() {
+        HttpClientPool clients = HttpClientPool.of(HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(1)).build());
+        TargetWarmUp warmUp = new TargetWarmUp(URI.create("http://localhost:1"), clients, "/health", 2, 2, Duration.ofSeconds(5));
+        Duration time = warmUp.run(executor, StreamExecutor.fixedThreads(1, "warm-up-test-"));
+        assertThat(time.toMillis(), lessThan(TimeUnit.SECONDS.toMillis(6)));
+    }
+}
@@ -0,0 +1,55 @@
+package com.hsbc.cranker.connector;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.RepeatedTest;
+import org.junit.jupiter.api.RepetitionInfo;
+import org.junit.jupiter.api.io.TempDir;
+import scaffolding.UnixSocketHttpServer;
+
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+import static scaffolding.Action.swallowException;
+
+public class UnixSocketTargetTest extends BaseEndToEndTest {
+
+    @TempDir
+    Path tempDir;
+
+    private UnixSocketHttpServer targetServer;
+    private CrankerConnector connector;
+
+    @AfterEach
+    void after() {
+        if (connector != null) assertThat(connector.stop(10, TimeUnit.SECONDS), is(true));
+        if (targetServer != null) swallowException(targetServer::close);
+    }
+
+    @RepeatedTest(3)
+    void requestsCanBeProxiedToATargetListeningOnAUnixDomainSocket(RepetitionInfo repetitionInfo) throws Exception {
+        assumeTrue(UnixSockets.isSupported() && UnixSocketHttpServer.isSupported(), "Unix domain sockets need JDK 16");
+        targetServer = UnixSocketHttpServer.start(tempDir.resolve("target.sock"));
+        connector = CrankerConnectorBuilder.connector()
+            .withPreferredProtocols(preferredProtocols(repetitionInfo))
+            .withRouterUris(RegistrationUriSuppliers.fixedUris(registrationUri(registrationServer.uri())))
+            .withRoute("*")
+            .withTarget(URI.create("unix:" + targetServer.path()))
+            .start();
+        waitForRegistration("*", connector.connectorId(), 2, crankerRouter);
+
+        for (int i = 0; i < 3; i++) {
+            HttpResponse<String> response = testClient.send(HttpRequest.newBuilder(crankerServer.uri().resolve("/things?i=" + i))
+                .POST(HttpRequest.BodyPublishers.ofString("hello " + i))
+                .build(), HttpResponse.BodyHandlers.ofString());
+            assertThat(response.statusCode(), equalTo(200));
+            assertThat(response.body(), equalTo("POST /things?i=" + i + " hello " + i));
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package com.hsbc.cranker.connector;
+
+import io.muserver.Method;
+import io.muserver.MuServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.RepeatedTest;
+import org.junit.jupiter.api.RepetitionInfo;
+import org.junit.jupiter.api.Test;
+
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static com.hsbc.cranker.connector.CrankerConnectorBuilder.CRANKER_PROTOCOL_3;
+import static io.muserver.MuServerBuilder.httpServer;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.everyItem;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Proxies requests with virtual threads. This is run by the failsafe plugin against the packaged multi-release
+ * jar on JDK 21 or later, as the virtual thread support is only in its <code>META-INF/versions/21</code> entry.
+ */
+public class VirtualThreadsIT extends BaseEndToEndTest {
+
+    private final MuServer targetServer = httpServer()
+        .addHandler(Method.POST, "/echo", (request, response, pathParams) -> response.write(request.readBodyAsString()))
+        .start();
+
+    private final Queue<Boolean> proxiedOnVirtualThreads = new ConcurrentLinkedQueue<>();
+
+    @BeforeEach
+    void checkJdk() {
+        assumeTrue(Runtime.version().feature() >= 21, "Virtual threads need JDK 21");
+    }
+
+    @AfterEach
+    void stopTarget() {
+        targetServer.stop();
+    }
+
+    @RepeatedTest(3)
+    void requestsAreProxiedAndTheExecutorsAreShutDownOnStop(RepetitionInfo repetitionInfo) {
+        List<String> protocols = preferredProtocols(repetitionInfo);
+        CrankerConnector connector = CrankerConnectorBuilder.connector()
+            .withPreferredProtocols(protocols)
+            .withRouterUris(RegistrationUriSuppliers.fixedUris(registrationUri(registrationServer.uri())))
+            .withRoute("*")
+            .withTarget(targetServer.uri())
+            .withVirtualThreads(true)
+            .withProxyEventListener(recordingListener())
+            .start();
+        waitForRegistration("*", connector.connectorId(), 2, crankerRouter);
+
+        sendRequests();
+        if (protocols.get(0).equals(CRANKER_PROTOCOL_3)) {
+            // cranker_3.0 streams are processed on the stream executor's virtual threads
+            assertThat(proxiedOnVirtualThreads, everyItem(is(true)));
+        }
+
+        ExecutorService clientExecutor = httpClientExecutor(connector.httpClient());
+        assertThat(clientExecutor.isShutdown(), is(false));
+        assertThat(connector.stop(10, TimeUnit.SECONDS), is(true));
+        assertThat(clientExecutor.isShutdown(), is(true));
+    }
+
+    @Test
+    void groupsShutDownTheirExecutorsOnStop() {
+        CrankerConnectorGroup group = CrankerConnectorGroupBuilder.connectorGroup()
+            .withRouterUris(RegistrationUriSuppliers.fixedUris(registrationUri(registrationServer.uri())))
+            .withVirtualThreads(true)
+            .build();
+        CrankerConnector connector = group.add(CrankerConnectorBuilder.connector()
+            .withPreferredProtocols(List.of(CRANKER_PROTOCOL_3))
+            .withRoute("*")
+            .withTarget(targetServer.uri())
+            .withProxyEventListener(recordingListener()));
+        group.start();
+        waitForRegistration("*", connector.connectorId(), 2, crankerRouter);
+
+        sendRequests();
+        assertThat(proxiedOnVirtualThreads, everyItem(is(true)));
+
+        ExecutorService clientExecutor = httpClientExecutor(connector.httpClient());
+        assertThat(group.stop(10, TimeUnit.SECONDS), is(true));
+        assertThat(clientExecutor.isShutdown(), is(true));
+    }
+
+    private void sendRequests() {
+        List<CompletableFuture<HttpResponse<String>>> responses = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            responses.add(testClient.sendAsync(HttpRequest.newBuilder(crankerServer.uri().resolve("/echo"))
+                .POST(HttpRequest.BodyPublishers.ofString("request " + i + " " + "x".repeat(50000)))
+                .build(), HttpResponse.BodyHandlers.ofString()));
+        }
+        for (int i = 0; i < responses.size(); i++) {
+            HttpResponse<String> response = responses.get(i).join();
+            assertThat(response.statusCode(), equalTo(200));
+            assertThat(response.body(), equalTo("request " + i + " " + "x".repeat(50000)));
+        }
+    }
+
+    private ProxyEventListener recordingListener() {
+        return new ProxyEventListener() {
+            @Override
+            public void beforeProxyToTarget(ProxyRequest request) {
+                proxiedOnVirtualThreads.add(isVirtual(Thread.currentThread()));
+            }
+        };
+    }
+
+    private static ExecutorService httpClientExecutor(HttpClient client) {
+        Executor executor = client.executor().orElseThrow();
+        assertThat(executor, instanceOf(ExecutorService.class));
+        return (ExecutorService) executor;
+    }
+
+    private static boolean isVirtual(Thread thread) {
+        // called reflectively as the tests are compiled for JDK 11
+        try {
+            return (Boolean) Thread.class.getMethod("isVirtual").invoke(thread);
+        } catch (ReflectiveOperationException e) {
+            throw new AssertionError(e);
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package manual;
+
+import com.hsbc.cranker.connector.CrankerConnector;
+import com.hsbc.cranker.connector.CrankerConnectorBuilder;
+import com.hsbc.cranker.connector.RegistrationUriSuppliers;
+import com.hsbc.cranker.connector.TargetTransport;
+import com.hsbc.cranker.mucranker.CrankerRouter;
+import io.muserver.Http2ConfigBuilder;
+import io.muserver.Method;
+import io.muserver.MuServer;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.hsbc.cranker.connector.CrankerConnectorBuilder.CRANKER_PROTOCOL_3;
+import static com.hsbc.cranker.mucranker.CrankerRouterBuilder.crankerRouter;
+import static io.muserver.MuServerBuilder.httpServer;
+import static io.muserver.MuServerBuilder.httpsServer;
+
+/**
+ * Compares the small-request throughput and p99 latency of a connector sending requests to its target with the
+ * default JDK HTTP client against one using the built-in HTTP/1.1 client from
+ * {@link TargetTransport#http1(URI, int)}.
+ * <p>Each request has a handful of typical browser headers and a tiny response, so that the per-request cost of
+ * building and sending the target request dominates.</p>
+ * <p>Arguments (all optional): concurrent requests (default 200), requests per run (default 200000)</p>
+ */
+public class TargetTransportBenchmark {
+
+    private static final int STREAMS_PER_CLIENT = 100;
+
+    public static void main(String[] args) throws Exception {
+        System.setProperty("jdk.internal.httpclient.disableHostnameVerification", "true");
+        final int concurrency = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        final int requests = args.length > 1 ? Integer.parseInt(args[1]) : 200000;
+
+        MuServer target = httpServer()
+            .addHandler(Method.GET, "/bench", (request, response, pathParams) -> response.write("hello"))
+            .start();
+        CrankerRouter router = crankerRouter().withSupportedCrankerProtocols(List.of(CRANKER_PROTOCOL_3)).start();
+        MuServer registrationServer = httpServer().addHandler(router.createRegistrationHandler()).start();
+        MuServer routerServer = httpsServer()
+            .withHttp2Config(Http2ConfigBuilder.http2Enabled())
+            .addHandler(router.createHttpHandler())
+            .start();
+
+        HttpClient[] clients = new HttpClient[Math.max(1, concurrency / STREAMS_PER_CLIENT)];
+        for (int i = 0; i < clients.length; i++) {
+            clients[i] = CrankerConnectorBuilder.createHttpClient(true).version(HttpClient.Version.HTTP_2).build();
+        }
+        URI uri = routerServer.uri().resolve("/bench");
+
+        try {
+            for (String transport : new String[]{"jdk", "http1"}) {
+                CrankerConnector connector = CrankerConnectorBuilder.connector()
+                    .withPreferredProtocols(List.of(CRANKER_PROTOCOL_3))
+                    .withRouterUris(RegistrationUriSuppliers.fixedUris(URI.create("ws" + registrationServer.uri().toString().substring(4))))
+                    .withRoute("*")
+                    .withTarget(target.uri())
+                    .withTargetTransport(transport.equals("http1") ? TargetTransport.http1(target.uri(), concurrency) : null)
+                    .start();
+                try {
+                    waitUntilAvailable(clients[0], uri);
+                    run(clients, uri, concurrency, requests / 10); // warm up
+                    Result result = run(clients, uri, concurrency, requests);
+                    System.out.printf("transport=%s concurrency=%d requests=%d errors=%d throughput=%.0f req/s p99=%.2f ms%n",
+                        transport, concurrency, requests, result.errors, result.throughput, result.p99Millis);
+                } finally {
+                    connector.stop(10, TimeUnit.SECONDS);
+                }
+            }
+        } finally {
+            routerServer.stop();
+            registrationServer.stop();
+            router.stop();
+            target.stop();
+        }
+    }
+
+    private static void waitUntilAvailable(HttpClient client, URI uri) throws Exception {
+        for (int i = 0; i < 100; i++) {
+            HttpResponse<String> response = client.send(HttpRequest.newBuilder(uri).build(), HttpResponse.BodyHandlers.ofString());
+            if (response.statusCode() == 200) {
+                return;
+            }
+            Thread.sleep(100);
+        }
+        throw new IllegalStateException("Connector did not register to the router");
+    }
+
+    private static Result run(HttpClient[] clients, URI uri, int concurrency, int requests) throws InterruptedException {
+        final Semaphore permits = new Semaphore(concurrency);
+        final CountDownLatch done = new CountDownLatch(requests);
+        final long[] latencies = new long[requests];
+        final AtomicInteger errors = new AtomicInteger();
+        final HttpRequest request = HttpRequest.newBuilder(uri)
+            .header("accept", "text/html,application/xhtml+xml,application/xml;q=0.9,*/*;q=0.8")
+            .header("accept-language", "en-GB,en;q=0.5")
+            .header("user-agent", "Mozilla/5.0 (X11; Linux x86_64; rv:120.0) Gecko/20100101 Firefox/120.0")
+            .header("cookie", "session=0123456789abcdef; theme=dark")
+            .build();
+        final long start = System.nanoTime();
+        for (int i = 0; i < requests; i++) {
+            permits.acquire();
+            final int index = i;
+            final long requestStart = System.nanoTime();
+            clients[i % clients.length].sendAsync(request, HttpResponse.BodyHandlers.discarding())
+                .whenComplete((response, throwable) -> {
+                    latencies[index] = System.nanoTime() - requestStart;
+                    if (throwable != null || response.statusCode() != 200) {
+                        errors.incrementAndGet();
+                    }
+                    permits.release();
+                    done.countDown();
+                });
+        }
+        done.await();
+        final long elapsed = System.nanoTime() - start;
+        Arrays.sort(latencies);
+        return new Result(requests / (elapsed / 1e9), latencies[(int) (requests * 0.99)] / 1e6, errors.get());
+    }
+
+    private static class Result {
+        private final double throughput;
+        private final double p99Millis;
+        private final int errors;
+
+        private Result(double throughput, double p99Millis, int errors) {
+            this.throughput = throughput;
+            this.p99Millis = p99Millis;
+            this.errors = errors;
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package manual;
+
+import com.hsbc.cranker.connector.CrankerConnector;
+import com.hsbc.cranker.connector.CrankerConnectorBuilder;
+import com.hsbc.cranker.connector.RegistrationUriSuppliers;
+import com.hsbc.cranker.mucranker.CrankerRouter;
+import io.muserver.Http2ConfigBuilder;
+import io.muserver.Method;
+import io.muserver.MuServer;
+
+import java.lang.management.ManagementFactory;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.hsbc.cranker.connector.CrankerConnectorBuilder.CRANKER_PROTOCOL_3;
+import static com.hsbc.cranker.mucranker.CrankerRouterBuilder.crankerRouter;
+import static io.muserver.MuServerBuilder.httpServer;
+import static io.muserver.MuServerBuilder.httpsServer;
+
+/**
+ * Compares the CPU time per request of a connector that resolves the target URI of every request against one
+ * with a cache of resolved target URIs, from {@link CrankerConnectorBuilder#withTargetUriCache(int)}.
+ * <p>Requests go to a few hundred distinct paths with query strings, most of them to a small hot set, like the
+ * traffic of a typical API. The CPU time is for the whole process, which includes the router, target and
+ * clients, so it is the difference between the two runs that matters.</p>
+ * <p>Arguments (all optional): concurrent requests (default 100), requests per run (default 200000),
+ * distinct paths (default 500)</p>
+ */
+public class TargetUriCacheBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        System.setProperty("jdk.internal.httpclient.disableHostnameVerification", "true");
+        final int concurrency = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+        final int requests = args.length > 1 ? Integer.parseInt(args[1]) : 200000;
+        final int paths = args.length > 2 ? Integer.parseInt(args[2]) : 500;
+
+        MuServer target = httpServer()
+            .addHandler(Method.GET, "/api/items/{id}/details", (request, response, pathParams) -> response.write("hello"))
+            .start();
+        CrankerRouter router = crankerRouter().withSupportedCrankerProtocols(List.of(CRANKER_PROTOCOL_3)).start();
+        MuServer registrationServer = httpServer().addHandler(router.createRegistrationHandler()).start();
+        MuServer routerServer = httpsServer()
+            .withHttp2Config(Http2ConfigBuilder.http2Enabled())
+            .addHandler(router.createHttpHandler())
+            .start();
+
+        HttpClient client = CrankerConnectorBuilder.createHttpClient(true).version(HttpClient.Version.HTTP_2).build();
+        URI[] uris = new URI[paths];
+        for (int i = 0; i < paths; i++) {
+            uris[i] = routerServer.uri().resolve("/api/items/" + (100000 + i) + "/details?view=summary&lang=en-GB&fields=name,price,stock");
+        }
+
+        try {
+            for (int cacheSize : new int[]{0, 1024}) {
+                CrankerConnector connector = CrankerConnectorBuilder.connector()
+                    .withPreferredProtocols(List.of(CRANKER_PROTOCOL_3))
+                    .withRouterUris(RegistrationUriSuppliers.fixedUris(URI.create("ws" + registrationServer.uri().toString().substring(4))))
+                    .withRoute("*")
+                    .withTarget(target.uri())
+                    .withTargetUriCache(cacheSize)
+                    .start();
+                try {
+                    waitUntilAvailable(client, uris[0]);
+                    run(client, uris, concurrency, requests / 10); // warm up
+                    long cpuBefore = processCpuNanos();
+                    long start = System.nanoTime();
+                    int errors = run(client, uris, concurrency, requests);
+                    double seconds = (System.nanoTime() - start) / 1e9;
+                    double cpuMicrosPerRequest = (processCpuNanos() - cpuBefore) / 1000.0 / requests;
+                    System.out.printf("cacheSize=%d requests=%d errors=%d throughput=%.0f req/s cpu=%.1f us/req %s%n",
+                        cacheSize, requests, errors, requests / seconds, cpuMicrosPerRequest, connector.targetUriCacheStats());
+                } finally {
+                    connector.stop(10, TimeUnit.SECONDS);
+                }
+            }
+        } finally {
+            routerServer.stop();
+            registrationServer.stop();
+            router.stop();
+            target.stop();
+        }
+    }
+
+    private static long processCpuNanos() {
+        return ((com.sun.management.OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean()).getProcessCpuTime();
+    }
+
+    private static void waitUntilAvailable(HttpClient client, URI uri) throws Exception {
+        for (int i = 0; i < 100; i++) {
+            HttpResponse<String> response = client.send(HttpRequest.newBuilder(uri).build(), HttpResponse.BodyHandlers.ofString());
+            if (response.statusCode() == 200) {
+                return;
+            }
+            Thread.sleep(100);
+        }
+        throw new IllegalStateException("Connector did not register to the router");
+    }
+
+    /**
+     * Sends the requests, with 90% of them going to the first 10% of the paths
+     */
+    private static int run(HttpClient client, URI[] uris, int concurrency, int requests) throws InterruptedException {
+        final Semaphore permits = new Semaphore(concurrency);
+        final CountDownLatch done = new CountDownLatch(requests);
+        final AtomicInteger errors = new AtomicInteger();
+        final Random random = new Random(42);
+        final int hot = Math.max(1, uris.length / 10);
+        for (int i = 0; i < requests; i++) {
+            permits.acquire();
+            URI uri = random.nextInt(10) < 9 ? uris[random.nextInt(hot)] : uris[random.nextInt(uris.length)];
+            client.sendAsync(HttpRequest.newBuilder(uri).build(), HttpResponse.BodyHandlers.discarding())
+                .whenComplete((response, throwable) -> {
+                    if (throwable != null || response.statusCode() != 200) {
+                        errors.incrementAndGet();
+                    }
+                    permits.release();
+                    done.countDown();
+                });
+        }
+        done.await();
+        return errors.get();
+    }
+}
@@ -0,0 +1,111 @@
+package manual;
+
+import com.hsbc.cranker.connector.CrankerConnector;
+import com.hsbc.cranker.connector.CrankerConnectorBuilder;
+import com.hsbc.cranker.connector.RegistrationUriSuppliers;
+import com.hsbc.cranker.mucranker.CrankerRouter;
+import io.muserver.Method;
+import io.muserver.MuServer;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.hsbc.cranker.connector.CrankerConnectorBuilder.CRANKER_PROTOCOL_1;
+import static com.hsbc.cranker.mucranker.CrankerRouterBuilder.crankerRouter;
+import static io.muserver.MuServerBuilder.httpServer;
+import static io.muserver.MuServerBuilder.httpsServer;
+
+/**
+ * Measures the sustained throughput of <code>cranker_1.0</code> requests, where every request uses up a socket and
+ * so the throughput is limited by how quickly the connector can open new (TLS) sockets to the router rather than by
+ * the target. Runs with and without {@link CrankerConnectorBuilder#withHandshakesAhead(int)}.
+ * <p>Arguments (all optional): concurrent requests (default 32), requests per run (default 20000), sliding window
+ * size (default 8)</p>
+ */
+public class V1ChurnBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        System.setProperty("jdk.internal.httpclient.disableHostnameVerification", "true");
+        final int concurrency = args.length > 0 ? Integer.parseInt(args[0]) : 32;
+        final int requests = args.length > 1 ? Integer.parseInt(args[1]) : 20000;
+        final int windowSize = args.length > 2 ? Integer.parseInt(args[2]) : 8;
+
+        MuServer target = httpServer()
+            .addHandler(Method.GET, "/bench", (request, response, pathParams) -> response.write("hello"))
+            .start();
+        CrankerRouter router = crankerRouter().withSupportedCrankerProtocols(List.of(CRANKER_PROTOCOL_1)).start();
+        MuServer registrationServer = httpsServer().addHandler(router.createRegistrationHandler()).start();
+        MuServer routerServer = httpServer().addHandler(router.createHttpHandler()).start();
+
+        HttpClient client = HttpClient.newHttpClient();
+        URI uri = routerServer.uri().resolve("/bench");
+
+        try {
+            for (int handshakesAhead : new int[]{0, windowSize}) {
+                CrankerConnector connector = CrankerConnectorBuilder.connector()
+                    .withPreferredProtocols(List.of(CRANKER_PROTOCOL_1))
+                    .withHttpClient(CrankerConnectorBuilder.createHttpClient(true).build())
+                    .withRouterUris(RegistrationUriSuppliers.fixedUris(URI.create("wss" + registrationServer.uri().toString().substring(5))))
+                    .withRoute("*")
+                    .withTarget(target.uri())
+                    .withSlidingWindowSize(windowSize)
+                    .withHandshakesAhead(handshakesAhead)
+                    .start();
+                try {
+                    waitUntilAvailable(client, uri);
+                    run(client, uri, concurrency, requests / 10); // warm up
+                    long start = System.nanoTime();
+                    int errors = run(client, uri, concurrency, requests);
+                    double seconds = (System.nanoTime() - start) / 1e9;
+                    System.out.printf("handshakesAhead=%d window=%d concurrency=%d requests=%d errors=%d throughput=%.0f req/s%n",
+                        handshakesAhead, windowSize, concurrency, requests, errors, requests / seconds);
+                } finally {
+                    connector.stop(10, TimeUnit.SECONDS);
+                }
+            }
+        } finally {
+            routerServer.stop();
+            registrationServer.stop();
+            router.stop();
+            target.stop();
+        }
+    }
+
+    private static void waitUntilAvailable(HttpClient client, URI uri) throws Exception {
+        for (int i = 0; i < 100; i++) {
+            HttpResponse<String> response = client.send(HttpRequest.newBuilder(uri).build(), HttpResponse.BodyHandlers.ofString());
+            if (response.statusCode() == 200) {
+                return;
+            }
+            Thread.sleep(100);
+        }
+        throw new IllegalStateException("Connector did not register to the router");
+    }
+
+    private static int run(HttpClient client, URI uri, int concurrency, int requests) throws InterruptedException {
+        final Semaphore permits = new Semaphore(concurrency);
+        final CountDownLatch done = new CountDownLatch(requests);
+        final AtomicInteger errors = new AtomicInteger();
+        final HttpRequest request = HttpRequest.newBuilder(uri).build();
+        for (int i = 0; i < requests; i++) {
+            permits.acquire();
+            client.sendAsync(request, HttpResponse.BodyHandlers.discarding())
+                .whenComplete((response, throwable) -> {
+                    if (throwable != null || response.statusCode() != 200) {
+                        errors.incrementAndGet();
+                    }
+                    permits.release();
+                    done.countDown();
+                });
+        }
+        done.await();
+        return errors.get();
+    }
+}
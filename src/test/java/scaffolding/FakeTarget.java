@@ -0,0 +1,71 @@
+package scaffolding;
+
+import com.hsbc.cranker.connector.TargetTransport;
+
+import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * A target transport that records the requests sent to it and leaves them outstanding until the test
+ * completes them, either with {@link #respond(int, int)} or through {@link #sent()}.
+ */
+public class FakeTarget implements TargetTransport {
+    private final List<CompletableFuture<HttpResponse<Void>>> sent = new CopyOnWriteArrayList<>();
+    private final List<HttpRequest> requests = new CopyOnWriteArrayList<>();
+    private final List<HttpResponse.BodyHandler<?>> handlers = new CopyOnWriteArrayList<>();
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> CompletableFuture<HttpResponse<T>> sendAsync(HttpRequest request, HttpResponse.BodyHandler<T> responseBodyHandler) {
+        CompletableFuture<HttpResponse<Void>> future = new CompletableFuture<>();
+        requests.add(request);
+        handlers.add(responseBodyHandler);
+        sent.add(future);
+        return (CompletableFuture<HttpResponse<T>>) (CompletableFuture<?>) future;
+    }
+
+    /**
+     * @return the response futures of the requests sent so far, in the order they were sent
+     */
+    public List<CompletableFuture<HttpResponse<Void>>> sent() {
+        return sent;
+    }
+
+    /**
+     * @return the requests sent so far, in the order they were sent
+     */
+    public List<HttpRequest> requests() {
+        return requests;
+    }
+
+    /**
+     * Passes a response with the given status to the body handler of a request and then completes it
+     * @param index the index of the request in the order they were sent
+     * @param status the response status
+     */
+    public void respond(int index, int status) {
+        handlers.get(index).apply(new HttpResponse.ResponseInfo() {
+            @Override
+            public int statusCode() {
+                return status;
+            }
+
+            @Override
+            public HttpHeaders headers() {
+                return HttpHeaders.of(Map.of(), (name, value) -> true);
+            }
+
+            @Override
+            public HttpClient.Version version() {
+                return HttpClient.Version.HTTP_1_1;
+            }
+        });
+        sent.get(index).complete(null);
+    }
+}
@@ -0,0 +1,257 @@
+package scaffolding;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLParameters;
+import java.io.IOException;
+import java.net.Authenticator;
+import java.net.CookieHandler;
+import java.net.ProxySelector;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.WebSocket;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+
+/**
+ * An HTTP client for connecting to routers that records what the connector's websockets send to the router:
+ * the status codes of close frames, and the error codes of <code>cranker_3.0</code> stream resets.
+ */
+public class RecordingHttpClient extends HttpClient {
+
+    private static final byte MESSAGE_TYPE_RST_STREAM = 3;
+
+    private final HttpClient client;
+    private final List<Integer> closeCodes = new CopyOnWriteArrayList<>();
+    private final List<Integer> resetCodes = new CopyOnWriteArrayList<>();
+
+    public RecordingHttpClient(HttpClient client) {
+        this.client = client;
+    }
+
+    /**
+     * @return the status codes of the close frames sent, in the order they were sent
+     */
+    public List<Integer> closeCodes() {
+        return closeCodes;
+    }
+
+    /**
+     * @return the error codes of the stream resets sent, in the order they were sent
+     */
+    public List<Integer> resetCodes() {
+        return resetCodes;
+    }
+
+    @Override
+    public WebSocket.Builder newWebSocketBuilder() {
+        WebSocket.Builder builder = client.newWebSocketBuilder();
+        return new WebSocket.Builder() {
+            @Override
+            public WebSocket.Builder header(String name, String value) {
+                builder.header(name, value);
+                return this;
+            }
+
+            @Override
+            public WebSocket.Builder connectTimeout(Duration timeout) {
+                builder.connectTimeout(timeout);
+                return this;
+            }
+
+            @Override
+            public WebSocket.Builder subprotocols(String mostPreferred, String... lesserPreferred) {
+                builder.subprotocols(mostPreferred, lesserPreferred);
+                return this;
+            }
+
+            @Override
+            public CompletableFuture<WebSocket> buildAsync(URI uri, WebSocket.Listener listener) {
+                RecordingListener recordingListener = new RecordingListener(listener);
+                return builder.buildAsync(uri, recordingListener).thenApply(recordingListener::recording);
+            }
+        };
+    }
+
+    private class RecordingListener implements WebSocket.Listener {
+        private final WebSocket.Listener listener;
+        private volatile RecordingWebSocket recording;
+
+        private RecordingListener(WebSocket.Listener listener) {
+            this.listener = listener;
+        }
+
+        private synchronized RecordingWebSocket recording(WebSocket webSocket) {
+            if (recording == null) {
+                recording = new RecordingWebSocket(webSocket);
+            }
+            return recording;
+        }
+
+        @Override
+        public void onOpen(WebSocket webSocket) {
+            listener.onOpen(recording(webSocket));
+        }
+
+        @Override
+        public CompletionStage<?> onText(WebSocket webSocket, CharSequence data, boolean last) {
+            return listener.onText(recording(webSocket), data, last);
+        }
+
+        @Override
+        public CompletionStage<?> onBinary(WebSocket webSocket, ByteBuffer data, boolean last) {
+            return listener.onBinary(recording(webSocket), data, last);
+        }
+
+        @Override
+        public CompletionStage<?> onPing(WebSocket webSocket, ByteBuffer message) {
+            return listener.onPing(recording(webSocket), message);
+        }
+
+        @Override
+        public CompletionStage<?> onPong(WebSocket webSocket, ByteBuffer message) {
+            return listener.onPong(recording(webSocket), message);
+        }
+
+        @Override
+        public CompletionStage<?> onClose(WebSocket webSocket, int statusCode, String reason) {
+            return listener.onClose(recording(webSocket), statusCode, reason);
+        }
+
+        @Override
+        public void onError(WebSocket webSocket, Throwable error) {
+            listener.onError(recording(webSocket), error);
+        }
+    }
+
+    private class RecordingWebSocket implements WebSocket {
+        private final WebSocket webSocket;
+
+        private RecordingWebSocket(WebSocket webSocket) {
+            this.webSocket = webSocket;
+        }
+
+        @Override
+        public CompletableFuture<WebSocket> sendText(CharSequence data, boolean last) {
+            return webSocket.sendText(data, last).thenApply(ws -> this);
+        }
+
+        @Override
+        public CompletableFuture<WebSocket> sendBinary(ByteBuffer data, boolean last) {
+            // a stream reset is a single message of its type, flags, stream ID and error code
+            if (data.remaining() >= 10 && data.get(data.position()) == MESSAGE_TYPE_RST_STREAM) {
+                resetCodes.add(data.getInt(data.position() + 6));
+            }
+            return webSocket.sendBinary(data, last).thenApply(ws -> this);
+        }
+
+        @Override
+        public CompletableFuture<WebSocket> sendPing(ByteBuffer message) {
+            return webSocket.sendPing(message).thenApply(ws -> this);
+        }
+
+        @Override
+        public CompletableFuture<WebSocket> sendPong(ByteBuffer message) {
+            return webSocket.sendPong(message).thenApply(ws -> this);
+        }
+
+        @Override
+        public CompletableFuture<WebSocket> sendClose(int statusCode, String reason) {
+            closeCodes.add(statusCode);
+            return webSocket.sendClose(statusCode, reason).thenApply(ws -> this);
+        }
+
+        @Override
+        public void request(long n) {
+            webSocket.request(n);
+        }
+
+        @Override
+        public String getSubprotocol() {
+            return webSocket.getSubprotocol();
+        }
+
+        @Override
+        public boolean isOutputClosed() {
+            return webSocket.isOutputClosed();
+        }
+
+        @Override
+        public boolean isInputClosed() {
+            return webSocket.isInputClosed();
+        }
+
+        @Override
+        public void abort() {
+            webSocket.abort();
+        }
+    }
+
+    @Override
+    public Optional<CookieHandler> cookieHandler() {
+        return client.cookieHandler();
+    }
+
+    @Override
+    public Optional<Duration> connectTimeout() {
+        return client.connectTimeout();
+    }
+
+    @Override
+    public Redirect followRedirects() {
+        return client.followRedirects();
+    }
+
+    @Override
+    public Optional<ProxySelector> proxy() {
+        return client.proxy();
+    }
+
+    @Override
+    public SSLContext sslContext() {
+        return client.sslContext();
+    }
+
+    @Override
+    public SSLParameters sslParameters() {
+        return client.sslParameters();
+    }
+
+    @Override
+    public Optional<Authenticator> authenticator() {
+        return client.authenticator();
+    }
+
+    @Override
+    public Version version() {
+        return client.version();
+    }
+
+    @Override
+    public Optional<Executor> executor() {
+        return client.executor();
+    }
+
+    @Override
+    public <T> HttpResponse<T> send(HttpRequest request, HttpResponse.BodyHandler<T> responseBodyHandler) throws IOException, InterruptedException {
+        return client.send(request, responseBodyHandler);
+    }
+
+    @Override
+    public <T> CompletableFuture<HttpResponse<T>> sendAsync(HttpRequest request, HttpResponse.BodyHandler<T> responseBodyHandler) {
+        return client.sendAsync(request, responseBodyHandler);
+    }
+
+    @Override
+    public <T> CompletableFuture<HttpResponse<T>> sendAsync(HttpRequest request, HttpResponse.BodyHandler<T> responseBodyHandler,
+                                                            HttpResponse.PushPromiseHandler<T> pushPromiseHandler) {
+        return client.sendAsync(request, responseBodyHandler, pushPromiseHandler);
+    }
+}
@@ -0,0 +1,137 @@
+package scaffolding;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.net.ProtocolFamily;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+
+/**
+ * A minimal HTTP/1.1 server listening on a Unix domain socket, which responds to every request with a body of
+ * the request method, path and body, for example <code>POST /things hello</code>.
+ * <p>Unix domain sockets need JDK 16 or later, and the tests are compiled for JDK 11, so the JDK classes are
+ * used reflectively. Check {@link #isSupported()} first.</p>
+ */
+public class UnixSocketHttpServer implements AutoCloseable {
+
+    private final Path path;
+    private final ServerSocketChannel server;
+    private final Thread acceptor;
+
+    private UnixSocketHttpServer(Path path) throws IOException {
+        this.path = path;
+        this.server = openServerChannel();
+        this.server.bind(address(path));
+        this.acceptor = new Thread(this::acceptConnections, "unix-socket-http-server");
+        this.acceptor.setDaemon(true);
+        this.acceptor.start();
+    }
+
+    public static boolean isSupported() {
+        try {
+            unixProtocolFamily();
+            return true;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    public static UnixSocketHttpServer start(Path path) throws IOException {
+        return new UnixSocketHttpServer(path);
+    }
+
+    public Path path() {
+        return path;
+    }
+
+    private static ProtocolFamily unixProtocolFamily() {
+        return StandardProtocolFamily.valueOf("UNIX");
+    }
+
+    private static ServerSocketChannel openServerChannel() throws IOException {
+        try {
+            return (ServerSocketChannel) ServerSocketChannel.class.getMethod("open", ProtocolFamily.class).invoke(null, unixProtocolFamily());
+        } catch (InvocationTargetException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IllegalStateException("Could not open a Unix domain socket", e.getCause());
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Unix domain sockets are not supported", e);
+        }
+    }
+
+    private static SocketAddress address(Path path) {
+        try {
+            return (SocketAddress) Class.forName("java.net.UnixDomainSocketAddress").getMethod("of", Path.class).invoke(null, path);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Unix domain sockets are not supported", e);
+        }
+    }
+
+    private void acceptConnections() {
+        while (server.isOpen()) {
+            try {
+                SocketChannel channel = server.accept();
+                Thread handler = new Thread(() -> handle(channel), "unix-socket-http-connection");
+                handler.setDaemon(true);
+                handler.start();
+            } catch (IOException e) {
+                return;
+            }
+        }
+    }
+
+    private static void handle(SocketChannel channel) {
+        try (channel; InputStream in = Channels.newInputStream(channel); OutputStream out = Channels.newOutputStream(channel)) {
+            String requestLine;
+            while ((requestLine = readLine(in)) != null && !requestLine.isEmpty()) {
+                int contentLength = 0;
+                String line;
+                while ((line = readLine(in)) != null && !line.isEmpty()) {
+                    int colon = line.indexOf(':');
+                    if (colon > 0 && line.substring(0, colon).trim().toLowerCase(Locale.ROOT).equals("content-length")) {
+                        contentLength = Integer.parseInt(line.substring(colon + 1).trim());
+                    }
+                }
+                String[] parts = requestLine.split(" ");
+                String body = new String(in.readNBytes(contentLength), StandardCharsets.UTF_8);
+                byte[] response = (parts[0] + " " + parts[1] + " " + body).getBytes(StandardCharsets.UTF_8);
+                out.write(("HTTP/1.1 200 OK\r\ncontent-type: text/plain\r\ncontent-length: " + response.length + "\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+                out.write(response);
+                out.flush();
+            }
+        } catch (IOException ignored) {
+            // the client closed the connection
+        }
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        int b;
+        while ((b = in.read()) != -1) {
+            if (b == '\n') {
+                String text = line.toString(StandardCharsets.US_ASCII);
+                return text.endsWith("\r") ? text.substring(0, text.length() - 1) : text;
+            }
+            line.write(b);
+        }
+        return line.size() == 0 ? null : line.toString(StandardCharsets.US_ASCII);
+    }
+
+    @Override
+    public void close() throws IOException {
+        server.close();
+        Files.deleteIfExists(path);
+    }
+}